@@ -1,9 +1,16 @@
 package com.github.oogasawa.benchmark;
 
 import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
 import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+import com.github.oogasawa.benchmark.metric.SampleJournal;
+import com.github.oogasawa.benchmark.util.OutputFiles;
+import com.github.oogasawa.benchmark.util.TimeWindow;
 import com.github.oogasawa.utility.cli.CommandRepository;
 import org.apache.commons.cli.CommandLine;
 import org.apache.commons.cli.Option;
@@ -24,6 +31,8 @@ public class BenchmarkCommands {
         this.cmdRepos = cmds;
         
         benchmarkRunCommand();
+        benchmarkReplayCommand();
+        benchmarkRecoverCommand();
         processWatchCommand();
     }
 
@@ -34,8 +43,8 @@ public class BenchmarkCommands {
         opts.addOption(Option.builder("i")
                 .longOpt("interval")
                 .hasArg(true)
-                .argName("SECONDS") // to make the CLI help output clearer (e.g., -i <SECONDS>)
-                .desc("Interval in seconds between each statistics output.")
+                .argName("INTERVAL") // to make the CLI help output clearer (e.g., -i <INTERVAL>)
+                .desc("Interval between each statistics output: seconds (10, 0.5, 1.5s) or milliseconds (250ms). Default: 10")
                 .required(false)
                 .build());
 
@@ -55,19 +64,288 @@ public class BenchmarkCommands {
                 .required(false)
                 .build());
 
+        opts.addOption(Option.builder("s")
+                .longOpt("sampler")
+                .hasArg(true)
+                .argName("NAME")
+                .desc("Sampler backend: 'sysstat' runs mpstat and the other sysstat tools (default), "
+                        + "'proc' reads /proc directly without forking.")
+                .required(false)
+                .build());
+
+        opts.addOption(Option.builder("d")
+                .longOpt("disk-paths")
+                .hasArg(true)
+                .argName("PATHS")
+                .desc("Comma-separated paths (e.g. FASTQ, tmp and output directories) whose backing devices "
+                        + "are sampled by the 'proc' sampler. Default: all active devices.")
+                .required(false)
+                .build());
+
+        opts.addOption(Option.builder("I")
+                .longOpt("net-include")
+                .hasArg(true)
+                .argName("REGEX")
+                .desc("Network interfaces sampled by the 'proc' sampler. Default: all interfaces.")
+                .required(false)
+                .build());
+
+        opts.addOption(Option.builder("X")
+                .longOpt("net-exclude")
+                .hasArg(true)
+                .argName("REGEX")
+                .desc("Network interfaces skipped by the 'proc' sampler. Default: lo")
+                .required(false)
+                .build());
+
+        opts.addOption(Option.builder("C")
+                .longOpt("capture")
+                .hasArg(true)
+                .argName("DIR")
+                .desc("Copy /proc/{stat,meminfo,diskstats,net/dev} into DIR on every tick "
+                        + "for a later benchmark:replay.")
+                .required(false)
+                .build());
+
+        opts.addOption(Option.builder("F")
+                .longOpt("output-format")
+                .hasArg(true)
+                .argName("FORMAT")
+                .desc("Output of the in-process samplers: 'text' writes one CSV file per sampler (default), "
+                        + "'run' appends all of them to one columnar basename.run file, "
+                        + "'tidy' writes one row per tick, source, entity and metric to basename.samples.csv.")
+                .required(false)
+                .build());
+
+        opts.addOption(Option.builder("z")
+                .longOpt("compress")
+                .hasArg(false)
+                .desc("Write every output file block-compressed with gzip (.gz). "
+                        + "The format and vis commands read the compressed files as they are.")
+                .required(false)
+                .build());
+
+        opts.addOption(Option.builder("S")
+                .longOpt("segment-size")
+                .hasArg(true)
+                .argName("SIZE")
+                .desc("Start a new segment of each sampler output when it reaches SIZE before compression (e.g. 512M). "
+                        + "The segments are listed with their time ranges in basename.<sampler>.out.index.")
+                .required(false)
+                .build());
+
+        opts.addOption(Option.builder("T")
+                .longOpt("segment-time")
+                .hasArg(true)
+                .argName("DURATION")
+                .desc("Start a new segment of each sampler output every DURATION (e.g. 1h, 30m).")
+                .required(false)
+                .build());
+
+        opts.addOption(Option.builder("R")
+                .longOpt("rollup")
+                .hasArg(false)
+                .desc("Also keep min/mean/max/p95 of each sampler output at 10s, 1m and 10m "
+                        + "(basename.<sampler>.rollup-10s.out, ...). The vis commands draw long runs from them.")
+                .required(false)
+                .build());
+
+        opts.addOption(Option.builder("Q")
+                .longOpt("quantiles")
+                .hasArg(false)
+                .desc("Keep a quantile sketch of every metric of the in-process samplers and save them to "
+                        + "basename.quantiles, for format:quantiles.")
+                .required(false)
+                .build());
+
+        opts.addOption(Option.builder("J")
+                .longOpt("journal-sync")
+                .hasArg(true)
+                .argName("DURATION")
+                .desc("Journal the samples of the in-process samplers to basename.journal and sync it to disk "
+                        + "at least every DURATION (e.g. 1s; 0 syncs every sample). If the run is interrupted, "
+                        + "benchmark:recover rebuilds the outputs from the journal.")
+                .required(false)
+                .build());
         
         
         this.cmdRepos.addCommand("benchmark commands", "benchmark:run", opts,
                 "Execute an arbitrary command and collect statistics while it is running.",
                 (CommandLine cl) -> {
-                    int interval = Integer.valueOf(cl.getOptionValue("interval", "10"));
+                    long intervalMillis;
+                    try {
+                        intervalMillis = SamplingInterval.parseMillis(cl.getOptionValue("interval", "10"));
+                    } catch (IllegalArgumentException e) {
+                        System.err.println("Error: " + e.getMessage());
+                        return;
+                    }
                     String basename = cl.getOptionValue("basename", "stats");
                     List<String> commands = cl.getArgList();
                     commands = commands.subList(1, commands.size()); // remove the 0th element (which is always "stats:run") 
                     boolean gpuFlg = cl.hasOption("gpu");
+                    String sampler = cl.getOptionValue("sampler", "sysstat");
+                    if (!sampler.equals("sysstat") && !sampler.equals("proc")) {
+                        System.err.println("Error: Unknown sampler: " + sampler + " (expected 'sysstat' or 'proc')");
+                        return;
+                    }
+                    // No sampler ticks faster than the /proc samplers; slower ones skip ticks.
+                    intervalMillis = SamplingInterval.clamp(intervalMillis, SamplingInterval.PROC_MIN_MILLIS, "benchmark:run");
+                    OutputFormat outputFormat;
+                    try {
+                        outputFormat = OutputFormat.parse(cl.getOptionValue("output-format", "text"));
+                    } catch (IllegalArgumentException e) {
+                        System.err.println("Error: " + e.getMessage());
+                        return;
+                    }
 
                     SimpleMonitor stats = new SimpleMonitor();
-                    stats.executeWithMonitoring(commands, interval, basename, gpuFlg);
+                    stats.setProcSamplers(sampler.equals("proc"));
+                    stats.setOutputFormat(outputFormat);
+                    stats.setCompress(cl.hasOption("compress"));
+                    stats.setRollup(cl.hasOption("rollup"));
+                    stats.setQuantiles(cl.hasOption("quantiles"));
+                    try {
+                        stats.setSegments(
+                                cl.hasOption("segment-size") ? OutputFiles.parseSize(cl.getOptionValue("segment-size")) : 0,
+                                cl.hasOption("segment-time") ? TimeWindow.parseDurationMillis(cl.getOptionValue("segment-time")) : 0);
+                        if (cl.hasOption("journal-sync")) {
+                            stats.setJournal(TimeWindow.parseDurationMillis(cl.getOptionValue("journal-sync")));
+                        }
+                    } catch (IllegalArgumentException e) {
+                        System.err.println("Error: " + e.getMessage());
+                        return;
+                    }
+                    if (cl.hasOption("disk-paths")) {
+                        stats.setDiskPaths(Arrays.stream(cl.getOptionValue("disk-paths").split(","))
+                                .map(String::trim)
+                                .filter(p -> !p.isEmpty())
+                                .map(Path::of)
+                                .toList());
+                    }
+                    try {
+                        stats.setNetInterfaces(
+                                cl.hasOption("net-include") ? Pattern.compile(cl.getOptionValue("net-include")) : null,
+                                Pattern.compile(cl.getOptionValue("net-exclude", "lo")));
+                    } catch (PatternSyntaxException e) {
+                        logger.log(Level.SEVERE, String.format("Invalid regular expression: %s", e.getMessage()));
+                        return;
+                    }
+                    if (cl.hasOption("capture")) {
+                        stats.setProcCapture(Path.of(cl.getOptionValue("capture")));
+                    }
+                    stats.executeWithMonitoring(commands, intervalMillis, basename, gpuFlg);
+                });
+    }
+
+
+    public void benchmarkReplayCommand() {
+        Options opts = new Options();
+
+        opts.addOption(Option.builder("p")
+                .longOpt("proc-dir")
+                .hasArg(true)
+                .argName("DIR")
+                .desc("A /proc capture written by 'benchmark:run --capture'.")
+                .required(false)
+                .build());
+
+        opts.addOption(Option.builder("g")
+                .longOpt("nvidia-smi-log")
+                .hasArg(true)
+                .argName("FILE")
+                .desc("A recorded nvidia-smi --query-gpu log (.nvidia-smi.out).")
+                .required(false)
+                .build());
+
+        opts.addOption(Option.builder("x")
+                .longOpt("speed")
+                .hasArg(true)
+                .argName("FACTOR")
+                .desc("Replay speed relative to the recording, e.g. 10 for ten times faster. Default: 1")
+                .required(false)
+                .build());
+
+        opts.addOption(Option.builder("n")
+                .longOpt("basename")
+                .hasArg(true)
+                .argName("FILENAME")
+                .desc("Base name for statistics output files. Default: replay")
+                .required(false)
+                .build());
+
+        this.cmdRepos.addCommand("benchmark commands", "benchmark:replay", opts,
+                "Feed recorded /proc snapshots or nvidia-smi logs through the samplers at a chosen speed.",
+                (CommandLine cl) -> {
+                    if (!cl.hasOption("proc-dir") && !cl.hasOption("nvidia-smi-log")) {
+                        System.err.println("Error: --proc-dir or --nvidia-smi-log is required");
+                        return;
+                    }
+                    double speed;
+                    try {
+                        speed = Double.parseDouble(cl.getOptionValue("speed", "1"));
+                    } catch (NumberFormatException e) {
+                        speed = -1;
+                    }
+                    if (!(speed > 0)) {
+                        System.err.println("Error: Invalid speed: " + cl.getOptionValue("speed"));
+                        return;
+                    }
+
+                    MetricReplayer replayer = new MetricReplayer(speed);
+                    if (cl.hasOption("proc-dir")) {
+                        replayer.setProcCapture(Path.of(cl.getOptionValue("proc-dir")));
+                    }
+                    if (cl.hasOption("nvidia-smi-log")) {
+                        replayer.setNvidiaSmiLog(Path.of(cl.getOptionValue("nvidia-smi-log")));
+                    }
+                    try {
+                        replayer.replay(cl.getOptionValue("basename", "replay"));
+                    } catch (IOException | InterruptedException e) {
+                        logger.log(Level.SEVERE, "Error: ", e);
+                    }
+                });
+    }
+
+
+    public void benchmarkRecoverCommand() {
+        Options opts = new Options();
+
+        opts.addOption(Option.builder("i")
+                .longOpt("infile")
+                .hasArg(true)
+                .argName("FILE")
+                .desc("The journal of an interrupted run (basename.journal).")
+                .required(true)
+                .build());
+
+        opts.addOption(Option.builder("d")
+                .longOpt("outdir")
+                .hasArg(true)
+                .argName("DIR")
+                .desc("The directory to write the rebuilt outputs to. Default: the directory of the journal")
+                .required(false)
+                .build());
+
+        this.cmdRepos.addCommand("benchmark commands", "benchmark:recover", opts,
+                "Rebuild the outputs of the in-process samplers of an interrupted run from its journal.",
+                (CommandLine cl) -> {
+                    Path journal = Path.of(cl.getOptionValue("infile"));
+                    Path outdir = cl.hasOption("outdir")
+                            ? Path.of(cl.getOptionValue("outdir"))
+                            : journal.toAbsolutePath().getParent();
+                    try {
+                        SampleJournal.Recovery recovery = SampleJournal.recover(journal, outdir);
+                        for (Path output : recovery.outputs()) {
+                            System.out.println("Rebuilt " + output);
+                        }
+                        System.out.println(String.format("Recovered %d samples from %s", recovery.samples(), journal));
+                        if (recovery.discardedBytes() > 0) {
+                            System.out.println(String.format("Discarded a torn or corrupt tail of %d bytes",
+                                    recovery.discardedBytes()));
+                        }
+                    } catch (IOException e) {
+                        System.err.println("Error: " + e.getMessage());
+                    }
                 });
     }
 
@@ -78,8 +356,8 @@ public class BenchmarkCommands {
         opts.addOption(Option.builder("i")
                 .longOpt("interval")
                 .hasArg(true)
-                .argName("SECONDS") // to make the CLI help output clearer (e.g., -i <SECONDS>)
-                .desc("Interval in seconds between each statistics output.")
+                .argName("INTERVAL") // to make the CLI help output clearer (e.g., -i <INTERVAL>)
+                .desc("Interval between each statistics output: seconds (10, 0.5, 1.5s) or milliseconds (250ms). Default: 10")
                 .required(false)
                 .build());
 
@@ -95,12 +373,20 @@ public class BenchmarkCommands {
         this.cmdRepos.addCommand("benchmark commands", "benchmark:processWatch", opts,
                 "Continuously monitors process creation and termination events.",
                 (CommandLine cl) -> {
-                    int interval = Integer.valueOf(cl.getOptionValue("interval", "10"));
+                    long intervalMillis;
+                    try {
+                        intervalMillis = SamplingInterval.parseMillis(cl.getOptionValue("interval", "10"));
+                    } catch (IllegalArgumentException e) {
+                        System.err.println("Error: " + e.getMessage());
+                        return;
+                    }
+                    // ps is forked on every tick.
+                    intervalMillis = SamplingInterval.clamp(intervalMillis, SamplingInterval.FORKED_MIN_MILLIS, "ps");
                     String username = cl.getOptionValue("username");
                     List<String> commands = cl.getArgList();
                     commands = commands.subList(1, commands.size()); // remove the 0th element (which is always "stats:run") 
                     
-                    ProcessWatcher watcher = new ProcessWatcher(username, interval);
+                    ProcessWatcher watcher = new ProcessWatcher(username, intervalMillis);
                     try {
                         watcher.watchAndRun(commands);
                     } catch (IOException | InterruptedException e) {
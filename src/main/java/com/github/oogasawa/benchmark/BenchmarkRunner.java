@@ -22,7 +22,7 @@ import java.util.List;
  * <p>Example usage:
  * <pre>{@code
  *     var runner = new ProcessBenchmarkRunner();
- *     runner.run(List.of("python3", "train.py"), 5, "test1");
+ *     runner.run(List.of("python3", "train.py"), 5000, "test1");
  * }</pre>
  *
  * <p>Output files include:
@@ -43,23 +43,18 @@ public class BenchmarkRunner {
      * Runs the command with system-wide monitoring and per-process GPU monitoring if applicable.
      *
      * @param commandAndArgs Command to execute
-     * @param interval       Sampling interval in seconds
+     * @param intervalMillis Sampling interval in milliseconds
      * @param basename       Basename for output files
      */
-    public void run(List<String> commandAndArgs, int interval, String basename) {
+    public void run(List<String> commandAndArgs, long intervalMillis, String basename) {
         boolean hasGpu = detectNvidiaGPU();
-        GpuProcessMonitor gpuProcMon = null;
 
         if (hasGpu) {
-            gpuProcMon = new GpuProcessMonitor(interval, basename + ".gpu-process.out");
-            gpuProcMon.start();
+            // Sampled on the same ticks as the node-level monitors.
+            benchmarkMonitor.addSource(new GpuProcessMonitor(intervalMillis), ".gpu-process.out");
         }
 
-        benchmarkMonitor.executeWithMonitoring(commandAndArgs, interval, basename, hasGpu);
-
-        if (gpuProcMon != null) {
-            gpuProcMon.stop();
-        }
+        benchmarkMonitor.executeWithMonitoring(commandAndArgs, intervalMillis, basename, hasGpu);
     }
 
     private boolean detectNvidiaGPU() {
@@ -0,0 +1,88 @@
+package com.github.oogasawa.benchmark;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.List;
+import com.github.oogasawa.benchmark.metric.MetricSchema;
+import com.github.oogasawa.benchmark.metric.MetricSource;
+import com.github.oogasawa.benchmark.metric.SampleBuffer;
+
+/**
+ * Records memory usage by running {@code free -m} on every tick.
+ * <p>
+ * The {@code Mem:} and {@code Swap:} lines become one row each; the swap line has no
+ * {@code shared}, {@code buff/cache} and {@code available} columns, which are left empty.
+ *
+ * <p>Example output:
+ * <pre>
+ * tick,timestamp,type,total [MiB],used [MiB],free [MiB],shared [MiB],buff/cache [MiB],available [MiB]
+ * 42,2025/07/05 15:01:02.123,Mem,515584,21033,294193,64,200357,486539
+ * 42,2025/07/05 15:01:02.123,Swap,8191,0,8191,,,
+ * </pre>
+ */
+public class FreeMemorySource implements MetricSource {
+
+    private static final MetricSchema SCHEMA = new MetricSchema("free", List.of("type"), List.of(
+            MetricSchema.integral("total", "MiB"),
+            MetricSchema.integral("used", "MiB"),
+            MetricSchema.integral("free", "MiB"),
+            MetricSchema.integral("shared", "MiB"),
+            MetricSchema.integral("buff/cache", "MiB"),
+            MetricSchema.integral("available", "MiB")));
+
+    private static final List<String> TYPES = List.of("Mem", "Swap");
+
+    @Override
+    public String getName() {
+        return "free";
+    }
+
+    @Override
+    public MetricSchema getSchema() {
+        return SCHEMA;
+    }
+
+    /**
+     * {@code free} is forked per tick.
+     */
+    @Override
+    public long getMinIntervalMillis() {
+        return SamplingInterval.FORKED_MIN_MILLIS;
+    }
+
+    @Override
+    public boolean isBlocking() {
+        return true;
+    }
+
+    @Override
+    public void open() {
+    }
+
+    @Override
+    public void sample(SampleBuffer buffer) throws IOException {
+        Process process = new ProcessBuilder("free", "-m")
+                .redirectErrorStream(true).start();
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(process.getInputStream()))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.trim().split("\\s+");
+                String type = fields[0].endsWith(":") ? fields[0].substring(0, fields[0].length() - 1) : "";
+                int t = TYPES.indexOf(type);
+                if (t < 0) continue; // header line
+
+                int row = buffer.addRow();
+                buffer.setLabel(row, 0, TYPES.get(t));
+                for (int m = 0; m < fields.length - 1 && m < SCHEMA.getMetrics().size(); m++) {
+                    buffer.setValue(row, m, NvidiaSmiGpuSource.parseValue(fields[m + 1]));
+                }
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+    }
+}
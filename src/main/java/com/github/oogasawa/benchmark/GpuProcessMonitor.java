@@ -1,86 +1,100 @@
 package com.github.oogasawa.benchmark;
 
-import java.io.*;
-import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
-import java.util.concurrent.TimeUnit;
+import java.util.List;
+import com.github.oogasawa.benchmark.metric.MetricSchema;
+import com.github.oogasawa.benchmark.metric.MetricSource;
+import com.github.oogasawa.benchmark.metric.SampleBuffer;
 
 /**
  * Periodically records per-process GPU usage using `nvidia-smi`.
  * <p>
  * This class logs GPU memory usage and other metrics for each running process using NVIDIA GPUs.
  * Intended for monitoring GPU workloads over time.
+ * <p>
+ * One {@code nvidia-smi --query-compute-apps --loop-ms} process is kept running for the whole
+ * run (see {@link NvidiaSmiStream}) and its output is assembled into snapshots on a background
+ * thread: the rows of one {@code nvidia-smi} iteration share its timestamp, so a snapshot is
+ * complete when a row with a new timestamp arrives or the output has been quiet for a moment
+ * (see {@link NvidiaSmiSnapshots}).
+ * <p>
+ * Each complete snapshot is copied into the sample buffer once, on the first tick after it was
+ * printed, so it carries the tick id of the scheduler and can be joined exactly with the
+ * node-level samples of the same run; ticks without a new iteration have no rows, as in
+ * {@link NvidiaSmiGpuSource}. Commas in a process name are replaced by spaces, as in {@code proc-tree}, since the
+ * outputs write labels unquoted.
+ *
+ * <p>Example output:
+ * <pre>
+ * tick,timestamp,pid,process_name,used_memory [MiB]
+ * 42,2025/07/05 15:01:02.123,4242,/usr/bin/python3,25037
+ * </pre>
  */
-public class GpuProcessMonitor {
+public class GpuProcessMonitor implements MetricSource {
+
+    private static final MetricSchema SCHEMA = new MetricSchema("nvidia-smi-compute-apps",
+            List.of("pid", "process_name"),
+            List.of(MetricSchema.integral("used_memory", "MiB")));
+
+    // Fields of a --query-compute-apps row; the process name is last, as it may contain commas.
+    private static final int TIMESTAMP = 0;
+    private static final int PID = 1;
+    private static final int USED_MEMORY = 2;
+    private static final int PROCESS_NAME = 3;
 
-    private final int intervalSeconds;
-    private final File outputFile;
-    private volatile boolean running = false;
-    private Thread monitorThread;
+    private final long loopMillis;
+    private NvidiaSmiSnapshots snapshots;
+    private NvidiaSmiStream stream;
 
     /**
      * Constructs a GPU process monitor.
      *
-     * @param intervalSeconds Sampling interval in seconds.
-     * @param outputPath      Output file path to write GPU process statistics.
+     * @param intervalMillis Loop interval of {@code nvidia-smi} in milliseconds, normally the tick interval.
      */
-    public GpuProcessMonitor(int intervalSeconds, String outputPath) {
-        this.intervalSeconds = intervalSeconds;
-        this.outputFile = new File(outputPath);
+    public GpuProcessMonitor(long intervalMillis) {
+        this.loopMillis = intervalMillis;
     }
 
-    /**
-     * Starts GPU process monitoring in a background thread.
-     */
-    public void start() {
-        running = true;
-        monitorThread = new Thread(this::monitorLoop);
-        monitorThread.setDaemon(true);
-        monitorThread.start();
+    @Override
+    public String getName() {
+        return "nvidia-smi --query-compute-apps";
     }
 
-    /**
-     * Stops the monitoring thread gracefully.
-     */
-    public void stop() {
-        running = false;
-        try {
-            if (monitorThread != null) {
-                monitorThread.join();
-            }
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
-        }
+    @Override
+    public MetricSchema getSchema() {
+        return SCHEMA;
     }
 
-    private void monitorLoop() {
-        DateTimeFormatter timeFormatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
-
-        try (BufferedWriter writer = new BufferedWriter(new FileWriter(outputFile))) {
-            writer.write("timestamp,pid,process_name,used_memory [MiB]");
-            writer.newLine();
+    @Override
+    public void open() {
+        snapshots = new NvidiaSmiSnapshots(4, NvidiaSmiSnapshots.onChange(TIMESTAMP), loopMillis);
+        stream = new NvidiaSmiStream(List.of(
+                "--query-compute-apps=timestamp,pid,used_memory,process_name",
+                "--format=csv,noheader,nounits"),
+                loopMillis, snapshots::accept);
+        stream.start();
+    }
 
-            while (running) {
-                Process process = new ProcessBuilder("nvidia-smi",
-                        "--query-compute-apps=pid,process_name,used_memory",
-                        "--format=csv,noheader,nounits")
-                        .redirectErrorStream(true)
-                        .start();
+    @Override
+    public void sample(SampleBuffer buffer) {
+        addRows(snapshots.takeLatest(), buffer);
+    }
 
-                try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
-                    String timestamp = LocalDateTime.now().format(timeFormatter);
-                    String line;
-                    while ((line = reader.readLine()) != null) {
-                        writer.write(timestamp + "," + line.trim());
-                        writer.newLine();
-                    }
-                }
+    /**
+     * Copies the rows of a {@code --query-compute-apps} snapshot into a sample buffer.
+     */
+    static void addRows(List<String[]> snapshot, SampleBuffer buffer) {
+        for (String[] fields : snapshot) {
+            int row = buffer.addRow();
+            buffer.setLabel(row, 0, fields[PID]);
+            buffer.setLabel(row, 1, fields[PROCESS_NAME].replace(',', ' '));
+            buffer.setValue(row, 0, NvidiaSmiGpuSource.parseValue(fields[USED_MEMORY]));
+        }
+    }
 
-                writer.flush();
-                TimeUnit.SECONDS.sleep(intervalSeconds);
-            }
-        } catch (IOException | InterruptedException e) {
-            System.err.println("GPU process monitoring failed: " + e.getMessage());
+    @Override
+    public void close() {
+        if (stream != null) {
+            stream.stop();
         }
     }
 }
@@ -0,0 +1,116 @@
+package com.github.oogasawa.benchmark;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+import com.github.oogasawa.benchmark.metric.MetricSource;
+import com.github.oogasawa.benchmark.metric.ReplayNvidiaSmiSource;
+import com.github.oogasawa.benchmark.metric.SourceSampler;
+import com.github.oogasawa.benchmark.metric.TextSampleSink;
+import com.github.oogasawa.benchmark.proc.CpuStatSampler;
+import com.github.oogasawa.benchmark.proc.DiskStatsSampler;
+import com.github.oogasawa.benchmark.proc.MemInfoSampler;
+import com.github.oogasawa.benchmark.proc.NetDevSampler;
+import com.github.oogasawa.benchmark.proc.ProcFs;
+import com.github.oogasawa.benchmark.proc.ProcReplayClock;
+
+/**
+ * Feeds recorded data through the same metric sources and sinks as a live run.
+ * <p>
+ * A {@code /proc} capture (see {@code benchmark:run --capture}) is replayed through the
+ * {@code /proc} sources, which compute their rates against the recorded clock, and an
+ * {@code nvidia-smi} log through a {@link ReplayNvidiaSmiSource}. One recorded sample is
+ * replayed per tick, and the tick interval is the recorded interval divided by the speed,
+ * so a run of an hour recorded every second is replayed in six minutes at speed 10. The
+ * interval is not made shorter than the {@code /proc} samplers can run, which caps the speed.
+ * The output files have the same layout as those of a live run with the {@code proc}
+ * sampler, and their rows carry the recorded timestamps.
+ *
+ * <p>Example usage:
+ * <pre>{@code
+ *     MetricReplayer replayer = new MetricReplayer(10.0);
+ *     replayer.setProcCapture(Path.of("run1.capture"));
+ *     replayer.replay("run1-replay");
+ * }</pre>
+ */
+public class MetricReplayer {
+
+    private static final Logger logger = Logger.getLogger(MetricReplayer.class.getName());
+
+    /** Interval used when a recording has a single sample. */
+    private static final long DEFAULT_INTERVAL_MILLIS = 1000;
+
+    private final double speed;
+    private Path procCapture = null;
+    private Path nvidiaSmiLog = null;
+
+    /**
+     * @param speed Replay speed relative to the recording; {@code 1} replays in real time.
+     */
+    public MetricReplayer(double speed) {
+        this.speed = speed;
+    }
+
+    public void setProcCapture(Path procCapture) {
+        this.procCapture = procCapture;
+    }
+
+    public void setNvidiaSmiLog(Path nvidiaSmiLog) {
+        this.nvidiaSmiLog = nvidiaSmiLog;
+    }
+
+    /**
+     * Replays the recordings and returns when all of them have been replayed.
+     *
+     * @param basename Basename used for all output files.
+     * @throws IOException          If a recording cannot be read.
+     * @throws InterruptedException If interrupted while waiting for the replay to finish.
+     */
+    public void replay(String basename) throws IOException, InterruptedException {
+        ProcFs fs = procCapture == null ? null : ProcFs.replay(procCapture);
+        ReplayNvidiaSmiSource gpu = null;
+        if (nvidiaSmiLog != null) {
+            gpu = new ReplayNvidiaSmiSource(nvidiaSmiLog);
+            gpu.open(); // read the log now to know its interval
+        }
+
+        long recordedMillis = fs != null ? fs.recordedIntervalMillis() : gpu.recordedIntervalMillis();
+        if (fs != null && gpu != null && gpu.recordedIntervalMillis() != recordedMillis) {
+            logger.warning(String.format("The /proc capture (%d ms) and the nvidia-smi log (%d ms) were "
+                    + "recorded at different intervals; both are replayed one sample per tick.",
+                    recordedMillis, gpu.recordedIntervalMillis()));
+        }
+        if (recordedMillis <= 0) recordedMillis = DEFAULT_INTERVAL_MILLIS;
+        long intervalMillis = SamplingInterval.clamp(Math.max(1, Math.round(recordedMillis / speed)),
+                SamplingInterval.PROC_MIN_MILLIS, "Replay");
+
+        SamplingScheduler scheduler = new SamplingScheduler(intervalMillis);
+        ProcReplayClock clock = null;
+        if (fs != null) {
+            // The clock must fire before the sources so that they read the snapshot of the tick.
+            clock = new ProcReplayClock(fs);
+            scheduler.register(clock);
+            scheduler.register(textSampler(new CpuStatSampler(fs), basename + ".cpu.out"));
+            scheduler.register(textSampler(new DiskStatsSampler(fs, List.of()), basename + ".diskstats.out"));
+            scheduler.register(textSampler(new NetDevSampler(fs, null, Pattern.compile("lo")), basename + ".netdev.out"));
+            scheduler.register(textSampler(new MemInfoSampler(fs), basename + ".meminfo.out"));
+        }
+        if (gpu != null) {
+            scheduler.register(textSampler(gpu, basename + ".nvidia-smi.out"));
+        }
+
+        System.out.printf("Replaying at %sx speed, interval: %s%n", speed, SamplingInterval.format(intervalMillis));
+        scheduler.start();
+        while ((clock != null && !clock.isFinished()) || (gpu != null && !gpu.isFinished())) {
+            Thread.sleep(intervalMillis);
+        }
+        scheduler.stop();
+        System.out.println("Replay finished after " + scheduler.getCurrentTick() + " ticks.");
+    }
+
+    private static SourceSampler textSampler(MetricSource source, String outputPath) {
+        return new SourceSampler(source, new TextSampleSink(outputPath));
+    }
+}
@@ -0,0 +1,116 @@
+package com.github.oogasawa.benchmark;
+
+import java.util.List;
+import com.github.oogasawa.benchmark.metric.MetricSchema;
+import com.github.oogasawa.benchmark.metric.MetricSource;
+import com.github.oogasawa.benchmark.metric.SampleBuffer;
+
+/**
+ * Records the utilization, memory, temperature and power of every GPU using {@code nvidia-smi --query-gpu}.
+ * <p>
+ * Like {@link GpuProcessMonitor}, one looping {@code nvidia-smi} process is kept running
+ * for the whole run, and on each tick the snapshot completed since the previous tick, if any, is
+ * copied into the sample buffer. The rows of one iteration carry slightly different timestamps
+ * (one per GPU), so a new snapshot starts when a GPU index is reported again.
+ * <p>
+ * Each iteration of {@code nvidia-smi} is written once, stamped with the first tick after it was
+ * printed, which is at most one interval after {@code nvidia-smi} measured it. A tick without a new
+ * iteration (when the ticks are faster than {@code nvidia-smi}, or while it is restarted) has no
+ * rows, so a stale measurement is never repeated as a new one.
+ * <p>
+ * Values that {@code nvidia-smi} reports as {@code [N/A]} (e.g. the fan speed of passively
+ * cooled data-center GPUs) are left empty.
+ *
+ * <p>Example output:
+ * <pre>
+ * tick,timestamp,index,utilization.gpu [%],utilization.memory [%],memory.used [MiB],memory.total [MiB],temperature.gpu [C],fan.speed [%],power.draw [W],power.limit [W]
+ * 42,2025/07/05 15:01:02.123,0,56,29,25037,46068,61,,281.35,350.00
+ * </pre>
+ * The file is read by {@code format:gpu} and {@code vis:gpu} like a raw {@code nvidia-smi --format=csv} log,
+ * and so is a run file holding this source.
+ */
+public class NvidiaSmiGpuSource implements MetricSource {
+
+    /** Source name of the GPU series, e.g. in a run file. */
+    public static final String SOURCE = "nvidia-smi";
+
+    private static final MetricSchema SCHEMA = new MetricSchema(SOURCE, List.of("index"), List.of(
+            MetricSchema.integral("utilization.gpu", "%"),
+            MetricSchema.integral("utilization.memory", "%"),
+            MetricSchema.integral("memory.used", "MiB"),
+            MetricSchema.integral("memory.total", "MiB"),
+            MetricSchema.integral("temperature.gpu", "C"),
+            MetricSchema.integral("fan.speed", "%"),
+            MetricSchema.decimal("power.draw", "W"),
+            MetricSchema.decimal("power.limit", "W")));
+
+    // The query has the timestamp and the index in front of the metrics.
+    private static final String QUERY = "--query-gpu=timestamp,index,utilization.gpu,utilization.memory,"
+            + "memory.used,memory.total,temperature.gpu,fan.speed,power.draw,power.limit";
+    private static final int INDEX = 1;
+    private static final int FIRST_METRIC = 2;
+
+    private final long loopMillis;
+    private NvidiaSmiSnapshots snapshots;
+    private NvidiaSmiStream stream;
+
+    /**
+     * Constructs a GPU source.
+     *
+     * @param intervalMillis Loop interval of {@code nvidia-smi} in milliseconds, normally the tick interval.
+     */
+    public NvidiaSmiGpuSource(long intervalMillis) {
+        this.loopMillis = intervalMillis;
+    }
+
+    @Override
+    public String getName() {
+        return "nvidia-smi --query-gpu";
+    }
+
+    @Override
+    public MetricSchema getSchema() {
+        return SCHEMA;
+    }
+
+    @Override
+    public void open() {
+        int numFields = FIRST_METRIC + SCHEMA.getMetrics().size();
+        snapshots = new NvidiaSmiSnapshots(numFields, NvidiaSmiSnapshots.onRepeat(INDEX), loopMillis);
+        stream = new NvidiaSmiStream(List.of(QUERY, "--format=csv,noheader,nounits"), loopMillis, snapshots::accept);
+        stream.start();
+    }
+
+    @Override
+    public void sample(SampleBuffer buffer) {
+        for (String[] fields : snapshots.takeLatest()) {
+            int row = buffer.addRow();
+            buffer.setLabel(row, 0, fields[INDEX]);
+            for (int m = 0; m < fields.length - FIRST_METRIC; m++) {
+                buffer.setValue(row, m, parseValue(fields[FIRST_METRIC + m]));
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        if (stream != null) {
+            stream.stop();
+        }
+    }
+
+    /**
+     * Parses a value printed with {@code nounits}; {@code [N/A]}, {@code [Not Supported]} and
+     * other non-numeric values become {@code NaN}.
+     *
+     * @param value A trimmed field.
+     * @return the value, or {@code NaN}
+     */
+    static double parseValue(String value) {
+        try {
+            return Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            return Double.NaN;
+        }
+    }
+}
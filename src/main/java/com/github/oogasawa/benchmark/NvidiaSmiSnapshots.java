@@ -0,0 +1,119 @@
+package com.github.oogasawa.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Assembles the rows printed by a looping {@code nvidia-smi} into complete snapshots.
+ * <p>
+ * Rows arrive line by line on the reader thread of a {@link NvidiaSmiStream}, while the
+ * scheduler thread asks for the latest snapshot on each tick. A snapshot is complete when
+ * a row arrives that belongs to the next {@code nvidia-smi} iteration (as decided by a
+ * {@link Boundary}), or when the output has been quiet for a moment. A snapshot older than
+ * a few loop intervals has expired and is reported as empty, because {@code nvidia-smi}
+ * prints nothing for queries without rows (e.g. no process is using a GPU).
+ */
+class NvidiaSmiSnapshots {
+
+    /**
+     * Decides whether a row starts the next {@code nvidia-smi} iteration.
+     */
+    interface Boundary {
+        /**
+         * @param pending The rows of the iteration being assembled, never empty.
+         * @param row     The fields of the new row.
+         * @return {@code true} if the row belongs to the next iteration
+         */
+        boolean startsNewSnapshot(List<String[]> pending, String[] row);
+    }
+
+    /** Splits when the value of a field changes, e.g. the timestamp shared by the rows of one iteration. */
+    static Boundary onChange(int field) {
+        return (pending, row) -> !pending.get(pending.size() - 1)[field].equals(row[field]);
+    }
+
+    /** Splits when the value of a field repeats, e.g. a GPU index that was already reported. */
+    static Boundary onRepeat(int field) {
+        return (pending, row) -> {
+            for (String[] r : pending) {
+                if (r[field].equals(row[field])) return true;
+            }
+            return false;
+        };
+    }
+
+    /** Time without output after which the rows received so far form a complete snapshot. */
+    private static final long QUIET_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+
+    private final int numFields;
+    private final Boundary boundary;
+    private final long expiryNanos;
+
+    // Guarded by "this".
+    private List<String[]> pendingRows = new ArrayList<>();
+    private long pendingNanos;
+    private List<String[]> latestRows = List.of();
+    private long latestNanos;
+    private boolean latestTaken = false;
+
+    /**
+     * @param numFields      The number of comma-separated fields of a data row; the last one keeps
+     *                       any further commas, so free text such as a process name belongs there.
+     * @param boundary       How the rows of consecutive iterations are told apart.
+     * @param intervalMillis The loop interval of {@code nvidia-smi}.
+     */
+    NvidiaSmiSnapshots(int numFields, Boundary boundary, long intervalMillis) {
+        this.numFields = numFields;
+        this.boundary = boundary;
+        this.expiryNanos = TimeUnit.MILLISECONDS.toNanos(3 * intervalMillis + 1000);
+    }
+
+    /**
+     * Receives one line of {@code nvidia-smi --format=csv,noheader,nounits} output.
+     * Lines that are not data rows (e.g. "No devices were found") are ignored.
+     */
+    synchronized void accept(String line) {
+        String[] fields = line.split(",", numFields);
+        if (fields.length != numFields) return;
+        for (int f = 0; f < fields.length; f++) {
+            fields[f] = fields[f].trim();
+        }
+
+        if (!pendingRows.isEmpty() && boundary.startsNewSnapshot(pendingRows, fields)) {
+            publishPending();
+        }
+        pendingRows.add(fields);
+        pendingNanos = System.nanoTime();
+    }
+
+    /**
+     * Returns the rows of the latest complete snapshot, or no rows if it has expired.
+     */
+    synchronized List<String[]> latest() {
+        long now = System.nanoTime();
+        if (!pendingRows.isEmpty() && now - pendingNanos >= QUIET_NANOS) {
+            publishPending();
+        }
+        return now - latestNanos <= expiryNanos ? latestRows : List.of();
+    }
+
+    /**
+     * Returns the rows of the latest complete snapshot the first time they are asked for, and
+     * no rows until the next snapshot is complete, so that every iteration of {@code nvidia-smi}
+     * is reported once however the ticks and the loop of {@code nvidia-smi} line up.
+     */
+    synchronized List<String[]> takeLatest() {
+        List<String[]> rows = latest();
+        if (latestTaken) return List.of();
+        latestTaken = true;
+        return rows;
+    }
+
+    private void publishPending() {
+        latestRows = pendingRows;
+        latestNanos = pendingNanos;
+        latestTaken = false;
+        pendingRows = new ArrayList<>();
+    }
+}
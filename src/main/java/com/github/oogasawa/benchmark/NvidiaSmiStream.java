@@ -0,0 +1,146 @@
+package com.github.oogasawa.benchmark;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
+
+/**
+ * Keeps one long-running {@code nvidia-smi --loop-ms} process and hands its output
+ * to a consumer line by line from a background reader thread.
+ * <p>
+ * Forking {@code nvidia-smi} per sample costs hundreds of milliseconds on multi-GPU nodes,
+ * because the driver state is initialized on every start. A looping process pays that
+ * cost once. If the process exits while the stream is running (driver reset, killed by
+ * the user, ...), it is restarted after a back-off that grows from 1 to 30 seconds and is
+ * reset once a process has stayed up for a minute.
+ *
+ * <p>Example usage:
+ * <pre>{@code
+ *     NvidiaSmiStream stream = new NvidiaSmiStream(
+ *             List.of("--query-compute-apps=timestamp,pid,used_memory,process_name",
+ *                     "--format=csv,noheader,nounits"),
+ *             500, line -> ...);
+ *     stream.start();
+ *     ...
+ *     stream.stop();
+ * }</pre>
+ */
+public class NvidiaSmiStream {
+
+    private static final Logger logger = Logger.getLogger(NvidiaSmiStream.class.getName());
+
+    private static final long MIN_BACKOFF_MILLIS = 1000;
+    private static final long MAX_BACKOFF_MILLIS = 30_000;
+    private static final long STABLE_RUN_MILLIS = 60_000;
+
+    private final List<String> command;
+    private final Consumer<String> consumer;
+    private volatile boolean running = false;
+    private volatile Process process;
+    private Thread readerThread;
+    private int restarts = 0;
+
+    /**
+     * Constructs a stream.
+     *
+     * @param queryArgs  The {@code nvidia-smi} arguments other than {@code --loop-ms}.
+     * @param loopMillis The loop interval of {@code nvidia-smi} in milliseconds.
+     * @param consumer   Receives every output line, on the reader thread.
+     */
+    public NvidiaSmiStream(List<String> queryArgs, long loopMillis, Consumer<String> consumer) {
+        List<String> cmd = new ArrayList<>();
+        cmd.add("nvidia-smi");
+        cmd.addAll(queryArgs);
+        cmd.add("--loop-ms=" + Math.max(1, loopMillis));
+        this.command = List.copyOf(cmd);
+        this.consumer = consumer;
+    }
+
+    /**
+     * Starts the {@code nvidia-smi} process and the reader thread.
+     */
+    public void start() {
+        running = true;
+        readerThread = new Thread(this::readLoop, "nvidia-smi-reader");
+        readerThread.setDaemon(true);
+        readerThread.start();
+    }
+
+    /**
+     * Stops the reader thread and terminates the {@code nvidia-smi} process.
+     */
+    public void stop() {
+        running = false;
+        Process p = process;
+        if (p != null) {
+            p.destroy();
+        }
+        if (readerThread != null) {
+            readerThread.interrupt();
+            try {
+                readerThread.join(5000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (restarts > 0) {
+            logger.info(String.format("nvidia-smi was restarted %d times.", restarts));
+        }
+    }
+
+    /**
+     * Returns the number of times the {@code nvidia-smi} process has been restarted.
+     *
+     * @return the restart count
+     */
+    public int getRestarts() {
+        return restarts;
+    }
+
+    private void readLoop() {
+        long backoff = MIN_BACKOFF_MILLIS;
+        while (running) {
+            long startedAt = System.nanoTime();
+            int exitCode = -1;
+            try {
+                process = new ProcessBuilder(command)
+                        .redirectError(ProcessBuilder.Redirect.DISCARD)
+                        .start();
+                try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
+                    String line;
+                    while ((line = reader.readLine()) != null) {
+                        consumer.accept(line);
+                    }
+                }
+                exitCode = process.waitFor();
+            } catch (IOException e) {
+                if (running) {
+                    logger.warning(String.format("nvidia-smi failed: %s", e.getMessage()));
+                }
+            } catch (InterruptedException e) {
+                break; // stop() was called.
+            } finally {
+                Process p = process;
+                if (p != null) p.destroyForcibly();
+            }
+            if (!running) break;
+
+            if (TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt) >= STABLE_RUN_MILLIS) {
+                backoff = MIN_BACKOFF_MILLIS;
+            }
+            restarts++;
+            logger.warning(String.format("nvidia-smi exited with code %d; restarting in %d ms.", exitCode, backoff));
+            try {
+                Thread.sleep(backoff);
+            } catch (InterruptedException e) {
+                break;
+            }
+            backoff = Math.min(MAX_BACKOFF_MILLIS, backoff * 2);
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package com.github.oogasawa.benchmark;
+
+/**
+ * The output layout of the in-process samplers of {@code benchmark:run}.
+ * The external sysstat tools always write their own text output.
+ */
+public enum OutputFormat {
+
+    /** One CSV file per sampler, e.g. {@code basename.cpu.out}. */
+    TEXT,
+
+    /** One columnar run file, {@code basename.run}. */
+    RUN,
+
+    /** One long-format CSV file with a row per tick, source, entity and metric, {@code basename.samples.csv}. */
+    TIDY;
+
+    /**
+     * Parses the value of {@code --output-format}.
+     *
+     * @param value {@code text}, {@code run} or {@code tidy}, in any case.
+     * @return the output format
+     * @throws IllegalArgumentException If the value is not a known format.
+     */
+    public static OutputFormat parse(String value) {
+        for (OutputFormat format : values()) {
+            if (format.name().equalsIgnoreCase(value.trim())) {
+                return format;
+            }
+        }
+        throw new IllegalArgumentException("Unknown output format: " + value + " (expected 'text', 'run' or 'tidy')");
+    }
+}
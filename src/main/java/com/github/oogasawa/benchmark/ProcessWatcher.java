@@ -3,7 +3,9 @@ package com.github.oogasawa.benchmark;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.time.Instant;
 import java.time.LocalDateTime;
+import java.time.ZoneId;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
@@ -22,14 +24,20 @@ public class ProcessWatcher {
     private static final Logger logger = Logger.getLogger(ProcessWatcher.class.getName());
 
     private final String username;
-    private final int intervalSeconds;
+    private final long intervalMillis;
     private final List<String> eventLog = Collections.synchronizedList(new ArrayList<>());
-    private volatile boolean keepRunning = true;
     private Map<Long, ProcInfo> finalSnapshot = new HashMap<>();
 
-    public ProcessWatcher(String username, int intervalSeconds) {
+    /**
+     * Constructs a process watcher.
+     *
+     * @param username       The user whose processes are watched.
+     * @param intervalMillis Polling interval in milliseconds; polls are skipped down to
+     *                       {@link SamplingInterval#FORKED_MIN_MILLIS} because {@code ps} is forked per poll.
+     */
+    public ProcessWatcher(String username, long intervalMillis) {
         this.username = username;
-        this.intervalSeconds = intervalSeconds;
+        this.intervalMillis = intervalMillis;
     }
 
     /**
@@ -42,40 +50,9 @@ public class ProcessWatcher {
     public void watchAndRun(List<String> command) throws IOException, InterruptedException {
         logger.info(String.format("Starting monitored command: %s", String.join(" ", command)));
 
-        Map<Long, ProcInfo> previousSnapshot = new HashMap<>();
-
-        Thread monitorThread = new Thread(() -> {
-            try {
-                while (keepRunning) {
-                    Map<Long, ProcInfo> currentSnapshot = getUserProcesses();
-
-                    for (Long pid : currentSnapshot.keySet()) {
-                        if (!previousSnapshot.containsKey(pid)) {
-                            ProcInfo p = currentSnapshot.get(pid);
-                            eventLog.add(timestamp() + " + " + p);
-                        }
-                    }
-
-                    for (Long pid : previousSnapshot.keySet()) {
-                        if (!currentSnapshot.containsKey(pid)) {
-                            ProcInfo p = previousSnapshot.get(pid);
-                            eventLog.add(timestamp() + " - " + p);
-                        }
-                    }
-
-                    previousSnapshot.clear();
-                    previousSnapshot.putAll(currentSnapshot);
-
-                    Thread.sleep(intervalSeconds * 1000L);
-                }
-                finalSnapshot = getUserProcesses();
-            } catch (IOException | InterruptedException e) {
-                logger.warning(String.format("Process monitoring interrupted: %s", e.getMessage()));
-                Thread.currentThread().interrupt();
-            }
-        });
-
-        monitorThread.start();
+        SamplingScheduler scheduler = new SamplingScheduler(intervalMillis);
+        scheduler.register(new EventSampler());
+        scheduler.start();
 
         Process process = new ProcessBuilder(command)
                 .redirectErrorStream(true)
@@ -88,14 +65,68 @@ public class ProcessWatcher {
         int exitCode = process.waitFor();
         logger.info(String.format("Monitored command exited with code: %s", exitCode));
 
-        Thread.sleep(intervalSeconds * 1000L);
-        keepRunning = false;
-        monitorThread.join();
+        Thread.sleep(intervalMillis);
+        scheduler.stop();
+        finalSnapshot = getUserProcesses();
 
         dumpLog();
         printProcessTree();
     }
 
+    /**
+     * Records process creation and termination events by diffing {@code ps} snapshots on every tick.
+     */
+    private class EventSampler implements Sampler {
+
+        private final Map<Long, ProcInfo> previousSnapshot = new HashMap<>();
+
+        @Override
+        public String getName() {
+            return "ps";
+        }
+
+        @Override
+        public long getMinIntervalMillis() {
+            return SamplingInterval.FORKED_MIN_MILLIS;
+        }
+
+        @Override
+        public boolean isBlocking() {
+            return true;
+        }
+
+        @Override
+        public void start() {
+        }
+
+        @Override
+        public void onTick(long tick, long epochMillis) throws IOException {
+            Map<Long, ProcInfo> currentSnapshot = getUserProcesses();
+            String stamp = timestamp(tick, epochMillis);
+
+            for (Long pid : currentSnapshot.keySet()) {
+                if (!previousSnapshot.containsKey(pid)) {
+                    ProcInfo p = currentSnapshot.get(pid);
+                    eventLog.add(stamp + " + " + p);
+                }
+            }
+
+            for (Long pid : previousSnapshot.keySet()) {
+                if (!currentSnapshot.containsKey(pid)) {
+                    ProcInfo p = previousSnapshot.get(pid);
+                    eventLog.add(stamp + " - " + p);
+                }
+            }
+
+            previousSnapshot.clear();
+            previousSnapshot.putAll(currentSnapshot);
+        }
+
+        @Override
+        public void stop() {
+        }
+    }
+
     private Map<Long, ProcInfo> getUserProcesses() throws IOException {
         Map<Long, ProcInfo> map = new HashMap<>();
         Process proc = new ProcessBuilder("ps", "-eo", "pid,ppid,user,cmd", "--no-headers").start();
@@ -134,8 +165,8 @@ public class ProcessWatcher {
         }
     }
 
-    private String timestamp() {
-        return "[" + LocalDateTime.now() + "]";
+    private String timestamp(long tick, long epochMillis) {
+        return "[tick " + tick + " " + LocalDateTime.ofInstant(Instant.ofEpochMilli(epochMillis), ZoneId.systemDefault()) + "]";
     }
 } 
 
@@ -0,0 +1,60 @@
+package com.github.oogasawa.benchmark;
+
+import java.io.IOException;
+
+/**
+ * A monitor that is driven by a {@link SamplingScheduler} instead of running its own sleep loop.
+ * <p>
+ * All samplers registered with one scheduler are fired on the same tick and receive the same
+ * tick id and wall-clock stamp, so their outputs can be joined exactly on the tick column.
+ */
+public interface Sampler {
+
+    /**
+     * Returns the name of the sampler, used in log messages.
+     *
+     * @return the sampler name
+     */
+    String getName();
+
+    /**
+     * Returns the fastest interval this sampler supports. When the scheduler runs faster,
+     * the sampler is fired only on every N-th tick.
+     *
+     * @return the minimum interval in milliseconds
+     */
+    default long getMinIntervalMillis() {
+        return 1;
+    }
+
+    /**
+     * Returns whether {@link #onTick(long, long)} may block for a noticeable time,
+     * e.g. because it forks a command. Blocking samplers are run off the tick thread.
+     *
+     * @return {@code true} if the sampler blocks
+     */
+    default boolean isBlocking() {
+        return false;
+    }
+
+    /**
+     * Opens outputs and reads initial counters. Called once before the first tick.
+     *
+     * @throws IOException If the sampler cannot be opened.
+     */
+    void start() throws IOException;
+
+    /**
+     * Takes one sample.
+     *
+     * @param tick        The tick id, shared by all samplers of the scheduler.
+     * @param epochMillis The wall-clock time of the tick in milliseconds since the epoch.
+     * @throws IOException If sampling fails; the sampler is then removed from the schedule.
+     */
+    void onTick(long tick, long epochMillis) throws IOException;
+
+    /**
+     * Flushes and closes outputs. Called once after the last tick.
+     */
+    void stop();
+}
@@ -0,0 +1,118 @@
+package com.github.oogasawa.benchmark;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Locale;
+import java.util.logging.Logger;
+
+/**
+ * Parses, formats and clamps sampling intervals, which are handled in milliseconds throughout.
+ * <p>
+ * <b>Accepted notation:</b>
+ * <pre>{@code
+ * parseMillis("10")     -> 10000   (a bare number is seconds, as before)
+ * parseMillis("0.5")    ->   500
+ * parseMillis("1.5s")   ->  1500
+ * parseMillis("250ms")  ->   250
+ * }</pre>
+ * Samplers that cannot run that fast are clamped to their own minimum with a warning
+ * (see {@link #clamp(long, long, String)}).
+ */
+public final class SamplingInterval {
+
+    private static final Logger logger = Logger.getLogger(SamplingInterval.class.getName());
+
+    /** Minimum interval of the in-process {@code /proc} samplers. */
+    public static final long PROC_MIN_MILLIS = 10;
+
+    /** Minimum interval of the process tree sampler, whose cost grows with the number of processes. */
+    public static final long PROC_TREE_MIN_MILLIS = 100;
+
+    /** Minimum interval of samplers that fork a short-lived process per tick ({@code free}, {@code ps}). */
+    public static final long FORKED_MIN_MILLIS = 250;
+
+    private SamplingInterval() {
+    }
+
+    /**
+     * Parses an interval given as seconds ({@code "10"}, {@code "0.5"}, {@code "1.5s"})
+     * or milliseconds ({@code "250ms"}).
+     *
+     * @param text The interval text from the command line.
+     * @return the interval in milliseconds
+     * @throws IllegalArgumentException if the text is not a positive interval
+     */
+    public static long parseMillis(String text) {
+        String s = text.trim().toLowerCase(Locale.ROOT);
+        BigDecimal millis;
+        try {
+            if (s.endsWith("ms")) {
+                millis = new BigDecimal(s.substring(0, s.length() - 2).trim());
+            } else if (s.endsWith("s")) {
+                millis = new BigDecimal(s.substring(0, s.length() - 1).trim()).movePointRight(3);
+            } else {
+                millis = new BigDecimal(s).movePointRight(3);
+            }
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid interval: " + text, e);
+        }
+
+        long value = millis.setScale(0, RoundingMode.HALF_UP).longValueExact();
+        if (value <= 0) {
+            throw new IllegalArgumentException("Interval must be at least 1 ms: " + text);
+        }
+        return value;
+    }
+
+    /**
+     * Returns the interval raised to the given minimum, logging a warning when it is clamped.
+     *
+     * @param millis    The requested interval in milliseconds.
+     * @param minMillis The fastest interval the sampler supports.
+     * @param sampler   Name of the sampler (for the warning).
+     * @return the interval the sampler will actually use
+     */
+    public static long clamp(long millis, long minMillis, String sampler) {
+        if (millis >= minMillis) return millis;
+
+        logger.warning(String.format("%s cannot sample every %s; using %s instead.",
+                sampler, format(millis), format(minMillis)));
+        return minMillis;
+    }
+
+    /**
+     * Returns the whole-second interval argument for tools that only accept seconds
+     * ({@code mpstat}, {@code iostat}, {@code ifstat}, {@code pidstat}), logging a warning
+     * when the requested interval has to be rounded.
+     *
+     * @param millis  The requested interval in milliseconds.
+     * @param sampler Name of the tool (for the warning).
+     * @return the interval in whole seconds, at least 1
+     */
+    public static long toWholeSeconds(long millis, String sampler) {
+        long seconds = Math.max(1, Math.round(millis / 1000.0));
+        if (seconds * 1000 != millis) {
+            logger.warning(String.format("%s only supports whole seconds; using %d s instead of %s.",
+                    sampler, seconds, format(millis)));
+        }
+        return seconds;
+    }
+
+    /**
+     * Formats an interval for log and banner lines.
+     *
+     * <pre>{@code
+     * format(5000) -> "5 seconds"
+     * format(250)  -> "250 ms"
+     * }</pre>
+     *
+     * @param millis The interval in milliseconds.
+     * @return a human-readable interval
+     */
+    public static String format(long millis) {
+        if (millis % 1000 == 0) {
+            return String.format("%d seconds", millis / 1000);
+        }
+        return String.format("%d ms", millis);
+    }
+}
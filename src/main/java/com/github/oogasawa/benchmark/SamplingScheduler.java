@@ -0,0 +1,237 @@
+package com.github.oogasawa.benchmark;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Fires all registered {@link Sampler}s on one shared, drift-free, fixed-rate tick.
+ * <p>
+ * Tick deadlines are computed from a single monotonic start time ({@link System#nanoTime()})
+ * as {@code start + n * interval}, so the time spent sampling does not accumulate as drift
+ * the way {@code sleep(interval)} loops do. The wall-clock stamp of each tick is derived from
+ * the same grid, which makes the stamps of every sampler identical for a given tick id.
+ * <p>
+ * When sampling overruns one or more deadlines, the overrun ticks are skipped (not fired late)
+ * and counted as missed; the next tick id after a gap therefore jumps by the number of missed ticks.
+ * <p>
+ * Samplers that fork a command per tick ({@link Sampler#isBlocking()}) are run on their own
+ * worker thread so that they cannot delay the others. If such a sampler is still busy with a
+ * previous tick, the new tick is skipped for that sampler and counted in its own missed count.
+ *
+ * <p>Example usage:
+ * <pre>{@code
+ *     SamplingScheduler scheduler = new SamplingScheduler(250);
+ *     scheduler.register(new SourceSampler(new CpuStatSampler(), new TextSampleSink("run1.cpu.out")));
+ *     scheduler.start();
+ *     ...
+ *     scheduler.stop();
+ * }</pre>
+ */
+public class SamplingScheduler {
+
+    private static final Logger logger = Logger.getLogger(SamplingScheduler.class.getName());
+
+    private final long intervalMillis;
+    private final long intervalNanos;
+    private final List<Entry> entries = new CopyOnWriteArrayList<>();
+
+    private volatile boolean running = false;
+    private volatile long currentTick = 0;
+    private volatile long missedTicks = 0;
+    private Thread schedulerThread;
+
+    /**
+     * A registered sampler, the tick divisor derived from its minimum interval,
+     * and the worker of a blocking sampler.
+     */
+    private static final class Entry {
+        final Sampler sampler;
+        final long everyTicks;
+        final ExecutorService worker;
+        final AtomicBoolean busy = new AtomicBoolean(false);
+        final AtomicLong missed = new AtomicLong();
+
+        Entry(Sampler sampler, long everyTicks) {
+            this.sampler = sampler;
+            this.everyTicks = everyTicks;
+            this.worker = sampler.isBlocking()
+                ? Executors.newSingleThreadExecutor(r -> {
+                    Thread t = new Thread(r, sampler.getName() + "-sampler");
+                    t.setDaemon(true);
+                    return t;
+                })
+                : null;
+        }
+    }
+
+    /**
+     * Constructs a scheduler.
+     *
+     * @param intervalMillis Tick interval in milliseconds.
+     */
+    public SamplingScheduler(long intervalMillis) {
+        this.intervalMillis = Math.max(1, intervalMillis);
+        this.intervalNanos = TimeUnit.MILLISECONDS.toNanos(this.intervalMillis);
+    }
+
+    /**
+     * Registers a sampler. Its {@link Sampler#start()} is called immediately if the scheduler
+     * is already running, otherwise when the scheduler starts.
+     * A sampler that cannot keep up with the tick interval is fired on every N-th tick only.
+     *
+     * @param sampler The sampler to register.
+     * @throws IOException If the scheduler is running and the sampler fails to start.
+     */
+    public void register(Sampler sampler) throws IOException {
+        long everyTicks = 1;
+        long minMillis = sampler.getMinIntervalMillis();
+        if (minMillis > intervalMillis) {
+            everyTicks = (minMillis + intervalMillis - 1) / intervalMillis;
+            logger.warning(String.format("%s cannot sample every %s; sampling every %d ticks (%s) instead.",
+                    sampler.getName(), SamplingInterval.format(intervalMillis),
+                    everyTicks, SamplingInterval.format(everyTicks * intervalMillis)));
+        }
+
+        if (running) {
+            sampler.start();
+        }
+        entries.add(new Entry(sampler, everyTicks));
+    }
+
+    /**
+     * Starts all registered samplers and the tick thread.
+     *
+     * @throws IOException If a sampler fails to start.
+     */
+    public void start() throws IOException {
+        for (Entry e : entries) {
+            e.sampler.start();
+        }
+        running = true;
+        schedulerThread = new Thread(this::tickLoop, "sampling-scheduler");
+        schedulerThread.setDaemon(true);
+        schedulerThread.start();
+    }
+
+    /**
+     * Stops the tick thread, then stops all samplers, and reports missed ticks.
+     */
+    public void stop() {
+        running = false;
+        if (schedulerThread != null) {
+            LockSupport.unpark(schedulerThread);
+            try {
+                schedulerThread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        for (Entry e : entries) {
+            if (e.worker != null) {
+                e.worker.shutdown();
+                try {
+                    e.worker.awaitTermination(5, TimeUnit.SECONDS);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            e.sampler.stop();
+            if (e.missed.get() > 0) {
+                logger.warning(String.format("%s missed %d ticks because it was still busy with an earlier tick.",
+                        e.sampler.getName(), e.missed.get()));
+            }
+        }
+
+        if (missedTicks > 0) {
+            logger.warning(String.format("Missed %d of %d ticks because sampling overran the %s interval.",
+                    missedTicks, currentTick, SamplingInterval.format(intervalMillis)));
+        }
+    }
+
+    /**
+     * Returns the id of the last fired tick (0 before the first tick).
+     *
+     * @return the current tick id
+     */
+    public long getCurrentTick() {
+        return currentTick;
+    }
+
+    /**
+     * Returns the number of ticks skipped because sampling overran their deadline.
+     *
+     * @return the missed tick count
+     */
+    public long getMissedTicks() {
+        return missedTicks;
+    }
+
+    public long getIntervalMillis() {
+        return intervalMillis;
+    }
+
+    private void tickLoop() {
+        long startNanos = System.nanoTime();
+        long startEpochMillis = System.currentTimeMillis();
+        long tick = 0;
+
+        while (running) {
+            long deadline = startNanos + (tick + 1) * intervalNanos;
+            long wait;
+            while (running && (wait = deadline - System.nanoTime()) > 0) {
+                LockSupport.parkNanos(this, wait);
+            }
+            if (!running) break;
+
+            // Skip the deadlines that have already passed instead of firing them late.
+            long late = (System.nanoTime() - deadline) / intervalNanos;
+            if (late > 0) {
+                missedTicks += late;
+                logger.fine(String.format("Missed %d ticks after tick %d.", late, tick));
+            }
+            tick += late + 1;
+            currentTick = tick;
+
+            long epochMillis = startEpochMillis + TimeUnit.NANOSECONDS.toMillis(tick * intervalNanos);
+            for (Entry e : entries) {
+                if (tick % e.everyTicks != 0) continue;
+                if (e.worker == null) {
+                    fire(e, tick, epochMillis);
+                } else if (e.busy.compareAndSet(false, true)) {
+                    long t = tick;
+                    e.worker.execute(() -> {
+                        try {
+                            fire(e, t, epochMillis);
+                        } finally {
+                            e.busy.set(false);
+                        }
+                    });
+                } else {
+                    e.missed.incrementAndGet();
+                }
+            }
+        }
+    }
+
+    private void fire(Entry e, long tick, long epochMillis) {
+        try {
+            e.sampler.onTick(tick, epochMillis);
+        } catch (IOException | RuntimeException ex) {
+            if (entries.remove(e)) {
+                logger.log(Level.WARNING, String.format("%s failed and is removed from the schedule: %s",
+                        e.sampler.getName(), ex.getMessage()), ex);
+                if (e.worker != null) e.worker.shutdown();
+                e.sampler.stop();
+            }
+        }
+    }
+}
@@ -1,9 +1,31 @@
 package com.github.oogasawa.benchmark;
 
 import java.io.*;
+import java.nio.file.Path;
 import java.time.LocalDateTime;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.regex.Pattern;
+import com.github.oogasawa.benchmark.metric.AsyncSampleWriter;
+import com.github.oogasawa.benchmark.metric.MetricSource;
+import com.github.oogasawa.benchmark.metric.QuantileRecorder;
+import com.github.oogasawa.benchmark.metric.RollupSink;
+import com.github.oogasawa.benchmark.metric.SampleJournal;
+import com.github.oogasawa.benchmark.metric.SampleSink;
+import com.github.oogasawa.benchmark.metric.SegmentedSampleSink;
+import com.github.oogasawa.benchmark.metric.SourceSampler;
+import com.github.oogasawa.benchmark.metric.TextSampleSink;
+import com.github.oogasawa.benchmark.metric.TidySampleWriter;
+import com.github.oogasawa.benchmark.proc.CpuStatSampler;
+import com.github.oogasawa.benchmark.proc.DiskStatsSampler;
+import com.github.oogasawa.benchmark.proc.MemInfoSampler;
+import com.github.oogasawa.benchmark.proc.NetDevSampler;
+import com.github.oogasawa.benchmark.proc.ProcSampler;
+import com.github.oogasawa.benchmark.proc.ProcSnapshotCapture;
+import com.github.oogasawa.benchmark.proc.ProcessTreeSampler;
+import com.github.oogasawa.benchmark.store.ColumnarRunWriter;
+import com.github.oogasawa.benchmark.store.RunManifest;
+import com.github.oogasawa.benchmark.util.OutputFiles;
 
 /**
  * A simple system resource monitoring class that executes a target command
@@ -18,93 +40,382 @@ import java.util.concurrent.*;
  *   <li>{@code free} for memory usage</li>
  * </ul>
  * Each monitoring output is written to a separate file named with a given basename.
+ * <p>
+ * When {@link #setProcSamplers(boolean)} is enabled, the external tools are replaced
+ * by in-process samplers that read {@code /proc} directly (see {@link ProcSampler}).
+ * <p>
+ * The in-process samplers, {@code free}, {@code nvidia-smi} and any sampler added with
+ * {@link #addSampler(Sampler)} are {@link MetricSource}s sharing one {@link SamplingScheduler},
+ * so their rows carry the same tick ids. The sysstat tools ({@code mpstat}, {@code iostat},
+ * {@code ifstat}, {@code pidstat}) keep their own clocks.
  */
 public class SimpleMonitor {
 
-    private Thread freeThread;
-    private volatile boolean freeThreadRunning = false;
+    private final List<Sampler> extraSamplers = new ArrayList<>();
+    private final Map<MetricSource, String> extraSources = new LinkedHashMap<>();
+    private boolean procSamplers = false;
+    private List<Path> diskPaths = List.of();
+    private Pattern netInclude = null;
+    private Pattern netExclude = Pattern.compile("lo");
+    private Path procCapture = null;
+    private OutputFormat outputFormat = OutputFormat.TEXT;
+    private ColumnarRunWriter runWriter = null;
+    private TidySampleWriter tidyWriter = null;
+    private AsyncSampleWriter sampleWriter = null;
+    private boolean compress = false;
+    private long segmentChars = 0;
+    private long segmentMillis = 0;
+    private boolean rollup = false;
+    private boolean quantiles = false;
+    private QuantileRecorder quantileRecorder = null;
+    private long journalSyncMillis = -1;
+    private SampleJournal journal = null;
+    private RunManifest manifest = null;
+    private final List<Thread> pumps = new ArrayList<>();
+
+    /**
+     * Selects the sampler backend.
+     *
+     * @param procSamplers If {@code true}, node-level statistics are read from {@code /proc}
+     *                     in-process instead of forking {@code mpstat} and the other sysstat tools.
+     */
+    public void setProcSamplers(boolean procSamplers) {
+        this.procSamplers = procSamplers;
+    }
+
+    /**
+     * Restricts the {@code /proc/diskstats} sampler to the devices backing the given paths.
+     *
+     * @param diskPaths Paths such as the FASTQ, tmp and output directories;
+     *                  an empty list samples every active device.
+     */
+    public void setDiskPaths(List<Path> diskPaths) {
+        this.diskPaths = diskPaths;
+    }
+
+    /**
+     * Selects the interfaces sampled by the {@code /proc/net/dev} sampler.
+     *
+     * @param include Interfaces to sample, or {@code null} for all interfaces.
+     * @param exclude Interfaces to skip, or {@code null} to skip none (default: {@code lo}).
+     */
+    public void setNetInterfaces(Pattern include, Pattern exclude) {
+        this.netInclude = include;
+        this.netExclude = exclude;
+    }
+
+    /**
+     * Copies the system-wide {@code /proc} files into a directory on every tick,
+     * so that the run can be replayed later with {@code benchmark:replay}.
+     *
+     * @param procCapture The capture directory, or {@code null} to capture nothing.
+     */
+    public void setProcCapture(Path procCapture) {
+        this.procCapture = procCapture;
+    }
+
+    /**
+     * Selects the output format of the in-process sources.
+     *
+     * @param outputFormat {@link OutputFormat#TEXT} writes one text file per source (default),
+     *                     {@link OutputFormat#RUN} and {@link OutputFormat#TIDY} write all sources
+     *                     to one file. The external tools still write text.
+     */
+    public void setOutputFormat(OutputFormat outputFormat) {
+        this.outputFormat = outputFormat;
+    }
+
+    /**
+     * Enables gzip compression of the output files.
+     *
+     * @param compress If {@code true}, every output file is written as a block-compressed
+     *                 {@code .gz} file. Compression runs on background threads, never on the sampling threads.
+     */
+    public void setCompress(boolean compress) {
+        this.compress = compress;
+    }
+
+    /**
+     * Splits every text output into segments with an index instead of writing one file per output.
+     *
+     * @param segmentChars  The size limit of a segment before compression, or {@code 0} for none.
+     * @param segmentMillis The duration limit of a segment in milliseconds, or {@code 0} for none.
+     */
+    public void setSegments(long segmentChars, long segmentMillis) {
+        this.segmentChars = segmentChars;
+        this.segmentMillis = segmentMillis;
+    }
+
+    /**
+     * Keeps rollup tiers of every text output (see {@link RollupSink}).
+     *
+     * @param rollup If {@code true}, min/mean/max/p95 per 10 s, 1 min and 10 min are written next to each text output.
+     */
+    public void setRollup(boolean rollup) {
+        this.rollup = rollup;
+    }
+
+    /**
+     * Keeps a quantile sketch of every metric and saves them to {@code basename.quantiles} (see {@link QuantileRecorder}).
+     *
+     * @param quantiles If {@code true}, the sketches are kept in any output format.
+     */
+    public void setQuantiles(boolean quantiles) {
+        this.quantiles = quantiles;
+    }
+
+    /**
+     * Journals the samples of the in-process samplers to {@code basename.journal}, so that
+     * {@code benchmark:recover} can rebuild their text outputs if the run is interrupted (see {@link SampleJournal}).
+     *
+     * @param syncMillis The longest time a sample may stay in the journal unsynced, {@code 0} to sync
+     *                   every sample, or a negative value for no journal.
+     */
+    public void setJournal(long syncMillis) {
+        this.journalSyncMillis = syncMillis;
+    }
+
+    /**
+     * Adds a source that is sampled on the same ticks as the node-level sources and written in
+     * the selected output format, such as a {@link GpuProcessMonitor}.
+     *
+     * @param source The source to add to the next monitored run.
+     * @param suffix The suffix of its text output file, e.g. {@code ".gpu-process.out"}.
+     */
+    public void addSource(MetricSource source, String suffix) {
+        extraSources.put(source, suffix);
+    }
+
+    /**
+     * Adds a sampler that is fired on the same ticks as the node-level samplers.
+     *
+     * @param sampler The sampler to add to the next monitored run.
+     */
+    public void addSampler(Sampler sampler) {
+        extraSamplers.add(sampler);
+    }
 
     /**
      * Executes the target command with concurrent monitoring using system tools.
      * The monitoring processes are terminated after the target command finishes.
      *
      * @param commandAndArgs The target command and its arguments to execute.
-     * @param interval       Sampling interval in seconds.
+     * @param intervalMillis Sampling interval in milliseconds.
+     *                       Tools that only accept whole seconds are rounded with a warning.
      * @param basename       Basename used for all output files.
      * @param gpuFlg         If {@code true}, GPU monitoring via {@code nvidia-smi} is enabled.
      */
-    public void executeWithMonitoring(List<String> commandAndArgs, int interval, String basename, boolean gpuFlg) {
+    public void executeWithMonitoring(List<String> commandAndArgs, long intervalMillis, String basename, boolean gpuFlg) {
+        SamplingScheduler scheduler = new SamplingScheduler(intervalMillis);
+        // mpstat, iostat, ifstat and pidstat only accept whole seconds.
+        long sysstatMillis = procSamplers
+                ? intervalMillis
+                : SamplingInterval.toWholeSeconds(intervalMillis, "sysstat") * 1000;
+        String sysstatSeconds = String.valueOf(sysstatMillis / 1000);
+        Process mpstat = null;
+        Process iostat = null;
+        Process ifstat = null;
+        Integer exitCode = null;
         try {
-            Process mpstat = startMonitoring("mpstat",
-                    List.of("mpstat", "-P", "ALL", String.valueOf(interval)),
-                    interval, basename + ".mpstat.out");
+            manifest = newManifest(commandAndArgs, intervalMillis, basename);
+            sampleWriter = new AsyncSampleWriter();
+            if (outputFormat == OutputFormat.RUN) {
+                runWriter = new ColumnarRunWriter(Path.of(basename + ".run"), intervalMillis);
+            } else if (outputFormat == OutputFormat.TIDY) {
+                tidyWriter = new TidySampleWriter(basename + ".samples.csv", compress);
+            }
+            if (journalSyncMillis >= 0) {
+                journal = new SampleJournal(Path.of(basename + SampleJournal.SUFFIX), journalSyncMillis);
+            }
+            if (quantiles) {
+                quantileRecorder = new QuantileRecorder(Path.of(basename + QuantileRecorder.SUFFIX));
+            }
+            if (procSamplers) {
+                scheduler.register(sampler(new CpuStatSampler(), basename + ".cpu.out"));
+            } else {
+                mpstat = startMonitoring("mpstat",
+                        List.of("mpstat", "-P", "ALL", sysstatSeconds),
+                        sysstatMillis, basename + ".mpstat.out");
+            }
 
-            Process iostat = startMonitoring("iostat",
-                    List.of("iostat", "-xz", String.valueOf(interval)),
-                    interval, basename + ".iostat.out");
+            if (procSamplers) {
+                scheduler.register(sampler(new DiskStatsSampler(diskPaths), basename + ".diskstats.out"));
+            } else {
+                iostat = startMonitoring("iostat",
+                        List.of("iostat", "-xz", sysstatSeconds),
+                        sysstatMillis, basename + ".iostat.out");
+            }
 
-            Process ifstat = startMonitoring("ifstat",
-                    List.of("ifstat", String.valueOf(interval)),
-                    interval, basename + ".ifstat.out");
+            if (procSamplers) {
+                scheduler.register(sampler(new NetDevSampler(netInclude, netExclude), basename + ".netdev.out"));
+            } else {
+                ifstat = startMonitoring("ifstat",
+                        List.of("ifstat", sysstatSeconds),
+                        sysstatMillis, basename + ".ifstat.out");
+            }
+            if (ifstat == null && !procSamplers) {
+                // The network series is the one most needed for NFS/Lustre inputs; never leave it empty.
+                System.err.println("Falling back to /proc/net/dev for network monitoring.");
+                scheduler.register(sampler(new NetDevSampler(netInclude, netExclude), basename + ".netdev.out"));
+            }
 
-            Process nvidiaSmi = null;
             if (gpuFlg && isCommandAvailable("nvidia-smi")) {
-                nvidiaSmi = startMonitoring("nvidia-smi",
-                        List.of("nvidia-smi",
-                                "--query-gpu=timestamp,index,utilization.gpu,utilization.memory," +
-                                        "memory.used,memory.total,temperature.gpu,fan.speed,power.draw,power.limit",
-                                "--format=csv,nounits",
-                                "--loop=" + interval),
-                        interval, basename + ".nvidia-smi.out");
+                List<String> gpus = listGpus();
+                manifest.setGpus(gpus.size(), gpus.isEmpty() ? null : gpus.get(0));
+                scheduler.register(sampler(new NvidiaSmiGpuSource(intervalMillis), basename + ".nvidia-smi.out"));
             } else if (gpuFlg) {
                 System.err.println("nvidia-smi not found. Skipping GPU monitoring.");
             }
 
-            startFreeMonitoring(interval, basename + ".free.out");
-
-            // Launch the monitored command with pidstat
-            List<String> pidstatCommand = new ArrayList<>();
-            pidstatCommand.add("pidstat");
-            pidstatCommand.add("-urdh");
-            pidstatCommand.add("-t");
-            pidstatCommand.add("-e");
-            pidstatCommand.add("bash");
-            pidstatCommand.add("-c");
-            pidstatCommand.add("exec " + String.join(" ", commandAndArgs));
-            pidstatCommand.add(String.valueOf(interval));
+            if (procSamplers) {
+                scheduler.register(sampler(new MemInfoSampler(), basename + ".meminfo.out"));
+            } else {
+                scheduler.register(sampler(new FreeMemorySource(), basename + ".free.out"));
+            }
+            if (procCapture != null) {
+                scheduler.register(new ProcSnapshotCapture(procCapture));
+            }
+            for (Map.Entry<MetricSource, String> source : extraSources.entrySet()) {
+                scheduler.register(sampler(source.getKey(), basename + source.getValue()));
+            }
+            for (Sampler sampler : extraSamplers) {
+                scheduler.register(sampler);
+            }
+            scheduler.start();
 
-            ProcessBuilder pb = new ProcessBuilder(pidstatCommand);
-            pb.redirectOutput(new File(basename + ".pidstat.out"));      // pidstat output
-            pb.redirectError(new File(basename + ".program.stdout"));    // program stdout via stderr
+            Process targetProcess;
+            if (procSamplers) {
+                // Launch the monitored command directly and follow its whole process tree
+                ProcessBuilder pb = new ProcessBuilder(commandAndArgs);
+                pb.redirectErrorStream(true);
+                if (!compress) {
+                    pb.redirectOutput(new File(basename + ".program.stdout"));
+                }
 
-            Process pidstatProcess = pb.start();
-            int exitCode = pidstatProcess.waitFor();
-            Thread.sleep(interval * 1000L);
+                targetProcess = pb.start();
+                if (compress) {
+                    pump(targetProcess.getInputStream(), basename + ".program.stdout", false);
+                }
+                scheduler.register(sampler(new ProcessTreeSampler(targetProcess.pid()), basename + ".proctree.out"));
+            } else {
+                // Launch the monitored command with pidstat
+                List<String> pidstatCommand = new ArrayList<>();
+                pidstatCommand.add("pidstat");
+                pidstatCommand.add("-urdh");
+                pidstatCommand.add("-t");
+                pidstatCommand.add("-e");
+                pidstatCommand.add("bash");
+                pidstatCommand.add("-c");
+                pidstatCommand.add("exec " + String.join(" ", commandAndArgs));
+                pidstatCommand.add(sysstatSeconds);
 
-            stopProcess(mpstat, "mpstat");
-            stopProcess(iostat, "iostat");
-            stopProcess(ifstat, "ifstat");
-            stopProcess(nvidiaSmi, "nvidia-smi");
-            stopFreeMonitoring();
+                ProcessBuilder pb = new ProcessBuilder(pidstatCommand);
+                if (!compress) {
+                    pb.redirectOutput(new File(basename + ".pidstat.out"));      // pidstat output
+                    pb.redirectError(new File(basename + ".program.stdout"));    // program stdout via stderr
+                }
 
-            System.out.println("Monitored process exited with code: " + exitCode);
+                targetProcess = pb.start();
+                if (compress) {
+                    pump(targetProcess.getInputStream(), basename + ".pidstat.out", false);
+                    pump(targetProcess.getErrorStream(), basename + ".program.stdout", false);
+                }
+                manifest.addCollector("pidstat");
+            }
+            manifest.write(RunManifest.path(basename));
+            int code = targetProcess.waitFor();
+            Thread.sleep(intervalMillis);
+            exitCode = code;
 
         } catch (IOException | InterruptedException e) {
             e.printStackTrace();
+        } finally {
+            // Also on failure, so that the outputs are complete up to the failure and no monitor is left running.
+            boolean closed = shutdown(scheduler, mpstat, iostat, ifstat);
+            if (manifest != null) {
+                if (exitCode != null && closed) {
+                    manifest.finish(exitCode);
+                } else {
+                    manifest.fail();
+                }
+                try {
+                    manifest.write(RunManifest.path(basename));
+                } catch (IOException ex) {
+                    System.err.println("Failed to write the run manifest: " + ex.getMessage());
+                }
+            }
+        }
+        if (exitCode != null) {
+            System.out.println("Monitored process exited with code: " + exitCode);
         }
     }
 
+    /**
+     * Stops the monitoring processes and the scheduler, and closes every output that was opened.
+     * Each step runs even if an earlier one fails.
+     *
+     * @return {@code true} if every output was closed
+     */
+    private boolean shutdown(SamplingScheduler scheduler, Process mpstat, Process iostat, Process ifstat) {
+        stopProcess(mpstat, "mpstat");
+        stopProcess(iostat, "iostat");
+        stopProcess(ifstat, "ifstat");
+        try {
+            joinPumps();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        scheduler.stop();   // closes the sources, including the nvidia-smi stream
+        if (sampleWriter != null) {
+            sampleWriter.close();
+            sampleWriter = null;
+        }
+        boolean closed = true;
+        List<Closeable> outputs = Arrays.asList(runWriter, tidyWriter, quantileRecorder, journal);
+        runWriter = null;
+        tidyWriter = null;
+        quantileRecorder = null;
+        journal = null;
+        for (Closeable output : outputs) {
+            if (output == null) continue;
+            try {
+                output.close();
+            } catch (IOException e) {
+                System.err.println("Failed to close an output: " + e.getMessage());
+                closed = false;
+            }
+        }
+        return closed;
+    }
+
+    /**
+     * Returns the manifest of a run with the settings of this monitor.
+     */
+    private RunManifest newManifest(List<String> commandAndArgs, long intervalMillis, String basename) {
+        RunManifest m = RunManifest.start(basename, commandAndArgs);
+        m.setIntervalMillis(intervalMillis);
+        m.setSampler(procSamplers ? "proc" : "sysstat");
+        m.setOutputFormat(outputFormat.name().toLowerCase(Locale.ROOT));
+        m.setOption("compress", compress);
+        m.setOption("rollup", rollup);
+        m.setOption("quantiles", quantiles);
+        if (segmentChars > 0) m.setOption("segment_chars", segmentChars);
+        if (segmentMillis > 0) m.setOption("segment_millis", segmentMillis);
+        if (journalSyncMillis >= 0) m.setOption("journal_sync_millis", journalSyncMillis);
+        return m;
+    }
+
     /**
      * Automatically detects GPU availability and runs the command with appropriate monitoring.
      *
      * @param commandAndArgs The command and its arguments to execute.
-     * @param interval       Sampling interval in seconds.
+     * @param intervalMillis Sampling interval in milliseconds.
      * @param basename       Basename used for all output files.
      */
-    public void runAutoDetectingGPU(List<String> commandAndArgs, int interval, String basename) {
+    public void runAutoDetectingGPU(List<String> commandAndArgs, long intervalMillis, String basename) {
         boolean hasGpu = detectNvidiaGPU();
         System.out.println("GPU detected: " + hasGpu);
-        executeWithMonitoring(commandAndArgs, interval, basename, hasGpu);
+        executeWithMonitoring(commandAndArgs, intervalMillis, basename, hasGpu);
     }
 
     /**
@@ -113,30 +424,71 @@ public class SimpleMonitor {
      *
      * @param name       Name of the tool (used for logging).
      * @param command    Command and its arguments as a list.
-     * @param interval   Sampling interval in seconds.
+     * @param intervalMillis Sampling interval in milliseconds.
      * @param outputFile The file to which monitoring output is written.
      * @return The started {@code Process} object, or {@code null} if the tool is not available.
      * @throws IOException If the process fails to start.
      */
-    private Process startMonitoring(String name, List<String> command, int interval, String outputFile) throws IOException {
+    private Process startMonitoring(String name, List<String> command, long intervalMillis, String outputFile) throws IOException {
         if (!isCommandAvailable(command.get(0))) {
             System.err.printf("%s not found. Skipping %s monitoring.%n", name, name);
             return null;
         }
+        manifest.addCollector(name);
 
         // First, write the timestamp and interval line
-        File outFile = new File(outputFile);
-        try (PrintWriter writer = new PrintWriter(new FileWriter(outFile, false))) {
-            writer.printf("[%s] Monitoring started at %s, interval: %d seconds%n",
-                          name, LocalDateTime.now().toString(), interval);
+        try (PrintWriter writer = new PrintWriter(OutputFiles.newWriter(outputFile, compress))) {
+            writer.printf("[%s] Monitoring started at %s, interval: %s%n",
+                          name, LocalDateTime.now().toString(), SamplingInterval.format(intervalMillis));
         }
 
         // Now, append mode
         ProcessBuilder pb = new ProcessBuilder(command);
-        pb.redirectOutput(ProcessBuilder.Redirect.appendTo(outFile));
+        if (compress) {
+            Process process = pb.start();
+            pump(process.getInputStream(), outputFile, true);
+            return process;
+        }
+        pb.redirectOutput(ProcessBuilder.Redirect.appendTo(new File(outputFile)));
         return pb.start();
     }
 
+    /**
+     * Copies the output of a process into a compressed file on a separate thread,
+     * until the process closes the stream.
+     *
+     * @param in         The process output.
+     * @param outputFile The uncompressed name of the file; {@code .gz} is appended.
+     * @param append     If {@code true}, the output is appended to the file.
+     * @throws IOException If the file cannot be opened.
+     */
+    private void pump(InputStream in, String outputFile, boolean append) throws IOException {
+        OutputStream out = OutputFiles.newOutputStream(outputFile, true, append);
+        Thread pump = new Thread(() -> {
+            try (in; out) {
+                in.transferTo(out);
+            } catch (IOException e) {
+                System.err.println("Failed to write " + outputFile + ": " + e.getMessage());
+            }
+        }, "output-pump");
+        pump.setDaemon(true);
+        pump.start();
+        pumps.add(pump);
+    }
+
+    /**
+     * Waits for the pumps of the stopped processes to write their remaining output.
+     */
+    private void joinPumps() throws InterruptedException {
+        for (Thread pump : pumps) {
+            pump.join(TimeUnit.SECONDS.toMillis(5));
+            if (pump.isAlive()) {
+                System.err.println("An output pump did not finish; a background process may still hold the output open.");
+            }
+        }
+        pumps.clear();
+    }
+
 
     /**
      * Attempts to terminate a monitoring process gracefully.
@@ -162,55 +514,32 @@ public class SimpleMonitor {
     }
 
     /**
-     * Starts a background thread to record memory usage using {@code free -m}
-     * at fixed intervals. Output is written to the specified file.
-     *
-     * @param interval   Sampling interval in seconds.
-     * @param outputFile Output file path for {@code free} data.
+     * Returns a sampler that writes the rows of a source to the shared run or long-format file,
+     * if one is written, or otherwise to its own text file. The output is written by the sample writer thread, so a slow
+     * disk cannot delay the sampling.
      */
-    private void startFreeMonitoring(int interval, String outputFile) {
-        freeThreadRunning = true;
-        freeThread = new Thread(() -> {
-            try (PrintWriter writer = new PrintWriter(new FileWriter(outputFile, false))) {
-                writer.printf("[free] Monitoring started at %s, interval: %d seconds%n",
-                        LocalDateTime.now().toString(), interval);
-
-                while (freeThreadRunning) {
-                    Process process = new ProcessBuilder("free", "-m")
-                            .redirectErrorStream(true).start();
-
-                    try (BufferedReader reader = new BufferedReader(
-                            new InputStreamReader(process.getInputStream()))) {
-                        String line;
-                        while ((line = reader.readLine()) != null) {
-                            writer.println(line);
-                        }
-                        writer.println();
-                        writer.flush();
-                    }
-
-                    process.waitFor();
-                    Thread.sleep(interval * 1000L);
-                }
-            } catch (IOException | InterruptedException e) {
-                System.err.println("free monitoring interrupted.");
-            }
-        });
-        freeThread.start();
-    }
-
-    /**
-     * Stops the background thread that runs the {@code free} monitoring loop.
-     */
-    private void stopFreeMonitoring() {
-        freeThreadRunning = false;
-        if (freeThread != null) {
-            try {
-                freeThread.join(5000);
-            } catch (InterruptedException e) {
-                System.err.println("free monitor thread join interrupted.");
-            }
+    private Sampler sampler(MetricSource source, String outputPath) {
+        manifest.addCollector(source.getSchema().getSource());
+        SampleSink sink;
+        if (runWriter != null) {
+            sink = runWriter.newSink();
+        } else if (tidyWriter != null) {
+            sink = tidyWriter.newSink();
+        } else if (segmentChars > 0 || segmentMillis > 0) {
+            sink = new SegmentedSampleSink(outputPath, compress, segmentChars, segmentMillis);
+        } else {
+            sink = new TextSampleSink(outputPath, compress);
+        }
+        if (rollup && runWriter == null && tidyWriter == null) {
+            sink = new RollupSink(sink, outputPath, compress);
+        }
+        if (quantileRecorder != null) {
+            sink = quantileRecorder.wrap(sink);
         }
+        if (journal != null) {
+            sink = journal.wrap(sink, outputPath);
+        }
+        return new SourceSampler(source, sampleWriter.wrap(sink));
     }
 
     /**
@@ -228,6 +557,32 @@ public class SimpleMonitor {
         }
     }
 
+    /**
+     * Returns the model of each GPU listed by {@code nvidia-smi -L}, e.g. {@code "NVIDIA B200"}.
+     *
+     * @return the models, or an empty list if they cannot be listed
+     */
+    private List<String> listGpus() {
+        List<String> gpus = new ArrayList<>();
+        try {
+            Process process = new ProcessBuilder("nvidia-smi", "-L").redirectErrorStream(true).start();
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    // GPU 0: NVIDIA B200 (UUID: GPU-...)
+                    if (!line.startsWith("GPU ")) continue;
+                    int colon = line.indexOf(": ");
+                    int uuid = line.indexOf(" (UUID");
+                    gpus.add(colon < 0 ? line : line.substring(colon + 2, uuid > colon ? uuid : line.length()).trim());
+                }
+            }
+            process.waitFor();
+        } catch (IOException | InterruptedException e) {
+            System.err.println("Cannot list GPUs: " + e.getMessage());
+        }
+        return gpus;
+    }
+
     /**
      * Detects whether an NVIDIA GPU is available by running {@code nvidia-smi -L}.
      *
@@ -3,10 +3,15 @@ package com.github.oogasawa.benchmark.cuda;
 import java.io.IOException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.regex.Pattern;
 import java.util.regex.PatternSyntaxException;
+import com.github.oogasawa.benchmark.util.OutputFiles;
+import com.github.oogasawa.benchmark.util.TimeWindow;
 import com.github.oogasawa.utility.cli.CommandRepository;
 import org.apache.commons.cli.CommandLine;
 import org.apache.commons.cli.Option;
@@ -33,6 +38,7 @@ public class GpuCommands {
 
         formatGpuCommand();
         formatGpuMemoryCommand();
+        formatGpuAllCommand();
         visGpuCommand();
         visGpuMemoryCommand();
     }
@@ -58,12 +64,19 @@ public class GpuCommands {
                        .required(false)
                        .build());
 
+        addWindowOptions(opts);
+        addResamplingOptions(opts);
+
 
         
         this.cmdRepos.addCommand("format commands", "format:gpu", opts,
                              "Generate a CSV file for a stacked area chart of GPU utilization.",
                              (CommandLine cl) -> {
                                  Path infile = Path.of(cl.getOptionValue("infile"));
+                                 TimeWindow window = parseWindow(cl);
+                                 if (window == null) return;
+                                 Resampling resampling = parseResampling(cl);
+                                 if (resampling == null) return;
 
 
                                  Path outfile;
@@ -71,14 +84,18 @@ public class GpuCommands {
                                      outfile = Path.of(cl.getOptionValue("outfile"));
                                  } else {
                                      // Replace extension with .csv
-                                     String baseName = infile.getFileName().toString();
+                                     String baseName = OutputFiles.stripGzipSuffix(infile.getFileName().toString());
                                      int dotIndex = baseName.lastIndexOf('.');
                                      String csvName = (dotIndex > 0 ? baseName.substring(0, dotIndex) : baseName) + ".csv";
                                      outfile = infile.resolveSibling(csvName);
                                  }
 
                     
-                                 GpuUsageFormatter.gpuUsage(infile, outfile);                    
+                                 try {
+                                     GpuUsageFormatter.gpuUsage(infile, outfile, window, resampling);
+                                 } catch (IllegalStateException e) {
+                                     System.err.println("Error: " + e.getMessage());
+                                 }
                              });
     }
 
@@ -105,30 +122,41 @@ public class GpuCommands {
                        .required(false)
                        .build());
 
+        addWindowOptions(opts);
+        addResamplingOptions(opts);
+
 
         this.cmdRepos.addCommand("format commands", "format:gpuMemory", opts,
                              "Generate a CSV file for a stacked area chart of GPU memory utilization.",                             
                              (CommandLine cl) -> {
                                  Path infile = Path.of(cl.getOptionValue("infile"));
+                                 TimeWindow window = parseWindow(cl);
+                                 if (window == null) return;
+                                 Resampling resampling = parseResampling(cl);
+                                 if (resampling == null) return;
 
                                  Path outfile;
                                  if (cl.hasOption("outfile")) {
                                      outfile = Path.of(cl.getOptionValue("outfile"));
                                  } else {
                                      // Replace extension with .csv
-                                     String baseName = infile.getFileName().toString();
+                                     String baseName = OutputFiles.stripGzipSuffix(infile.getFileName().toString());
                                      int dotIndex = baseName.lastIndexOf('.');
                                      String csvName = (dotIndex > 0 ? baseName.substring(0, dotIndex) : baseName) + ".csv";
                                      outfile = infile.resolveSibling(csvName);
                                  }
 
                 
-                                 GpuUsageFormatter.gpuMemoryUsage(infile, outfile);
+                                 try {
+                                     GpuUsageFormatter.gpuMemoryUsage(infile, outfile, window, resampling);
+                                 } catch (IllegalStateException e) {
+                                     System.err.println("Error: " + e.getMessage());
+                                 }
                              });
     }
 
 
-    public void visGpuCommand() {
+    public void formatGpuAllCommand() {
         Options opts = new Options();
 
         opts.addOption(Option.builder("i")
@@ -139,6 +167,88 @@ public class GpuCommands {
                        .required(true)
                        .build());
 
+        opts.addOption(Option.builder("m")
+                       .longOpt("metrics")
+                       .hasArg(true)
+                       .argName("NAMES")
+                       .desc("Comma-separated metrics to write (e.g. utilization.gpu,memory.used,power.draw). "
+                             + "Default: every metric in the log")
+                       .required(false)
+                       .build());
+
+        opts.addOption(Option.builder("c")
+                       .longOpt("combined")
+                       .hasArg(false)
+                       .desc("Write one CSV file with a row per timestamp and GPU and a column per metric.")
+                       .required(false)
+                       .build());
+
+        opts.addOption(Option.builder("o")
+                       .longOpt("outfile")
+                       .hasArg(true)
+                       .argName("PATH")
+                       .desc("The directory of the per-metric CSV files, or the output file with --combined. "
+                             + "Default: next to the input, e.g. run1.nvidia-smi.utilization.gpu.csv or run1.nvidia-smi.all.csv")
+                       .required(false)
+                       .build());
+
+        addWindowOptions(opts);
+        addResamplingOptions(opts);
+
+
+        this.cmdRepos.addCommand("format commands", "format:gpuAll", opts,
+                             "Generate CSV files of every GPU metric in one pass over the log; vis:gpu and vis:gpuMemory read them as they are.",
+                             (CommandLine cl) -> {
+                                 Path infile = Path.of(cl.getOptionValue("infile"));
+                                 TimeWindow window = parseWindow(cl);
+                                 if (window == null) return;
+                                 Resampling resampling = parseResampling(cl);
+                                 if (resampling == null) return;
+
+                                 List<String> metrics = new ArrayList<>();
+                                 if (cl.hasOption("metrics")) {
+                                     for (String metric : cl.getOptionValue("metrics").split(",")) {
+                                         metrics.add(GpuUsageFormatter.normalizeColumnName(metric));
+                                     }
+                                 }
+
+                                 try {
+                                     if (cl.hasOption("combined")) {
+                                         Path outfile;
+                                         if (cl.hasOption("outfile")) {
+                                             outfile = Path.of(cl.getOptionValue("outfile"));
+                                         } else {
+                                             String baseName = OutputFiles.stripGzipSuffix(infile.getFileName().toString());
+                                             int dotIndex = baseName.lastIndexOf('.');
+                                             outfile = infile.resolveSibling((dotIndex > 0 ? baseName.substring(0, dotIndex) : baseName) + ".all.csv");
+                                         }
+                                         GpuUsageFormatter.gpuAllCombined(infile, metrics, window, resampling, outfile);
+                                     } else {
+                                         Path outdir = cl.hasOption("outfile") ? Path.of(cl.getOptionValue("outfile"))
+                                             : infile.toAbsolutePath().getParent();
+                                         Map<String, Path> outfiles = GpuUsageFormatter.gpuAll(infile, metrics, window, resampling, outdir);
+                                         outfiles.values().forEach(outfile -> logger.info("Wrote " + outfile));
+                                     }
+                                 } catch (IllegalStateException e) {
+                                     System.err.println("Error: " + e.getMessage());
+                                 } catch (IOException e) {
+                                     logger.log(Level.SEVERE, "Failed to read or write GPU log: " + infile, e);
+                                 }
+                             });
+    }
+
+
+    public void visGpuCommand() {
+        Options opts = new Options();
+
+        opts.addOption(Option.builder("i")
+                       .longOpt("infile")
+                       .hasArg(true)
+                       .argName("FILE")
+                       .desc("The path to the nvidia-smi log file, or a CSV file written by format:gpu or format:gpuAll.")
+                       .required(true)
+                       .build());
+
 
         opts.addOption(Option.builder("o")
                        .longOpt("outfile")
@@ -148,12 +258,22 @@ public class GpuCommands {
                        .required(false)
                        .build());
 
+        addWindowOptions(opts);
+        addResamplingOptions(opts);
+        addWidthOption(opts);
+
     
     
         this.cmdRepos.addCommand("Visualization commands", "vis:gpu", opts,
                              "Draw a graph for a stacked area chart of GPU utilization.",
                              (CommandLine cl) -> {
                                  Path infile = Path.of(cl.getOptionValue("infile"));
+                                 TimeWindow window = parseWindow(cl);
+                                 if (window == null) return;
+                                 Resampling resampling = parseResampling(cl);
+                                 if (resampling == null) return;
+                                 int width = parseWidth(cl);
+                                 if (width <= 0) return;
 
 
                                  Path outfile;
@@ -161,7 +281,7 @@ public class GpuCommands {
                                      outfile = Path.of(cl.getOptionValue("outfile"));
                                  } else {
                                      // Replace extension with .csv
-                                     String baseName = infile.getFileName().toString();
+                                     String baseName = OutputFiles.stripGzipSuffix(infile.getFileName().toString());
                                      int dotIndex = baseName.lastIndexOf('.');
                                      String csvName = (dotIndex > 0 ? baseName.substring(0, dotIndex) : baseName) + ".png";
                                      outfile = infile.resolveSibling(csvName);
@@ -169,9 +289,11 @@ public class GpuCommands {
 
                                  
                                  try {
-                                     Table gpuUsageTable = GpuUsageFormatter.pivotGpuMetric(infile, "utilization.gpu");
-                                     GpuUsageChart.draw(gpuUsageTable, outfile, "GPU Utilization");
+                                     Table gpuUsageTable = GpuUsageFormatter.pivotGpuMetric(infile, "utilization.gpu", window, width, resampling);
+                                     GpuUsageChart.draw(gpuUsageTable, outfile, "GPU Utilization", width);
                                      
+                                } catch (IllegalStateException e) {
+                                    System.err.println("Error: " + e.getMessage());
                                 } catch (IOException e) {
                                     logger.log(Level.SEVERE, "Can not draw Gpu Usage Chart", e);
                                 }                    
@@ -188,7 +310,7 @@ public class GpuCommands {
                        .longOpt("infile")
                        .hasArg(true)
                        .argName("FILE")
-                       .desc("The path to the nvidia-smi log file.")
+                       .desc("The path to the nvidia-smi log file, or a CSV file written by format:gpu or format:gpuAll.")
                        .required(true)
                        .build());
 
@@ -201,27 +323,39 @@ public class GpuCommands {
                        .required(false)
                        .build());
 
+        addWindowOptions(opts);
+        addResamplingOptions(opts);
+        addWidthOption(opts);
+
 
         this.cmdRepos.addCommand("Visualization commands", "vis:gpuMemory", opts,
                              "Generate a CSV file for a stacked area chart of GPU memory utilization.",                             
                              (CommandLine cl) -> {
                                  Path infile = Path.of(cl.getOptionValue("infile"));
+                                 TimeWindow window = parseWindow(cl);
+                                 if (window == null) return;
+                                 Resampling resampling = parseResampling(cl);
+                                 if (resampling == null) return;
+                                 int width = parseWidth(cl);
+                                 if (width <= 0) return;
 
                                  Path outfile;
                                  if (cl.hasOption("outfile")) {
                                      outfile = Path.of(cl.getOptionValue("outfile"));
                                  } else {
                                      // Replace extension with .csv
-                                     String baseName = infile.getFileName().toString();
+                                     String baseName = OutputFiles.stripGzipSuffix(infile.getFileName().toString());
                                      int dotIndex = baseName.lastIndexOf('.');
                                      String csvName = (dotIndex > 0 ? baseName.substring(0, dotIndex) : baseName) + ".png";
                                      outfile = infile.resolveSibling(csvName);
                                  }
 
                                  try {
-                                     Table gpuUsageTable = GpuUsageFormatter.pivotGpuMetric(infile, "utilization.memory");
-                                     GpuUsageChart.draw(gpuUsageTable, outfile, "GPU Memory Utilization");
+                                     Table gpuUsageTable = GpuUsageFormatter.pivotGpuMetric(infile, "utilization.memory", window, width, resampling);
+                                     GpuUsageChart.draw(gpuUsageTable, outfile, "GPU Memory Utilization", width);
                                      
+                                } catch (IllegalStateException e) {
+                                    System.err.println("Error: " + e.getMessage());
                                 } catch (IOException e) {
                                     logger.log(Level.SEVERE, "Can not draw Gpu Usage Chart", e);
                                 }                    
@@ -229,8 +363,115 @@ public class GpuCommands {
                              });
     }
 
-    
 
-    
 
+    /**
+     * Adds the {@code --from} and {@code --to} options that select a part of a run.
+     */
+    private static void addWindowOptions(Options opts) {
+        opts.addOption(Option.builder("f")
+                       .longOpt("from")
+                       .hasArg(true)
+                       .argName("TIME")
+                       .desc("Start of the part of the run to read: a time since the start (e.g. 10h, 90m) "
+                             + "or a date and time (e.g. '2025-07-05 15:00:00'). Default: the start of the run.")
+                       .required(false)
+                       .build());
+
+        opts.addOption(Option.builder("t")
+                       .longOpt("to")
+                       .hasArg(true)
+                       .argName("TIME")
+                       .desc("End of the part of the run to read, in the same notation as --from. Default: the end of the run.")
+                       .required(false)
+                       .build());
+    }
+
+
+    /**
+     * Returns the window given by {@code --from} and {@code --to}, or {@code null} after reporting an invalid value.
+     */
+    private static TimeWindow parseWindow(CommandLine cl) {
+        try {
+            return TimeWindow.parse(cl.getOptionValue("from"), cl.getOptionValue("to"));
+        } catch (IllegalArgumentException e) {
+            System.err.println("Error: " + e.getMessage());
+            return null;
+        }
+    }
+
+
+    /**
+     * Adds the {@code --bucket}, {@code --aggregate} and {@code --fill} options that resample a log.
+     */
+    private static void addResamplingOptions(Options opts) {
+        opts.addOption(Option.builder("b")
+                       .longOpt("bucket")
+                       .hasArg(true)
+                       .argName("DURATION")
+                       .desc("Width of the time buckets the samples are grouped into, in whole seconds (e.g. 5s, 1m). Default: 1s")
+                       .required(false)
+                       .build());
+
+        opts.addOption(Option.builder("a")
+                       .longOpt("aggregate")
+                       .hasArg(true)
+                       .argName("FUNCTION")
+                       .desc("How the samples of a GPU in a bucket are reduced: first, last, mean, min, max or p95. Default: first")
+                       .required(false)
+                       .build());
+
+        opts.addOption(Option.builder("g")
+                       .longOpt("fill")
+                       .hasArg(true)
+                       .argName("MODE")
+                       .desc("What a bucket or GPU without samples gets: none (no row), empty (a row of missing values), "
+                             + "previous (the previous value) or zero. Default: none")
+                       .required(false)
+                       .build());
+    }
+
+
+    /**
+     * Returns the resampling given by {@code --bucket}, {@code --aggregate} and {@code --fill},
+     * or {@code null} after reporting an invalid value.
+     */
+    private static Resampling parseResampling(CommandLine cl) {
+        try {
+            return Resampling.parse(cl.getOptionValue("bucket"), cl.getOptionValue("aggregate"), cl.getOptionValue("fill"));
+        } catch (IllegalArgumentException e) {
+            System.err.println("Error: " + e.getMessage());
+            return null;
+        }
+    }
+
+
+    /**
+     * Adds the {@code --width} option of the chart commands.
+     */
+    private static void addWidthOption(Options opts) {
+        opts.addOption(Option.builder("w")
+                       .longOpt("width")
+                       .hasArg(true)
+                       .argName("PIXELS")
+                       .desc("Width of the chart. Runs recorded with --rollup are drawn from the coarsest "
+                             + "rollup tier that still gives a point per pixel. Default: " + GpuUsageChart.DEFAULT_WIDTH)
+                       .required(false)
+                       .build());
+    }
+
+
+    /**
+     * Returns the width given by {@code --width}, or {@code -1} after reporting an invalid value.
+     */
+    private static int parseWidth(CommandLine cl) {
+        try {
+            int width = Integer.parseInt(cl.getOptionValue("width", String.valueOf(GpuUsageChart.DEFAULT_WIDTH)));
+            if (width > 0) return width;
+        } catch (NumberFormatException e) {
+            // reported below
+        }
+        System.err.println("Error: Invalid width: " + cl.getOptionValue("width"));
+        return -1;
+    }
 }
@@ -0,0 +1,394 @@
+package com.github.oogasawa.benchmark.cuda;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import com.github.oogasawa.benchmark.util.TimestampParser;
+import tech.tablesaw.api.DoubleColumn;
+import tech.tablesaw.api.StringColumn;
+import tech.tablesaw.api.Table;
+
+/**
+ * Pivots the metrics of an {@code nvidia-smi} log in a single pass over its samples.
+ * <p>
+ * The samples are reduced into a {@code long[]} of bucket starts and a {@code double[]} per metric
+ * and GPU index, without building a table of the whole log; only the samples of the open bucket
+ * are kept besides the result. A timestamp is parsed only when its second differs from that of
+ * the previous row, and since {@code nvidia-smi} writes its samples in time order, a new bucket is
+ * always appended and no sort is needed. With {@link Resampling#DEFAULT}, the first sample of each
+ * second and GPU is kept as with the Tablesaw pivot, and the GPU columns are ordered by name.
+ * </p>
+ * <p>
+ * If a sample goes back in time, {@link #add(long, int, double[])} and
+ * {@link #pivot(BufferedReader, List, String, Resampling)} give up, and the caller falls back to
+ * the Tablesaw pivot, which sorts.
+ * </p>
+ */
+final class GpuMetricPivot {
+
+    private static final String IN_PATTERN = "yyyy/MM/dd HH:mm:ss.SSS";
+    private static final DateTimeFormatter OUT_FMT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    /** The length of {@code yyyy/MM/dd HH:mm:ss}, the part of a timestamp that names its second. */
+    private static final int SECOND_LENGTH = 19;
+
+    private final Resampling resampling;
+    private final int numMetrics;
+
+    /** The starts of the buckets of the rows, as local date-times counted in UTC so that they compare like the strings. */
+    private long[] seconds = new long[1024];
+    /** The values of each metric and GPU by index; {@code null} for an index not seen. */
+    private double[][][] values;
+    /** The samples of each GPU in the open bucket; {@code null} for an index not seen. */
+    private Samples[] open = new Samples[0];
+    private long bucket;
+    private boolean any = false;
+    private int rows = 0;
+
+    /**
+     * Creates an empty pivot.
+     *
+     * @param numMetrics the number of metrics of a sample
+     * @param resampling how the samples are reduced to rows
+     */
+    GpuMetricPivot(int numMetrics, Resampling resampling) {
+        this.numMetrics = numMetrics;
+        this.resampling = resampling;
+        this.values = new double[numMetrics][0][];
+    }
+
+    /**
+     * Pivots a metric of a CSV log.
+     *
+     * @param in the log, starting with its header
+     * @param metricColumn the normalized name of the metric (e.g., "utilization.gpu")
+     * @param tableName the name of the log, used in error messages
+     * @return the pivoted table, the same as the Tablesaw pivot gives, or {@code null} if the rows are not in time order
+     * @throws IOException if reading fails
+     * @throws IllegalStateException if the target column is missing
+     */
+    static Table pivot(BufferedReader in, String metricColumn, String tableName) throws IOException {
+        Map<String, Table> pivoted = pivot(in, List.of(metricColumn), tableName, Resampling.DEFAULT);
+        return pivoted == null ? null : pivoted.get(metricColumn);
+    }
+
+    /**
+     * Pivots several metrics of a CSV log at once.
+     *
+     * @param in the log, starting with its header
+     * @param metricColumns the normalized names of the metrics, or an empty list for every metric in the log
+     * @param tableName the name of the log, used in error messages
+     * @param resampling how the samples are reduced to rows
+     * @return the pivoted table of each metric in the order requested, or {@code null} if the rows are not in time order
+     * @throws IOException if reading fails
+     * @throws IllegalStateException if a target column is missing
+     */
+    static Map<String, Table> pivot(BufferedReader in, List<String> metricColumns, String tableName,
+                                    Resampling resampling) throws IOException {
+        String header = in.readLine();
+        List<String> columns = new ArrayList<>();
+        if (header != null) {
+            for (String name : header.split(",")) {
+                columns.add(GpuUsageFormatter.normalizeColumnName(name));
+            }
+        }
+        List<String> metrics = metricColumns.isEmpty() ? metrics(header) : metricColumns;
+        int[] metricFields = new int[metrics.size()];
+        for (int m = 0; m < metricFields.length; m++) {
+            metricFields[m] = columns.indexOf(metrics.get(m));
+            if (metricFields[m] < 0) {
+                throw new IllegalStateException("Column '" + metrics.get(m) + "' not found in table: " + tableName);
+            }
+        }
+        int timestampField = columns.indexOf("timestamp");
+        int indexField = columns.indexOf("index");
+        if (timestampField < 0 || indexField < 0) {
+            throw new IllegalStateException("Columns 'timestamp' and 'index' are required in table: " + tableName);
+        }
+        int lastField = Math.max(timestampField, indexField);
+        for (int field : metricFields) {
+            lastField = Math.max(lastField, field);
+        }
+
+        GpuMetricPivot pivot = new GpuMetricPivot(metricFields.length, resampling);
+        TimestampParser parser = new TimestampParser(IN_PATTERN);
+        String[] fields = new String[lastField + 1];
+        double[] sample = new double[metricFields.length];
+        String previous = null;
+        long second = 0;
+        String line;
+        while ((line = in.readLine()) != null) {
+            if (line.isBlank() || !split(line, fields)) continue;
+
+            String timestamp = fields[timestampField].trim();
+            if (previous == null || !timestamp.regionMatches(0, previous, 0, SECOND_LENGTH)) {
+                second = Math.floorDiv(parser.parseLocalMillis(timestamp), 1000);
+                previous = timestamp;
+            }
+            for (int m = 0; m < metricFields.length; m++) {
+                sample[m] = value(fields[metricFields[m]]);
+            }
+            if (!pivot.add(second, Integer.parseInt(fields[indexField].trim()), sample)) return null;
+        }
+        return pivot.tables(metrics);
+    }
+
+    /**
+     * Returns the normalized names of the metrics in the header of a log, i.e. every column but
+     * the tick, the timestamp and the GPU index.
+     */
+    static List<String> metrics(String header) {
+        List<String> metrics = new ArrayList<>();
+        if (header == null) return metrics;
+        for (String name : header.split(",")) {
+            String column = GpuUsageFormatter.normalizeColumnName(name);
+            if (!column.equals("tick") && !column.equals("timestamp") && !column.equals("index")) {
+                metrics.add(column);
+            }
+        }
+        return metrics;
+    }
+
+    /**
+     * Adds a sample of a GPU.
+     *
+     * @param second the second of the sample, as a local date-time counted in UTC
+     * @param gpu the index of the GPU
+     * @param sample the value of each metric; {@code NaN} if missing
+     * @return {@code false} if the sample is in a bucket before the open one
+     */
+    boolean add(long second, int gpu, double[] sample) {
+        long b = Math.floorDiv(second, resampling.bucketSeconds());
+        if (!any) {
+            bucket = b;
+            any = true;
+        } else if (b < bucket) {
+            return false;
+        } else if (b > bucket) {
+            closeBucket();
+            if (resampling.fill() != Resampling.GapFill.NONE) {
+                for (long gap = bucket + 1; gap < b; gap++) {
+                    appendRow(gap * resampling.bucketSeconds());
+                    for (int g = 0; g < open.length; g++) {
+                        if (open[g] != null) fillRow(g);
+                    }
+                }
+            }
+            bucket = b;
+        }
+        addGpu(gpu);
+        open[gpu].add(sample, resampling.aggregation() == Resampling.Aggregation.P95);
+        return true;
+    }
+
+    /**
+     * Closes the open bucket and returns the pivoted table of each metric.
+     *
+     * @param metrics the names of the metrics, in the order of the samples
+     */
+    Map<String, Table> tables(List<String> metrics) {
+        if (any) {
+            closeBucket();
+            any = false;
+        }
+        StringColumn ts = StringColumn.create("timestamp_clean");
+        for (int r = 0; r < rows; r++) {
+            ts.append(OUT_FMT.format(LocalDateTime.ofEpochSecond(seconds[r], 0, ZoneOffset.UTC)));
+        }
+        Map<String, Table> pivoted = new LinkedHashMap<>();
+        for (int m = 0; m < numMetrics; m++) {
+            pivoted.put(metrics.get(m), toTable(ts, values[m]));
+        }
+        return pivoted;
+    }
+
+    /**
+     * Splits the first {@code fields.length} fields of a line.
+     *
+     * @return {@code false} if the line has fewer fields
+     */
+    private static boolean split(String line, String[] fields) {
+        int start = 0;
+        for (int f = 0; f < fields.length; f++) {
+            if (start > line.length()) return false;
+            int end = line.indexOf(',', start);
+            if (end < 0) end = line.length();
+            fields[f] = line.substring(start, end);
+            start = end + 1;
+        }
+        return true;
+    }
+
+    /**
+     * Parses a value; an empty field is missing, and a unit such as {@code 56 %} is dropped.
+     */
+    private static double value(String field) {
+        String s = field.trim();
+        if (s.isEmpty()) return Double.NaN;
+        int space = s.indexOf(' ');
+        try {
+            return Double.parseDouble(space < 0 ? s : s.substring(0, space));
+        } catch (NumberFormatException e) {
+            return Double.NaN;   // [N/A], [Not Supported]
+        }
+    }
+
+    /**
+     * Writes the row of the open bucket.
+     */
+    private void closeBucket() {
+        appendRow(bucket * resampling.bucketSeconds());
+        for (int g = 0; g < open.length; g++) {
+            Samples samples = open[g];
+            if (samples == null) continue;
+            if (samples.count == 0) {
+                fillRow(g);
+                continue;
+            }
+            for (int m = 0; m < numMetrics; m++) {
+                values[m][g][rows - 1] = samples.result(m, resampling.aggregation());
+            }
+            samples.clear();
+        }
+    }
+
+    /**
+     * Fills the last row of a GPU without samples in its bucket.
+     */
+    private void fillRow(int gpu) {
+        int row = rows - 1;
+        for (int m = 0; m < numMetrics; m++) {
+            values[m][gpu][row] = switch (resampling.fill()) {
+                case PREVIOUS -> row > 0 ? values[m][gpu][row - 1] : Double.NaN;
+                case ZERO -> 0;
+                default -> Double.NaN;
+            };
+        }
+    }
+
+    private void appendRow(long second) {
+        if (rows == seconds.length) {
+            seconds = Arrays.copyOf(seconds, rows * 2);
+            for (double[][] metric : values) {
+                for (int g = 0; g < metric.length; g++) {
+                    if (metric[g] != null) metric[g] = grow(metric[g], seconds.length);
+                }
+            }
+        }
+        seconds[rows++] = second;
+    }
+
+    private void addGpu(int gpu) {
+        if (gpu >= open.length) {
+            open = Arrays.copyOf(open, gpu + 1);
+            for (int m = 0; m < numMetrics; m++) {
+                values[m] = Arrays.copyOf(values[m], gpu + 1);
+            }
+        }
+        if (open[gpu] == null) {
+            // A GPU that appears later in the log has no value in the rows before.
+            open[gpu] = new Samples(numMetrics);
+            for (double[][] metric : values) {
+                metric[gpu] = grow(new double[0], seconds.length);
+            }
+        }
+    }
+
+    private static double[] grow(double[] column, int length) {
+        int from = column.length;
+        double[] grown = Arrays.copyOf(column, length);
+        Arrays.fill(grown, from, length, Double.NaN);
+        return grown;
+    }
+
+    private Table toTable(StringColumn ts, double[][] metric) {
+        Table pivoted = Table.create("Pivot: timestamp_clean x gpu", ts.copy());
+
+        // The Tablesaw pivot orders the columns by name: GPU0, GPU1, GPU10, GPU2, ...
+        Map<String, double[]> gpus = new TreeMap<>();
+        for (int g = 0; g < metric.length; g++) {
+            if (metric[g] != null) gpus.put("GPU" + g, metric[g]);
+        }
+        for (Map.Entry<String, double[]> gpu : gpus.entrySet()) {
+            pivoted.addColumns(DoubleColumn.create(gpu.getKey(), Arrays.copyOf(gpu.getValue(), rows)));
+        }
+        return pivoted;
+    }
+
+    /**
+     * The samples of one GPU in the open bucket.
+     */
+    private static final class Samples {
+        int count;
+        final double[] first;
+        final double[] last;
+        final int[] n;
+        final double[] min;
+        final double[] max;
+        final double[] sum;
+        final double[][] values;
+
+        Samples(int numMetrics) {
+            this.first = new double[numMetrics];
+            this.last = new double[numMetrics];
+            this.n = new int[numMetrics];
+            this.min = new double[numMetrics];
+            this.max = new double[numMetrics];
+            this.sum = new double[numMetrics];
+            this.values = new double[numMetrics][];
+        }
+
+        void add(double[] sample, boolean keepValues) {
+            for (int m = 0; m < sample.length; m++) {
+                double value = sample[m];
+                if (count == 0) first[m] = value;
+                last[m] = value;
+                if (Double.isNaN(value)) continue;
+                int k = n[m];
+                if (k == 0 || value < min[m]) min[m] = value;
+                if (k == 0 || value > max[m]) max[m] = value;
+                sum[m] += value;
+                if (keepValues) {
+                    if (values[m] == null) values[m] = new double[16];
+                    if (k == values[m].length) values[m] = Arrays.copyOf(values[m], k * 2);
+                    values[m][k] = value;
+                }
+                n[m] = k + 1;
+            }
+            count++;
+        }
+
+        double result(int m, Resampling.Aggregation aggregation) {
+            if (aggregation == Resampling.Aggregation.FIRST) return first[m];
+            if (aggregation == Resampling.Aggregation.LAST) return last[m];
+            if (n[m] == 0) return Double.NaN;
+            return switch (aggregation) {
+                case MEAN -> sum[m] / n[m];
+                case MIN -> min[m];
+                case MAX -> max[m];
+                default -> p95(m);
+            };
+        }
+
+        /** Returns the 95th percentile by the nearest-rank method. */
+        double p95(int m) {
+            double[] v = values[m];
+            Arrays.sort(v, 0, n[m]);
+            return v[(int) Math.ceil(0.95 * n[m]) - 1];
+        }
+
+        void clear() {
+            count = 0;
+            Arrays.fill(n, 0);
+            Arrays.fill(sum, 0);
+        }
+    }
+}
@@ -14,9 +14,16 @@ import java.util.List;
 
 public class GpuUsageChart {
 
+    /** The width of a chart in pixels unless given. */
+    public static final int DEFAULT_WIDTH = 800;
+
     public static void draw(Table table, Path outputPng, String title) throws IOException {
+        draw(table, outputPng, title, DEFAULT_WIDTH);
+    }
+
+    public static void draw(Table table, Path outputPng, String title, int width) throws IOException {
         CategoryChart chart = new CategoryChartBuilder()
-            .width(800)
+            .width(width)
             .height(600)
             .title(title)
             .xAxisTitle("Timestamp")
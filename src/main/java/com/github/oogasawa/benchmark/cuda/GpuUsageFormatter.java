@@ -1,15 +1,43 @@
 package com.github.oogasawa.benchmark.cuda;
 
+import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.Reader;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import com.github.oogasawa.benchmark.NvidiaSmiGpuSource;
+import com.github.oogasawa.benchmark.metric.MetricSchema;
+import com.github.oogasawa.benchmark.metric.RollupReader;
+import com.github.oogasawa.benchmark.metric.SegmentIndex;
+import com.github.oogasawa.benchmark.store.ColumnarRunReader;
+import com.github.oogasawa.benchmark.util.OutputFiles;
+import com.github.oogasawa.benchmark.util.TimeWindow;
+import com.github.oogasawa.benchmark.util.TimestampParser;
 import tech.tablesaw.aggregate.AggregateFunctions;
+import tech.tablesaw.api.ColumnType;
+import tech.tablesaw.api.DoubleColumn;
 import tech.tablesaw.api.StringColumn;
 import tech.tablesaw.api.Table;
 import tech.tablesaw.io.csv.CsvReadOptions;
 import tech.tablesaw.io.csv.CsvWriteOptions;
+import tech.tablesaw.selection.BitmapBackedSelection;
+import tech.tablesaw.selection.Selection;
 
 
 /**
@@ -73,8 +101,33 @@ public class GpuUsageFormatter {
      * @throws IOException if reading the CSV fails
      */
     public static Table gpuUsage(Path nvidiaSmiLog, Path outfile) {
+        return gpuUsage(nvidiaSmiLog, outfile, TimeWindow.ALL);
+    }
+
+    /**
+     * Generate a GPU usage table for the part of a run that falls in a time window and write to CSV.
+     *
+     * @param nvidiaSmiLog the input {@code .nvidia-smi.out} CSV log file, segmented output or run file
+     * @param outfile the output CSV file path
+     * @param window the part of the run to read
+     * @return a {@link Table} object in wide format with one column per GPU and one row per timestamp
+     */
+    public static Table gpuUsage(Path nvidiaSmiLog, Path outfile, TimeWindow window) {
+        return gpuUsage(nvidiaSmiLog, outfile, window, Resampling.DEFAULT);
+    }
+
+    /**
+     * Generate a GPU usage table for the part of a run that falls in a time window, resampled, and write to CSV.
+     *
+     * @param nvidiaSmiLog the input {@code .nvidia-smi.out} CSV log file, segmented output or run file
+     * @param outfile the output CSV file path
+     * @param window the part of the run to read
+     * @param resampling how the samples are reduced to rows
+     * @return a {@link Table} object in wide format with one column per GPU and one row per bucket
+     */
+    public static Table gpuUsage(Path nvidiaSmiLog, Path outfile, TimeWindow window, Resampling resampling) {
         try {
-            Table result = pivotGpuMetric(nvidiaSmiLog, "utilization.gpu");
+            Table result = pivotGpuMetric(nvidiaSmiLog, "utilization.gpu", window, resampling);
             result.write().csv(outfile.toFile());
             return result;
         } catch (IOException e) {
@@ -123,8 +176,33 @@ public class GpuUsageFormatter {
      * @return a {@link Table} object in wide format with one column per GPU and one row per timestamp
      */
     public static Table gpuMemoryUsage(Path nvidiaSmiLog, Path outfile)  {
+        return gpuMemoryUsage(nvidiaSmiLog, outfile, TimeWindow.ALL);
+    }
+
+    /**
+     * Generate a GPU memory usage table for the part of a run that falls in a time window and write to CSV.
+     *
+     * @param nvidiaSmiLog the input {@code .nvidia-smi.out} CSV log file, segmented output or run file
+     * @param outfile the output CSV file path
+     * @param window the part of the run to read
+     * @return a {@link Table} object in wide format with one column per GPU and one row per timestamp
+     */
+    public static Table gpuMemoryUsage(Path nvidiaSmiLog, Path outfile, TimeWindow window)  {
+        return gpuMemoryUsage(nvidiaSmiLog, outfile, window, Resampling.DEFAULT);
+    }
+
+    /**
+     * Generate a GPU memory usage table for the part of a run that falls in a time window, resampled, and write to CSV.
+     *
+     * @param nvidiaSmiLog the input {@code .nvidia-smi.out} CSV log file, segmented output or run file
+     * @param outfile the output CSV file path
+     * @param window the part of the run to read
+     * @param resampling how the samples are reduced to rows
+     * @return a {@link Table} object in wide format with one column per GPU and one row per bucket
+     */
+    public static Table gpuMemoryUsage(Path nvidiaSmiLog, Path outfile, TimeWindow window, Resampling resampling)  {
         try {
-            Table result = pivotGpuMetric(nvidiaSmiLog, "memory.used");
+            Table result = pivotGpuMetric(nvidiaSmiLog, "memory.used", window, resampling);
             result.write().csv(outfile.toFile());
             return result;
         } catch (IOException e) {
@@ -195,12 +273,67 @@ public class GpuUsageFormatter {
      * @throws IllegalStateException if the target column is missing
      */
     public static Table pivotGpuMetric(Path nvidiaSmiLog, String metricColumn) throws IOException {
+        return pivotGpuMetric(nvidiaSmiLog, metricColumn, TimeWindow.ALL);
+    }
 
-        // Read CSV file
-        CsvReadOptions options = CsvReadOptions.builder(nvidiaSmiLog.toFile())
-            .separator(',').header(true).build();
+    /**
+     * Pivots a GPU metric like {@link #pivotGpuMetric(Path, String)}, reading only the rows in a time window.
+     * <p>
+     * Of a segmented output ({@code run1.nvidia-smi.out.index}), only the segments that overlap
+     * the window are read. The log is pivoted in a single pass by {@link GpuMetricPivot}, so the
+     * memory needed is that of the result and not of the whole log. A file that is already
+     * pivoted, as written by {@code format:gpu} or {@code format:gpuAll}, is read as it is.
+     * </p>
+     *
+     * @param nvidiaSmiLog the input nvidia-smi CSV file, segmented output, run file or pivoted file
+     * @param metricColumn the column name to pivot (e.g., "utilization.gpu" or "memory.used")
+     * @param window the part of the run to read
+     * @return pivoted wide-format table
+     * @throws IOException if reading fails
+     * @throws IllegalStateException if the target column is missing
+     */
+    public static Table pivotGpuMetric(Path nvidiaSmiLog, String metricColumn, TimeWindow window) throws IOException {
+        return pivotGpuMetric(nvidiaSmiLog, metricColumn, window, Resampling.DEFAULT);
+    }
+
+    /**
+     * Pivots a GPU metric like {@link #pivotGpuMetric(Path, String, TimeWindow)}, with a row per
+     * bucket of the resampling instead of per second.
+     *
+     * @param nvidiaSmiLog the input nvidia-smi CSV file, segmented output, run file or pivoted file
+     * @param metricColumn the column name to pivot (e.g., "utilization.gpu" or "memory.used")
+     * @param window the part of the run to read
+     * @param resampling how the samples are reduced to rows
+     * @return pivoted wide-format table
+     * @throws IOException if reading fails
+     * @throws IllegalStateException if the target column is missing, or the input cannot be resampled
+     */
+    public static Table pivotGpuMetric(Path nvidiaSmiLog, String metricColumn, TimeWindow window, Resampling resampling) throws IOException {
+        return pivotGpuMetrics(nvidiaSmiLog, List.of(metricColumn), window, resampling).get(metricColumn);
+    }
+
+
+
+    /**
+     * Pivots a GPU metric of a CSV log with Tablesaw, for logs whose rows are not in time order.
+     *
+     * @param nvidiaSmiLog the input nvidia-smi CSV file or segmented output
+     * @param metricColumn the column name to pivot (e.g., "utilization.gpu" or "memory.used")
+     * @param window the part of the run to read
+     * @return pivoted wide-format table
+     * @throws IOException if reading fails
+     * @throws IllegalStateException if the target column is missing
+     */
+    static Table pivotCsvMetric(Path nvidiaSmiLog, String metricColumn, TimeWindow window) throws IOException {
 
-        Table df = Table.read().usingOptions(options);
+        // Read CSV file
+        Table df;
+        try (Reader in = SegmentIndex.openWindow(nvidiaSmiLog, window)) {
+            CsvReadOptions options = CsvReadOptions.builder(in)
+                .tableName(nvidiaSmiLog.getFileName().toString())
+                .separator(',').header(true).build();
+            df = Table.read().usingOptions(options);
+        }
 
         // Normalize column names
         df.columnNames().forEach(name -> {
@@ -220,11 +353,11 @@ public class GpuUsageFormatter {
         }
 
         // Clean and format timestamp
-        DateTimeFormatter inFmt = DateTimeFormatter.ofPattern("yyyy/MM/dd HH:mm:ss.SSS");
+        TimestampParser inParser = new TimestampParser("yyyy/MM/dd HH:mm:ss.SSS");
         DateTimeFormatter outFmt = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
 
         StringColumn ts = df.stringColumn("timestamp")
-            .map(s -> outFmt.format(inFmt.parse(s.trim())))
+            .map(s -> outFmt.format(inParser.parseLocalDateTime(s.trim())))
             .setName("timestamp_clean");
 
         df.addColumns(ts);
@@ -249,6 +382,476 @@ public class GpuUsageFormatter {
 
 
 
+    /**
+     * Pivots a GPU metric for a chart that is {@code width} points wide.
+     * <p>
+     * If the log has rollup tiers ({@code run1.nvidia-smi.rollup-10s.out}, ...), the coarsest tier
+     * that still gives {@code width} points in the window is read instead of the raw samples, and
+     * each row holds the mean of the metric over its bucket. Otherwise this is
+     * {@link #pivotGpuMetric(Path, String, TimeWindow)}.
+     * </p>
+     *
+     * @param nvidiaSmiLog the input nvidia-smi CSV file, segmented output or run file
+     * @param metricColumn the column name to pivot (e.g., "utilization.gpu" or "memory.used")
+     * @param window the part of the run to read
+     * @param width the number of points the chart can show
+     * @return pivoted wide-format table
+     * @throws IOException if reading fails
+     */
+    public static Table pivotGpuMetric(Path nvidiaSmiLog, String metricColumn, TimeWindow window, int width) throws IOException {
+        return pivotGpuMetric(nvidiaSmiLog, metricColumn, window, width, Resampling.DEFAULT);
+    }
+
+    /**
+     * Pivots a GPU metric for a chart that is {@code width} points wide, resampled.
+     * <p>
+     * Rollup tiers are only read with {@link Resampling#DEFAULT}; with any other resampling the
+     * raw samples are reduced as requested.
+     * </p>
+     *
+     * @param nvidiaSmiLog the input nvidia-smi CSV file, segmented output or run file
+     * @param metricColumn the column name to pivot (e.g., "utilization.gpu" or "memory.used")
+     * @param window the part of the run to read
+     * @param width the number of points the chart can show
+     * @param resampling how the samples are reduced to rows
+     * @return pivoted wide-format table
+     * @throws IOException if reading fails
+     */
+    public static Table pivotGpuMetric(Path nvidiaSmiLog, String metricColumn, TimeWindow window, int width,
+                                       Resampling resampling) throws IOException {
+        if (resampling.isDefault() && !ColumnarRunReader.isRunFile(nvidiaSmiLog) && !isPivoted(nvidiaSmiLog)) {
+            Path tier = RollupReader.select(nvidiaSmiLog, window, width);
+            if (tier != null) {
+                logger.info(String.format("Reading rollup tier %s", tier));
+                return pivotRollupMetric(tier, metricColumn, window);
+            }
+        }
+        return pivotGpuMetric(nvidiaSmiLog, metricColumn, window, resampling);
+    }
+
+
+
+    /**
+     * Pivots several GPU metrics of a log at once, reading the log only once.
+     * <p>
+     * Each table is the one {@link #pivotGpuMetric(Path, String, TimeWindow, Resampling)} gives for its metric,
+     * so all tables have the same rows.
+     * </p>
+     *
+     * @param nvidiaSmiLog the input nvidia-smi CSV file, segmented output, run file, or for a
+     *                     single metric a pivoted file
+     * @param metricColumns the metrics to pivot, or an empty list for every metric in the log
+     * @param window the part of the run to read
+     * @param resampling how the samples are reduced to rows
+     * @return the pivoted table of each metric, in the order of {@code metricColumns} or of the log
+     * @throws IOException if reading fails
+     * @throws IllegalStateException if a target column is missing, or the input cannot be resampled
+     */
+    public static Map<String, Table> pivotGpuMetrics(Path nvidiaSmiLog, List<String> metricColumns, TimeWindow window,
+                                                     Resampling resampling) throws IOException {
+        Map<String, Table> pivoted = new LinkedHashMap<>();
+        if (ColumnarRunReader.isRunFile(nvidiaSmiLog)) {
+            List<String> metrics = metricColumns;
+            if (metrics.isEmpty()) {
+                try (ColumnarRunReader reader = ColumnarRunReader.open(nvidiaSmiLog)) {
+                    MetricSchema schema = reader.schema(NvidiaSmiGpuSource.SOURCE);
+                    metrics = schema == null ? List.of()
+                        : schema.getMetrics().stream().map(MetricSchema.Metric::name).toList();
+                }
+            }
+            for (String metric : metrics) {
+                pivoted.put(metric, pivotRunMetric(nvidiaSmiLog, metric, window, resampling));
+            }
+            return pivoted;
+        }
+        if (isPivoted(nvidiaSmiLog)) {
+            if (metricColumns.size() != 1 || !resampling.isDefault()) {
+                throw new IllegalStateException("A pivoted file holds a single metric and cannot be resampled: " + nvidiaSmiLog);
+            }
+            logger.info(String.format("Reading %s, already pivoted", nvidiaSmiLog));
+            pivoted.put(metricColumns.get(0), readPivoted(nvidiaSmiLog, window));
+            return pivoted;
+        }
+
+        // Pivot in one pass; logs that are not in time order need the sort of the Tablesaw pivot.
+        try (BufferedReader in = SegmentIndex.openWindow(nvidiaSmiLog, window)) {
+            Map<String, Table> tables = GpuMetricPivot.pivot(in, metricColumns, nvidiaSmiLog.getFileName().toString(), resampling);
+            if (tables != null) return tables;
+        }
+        if (!resampling.isDefault()) {
+            throw new IllegalStateException("Rows of " + nvidiaSmiLog + " are not in time order and cannot be resampled");
+        }
+        logger.info(String.format("Rows of %s are not in time order; sorting them", nvidiaSmiLog));
+        List<String> metrics = metricColumns;
+        if (metrics.isEmpty()) {
+            try (BufferedReader in = SegmentIndex.openWindow(nvidiaSmiLog, window)) {
+                metrics = GpuMetricPivot.metrics(in.readLine());
+            }
+        }
+        for (String metric : metrics) {
+            pivoted.put(metric, pivotCsvMetric(nvidiaSmiLog, metric, window));
+        }
+        return pivoted;
+    }
+
+
+
+    /**
+     * Generates the tables of several GPU metrics in one pass over a log and writes one CSV file
+     * per metric, e.g. {@code run1.nvidia-smi.utilization.gpu.csv} for {@code run1.nvidia-smi.out}.
+     *
+     * @param nvidiaSmiLog the input nvidia-smi CSV file, segmented output or run file
+     * @param metricColumns the metrics to write, or an empty list for every metric in the log
+     * @param window the part of the run to read
+     * @param resampling how the samples are reduced to rows
+     * @param outdir the directory of the output files
+     * @return the output file of each metric
+     * @throws IOException if reading or writing fails
+     */
+    public static Map<String, Path> gpuAll(Path nvidiaSmiLog, List<String> metricColumns, TimeWindow window,
+                                           Resampling resampling, Path outdir) throws IOException {
+        Map<String, Path> outfiles = new LinkedHashMap<>();
+        for (Map.Entry<String, Table> entry : pivotGpuMetrics(nvidiaSmiLog, metricColumns, window, resampling).entrySet()) {
+            Path outfile = outdir.resolve(basename(nvidiaSmiLog) + "." + entry.getKey() + ".csv");
+            entry.getValue().write().csv(outfile.toFile());
+            outfiles.put(entry.getKey(), outfile);
+        }
+        return outfiles;
+    }
+
+
+
+    /**
+     * Generates the tables of several GPU metrics in one pass over a log and writes them as one
+     * CSV file with a row per timestamp and GPU and a column per metric.
+     *
+     * <p>Example output:</p>
+     * <pre>
+     * timestamp_clean,gpu,utilization.gpu,memory.used
+     * 2025-07-04 22:57:22,GPU0,0.0,1.0
+     * 2025-07-04 22:57:22,GPU1,0.0,1.0
+     * 2025-07-04 22:57:27,GPU0,50.0,25037.0
+     * </pre>
+     *
+     * @param nvidiaSmiLog the input nvidia-smi CSV file, segmented output or run file
+     * @param metricColumns the metrics to write, or an empty list for every metric in the log
+     * @param window the part of the run to read
+     * @param resampling how the samples are reduced to rows
+     * @param outfile the output CSV file path
+     * @return the combined table
+     * @throws IOException if reading or writing fails
+     */
+    public static Table gpuAllCombined(Path nvidiaSmiLog, List<String> metricColumns, TimeWindow window,
+                                       Resampling resampling, Path outfile) throws IOException {
+        Table combined = combine(nvidiaSmiLog.getFileName().toString(),
+                                 pivotGpuMetrics(nvidiaSmiLog, metricColumns, window, resampling));
+        combined.write().csv(outfile.toFile());
+        return combined;
+    }
+
+
+
+    /**
+     * Stacks the tables of {@link #pivotGpuMetrics(Path, List, TimeWindow, Resampling)} into one table indexed
+     * by timestamp and GPU. A GPU without any value at a timestamp gets no row.
+     */
+    static Table combine(String name, Map<String, Table> tables) {
+        StringColumn ts = StringColumn.create("timestamp_clean");
+        StringColumn gpuCol = StringColumn.create("gpu");
+        List<DoubleColumn> metricCols = new ArrayList<>();
+        for (String metric : tables.keySet()) {
+            metricCols.add(DoubleColumn.create(metric));
+        }
+        if (!tables.isEmpty()) {
+            Table first = tables.values().iterator().next();
+            List<String> gpus = first.columnNames().subList(1, first.columnCount());
+            List<Table> pivoted = new ArrayList<>(tables.values());
+            for (int row = 0; row < first.rowCount(); row++) {
+                for (String gpu : gpus) {
+                    double[] values = new double[pivoted.size()];
+                    boolean any = false;
+                    for (int m = 0; m < values.length; m++) {
+                        Table table = pivoted.get(m);
+                        values[m] = table.containsColumn(gpu) ? table.doubleColumn(gpu).getDouble(row) : Double.NaN;
+                        any |= !Double.isNaN(values[m]);
+                    }
+                    if (!any) continue;
+                    ts.append(first.stringColumn("timestamp_clean").get(row));
+                    gpuCol.append(gpu);
+                    for (int m = 0; m < values.length; m++) {
+                        metricCols.get(m).append(values[m]);
+                    }
+                }
+            }
+        }
+        Table combined = Table.create(name, ts, gpuCol);
+        metricCols.forEach(combined::addColumns);
+        return combined;
+    }
+
+
+
+    /**
+     * Returns whether a file is a table written by {@code format:gpu}, {@code format:gpuMemory} or
+     * {@code format:gpuAll} rather than a log, i.e. whether its header starts with {@code timestamp_clean}.
+     *
+     * @param file the file to check
+     * @return {@code true} if the file is already pivoted
+     * @throws IOException if the file cannot be read
+     */
+    public static boolean isPivoted(Path file) throws IOException {
+        if (!Files.isRegularFile(file)) return false;
+        try (BufferedReader in = OutputFiles.newBufferedReader(file)) {
+            String header = in.readLine();
+            return header != null && header.startsWith("timestamp_clean,");
+        }
+    }
+
+
+
+    /**
+     * Reads a table written by {@code format:gpu} or {@code format:gpuAll}, keeping the rows in a window.
+     * A relative window starts at the first row.
+     *
+     * @param pivotedFile the pivoted CSV file
+     * @param window the part of the run to read
+     * @return pivoted wide-format table
+     * @throws IOException if reading fails
+     */
+    static Table readPivoted(Path pivotedFile, TimeWindow window) throws IOException {
+        Table table;
+        try (Reader in = OutputFiles.newBufferedReader(pivotedFile)) {
+            CsvReadOptions options = CsvReadOptions.builder(in)
+                .tableName(pivotedFile.getFileName().toString())
+                .columnTypes(name -> name.equals("timestamp_clean") ? ColumnType.STRING : ColumnType.DOUBLE)
+                .separator(',').header(true).build();
+            table = Table.read().usingOptions(options);
+        }
+        if (window.isAll() || table.rowCount() == 0) return table;
+
+        TimestampParser parser = new TimestampParser("yyyy-MM-dd HH:mm:ss");
+        StringColumn ts = table.stringColumn("timestamp_clean");
+        long[] millis = new long[ts.size()];
+        for (int row = 0; row < millis.length; row++) {
+            millis[row] = parser.parseEpochMillis(ts.get(row));
+        }
+        TimeWindow resolved = window.resolve(millis[0]);
+        Selection rows = new BitmapBackedSelection();
+        for (int row = 0; row < millis.length; row++) {
+            if (resolved.contains(millis[row])) rows.add(row);
+        }
+        return table.where(rows);
+    }
+
+
+
+    /**
+     * Returns the name of a log without its extension, e.g. {@code run1.nvidia-smi} for {@code run1.nvidia-smi.out.gz}.
+     */
+    private static String basename(Path nvidiaSmiLog) {
+        String name = OutputFiles.stripGzipSuffix(nvidiaSmiLog.getFileName().toString());
+        int dotIndex = name.lastIndexOf('.');
+        return dotIndex > 0 ? name.substring(0, dotIndex) : name;
+    }
+
+
+
+    /**
+     * Builds the same wide-format table as {@link #pivotGpuMetric(Path, String)} from the
+     * {@code nvidia-smi} series of a columnar run file ({@code basename.run}).
+     * <p>
+     * The values are read directly from the series of each GPU, without parsing text.
+     * As with the CSV input, the first sample of each second and GPU is kept, and ticks on
+     * which {@code nvidia-smi} reported nothing new give no sample.
+     * </p>
+     *
+     * @param runFile the run file written by {@code benchmark:run --output-format run}
+     * @param metricColumn the metric to pivot (e.g., "utilization.gpu" or "memory.used")
+     * @param window the part of the run to read
+     * @return pivoted wide-format table
+     * @throws IOException if reading fails
+     * @throws IllegalStateException if the run file has no such metric
+     */
+    static Table pivotRunMetric(Path runFile, String metricColumn, TimeWindow window) throws IOException {
+        try (ColumnarRunReader reader = ColumnarRunReader.open(runFile)) {
+            MetricSchema schema = reader.schema(NvidiaSmiGpuSource.SOURCE);
+            if (schema == null || schema.indexOf(metricColumn) < 0) {
+                throw new IllegalStateException("Metric '" + metricColumn + "' not found in run file: " + runFile);
+            }
+
+            long[] ticks = reader.ticks(NvidiaSmiGpuSource.SOURCE);
+            long[] millis = reader.epochMillis(NvidiaSmiGpuSource.SOURCE, ticks);
+            long first = ticks.length == 0 ? 0 : ticks[0];
+            long length = ticks.length == 0 ? 0 : ticks[ticks.length - 1] - first + 1;
+
+            List<ColumnarRunReader.SeriesInfo> gpus = new ArrayList<>(reader.series(NvidiaSmiGpuSource.SOURCE, metricColumn));
+            gpus.sort(Comparator.comparingInt(s -> Integer.parseInt(s.labels().get(0))));
+            double[][] values = new double[gpus.size()][];
+            boolean[][] present = new boolean[gpus.size()][];
+            for (int g = 0; g < values.length; g++) {
+                values[g] = reader.values(gpus.get(g), first, length);
+                present[g] = rowsPresent(reader, gpus.get(g).labels(), first, length);
+            }
+
+            // One row per second with a sample; each GPU takes its first sample in the second.
+            StringColumn ts = StringColumn.create("timestamp_clean");
+            DoubleColumn[] cols = new DoubleColumn[gpus.size()];
+            for (int g = 0; g < cols.length; g++) {
+                cols[g] = DoubleColumn.create("GPU" + gpus.get(g).labels().get(0));
+            }
+            boolean[] taken = new boolean[gpus.size()];
+            DateTimeFormatter outFmt = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss")
+                .withZone(ZoneId.systemDefault());
+            String previous = null;
+            TimeWindow resolved = window.resolve(ticks.length == 0 ? 0 : millis[0]);
+            for (int t = 0; t < ticks.length; t++) {
+                int index = (int) (ticks[t] - first);
+                if (!resolved.contains(millis[t]) || !anyPresent(present, index)) continue;
+                String second = outFmt.format(Instant.ofEpochMilli(millis[t]));
+                if (!second.equals(previous)) {
+                    ts.append(second);
+                    for (int g = 0; g < cols.length; g++) {
+                        cols[g].appendMissing();
+                    }
+                    Arrays.fill(taken, false);
+                    previous = second;
+                }
+                for (int g = 0; g < cols.length; g++) {
+                    if (taken[g] || !present[g][index]) continue;
+                    cols[g].set(cols[g].size() - 1, values[g][index]);
+                    taken[g] = true;
+                }
+            }
+
+            Table pivoted = Table.create(runFile.getFileName().toString(), ts);
+            pivoted.addColumns(cols);
+            return pivoted;
+        }
+    }
+
+
+
+    /**
+     * Builds the table of {@link #pivotGpuMetric(Path, String, TimeWindow, Resampling)} from the
+     * {@code nvidia-smi} series of a columnar run file.
+     *
+     * @param runFile the run file written by {@code benchmark:run --output-format run}
+     * @param metricColumn the metric to pivot (e.g., "utilization.gpu" or "memory.used")
+     * @param window the part of the run to read
+     * @param resampling how the samples are reduced to rows
+     * @return pivoted wide-format table
+     * @throws IOException if reading fails
+     * @throws IllegalStateException if the run file has no such metric
+     */
+    static Table pivotRunMetric(Path runFile, String metricColumn, TimeWindow window, Resampling resampling) throws IOException {
+        if (resampling.isDefault()) {
+            return pivotRunMetric(runFile, metricColumn, window);
+        }
+        try (ColumnarRunReader reader = ColumnarRunReader.open(runFile)) {
+            MetricSchema schema = reader.schema(NvidiaSmiGpuSource.SOURCE);
+            if (schema == null || schema.indexOf(metricColumn) < 0) {
+                throw new IllegalStateException("Metric '" + metricColumn + "' not found in run file: " + runFile);
+            }
+
+            long[] ticks = reader.ticks(NvidiaSmiGpuSource.SOURCE);
+            long[] millis = reader.epochMillis(NvidiaSmiGpuSource.SOURCE, ticks);
+            long first = ticks.length == 0 ? 0 : ticks[0];
+            long length = ticks.length == 0 ? 0 : ticks[ticks.length - 1] - first + 1;
+            List<ColumnarRunReader.SeriesInfo> series = reader.series(NvidiaSmiGpuSource.SOURCE, metricColumn);
+            int[] gpus = new int[series.size()];
+            double[][] values = new double[series.size()][];
+            boolean[][] present = new boolean[series.size()][];
+            for (int g = 0; g < gpus.length; g++) {
+                gpus[g] = Integer.parseInt(series.get(g).labels().get(0));
+                values[g] = reader.values(series.get(g), first, length);
+                present[g] = rowsPresent(reader, series.get(g).labels(), first, length);
+            }
+
+            GpuMetricPivot pivot = new GpuMetricPivot(1, resampling);
+            double[] sample = new double[1];
+            ZoneId zone = ZoneId.systemDefault();
+            TimeWindow resolved = window.resolve(ticks.length == 0 ? 0 : millis[0]);
+            for (int t = 0; t < ticks.length; t++) {
+                if (!resolved.contains(millis[t])) continue;
+                long second = LocalDateTime.ofInstant(Instant.ofEpochMilli(millis[t]), zone).toEpochSecond(ZoneOffset.UTC);
+                for (int g = 0; g < gpus.length; g++) {
+                    if (!present[g][(int) (ticks[t] - first)]) continue;
+                    sample[0] = values[g][(int) (ticks[t] - first)];
+                    if (!pivot.add(second, gpus[g], sample)) {
+                        throw new IllegalStateException("Samples of " + runFile + " go back in local time and cannot be resampled");
+                    }
+                }
+            }
+            return pivot.tables(List.of(metricColumn)).get(metricColumn);
+        }
+    }
+
+
+
+    /**
+     * Returns the ticks on which a GPU has a row in a run file, i.e. any of its metrics has a value.
+     */
+    private static boolean[] rowsPresent(ColumnarRunReader reader, List<String> gpu, long first, long length) {
+        boolean[] present = new boolean[(int) length];
+        int numMetrics = reader.schema(NvidiaSmiGpuSource.SOURCE).getMetrics().size();
+        for (int m = 0; m < numMetrics; m++) {
+            ColumnarRunReader.SeriesInfo series = reader.series(NvidiaSmiGpuSource.SOURCE, gpu, m);
+            if (series == null) continue;
+            double[] values = reader.values(series, first, length);
+            for (int i = 0; i < values.length; i++) {
+                if (!Double.isNaN(values[i])) present[i] = true;
+            }
+        }
+        return present;
+    }
+
+    private static boolean anyPresent(boolean[][] present, int index) {
+        for (boolean[] gpu : present) {
+            if (gpu[index]) return true;
+        }
+        return false;
+    }
+
+
+
+    /**
+     * Builds the wide-format table of {@link #pivotGpuMetric(Path, String)} from a rollup tier,
+     * with one row per bucket holding the mean of each GPU.
+     *
+     * @param tier the tier file selected by {@link RollupReader#select(Path, TimeWindow, int)}
+     * @param metricColumn the metric to pivot (e.g., "utilization.gpu" or "memory.used")
+     * @param window the part of the run to read
+     * @return pivoted wide-format table
+     * @throws IOException if reading fails
+     */
+    static Table pivotRollupMetric(Path tier, String metricColumn, TimeWindow window) throws IOException {
+        DateTimeFormatter outFmt = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss")
+            .withZone(ZoneId.systemDefault());
+        Map<String, Map<String, Double>> rows = new LinkedHashMap<>();
+        Set<Integer> indexes = new TreeSet<>();
+        RollupReader.read(tier, window, metricColumn, bucket -> {
+                String gpu = bucket.labels().get(0).trim();
+                indexes.add(Integer.parseInt(gpu));
+                rows.computeIfAbsent(outFmt.format(Instant.ofEpochMilli(bucket.epochMillis())), k -> new HashMap<>())
+                    .put("GPU" + gpu, bucket.mean());
+            });
+
+        StringColumn ts = StringColumn.create("timestamp_clean", rows.keySet());
+        Table pivoted = Table.create(tier.getFileName().toString(), ts);
+        for (int index : indexes) {
+            DoubleColumn col = DoubleColumn.create("GPU" + index);
+            for (Map<String, Double> row : rows.values()) {
+                Double value = row.get("GPU" + index);
+                if (value == null) col.appendMissing();
+                else col.append(value);
+            }
+            pivoted.addColumns(col);
+        }
+        return pivoted;
+    }
+
+
+
     /**
      * Normalizes a raw column name by applying consistent formatting rules.
      *
@@ -0,0 +1,86 @@
+package com.github.oogasawa.benchmark.cuda;
+
+import java.util.Locale;
+import com.github.oogasawa.benchmark.util.TimeWindow;
+
+/**
+ * How the samples of a GPU log are reduced to the rows of a pivoted table.
+ * <p>
+ * The samples are grouped into buckets of {@code bucketSeconds}, aligned to the clock
+ * (a 5-second bucket starts at :00, :05, ...), and each bucket gives one row labelled with
+ * its start. The samples of a GPU in a bucket are reduced with the {@link Aggregation}, and
+ * buckets or GPUs without samples are filled as the {@link GapFill} says.
+ * {@link #DEFAULT} keeps the first sample of every second and leaves out seconds without samples,
+ * which is what {@code format:gpu} has always done.
+ * </p>
+ *
+ * @param bucketSeconds the width of a bucket in seconds
+ * @param aggregation how the samples in a bucket are reduced
+ * @param fill what a bucket or GPU without samples gets
+ */
+public record Resampling(long bucketSeconds, Aggregation aggregation, GapFill fill) {
+
+    /** The first sample of every second, without gap filling. */
+    public static final Resampling DEFAULT = new Resampling(1, Aggregation.FIRST, GapFill.NONE);
+
+    /**
+     * How the samples of a GPU in a bucket are reduced.
+     * {@code FIRST} and {@code LAST} take a sample as it is, even if it is missing; the others skip missing samples.
+     */
+    public enum Aggregation { FIRST, LAST, MEAN, MIN, MAX, P95 }
+
+    /**
+     * What a bucket without samples, or a GPU without samples in a bucket, gets.
+     * <ul>
+     * <li>{@code NONE}: no row for a bucket without samples, and a missing value for a GPU</li>
+     * <li>{@code EMPTY}: a row of missing values for every bucket between the first and the last</li>
+     * <li>{@code PREVIOUS}: the previous value of the GPU</li>
+     * <li>{@code ZERO}: zero</li>
+     * </ul>
+     */
+    public enum GapFill { NONE, EMPTY, PREVIOUS, ZERO }
+
+    public Resampling {
+        if (bucketSeconds <= 0) {
+            throw new IllegalArgumentException("Bucket must be at least one second: " + bucketSeconds);
+        }
+    }
+
+    /**
+     * Returns whether this is {@link #DEFAULT}.
+     */
+    public boolean isDefault() {
+        return equals(DEFAULT);
+    }
+
+    /**
+     * Parses the {@code --bucket}, {@code --aggregate} and {@code --fill} options; a {@code null} keeps the default.
+     *
+     * @param bucket a duration of whole seconds (e.g. {@code 5s}, {@code 1m})
+     * @param aggregation {@code first}, {@code last}, {@code mean}, {@code min}, {@code max} or {@code p95}
+     * @param fill {@code none}, {@code empty}, {@code previous} or {@code zero}
+     * @return the resampling
+     * @throws IllegalArgumentException if a value is invalid
+     */
+    public static Resampling parse(String bucket, String aggregation, String fill) {
+        long bucketSeconds = DEFAULT.bucketSeconds;
+        if (bucket != null) {
+            long millis = TimeWindow.parseDurationMillis(bucket);
+            if (millis <= 0 || millis % 1000 != 0) {
+                throw new IllegalArgumentException("Bucket must be a whole number of seconds: " + bucket);
+            }
+            bucketSeconds = millis / 1000;
+        }
+        return new Resampling(bucketSeconds,
+                aggregation == null ? DEFAULT.aggregation : parseEnum(Aggregation.class, aggregation, "aggregation"),
+                fill == null ? DEFAULT.fill : parseEnum(GapFill.class, fill, "gap fill"));
+    }
+
+    private static <E extends Enum<E>> E parseEnum(Class<E> type, String text, String what) {
+        try {
+            return Enum.valueOf(type, text.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid " + what + ": " + text);
+        }
+    }
+}
@@ -0,0 +1,229 @@
+package com.github.oogasawa.benchmark.metric;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Logger;
+
+/**
+ * Moves the output of samplers off the sampling threads onto one dedicated writer thread.
+ * <p>
+ * Each sink wrapped with {@link #wrap(SampleSink)} gets its own off-heap {@link SpscByteRing}.
+ * On every tick the sampling thread only copies the buffer into the ring; the writer thread
+ * decodes the records and passes them to the wrapped sinks, and flushes the sinks at most once
+ * per flush interval. A slow disk therefore delays the output but never the sampling.
+ * When the writer falls so far behind that a ring is full, the new sample is dropped and
+ * counted; the counts are logged when the sinks are closed.
+ *
+ * <p>Example usage:
+ * <pre>{@code
+ *     AsyncSampleWriter writer = new AsyncSampleWriter();
+ *     scheduler.register(new SourceSampler(new CpuStatSampler(), writer.wrap(new TextSampleSink("run1.cpu.out"))));
+ *     ...
+ *     scheduler.stop();
+ *     writer.close();
+ * }</pre>
+ */
+public final class AsyncSampleWriter implements Closeable {
+
+    private static final Logger logger = Logger.getLogger(AsyncSampleWriter.class.getName());
+
+    /** Default ring size per sink; about a thousand ticks of a process tree with a hundred processes. */
+    public static final int DEFAULT_RING_BYTES = 1 << 20;
+
+    /** Default interval between flushes of the sinks. */
+    public static final long DEFAULT_FLUSH_MILLIS = 1000;
+
+    /** How long the writer thread sleeps when the rings are empty. */
+    private static final long IDLE_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+
+    /** The ring and decoding state of one wrapped sink. */
+    private final class Channel implements SampleSink, SpscByteRing.RecordHandler {
+        final SampleSink sink;
+        final SpscByteRing ring = new SpscByteRing(ringBytes);
+        String name;
+        SampleCodec codec;
+        SampleBuffer decoded;
+        volatile boolean closing = false;
+        volatile long dropped = 0;      // written by the producer only
+        boolean dirty = false;
+        boolean failed = false;
+
+        Channel(SampleSink sink) {
+            this.sink = sink;
+        }
+
+        @Override
+        public void open(MetricSchema schema) throws IOException {
+            name = schema.getSource();
+            codec = new SampleCodec(schema);
+            decoded = new SampleBuffer(schema);
+            sink.open(schema);
+            channels.add(this);
+        }
+
+        @Override
+        public void write(SampleBuffer buffer) {
+            int length = codec.encodedLength(buffer);
+            int offset = ring.claim(length);
+            if (offset < 0) {
+                dropped++;
+                return;
+            }
+            codec.encode(buffer, ring.buffer(), offset);
+            ring.commit();
+            if (ring.used() > ring.capacity() / 2) {
+                LockSupport.unpark(thread);
+            }
+        }
+
+        @Override
+        public void close() {
+            closing = true;
+            LockSupport.unpark(thread);
+        }
+
+        @Override
+        public void accept(ByteBuffer buffer, int offset, int length) {
+            if (failed) return;
+            codec.decode(buffer, offset, decoded);
+            try {
+                sink.write(decoded);
+                dirty = true;
+            } catch (IOException e) {
+                failed = true;
+                logger.warning(String.format("%s could not write its output; further samples are discarded: %s",
+                        name, e.getMessage()));
+            }
+        }
+
+        @Override
+        public void flush() {
+            // The writer thread flushes the sink.
+        }
+
+        void flushSink() {
+            if (!dirty || failed) return;
+            dirty = false;
+            try {
+                sink.flush();
+            } catch (IOException e) {
+                logger.warning(String.format("%s could not flush its output: %s", name, e.getMessage()));
+            }
+        }
+
+        void finish() {
+            try {
+                sink.close();
+            } catch (IOException e) {
+                logger.warning(String.format("%s could not close its output: %s", name, e.getMessage()));
+            }
+            closedDropped.addAndGet(dropped);
+            if (dropped > 0) {
+                logger.warning(String.format("%s dropped %d samples because the output could not keep up.",
+                        name, dropped));
+            }
+        }
+    }
+
+    private final int ringBytes;
+    private final long flushNanos;
+    private final List<Channel> channels = new CopyOnWriteArrayList<>();
+    private final AtomicLong closedDropped = new AtomicLong();
+    private final Thread thread;
+    private volatile boolean running = true;
+
+    /**
+     * Starts a writer with the default ring size and flush interval.
+     */
+    public AsyncSampleWriter() {
+        this(DEFAULT_RING_BYTES, DEFAULT_FLUSH_MILLIS);
+    }
+
+    /**
+     * Starts a writer.
+     *
+     * @param ringBytes   The ring size per sink in bytes.
+     * @param flushMillis The interval between flushes of the sinks in milliseconds.
+     */
+    public AsyncSampleWriter(int ringBytes, long flushMillis) {
+        this.ringBytes = ringBytes;
+        this.flushNanos = TimeUnit.MILLISECONDS.toNanos(flushMillis);
+        this.thread = new Thread(this::writeLoop, "sample-writer");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * Returns a sink that hands its rows to the writer thread, which writes them to the given sink.
+     * The returned sink must be written from one thread at a time, as a {@link SourceSampler} does.
+     * Closing it closes the given sink once its pending rows have been written.
+     *
+     * @param sink The sink to write to.
+     * @return the asynchronous sink
+     */
+    public SampleSink wrap(SampleSink sink) {
+        return new Channel(sink);
+    }
+
+    /**
+     * Returns the number of samples dropped so far because a ring was full.
+     *
+     * @return the dropped sample count over all sinks
+     */
+    public long getDropped() {
+        long dropped = closedDropped.get();
+        for (Channel c : channels) {
+            dropped += c.dropped;
+        }
+        return dropped;
+    }
+
+    /**
+     * Writes all pending rows, closes the remaining sinks and stops the writer thread.
+     */
+    @Override
+    public void close() {
+        running = false;
+        LockSupport.unpark(thread);
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void writeLoop() {
+        long lastFlush = System.nanoTime();
+        while (true) {
+            // Read the flags before draining, so that everything written before they were set is drained.
+            boolean stopping = !running;
+            int records = 0;
+            for (Channel c : channels) {
+                boolean closing = c.closing;
+                records += c.ring.read(c);
+                if (closing || stopping) {
+                    c.finish();
+                    channels.remove(c);
+                }
+            }
+            if (stopping) return;
+
+            long now = System.nanoTime();
+            if (now - lastFlush >= flushNanos) {
+                for (Channel c : channels) {
+                    c.flushSink();
+                }
+                lastFlush = now;
+            }
+            if (records == 0) {
+                LockSupport.parkNanos(this, IDLE_NANOS);
+            }
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package com.github.oogasawa.benchmark.metric;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Writes CSV rows through a reusable character buffer.
+ * <p>
+ * Numbers are formatted by hand instead of through {@code printf}, which creates a
+ * {@code Formatter} and several strings for every row.
+ *
+ * <p>Example usage:
+ * <pre>{@code
+ *     out.begin(stamp);
+ *     out.field("all");
+ *     out.field(12.5);      // "12.50"
+ *     out.field(4096L);
+ *     out.end();
+ * }</pre>
+ */
+final class CsvWriter implements Closeable {
+
+    private final Writer writer;
+    private char[] line = new char[256];
+    private int length;
+    private long written;
+
+    /**
+     * @param writer The destination, typically a {@code BufferedWriter}.
+     */
+    CsvWriter(Writer writer) {
+        this.writer = writer;
+    }
+
+    /**
+     * Starts a row with the given leading fields, which are written verbatim.
+     */
+    void begin(String stamp) {
+        length = 0;
+        append(stamp);
+    }
+
+    /**
+     * Appends a string field.
+     */
+    void field(String value) {
+        append(',');
+        append(value);
+    }
+
+    /**
+     * Appends an integer field.
+     */
+    void field(long value) {
+        append(',');
+        appendLong(value);
+    }
+
+    /**
+     * Appends a decimal field with two fractional digits, rounded half up.
+     */
+    void field(double value) {
+        append(',');
+        long hundredths = Math.round(value * 100.0);
+        if (hundredths < 0) {
+            append('-');
+            hundredths = -hundredths;
+        }
+        appendLong(hundredths / 100);
+        append('.');
+        long fraction = hundredths % 100;
+        append((char) ('0' + fraction / 10));
+        append((char) ('0' + fraction % 10));
+    }
+
+    /**
+     * Appends an empty field.
+     */
+    void empty() {
+        append(',');
+    }
+
+    /**
+     * Terminates the row and hands it to the underlying writer.
+     */
+    void end() throws IOException {
+        append('\n');
+        writer.write(line, 0, length);
+        written += length;
+    }
+
+    /**
+     * Writes a line verbatim, e.g. the header.
+     */
+    void println(String text) throws IOException {
+        writer.write(text);
+        writer.write('\n');
+        written += text.length() + 1;
+    }
+
+    /**
+     * Returns the number of characters written so far.
+     */
+    long written() {
+        return written;
+    }
+
+    void flush() throws IOException {
+        writer.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        writer.close();
+    }
+
+    private void append(String s) {
+        int n = s.length();
+        ensure(n);
+        s.getChars(0, n, line, length);
+        length += n;
+    }
+
+    private void append(char c) {
+        ensure(1);
+        line[length++] = c;
+    }
+
+    private void appendLong(long value) {
+        if (value < 0) {
+            append('-');
+            if (value == Long.MIN_VALUE) {
+                append("9223372036854775808");
+                return;
+            }
+            value = -value;
+        }
+        ensure(20);
+        int start = length;
+        do {
+            line[length++] = (char) ('0' + value % 10);
+            value /= 10;
+        } while (value != 0);
+        // Digits were written least significant first.
+        for (int i = start, j = length - 1; i < j; i++, j--) {
+            char t = line[i];
+            line[i] = line[j];
+            line[j] = t;
+        }
+    }
+
+    private void ensure(int extra) {
+        if (length + extra > line.length) {
+            char[] grown = new char[Math.max(line.length * 2, length + extra)];
+            System.arraycopy(line, 0, grown, 0, length);
+            line = grown;
+        }
+    }
+}
@@ -0,0 +1,251 @@
+package com.github.oogasawa.benchmark.metric;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * A mergeable quantile sketch after Karnin, Lang and Liberty (KLL).
+ * <p>
+ * The sketch keeps a stack of compactors. Level {@code h} holds items of weight {@code 2^h};
+ * when a level is full it is sorted and every other item, starting at a random offset, is
+ * promoted to the next level. Capacities shrink by 2/3 towards the lower levels, so the sketch
+ * holds about {@code 3k} items however many values it has seen, and the rank error of a
+ * quantile is about {@code 1.7/k} (1% for the default {@code k = 200}).
+ * <p>
+ * Sketches with the same {@code k} can be merged, e.g. the sketches of one metric across the
+ * runs of a series or the nodes of a cluster, with the same error as a sketch of all values.
+ *
+ * <p>Example usage:
+ * <pre>{@code
+ *     KllSketch sketch = new KllSketch();
+ *     for (double v : samples) sketch.update(v);
+ *     double p95 = sketch.quantile(0.95);
+ * }</pre>
+ */
+public final class KllSketch {
+
+    /** The default accuracy parameter. */
+    public static final int DEFAULT_K = 200;
+
+    private static final double CAPACITY_DECAY = 2.0 / 3.0;
+
+    private final int k;
+    private double[][] levels = new double[1][];
+    private int[] sizes = new int[1];
+    private int size;
+    private int maxSize;
+    private long n;
+    private double min = Double.NaN;
+    private double max = Double.NaN;
+
+    /**
+     * Constructs a sketch with the default accuracy.
+     */
+    public KllSketch() {
+        this(DEFAULT_K);
+    }
+
+    /**
+     * Constructs a sketch.
+     *
+     * @param k The accuracy parameter; larger is more accurate and keeps more items.
+     */
+    public KllSketch(int k) {
+        if (k < 8) throw new IllegalArgumentException("k must be at least 8: " + k);
+        this.k = k;
+        levels[0] = new double[capacity(0)];
+        maxSize = totalCapacity();
+    }
+
+    /**
+     * Adds a value.
+     *
+     * @param value The value; {@code NaN} is ignored.
+     */
+    public void update(double value) {
+        if (Double.isNaN(value)) return;
+        if (n == 0 || value < min) min = value;
+        if (n == 0 || value > max) max = value;
+        n++;
+        append(0, value);
+        if (size >= maxSize) compress();
+    }
+
+    /**
+     * Adds the values of another sketch to this one.
+     *
+     * @param other A sketch with the same {@code k}.
+     * @throws IllegalArgumentException If the accuracy parameters differ.
+     */
+    public void merge(KllSketch other) {
+        if (other.k != k) throw new IllegalArgumentException("Cannot merge sketches with k=" + k + " and k=" + other.k);
+        if (other.n == 0) return;
+        if (n == 0 || other.min < min) min = other.min;
+        if (n == 0 || other.max > max) max = other.max;
+        n += other.n;
+        while (levels.length < other.levels.length) grow();
+        for (int h = 0; h < other.levels.length; h++) {
+            for (int i = 0; i < other.sizes[h]; i++) {
+                append(h, other.levels[h][i]);
+            }
+        }
+        while (size >= maxSize) compress();
+    }
+
+    /**
+     * Returns the number of values added.
+     */
+    public long count() {
+        return n;
+    }
+
+    /**
+     * Returns the smallest value added, or {@code NaN} if the sketch is empty.
+     */
+    public double min() {
+        return min;
+    }
+
+    /**
+     * Returns the largest value added, or {@code NaN} if the sketch is empty.
+     */
+    public double max() {
+        return max;
+    }
+
+    /**
+     * Returns an approximate quantile.
+     *
+     * @param q The rank as a fraction, e.g. {@code 0.95}.
+     * @return the smallest retained value whose rank is at least {@code q}, or {@code NaN} if the sketch is empty
+     */
+    public double quantile(double q) {
+        if (n == 0) return Double.NaN;
+        if (q <= 0) return min;
+        if (q >= 1) return max;
+
+        double[] values = new double[size];
+        long[] weights = new long[size];
+        int j = 0;
+        for (int h = 0; h < levels.length; h++) {
+            for (int i = 0; i < sizes[h]; i++) {
+                values[j] = levels[h][i];
+                weights[j++] = 1L << h;
+            }
+        }
+        Integer[] order = new Integer[size];
+        for (int i = 0; i < size; i++) order[i] = i;
+        Arrays.sort(order, (a, b) -> Double.compare(values[a], values[b]));
+
+        long total = 0;
+        for (long w : weights) total += w;
+        double target = q * total;
+        long cumulative = 0;
+        for (int i : order) {
+            cumulative += weights[i];
+            if (cumulative >= target) return values[i];
+        }
+        return max;
+    }
+
+    /**
+     * Writes the sketch.
+     *
+     * @param out The destination.
+     * @throws IOException If writing fails.
+     */
+    public void writeTo(DataOutput out) throws IOException {
+        out.writeInt(k);
+        out.writeLong(n);
+        out.writeDouble(min);
+        out.writeDouble(max);
+        out.writeInt(levels.length);
+        for (int h = 0; h < levels.length; h++) {
+            out.writeInt(sizes[h]);
+            for (int i = 0; i < sizes[h]; i++) {
+                out.writeDouble(levels[h][i]);
+            }
+        }
+    }
+
+    /**
+     * Reads a sketch written by {@link #writeTo(DataOutput)}.
+     *
+     * @param in The source.
+     * @return the sketch
+     * @throws IOException If reading fails or the data is not a sketch.
+     */
+    public static KllSketch readFrom(DataInput in) throws IOException {
+        int k = in.readInt();
+        if (k < 8) throw new IOException("Broken quantile sketch (k=" + k + ")");
+        KllSketch sketch = new KllSketch(k);
+        sketch.n = in.readLong();
+        sketch.min = in.readDouble();
+        sketch.max = in.readDouble();
+        int height = in.readInt();
+        if (height < 1 || height > 64) throw new IOException("Broken quantile sketch (" + height + " levels)");
+        while (sketch.levels.length < height) sketch.grow();
+        for (int h = 0; h < height; h++) {
+            int count = in.readInt();
+            if (count < 0) throw new IOException("Broken quantile sketch (" + count + " items)");
+            for (int i = 0; i < count; i++) {
+                sketch.append(h, in.readDouble());
+            }
+        }
+        return sketch;
+    }
+
+    private int capacity(int h) {
+        int depth = levels.length - h - 1;
+        return Math.max(2, (int) Math.ceil(k * Math.pow(CAPACITY_DECAY, depth)));
+    }
+
+    private int totalCapacity() {
+        int total = 0;
+        for (int h = 0; h < levels.length; h++) total += capacity(h);
+        return total;
+    }
+
+    private void append(int h, double value) {
+        if (sizes[h] == levels[h].length) {
+            levels[h] = Arrays.copyOf(levels[h], Math.max(2, levels[h].length * 2));
+        }
+        levels[h][sizes[h]++] = value;
+        size++;
+    }
+
+    private void grow() {
+        int height = levels.length + 1;
+        levels = Arrays.copyOf(levels, height);
+        sizes = Arrays.copyOf(sizes, height);
+        levels[height - 1] = new double[2];
+        maxSize = totalCapacity();
+    }
+
+    /**
+     * Compacts the lowest full level into the next one.
+     */
+    private void compress() {
+        for (int h = 0; h < levels.length; h++) {
+            if (sizes[h] < capacity(h)) continue;
+            if (h + 1 >= levels.length) grow();
+
+            double[] level = levels[h];
+            int count = sizes[h];
+            Arrays.sort(level, 0, count);
+            // An odd item out stays behind, so that the total weight stays equal to the count.
+            int paired = count & ~1;
+            int offset = ThreadLocalRandom.current().nextBoolean() ? 1 : 0;
+            for (int i = offset; i < paired; i += 2) {
+                append(h + 1, level[i]);
+            }
+            size -= paired;
+            if (paired < count) level[0] = level[count - 1];
+            sizes[h] = count - paired;
+            if (size < maxSize) return;
+        }
+    }
+}
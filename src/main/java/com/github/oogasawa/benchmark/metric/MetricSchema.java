@@ -0,0 +1,149 @@
+package com.github.oogasawa.benchmark.metric;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Describes the rows produced by a {@link MetricSource}.
+ * <p>
+ * Each row identifies an entity (a CPU, a device, a GPU, a process, ...) by one or more
+ * string labels and carries one numeric value per metric. For example, the CPU source has
+ * the label {@code cpu} and the metrics {@code user}, {@code sys}, ... {@code idle}, and
+ * the process tree source has the labels {@code pid, ppid, command, state}.
+ *
+ * <p>Example usage:
+ * <pre>{@code
+ *     MetricSchema schema = new MetricSchema("nvidia-smi", List.of("index"), List.of(
+ *             MetricSchema.integral("utilization.gpu", "%"),
+ *             MetricSchema.decimal("power.draw", "W")));
+ * }</pre>
+ */
+public final class MetricSchema {
+
+    /**
+     * A metric column.
+     *
+     * @param name     Column name, e.g. {@code utilization.gpu} or {@code rkB/s}.
+     * @param unit     Unit shown in brackets after the name in text headers, or an empty string.
+     * @param integral {@code true} if values are counts or sizes that are written without decimals.
+     */
+    public record Metric(String name, String unit, boolean integral) {}
+
+    private final String source;
+    private final List<String> labels;
+    private final List<String> keyLabels;
+    private final List<Metric> metrics;
+
+    /**
+     * Constructs a schema.
+     *
+     * @param source  Name of the source, e.g. {@code proc-stat}.
+     * @param labels  Names of the label columns that identify the entity of a row.
+     * @param metrics The metric columns.
+     */
+    public MetricSchema(String source, List<String> labels, List<Metric> metrics) {
+        this(source, labels, metrics, labels);
+    }
+
+    /**
+     * Constructs a schema whose entities are identified by some of their labels only.
+     *
+     * @param source    Name of the source, e.g. {@code proc-tree}.
+     * @param labels    Names of the label columns.
+     * @param metrics   The metric columns.
+     * @param keyLabels The labels that identify an entity for its whole life, in the order of {@code labels};
+     *                  the others describe its current state (e.g. the {@code state} of a process).
+     */
+    public MetricSchema(String source, List<String> labels, List<Metric> metrics, List<String> keyLabels) {
+        if (!labels.containsAll(keyLabels)) {
+            throw new IllegalArgumentException("Key labels " + keyLabels + " are not labels of " + source);
+        }
+        this.source = source;
+        this.labels = List.copyOf(labels);
+        this.keyLabels = List.copyOf(keyLabels);
+        this.metrics = List.copyOf(metrics);
+    }
+
+    /**
+     * Returns a metric written without decimals.
+     */
+    public static Metric integral(String name, String unit) {
+        return new Metric(name, unit, true);
+    }
+
+    /**
+     * Returns a metric written with two decimals.
+     */
+    public static Metric decimal(String name, String unit) {
+        return new Metric(name, unit, false);
+    }
+
+    /**
+     * Returns metrics without units from their names.
+     *
+     * @param integral Whether the metrics are integral.
+     * @param names    The metric names.
+     * @return the metrics, in the given order
+     */
+    public static List<Metric> metrics(boolean integral, String... names) {
+        List<Metric> list = new ArrayList<>();
+        for (String name : names) {
+            list.add(new Metric(name, "", integral));
+        }
+        return list;
+    }
+
+    public String getSource() {
+        return source;
+    }
+
+    public List<String> getLabels() {
+        return labels;
+    }
+
+    /**
+     * Returns the labels that identify an entity for its whole life; all labels unless the source
+     * says otherwise. Stores that keep the history of an entity, like the run file, key it by these.
+     */
+    public List<String> getKeyLabels() {
+        return keyLabels;
+    }
+
+    public List<Metric> getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Returns the index of the metric with the given name, or {@code -1}.
+     */
+    public int indexOf(String metric) {
+        for (int m = 0; m < metrics.size(); m++) {
+            if (metrics.get(m).name().equals(metric)) return m;
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the label and metric columns as a CSV header, with units in brackets
+     * in the same manner as {@code nvidia-smi --format=csv}.
+     *
+     * <pre>{@code
+     * "index,utilization.gpu [%],power.draw [W]"
+     * }</pre>
+     */
+    public String header() {
+        StringBuilder sb = new StringBuilder();
+        for (String label : labels) {
+            if (!sb.isEmpty()) sb.append(',');
+            sb.append(label);
+        }
+        for (Metric metric : metrics) {
+            if (!sb.isEmpty()) sb.append(',');
+            sb.append(metric.name());
+            if (!metric.unit().isEmpty()) {
+                sb.append(" [").append(metric.unit()).append(']');
+            }
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,73 @@
+package com.github.oogasawa.benchmark.metric;
+
+import java.io.IOException;
+
+/**
+ * A collector of metrics, such as {@code /proc/stat} or {@code nvidia-smi}.
+ * <p>
+ * A source only reads and derives values; where they are written is decided by the
+ * {@link SampleSink} it is paired with in a {@link SourceSampler}. This separation lets the
+ * same collection code feed text files, other output formats, or a test, and lets a
+ * recorded source (see {@link ReplayNvidiaSmiSource}) stand in for a live one.
+ * <p>
+ * Life cycle: {@link #open()} once, {@link #sample(SampleBuffer)} once per tick,
+ * {@link #close()} once.
+ */
+public interface MetricSource {
+
+    /**
+     * Returns the name of the source, used in log messages.
+     *
+     * @return the source name
+     */
+    String getName();
+
+    /**
+     * Returns the schema of the rows. It is valid once {@link #open()} has returned.
+     *
+     * @return the schema
+     */
+    MetricSchema getSchema();
+
+    /**
+     * Opens the underlying files or processes and reads initial counters.
+     *
+     * @throws IOException If the source is not available.
+     */
+    void open() throws IOException;
+
+    /**
+     * Appends the rows of one tick to the buffer.
+     *
+     * @param buffer A buffer reset for the current tick.
+     * @throws IOException If reading fails.
+     */
+    void sample(SampleBuffer buffer) throws IOException;
+
+    /**
+     * Releases files and processes.
+     *
+     * @throws IOException If closing fails.
+     */
+    void close() throws IOException;
+
+    /**
+     * Returns the fastest interval this source supports.
+     *
+     * @return the minimum interval in milliseconds
+     * @see com.github.oogasawa.benchmark.Sampler#getMinIntervalMillis()
+     */
+    default long getMinIntervalMillis() {
+        return 1;
+    }
+
+    /**
+     * Returns whether sampling may block for a noticeable time, e.g. because it forks a command.
+     *
+     * @return {@code true} if the source blocks
+     * @see com.github.oogasawa.benchmark.Sampler#isBlocking()
+     */
+    default boolean isBlocking() {
+        return false;
+    }
+}
@@ -0,0 +1,210 @@
+package com.github.oogasawa.benchmark.metric;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps a {@link KllSketch} of every metric of every entity while sampling, and saves them
+ * to {@code basename.quantiles} at the end of the run.
+ * <p>
+ * The sinks returned by {@link #wrap(SampleSink)} pass the rows on unchanged and add every value
+ * to the sketch of its source, entity (the first label, as in the long-format output) and metric.
+ * A sketch holds a few thousand values whatever the length of the run, so percentiles of a run
+ * are read from the saved sketches without the raw samples, and the sketches of several runs
+ * or nodes are merged with {@link #merge(Map, Map)}.
+ *
+ * <p>Example usage:
+ * <pre>{@code
+ *     QuantileRecorder quantiles = new QuantileRecorder(Path.of("run1.quantiles"));
+ *     SampleSink sink = quantiles.wrap(new TextSampleSink("run1.cpu.out"));
+ *     ...
+ *     quantiles.close();   // after the sinks are closed
+ *     double p95 = QuantileRecorder.read(Path.of("run1.quantiles"))
+ *         .get(new QuantileRecorder.Key("nvidia-smi", "0", "utilization.gpu")).quantile(0.95);
+ * }</pre>
+ */
+public class QuantileRecorder implements Closeable {
+
+    /** Suffix of the sketch file. */
+    public static final String SUFFIX = ".quantiles";
+
+    private static final int MAGIC = 0x514B4C4C;   // "QKLL"
+    private static final int VERSION = 1;
+
+    /**
+     * Identifies the values summarized by one sketch.
+     */
+    public record Key(String source, String entity, String metric) {}
+
+    private final Path outputPath;
+    private final List<QuantileSink> sinks = new ArrayList<>();
+
+    /**
+     * Constructs a recorder.
+     *
+     * @param outputPath The sketch file, e.g. {@code run1.quantiles}.
+     */
+    public QuantileRecorder(Path outputPath) {
+        this.outputPath = outputPath;
+    }
+
+    /**
+     * Returns a sink that records the values of its rows and passes them on.
+     *
+     * @param delegate The sink that writes the rows.
+     * @return the recording sink
+     */
+    public synchronized SampleSink wrap(SampleSink delegate) {
+        QuantileSink sink = new QuantileSink(delegate);
+        sinks.add(sink);
+        return sink;
+    }
+
+    /**
+     * Writes the sketches of all sinks. Call it after the sinks have been closed.
+     *
+     * @throws IOException If the file cannot be written.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        Map<Key, KllSketch> sketches = new LinkedHashMap<>();
+        for (QuantileSink sink : sinks) {
+            synchronized (sink) {
+                merge(sketches, sink.sketches());
+            }
+        }
+        write(outputPath, sketches);
+    }
+
+    /**
+     * Merges sketches into a map, e.g. to combine the files of several runs.
+     *
+     * @param into  The map to merge into; sketches for new keys are copied.
+     * @param other The sketches to add.
+     */
+    public static void merge(Map<Key, KllSketch> into, Map<Key, KllSketch> other) {
+        for (Map.Entry<Key, KllSketch> e : other.entrySet()) {
+            into.computeIfAbsent(e.getKey(), key -> new KllSketch(KllSketch.DEFAULT_K)).merge(e.getValue());
+        }
+    }
+
+    /**
+     * Writes a sketch file.
+     *
+     * @param path     The file.
+     * @param sketches The sketches.
+     * @throws IOException If the file cannot be written.
+     */
+    public static void write(Path path, Map<Key, KllSketch> sketches) throws IOException {
+        Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(sketches.size());
+            for (Map.Entry<Key, KllSketch> e : sketches.entrySet()) {
+                out.writeUTF(e.getKey().source());
+                out.writeUTF(e.getKey().entity());
+                out.writeUTF(e.getKey().metric());
+                e.getValue().writeTo(out);
+            }
+        }
+        Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Reads a sketch file.
+     *
+     * @param path The file written by a recorder.
+     * @return the sketches in the order they were written
+     * @throws IOException If the file cannot be read or is not a sketch file.
+     */
+    public static Map<Key, KllSketch> read(Path path) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            if (in.readInt() != MAGIC) throw new IOException("Not a quantile sketch file: " + path);
+            int version = in.readInt();
+            if (version != VERSION) throw new IOException("Unsupported quantile sketch file version " + version + ": " + path);
+            int count = in.readInt();
+            Map<Key, KllSketch> sketches = new LinkedHashMap<>();
+            for (int i = 0; i < count; i++) {
+                Key key = new Key(in.readUTF(), in.readUTF(), in.readUTF());
+                sketches.put(key, KllSketch.readFrom(in));
+            }
+            return sketches;
+        }
+    }
+
+    /**
+     * Records the values of one source.
+     */
+    private static final class QuantileSink implements SampleSink {
+        private final SampleSink delegate;
+        private final Map<String, KllSketch[]> entities = new LinkedHashMap<>();
+        private String source;
+        private String[] metrics;
+        private boolean labeled;
+
+        QuantileSink(SampleSink delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void open(MetricSchema schema) throws IOException {
+            delegate.open(schema);
+            source = schema.getSource();
+            metrics = schema.getMetrics().stream().map(MetricSchema.Metric::name).toArray(String[]::new);
+            labeled = !schema.getLabels().isEmpty();
+        }
+
+        @Override
+        public void write(SampleBuffer buffer) throws IOException {
+            delegate.write(buffer);
+            synchronized (this) {
+                for (int row = 0; row < buffer.getRows(); row++) {
+                    String entity = labeled ? buffer.getLabel(row, 0) : "";
+                    KllSketch[] sketches = entities.get(entity);
+                    if (sketches == null) {
+                        sketches = new KllSketch[metrics.length];
+                        for (int m = 0; m < metrics.length; m++) sketches[m] = new KllSketch();
+                        entities.put(entity, sketches);
+                    }
+                    for (int m = 0; m < metrics.length; m++) {
+                        sketches[m].update(buffer.getValue(row, m));
+                    }
+                }
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            delegate.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            delegate.close();
+        }
+
+        Map<Key, KllSketch> sketches() {
+            Map<Key, KllSketch> result = new LinkedHashMap<>();
+            for (Map.Entry<String, KllSketch[]> e : entities.entrySet()) {
+                for (int m = 0; m < metrics.length; m++) {
+                    if (e.getValue()[m].count() > 0) {
+                        result.put(new Key(source, e.getKey(), metrics[m]), e.getValue()[m]);
+                    }
+                }
+            }
+            return result;
+        }
+    }
+}
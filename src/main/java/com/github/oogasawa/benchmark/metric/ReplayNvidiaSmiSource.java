@@ -0,0 +1,199 @@
+package com.github.oogasawa.benchmark.metric;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Logger;
+import com.github.oogasawa.benchmark.util.OutputFiles;
+import com.github.oogasawa.benchmark.util.TimestampParser;
+
+/**
+ * Replays a recorded {@code nvidia-smi --query-gpu} log, one {@code nvidia-smi} iteration per sample.
+ * <p>
+ * Both a raw {@code nvidia-smi --format=csv} log (with or without units, with or without
+ * the {@code [nvidia-smi] Monitoring started} banner) and a file written by a
+ * {@link TextSampleSink} are accepted. The {@code index} column identifies the GPU; every
+ * other column except {@code tick} and {@code timestamp} is replayed as a metric, with the
+ * unit taken from the brackets of the header. Iterations are told apart by a GPU index
+ * being reported again, and each replayed sample carries the recorded timestamp of its
+ * first row.
+ *
+ * <p>Example usage:
+ * <pre>{@code
+ *     var source = new ReplayNvidiaSmiSource(Path.of("run1.nvidia-smi.out"));
+ *     scheduler.register(new SourceSampler(source, new TextSampleSink("replay.nvidia-smi.out")));
+ * }</pre>
+ */
+public class ReplayNvidiaSmiSource implements MetricSource {
+
+    private static final Logger logger = Logger.getLogger(ReplayNvidiaSmiSource.class.getName());
+
+    /** One recorded iteration: its timestamp and, per GPU, the index and the metric values. */
+    private record Block(long epochMillis, List<String> indexes, List<double[]> values) {}
+
+    private final Path log;
+    private MetricSchema schema;
+    private List<Block> blocks;
+    private volatile int next = 0;
+
+    /**
+     * Constructs a replay source.
+     *
+     * @param log The recorded {@code nvidia-smi} log.
+     */
+    public ReplayNvidiaSmiSource(Path log) {
+        this.log = log;
+    }
+
+    @Override
+    public String getName() {
+        return "nvidia-smi-replay";
+    }
+
+    @Override
+    public MetricSchema getSchema() {
+        return schema;
+    }
+
+    /**
+     * Reads the whole log. Opening an opened source again does nothing.
+     */
+    @Override
+    public void open() throws IOException {
+        if (blocks != null) return;
+        List<String> names = null;
+        List<String> units = new ArrayList<>();
+        List<String[]> rows = new ArrayList<>();
+        int timestampColumn = -1;
+        int indexColumn = -1;
+
+        try (BufferedReader reader = OutputFiles.newBufferedReader(log)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isBlank() || line.startsWith("[")) continue; // banner
+                String[] fields = line.split(",", -1);
+                for (int f = 0; f < fields.length; f++) {
+                    fields[f] = fields[f].trim();
+                }
+                if (names == null) {
+                    names = new ArrayList<>();
+                    for (String field : fields) {
+                        int bracket = field.indexOf('[');
+                        names.add((bracket < 0 ? field : field.substring(0, bracket)).trim().toLowerCase());
+                        units.add(bracket < 0 ? "" : field.substring(bracket + 1, field.lastIndexOf(']')).trim());
+                    }
+                    timestampColumn = names.indexOf("timestamp");
+                    indexColumn = names.indexOf("index");
+                    if (timestampColumn < 0 || indexColumn < 0) {
+                        throw new IOException("No timestamp or index column in " + log);
+                    }
+                } else if (fields.length == names.size() && !fields[timestampColumn].equals("timestamp")) {
+                    rows.add(fields); // repeated headers of a restarted nvidia-smi are skipped
+                }
+            }
+        }
+        if (names == null) {
+            throw new IOException("Empty nvidia-smi log: " + log);
+        }
+
+        // Metric columns, in file order; integral unless a recorded value has decimals.
+        List<Integer> columns = new ArrayList<>();
+        for (int c = 0; c < names.size(); c++) {
+            if (c != timestampColumn && c != indexColumn && !names.get(c).equals("tick")) {
+                columns.add(c);
+            }
+        }
+        List<MetricSchema.Metric> metrics = new ArrayList<>();
+        for (int c : columns) {
+            boolean integral = true;
+            for (String[] row : rows) {
+                if (firstToken(row[c]).contains(".")) {
+                    integral = false;
+                    break;
+                }
+            }
+            metrics.add(new MetricSchema.Metric(names.get(c), units.get(c), integral));
+        }
+        schema = new MetricSchema(getName(), List.of("index"), metrics);
+
+        blocks = new ArrayList<>();
+        Block block = null;
+        TimestampParser parser = new TimestampParser(TextSampleSink.TIMESTAMP_PATTERN);
+        for (String[] row : rows) {
+            String index = row[indexColumn];
+            if (block == null || block.indexes().contains(index)) {
+                long epochMillis;
+                try {
+                    epochMillis = parser.parseEpochMillis(row[timestampColumn]);
+                } catch (DateTimeParseException e) {
+                    logger.warning(String.format("Skipping a row with an invalid timestamp: %s", row[timestampColumn]));
+                    continue;
+                }
+                block = new Block(epochMillis, new ArrayList<>(), new ArrayList<>());
+                blocks.add(block);
+            }
+            double[] values = new double[columns.size()];
+            for (int m = 0; m < values.length; m++) {
+                values[m] = parseValue(row[columns.get(m)]);
+            }
+            block.indexes().add(index);
+            block.values().add(values);
+        }
+        logger.info(String.format("Replaying %d nvidia-smi samples from %s", blocks.size(), log));
+    }
+
+    @Override
+    public void sample(SampleBuffer buffer) {
+        if (next >= blocks.size()) return;
+        Block block = blocks.get(next++);
+        buffer.setEpochMillis(block.epochMillis());
+        for (int g = 0; g < block.indexes().size(); g++) {
+            int row = buffer.addRow();
+            buffer.setLabel(row, 0, block.indexes().get(g));
+            double[] values = block.values().get(g);
+            for (int m = 0; m < values.length; m++) {
+                buffer.setValue(row, m, values[m]);
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+    }
+
+    /**
+     * Returns {@code true} once every recorded sample has been replayed.
+     */
+    public boolean isFinished() {
+        return blocks != null && next >= blocks.size();
+    }
+
+    /**
+     * Returns the average recorded interval between samples, or {@code 0} if there are fewer than two.
+     * Valid after {@link #open()}.
+     */
+    public long recordedIntervalMillis() {
+        if (blocks == null || blocks.size() < 2) return 0;
+        return (blocks.get(blocks.size() - 1).epochMillis() - blocks.get(0).epochMillis()) / (blocks.size() - 1);
+    }
+
+    /**
+     * Parses a recorded value such as {@code 56}, {@code 56 %} or {@code 281.35 W};
+     * {@code [N/A]} and other non-numeric values become {@code NaN}.
+     */
+    private static double parseValue(String field) {
+        try {
+            return Double.parseDouble(firstToken(field));
+        } catch (NumberFormatException e) {
+            return Double.NaN;
+        }
+    }
+
+    private static String firstToken(String field) {
+        int space = field.indexOf(' ');
+        return space < 0 ? field : field.substring(0, space);
+    }
+}
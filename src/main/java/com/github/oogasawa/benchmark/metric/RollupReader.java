@@ -0,0 +1,165 @@
+package com.github.oogasawa.benchmark.metric;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+import com.github.oogasawa.benchmark.util.OutputFiles;
+import com.github.oogasawa.benchmark.util.TimeWindow;
+import com.github.oogasawa.benchmark.util.TimestampParser;
+
+/**
+ * Reads the rollup tiers written by a {@link RollupSink}.
+ * <p>
+ * A chart needs about one point per pixel, so {@link #select(Path, TimeWindow, int)} returns the
+ * coarsest tier that still has that many buckets in the window. The buckets of all tiers start at
+ * the first sample, so their number in a window is computed from the first and last rows of the
+ * finest tier, and only the selected tier is read: drawing a week-long run reads a number of rows
+ * proportional to the width of the chart instead of every sample.
+ * <p>
+ * Labels are written verbatim, so a label may contain commas. The columns after the labels are
+ * parsed from the end of a row, and the surplus fields are joined into the last label, which is
+ * where free text such as a process name is kept.
+ *
+ * <p>Example usage:
+ * <pre>{@code
+ *     Path tier = RollupReader.select(Path.of("run1.nvidia-smi.out"), window, 800);
+ *     if (tier != null) RollupReader.read(tier, window, "utilization.gpu", b -> ...);
+ * }</pre>
+ */
+public final class RollupReader {
+
+    /**
+     * The summary of one metric of one entity over one bucket.
+     */
+    public record Bucket(long epochMillis, List<String> labels, long count,
+                         double min, double mean, double max, double p95) {}
+
+    private RollupReader() {
+    }
+
+    /**
+     * Selects the coarsest tier of an output that gives at least {@code points} buckets in a window.
+     *
+     * @param output The raw output, e.g. {@code run1.nvidia-smi.out}.
+     * @param window The part of the run to read.
+     * @param points The number of points wanted, e.g. the width of the chart in pixels.
+     * @return the tier file, or {@code null} if the output has no tiers or only the raw samples are fine enough
+     * @throws IOException If a tier cannot be read.
+     */
+    public static Path select(Path output, TimeWindow window, int points) throws IOException {
+        long[] tiers = RollupSink.TIER_MILLIS;
+        Path finest = tierPath(output, tiers[0]);
+        if (!Files.exists(OutputFiles.resolve(finest))) return null;
+        long[] span = span(finest);
+        if (span == null) return null;
+        TimeWindow resolved = window.resolve(span[0]);
+
+        for (int t = tiers.length - 1; t >= 0; t--) {
+            Path tier = tierPath(output, tiers[t]);
+            if (!Files.exists(OutputFiles.resolve(tier))) return null;
+            if (countBuckets(span[0], span[1], resolved, tiers[t]) >= points) return tier;
+        }
+        return null;
+    }
+
+    /**
+     * Reads the buckets of one metric in a window, in the order they were written.
+     *
+     * @param tier     A tier file returned by {@link #select(Path, TimeWindow, int)}.
+     * @param window   The part of the run to read.
+     * @param metric   The name of the metric, without the unit (e.g. {@code "utilization.gpu"}).
+     * @param consumer Receives the buckets.
+     * @throws IOException If the tier cannot be read.
+     */
+    public static void read(Path tier, TimeWindow window, String metric, Consumer<Bucket> consumer) throws IOException {
+        try (BufferedReader in = SegmentIndex.openWindow(tier, window)) {
+            String header = in.readLine();
+            if (header == null) return;
+            int metricColumn = Arrays.asList(header.split(",")).indexOf("metric");
+            if (metricColumn < 0) throw new IOException("Not a rollup tier: " + tier);
+            TimestampParser parser = new TimestampParser(TextSampleSink.TIMESTAMP_PATTERN);
+
+            String line;
+            while ((line = in.readLine()) != null) {
+                String[] f = line.split(",", -1);
+                int m = f.length - 6;       // the metric column, counted from the end
+                if (m < metricColumn || !f[m].equals(metric)) continue;
+                long millis = parseTimestamp(parser, f[0]);
+                if (millis < 0) continue;
+                try {
+                    consumer.accept(new Bucket(millis, labels(f, metricColumn, m),
+                            Long.parseLong(f[m + 1]),
+                            Double.parseDouble(f[m + 2]), Double.parseDouble(f[m + 3]),
+                            Double.parseDouble(f[m + 4]), Double.parseDouble(f[m + 5])));
+                } catch (NumberFormatException e) {
+                    // a truncated last row of a killed run
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the labels of a row whose metric is in field {@code m}; a row with more fields
+     * than columns has commas in its last label.
+     */
+    private static List<String> labels(String[] f, int metricColumn, int m) {
+        if (m == metricColumn) return List.of(f).subList(1, metricColumn);
+        String[] labels = Arrays.copyOfRange(f, 1, metricColumn);
+        labels[labels.length - 1] = String.join(",", Arrays.asList(f).subList(metricColumn - 1, m));
+        return List.of(labels);
+    }
+
+    /**
+     * Returns the timestamps of the first and last buckets of a tier, read from its first and last rows.
+     *
+     * @return {@code {first, last}} in epoch milliseconds, or {@code null} if the tier has no rows
+     */
+    private static long[] span(Path tier) throws IOException {
+        String first;
+        try (BufferedReader in = OutputFiles.newBufferedReader(tier)) {
+            in.readLine();   // header
+            first = in.readLine();
+        }
+        String last = OutputFiles.readLastLine(tier);
+        if (first == null || last == null) return null;
+
+        TimestampParser parser = new TimestampParser(TextSampleSink.TIMESTAMP_PATTERN);
+        long firstMillis = parseTimestamp(parser, first.substring(0, Math.max(first.indexOf(','), 0)));
+        long lastMillis = parseTimestamp(parser, last.substring(0, Math.max(last.indexOf(','), 0)));
+        if (firstMillis < 0 || lastMillis < firstMillis) return null;
+        return new long[] { firstMillis, lastMillis };
+    }
+
+    /**
+     * Counts the buckets of a tier in a window from the span of the run.
+     *
+     * @param origin     The start of the first bucket, which is the first sample.
+     * @param lastMillis The start of the last bucket of the finest tier.
+     * @param window     The resolved window.
+     * @param tierMillis The bucket width of the tier.
+     */
+    private static long countBuckets(long origin, long lastMillis, TimeWindow window, long tierMillis) {
+        long from = window.getFromMillis() == null ? origin : Math.max(origin, window.getFromMillis());
+        long to = lastMillis;
+        if (window.getToMillis() != null) to = Math.min(to, window.getToMillis());
+        if (to < from) return 0;
+        // Bucket k of the tier starts at origin + k * tierMillis.
+        return Math.floorDiv(to - origin, tierMillis) - Math.ceilDiv(from - origin, tierMillis) + 1;
+    }
+
+    private static Path tierPath(Path output, long tierMillis) {
+        return Path.of(RollupSink.tierPath(OutputFiles.stripGzipSuffix(output.toString()), tierMillis));
+    }
+
+    private static long parseTimestamp(TimestampParser parser, String text) {
+        try {
+            return parser.parseEpochMillis(text.trim());
+        } catch (RuntimeException e) {
+            return -1;
+        }
+    }
+}
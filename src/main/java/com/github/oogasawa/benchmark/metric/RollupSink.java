@@ -0,0 +1,249 @@
+package com.github.oogasawa.benchmark.metric;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import com.github.oogasawa.benchmark.util.OutputFiles;
+
+/**
+ * Passes the rows of a source on to another sink and keeps downsampled copies of them, in the
+ * manner of an RRD: for every tier ({@code 10s}, {@code 1m}, {@code 10m}) the samples of each
+ * entity and metric are summarized per bucket as count, min, mean, max and 95th percentile.
+ * <p>
+ * Buckets start at the first sample of the source. A bucket is written to its tier file when the
+ * first sample of the next bucket arrives, so memory holds one bucket per tier. The tier files
+ * are named after the output ({@code run1.nvidia-smi.rollup-10s.out}, ...):
+ * <pre>
+ * timestamp,index,metric,count,min,mean,max,p95
+ * 2025/07/05 15:01:02.123,0,utilization.gpu,10,40.00,52.30,61.00,61.00
+ * 2025/07/05 15:01:02.123,0,memory.used,10,25037.00,25040.20,25043.00,25043.00
+ * </pre>
+ * Unavailable values are not counted; a metric without any value in a bucket gets no row.
+ * {@link RollupReader} picks the tier that suits a chart.
+ *
+ * <p>Example usage:
+ * <pre>{@code
+ *     SampleSink sink = new RollupSink(new TextSampleSink("run1.cpu.out"), "run1.cpu.out", false);
+ * }</pre>
+ */
+public class RollupSink implements SampleSink {
+
+    /** The bucket widths of the tiers, finest first. */
+    public static final long[] TIER_MILLIS = { 10_000L, 60_000L, 600_000L };
+
+    private final SampleSink delegate;
+    private final String outputPath;
+    private final boolean compress;
+    private Tier[] tiers;
+    private String[] metricNames;
+    private int numLabels;
+    private long originMillis = -1;
+
+    /**
+     * Constructs a rollup sink.
+     *
+     * @param delegate   The sink that receives the raw rows.
+     * @param outputPath The name of the raw output, e.g. {@code run1.cpu.out}; the tier files are written next to it.
+     * @param compress   If {@code true}, the tier files are written block-compressed.
+     */
+    public RollupSink(SampleSink delegate, String outputPath, boolean compress) {
+        this.delegate = delegate;
+        this.outputPath = outputPath;
+        this.compress = compress;
+    }
+
+    @Override
+    public void open(MetricSchema schema) throws IOException {
+        delegate.open(schema);
+
+        List<MetricSchema.Metric> metrics = schema.getMetrics();
+        metricNames = new String[metrics.size()];
+        for (int m = 0; m < metricNames.length; m++) {
+            metricNames[m] = metrics.get(m).name();
+        }
+        numLabels = schema.getLabels().size();
+
+        String header = "timestamp," + String.join(",", schema.getLabels())
+            + (numLabels > 0 ? "," : "") + "metric,count,min,mean,max,p95";
+        tiers = new Tier[TIER_MILLIS.length];
+        for (int t = 0; t < tiers.length; t++) {
+            CsvWriter out = new CsvWriter(OutputFiles.newWriter(tierPath(outputPath, TIER_MILLIS[t]), compress));
+            out.println(header);
+            tiers[t] = new Tier(TIER_MILLIS[t], out);
+        }
+    }
+
+    @Override
+    public void write(SampleBuffer buffer) throws IOException {
+        delegate.write(buffer);
+
+        long epochMillis = buffer.getEpochMillis();
+        if (originMillis < 0) originMillis = epochMillis;
+        for (Tier tier : tiers) {
+            tier.advance(epochMillis);
+        }
+        for (int row = 0; row < buffer.getRows(); row++) {
+            String key = key(buffer, row);
+            for (Tier tier : tiers) {
+                tier.add(key, buffer, row);
+            }
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        delegate.flush();
+        for (Tier tier : tiers) {
+            tier.out.flush();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        delegate.close();
+        if (tiers == null) return;
+        for (Tier tier : tiers) {
+            tier.emit();
+            tier.out.close();
+        }
+    }
+
+    /**
+     * Returns the name of a tier file, e.g. {@code run1.cpu.rollup-1m.out} for {@code run1.cpu.out}.
+     *
+     * @param outputPath The name of the raw output.
+     * @param tierMillis The bucket width of the tier.
+     * @return the name of the tier file
+     */
+    public static String tierPath(String outputPath, long tierMillis) {
+        Path path = Path.of(outputPath);
+        String name = path.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        String tier = ".rollup-" + tierName(tierMillis);
+        String tierFile = dot > 0 ? name.substring(0, dot) + tier + name.substring(dot) : name + tier;
+        return path.resolveSibling(tierFile).toString();
+    }
+
+    /**
+     * Returns the short name of a bucket width, e.g. {@code "10s"} or {@code "1m"}.
+     */
+    public static String tierName(long tierMillis) {
+        if (tierMillis % 3_600_000L == 0) return tierMillis / 3_600_000L + "h";
+        if (tierMillis % 60_000L == 0) return tierMillis / 60_000L + "m";
+        if (tierMillis % 1000L == 0) return tierMillis / 1000L + "s";
+        return tierMillis + "ms";
+    }
+
+    private String key(SampleBuffer buffer, int row) {
+        if (numLabels == 1) return buffer.getLabel(row, 0);
+        StringBuilder sb = new StringBuilder();
+        for (int l = 0; l < numLabels; l++) {
+            if (l > 0) sb.append(',');
+            sb.append(buffer.getLabel(row, l));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * The open bucket of one tier.
+     */
+    private final class Tier {
+        final long millis;
+        final CsvWriter out;
+        final Map<String, Series> series = new LinkedHashMap<>();
+        long bucket = -1;
+
+        Tier(long millis, CsvWriter out) {
+            this.millis = millis;
+            this.out = out;
+        }
+
+        void advance(long epochMillis) throws IOException {
+            long b = (epochMillis - originMillis) / millis;
+            if (b != bucket) {
+                emit();
+                bucket = b;
+            }
+        }
+
+        void add(String key, SampleBuffer buffer, int row) {
+            Series s = series.get(key);
+            if (s == null) {
+                String[] labels = new String[numLabels];
+                for (int l = 0; l < numLabels; l++) {
+                    labels[l] = buffer.getLabel(row, l);
+                }
+                s = new Series(labels, metricNames.length);
+                series.put(key, s);
+            }
+            for (int m = 0; m < metricNames.length; m++) {
+                double value = buffer.getValue(row, m);
+                if (!Double.isNaN(value)) s.add(m, value);
+            }
+        }
+
+        void emit() throws IOException {
+            if (bucket < 0) return;
+            String stamp = TextSampleSink.formatTimestamp(originMillis + bucket * millis);
+            for (Series s : series.values()) {
+                for (int m = 0; m < metricNames.length; m++) {
+                    int n = s.count[m];
+                    if (n == 0) continue;
+                    out.begin(stamp);
+                    for (String label : s.labels) {
+                        out.field(label);
+                    }
+                    out.field(metricNames[m]);
+                    out.field((long) n);
+                    out.field(s.min[m]);
+                    out.field(s.sum[m] / n);
+                    out.field(s.max[m]);
+                    out.field(s.p95(m));
+                    out.end();
+                }
+            }
+            series.clear();
+        }
+    }
+
+    /**
+     * The samples of one entity in the open bucket of a tier.
+     */
+    private static final class Series {
+        final String[] labels;
+        final int[] count;
+        final double[] min;
+        final double[] max;
+        final double[] sum;
+        final double[][] values;
+
+        Series(String[] labels, int numMetrics) {
+            this.labels = labels;
+            this.count = new int[numMetrics];
+            this.min = new double[numMetrics];
+            this.max = new double[numMetrics];
+            this.sum = new double[numMetrics];
+            this.values = new double[numMetrics][16];
+        }
+
+        void add(int m, double value) {
+            int n = count[m];
+            if (n == 0 || value < min[m]) min[m] = value;
+            if (n == 0 || value > max[m]) max[m] = value;
+            sum[m] += value;
+            if (n == values[m].length) values[m] = Arrays.copyOf(values[m], n * 2);
+            values[m][n] = value;
+            count[m] = n + 1;
+        }
+
+        /** Returns the 95th percentile by the nearest-rank method. */
+        double p95(int m) {
+            double[] v = values[m];
+            Arrays.sort(v, 0, count[m]);
+            return v[(int) Math.ceil(0.95 * count[m]) - 1];
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package com.github.oogasawa.benchmark.metric;
+
+import java.util.Arrays;
+
+/**
+ * The rows of one tick, filled by a {@link MetricSource} and consumed by a {@link SampleSink}.
+ * <p>
+ * The buffer is reused across ticks. Labels are stored as references to strings the source
+ * already holds and values in one flat {@code double[]}, so filling a buffer of a stable
+ * size allocates nothing. A value that is not available is {@link Double#NaN}.
+ *
+ * <p>Example usage:
+ * <pre>{@code
+ *     int row = buffer.addRow();
+ *     buffer.setLabel(row, 0, "all");
+ *     buffer.setValue(row, USER, 12.5);
+ * }</pre>
+ */
+public final class SampleBuffer {
+
+    private final MetricSchema schema;
+    private final int numLabels;
+    private final int numMetrics;
+
+    private long tick;
+    private long epochMillis;
+    private int rows;
+    private String[] labels;
+    private double[] values;
+
+    /**
+     * Constructs an empty buffer for the given schema.
+     *
+     * @param schema The schema of the source that fills the buffer.
+     */
+    public SampleBuffer(MetricSchema schema) {
+        this.schema = schema;
+        this.numLabels = schema.getLabels().size();
+        this.numMetrics = schema.getMetrics().size();
+        this.labels = new String[16 * Math.max(1, numLabels)];
+        this.values = new double[16 * Math.max(1, numMetrics)];
+    }
+
+    /**
+     * Clears the rows and stamps the buffer with the tick that is about to be sampled.
+     *
+     * @param tick        The tick id.
+     * @param epochMillis The wall-clock time of the tick in milliseconds since the epoch.
+     */
+    public void reset(long tick, long epochMillis) {
+        this.tick = tick;
+        this.epochMillis = epochMillis;
+        this.rows = 0;
+    }
+
+    /**
+     * Overrides the timestamp of the tick, e.g. with the recorded time of a replayed sample.
+     *
+     * @param epochMillis Milliseconds since the epoch.
+     */
+    public void setEpochMillis(long epochMillis) {
+        this.epochMillis = epochMillis;
+    }
+
+    /**
+     * Appends a row whose labels are empty and whose values are {@code NaN}.
+     *
+     * @return the index of the new row
+     */
+    public int addRow() {
+        int row = rows++;
+        if ((row + 1) * numLabels > labels.length) {
+            labels = Arrays.copyOf(labels, labels.length * 2);
+        }
+        if ((row + 1) * numMetrics > values.length) {
+            values = Arrays.copyOf(values, values.length * 2);
+        }
+        Arrays.fill(labels, row * numLabels, (row + 1) * numLabels, "");
+        Arrays.fill(values, row * numMetrics, (row + 1) * numMetrics, Double.NaN);
+        return row;
+    }
+
+    public void setLabel(int row, int label, String value) {
+        labels[row * numLabels + label] = value;
+    }
+
+    public void setValue(int row, int metric, double value) {
+        values[row * numMetrics + metric] = value;
+    }
+
+    public String getLabel(int row, int label) {
+        return labels[row * numLabels + label];
+    }
+
+    public double getValue(int row, int metric) {
+        return values[row * numMetrics + metric];
+    }
+
+    public MetricSchema getSchema() {
+        return schema;
+    }
+
+    public long getTick() {
+        return tick;
+    }
+
+    public long getEpochMillis() {
+        return epochMillis;
+    }
+
+    public int getRows() {
+        return rows;
+    }
+}
@@ -0,0 +1,113 @@
+package com.github.oogasawa.benchmark.metric;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Copies a {@link SampleBuffer} into a flat binary record and back, without allocating on the
+ * encoding side.
+ * <pre>
+ * long tick | long epochMillis | int rows | per row: (short length | char...) per label, double per metric
+ * </pre>
+ * Labels that are equal to the label at the same position of the previously decoded record
+ * are decoded to the same {@link String} instance, so a sink sees stable label instances for
+ * stable entities, just like it does when a source writes to it directly.
+ */
+final class SampleCodec {
+
+    private final int numLabels;
+    private final int numMetrics;
+    private String[][] lastLabels = new String[0][];
+
+    SampleCodec(MetricSchema schema) {
+        this.numLabels = schema.getLabels().size();
+        this.numMetrics = schema.getMetrics().size();
+    }
+
+    /**
+     * Returns the length of the record of a buffer.
+     */
+    int encodedLength(SampleBuffer sample) {
+        int length = 8 + 8 + 4;
+        for (int row = 0; row < sample.getRows(); row++) {
+            for (int l = 0; l < numLabels; l++) {
+                length += 2 + 2 * labelLength(sample.getLabel(row, l));
+            }
+            length += 8 * numMetrics;
+        }
+        return length;
+    }
+
+    /**
+     * Writes the record of a buffer at an absolute offset.
+     */
+    void encode(SampleBuffer sample, ByteBuffer out, int offset) {
+        out.putLong(offset, sample.getTick());
+        out.putLong(offset + 8, sample.getEpochMillis());
+        out.putInt(offset + 16, sample.getRows());
+        int at = offset + 20;
+        for (int row = 0; row < sample.getRows(); row++) {
+            for (int l = 0; l < numLabels; l++) {
+                String label = sample.getLabel(row, l);
+                int length = labelLength(label);
+                out.putShort(at, (short) length);
+                at += 2;
+                for (int i = 0; i < length; i++) {
+                    out.putChar(at, label.charAt(i));
+                    at += 2;
+                }
+            }
+            for (int m = 0; m < numMetrics; m++) {
+                out.putDouble(at, sample.getValue(row, m));
+                at += 8;
+            }
+        }
+    }
+
+    /**
+     * Reads a record at an absolute offset into a buffer, replacing its rows.
+     */
+    void decode(ByteBuffer in, int offset, SampleBuffer sample) {
+        sample.reset(in.getLong(offset), in.getLong(offset + 8));
+        int rows = in.getInt(offset + 16);
+        if (lastLabels.length < rows) {
+            lastLabels = Arrays.copyOf(lastLabels, rows);
+        }
+        int at = offset + 20;
+        for (int r = 0; r < rows; r++) {
+            int row = sample.addRow();
+            if (lastLabels[r] == null) lastLabels[r] = new String[numLabels];
+            for (int l = 0; l < numLabels; l++) {
+                int length = Short.toUnsignedInt(in.getShort(at));
+                at += 2;
+                String label = lastLabels[r][l];
+                if (label == null || !sameChars(label, in, at, length)) {
+                    char[] chars = new char[length];
+                    for (int i = 0; i < length; i++) {
+                        chars[i] = in.getChar(at + 2 * i);
+                    }
+                    label = new String(chars);
+                    lastLabels[r][l] = label;
+                }
+                sample.setLabel(row, l, label);
+                at += 2 * length;
+            }
+            for (int m = 0; m < numMetrics; m++) {
+                sample.setValue(row, m, in.getDouble(at));
+                at += 8;
+            }
+        }
+    }
+
+    private static boolean sameChars(String label, ByteBuffer in, int at, int length) {
+        if (label.length() != length) return false;
+        for (int i = 0; i < length; i++) {
+            if (label.charAt(i) != in.getChar(at + 2 * i)) return false;
+        }
+        return true;
+    }
+
+    private static int labelLength(String label) {
+        return label == null ? 0 : Math.min(label.length(), 0xFFFF);
+    }
+}
@@ -0,0 +1,368 @@
+package com.github.oogasawa.benchmark.metric;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.logging.Logger;
+import java.util.zip.CRC32C;
+
+/**
+ * An append-only journal of the samples of a run, from which the text outputs can be rebuilt
+ * after the monitor was killed or the node went down ({@code basename.journal}).
+ * <p>
+ * The sinks returned by {@link #wrap(SampleSink, String)} append their rows to the journal as
+ * checksummed records before they pass them on, so a row that the output never received, because
+ * its sink failed or the monitor died while it was writing, is still in the journal. Each record is handed to the operating system as soon as
+ * it is written, so a killed process loses nothing, and the journal is synced to disk at most
+ * every {@code syncMillis}, which bounds what a power loss or reboot can take:
+ * <pre>
+ * "BNGSJRN1" | record...
+ * record:  int length | int crc32c | payload (length bytes)
+ * payload: byte type | short stream | SCHEMA: output name, source, labels, metrics
+ *                                   | SAMPLE: the {@link SampleCodec} record of one tick
+ * </pre>
+ * A sink whose output fails keeps journaling: the failure is logged and the rows are no longer
+ * passed on, but no exception reaches the caller, so that a writer that gives up on a failed sink
+ * does not stop the journal as well.
+ * {@link #recover(Path, Path)} replays the journal into text outputs up to the first torn or
+ * corrupt record. The journal is deleted on {@link #close()} only if every sink was closed and
+ * none of their outputs failed; otherwise it is kept for {@code benchmark:recover}.
+ *
+ * <p>Example usage:
+ * <pre>{@code
+ *     SampleJournal journal = new SampleJournal(Path.of("run1.journal"), 1000);
+ *     SampleSink sink = journal.wrap(new TextSampleSink("run1.cpu.out"), "run1.cpu.out");
+ *     ...
+ *     journal.close();   // after the sinks are closed
+ * }</pre>
+ */
+public class SampleJournal implements Closeable {
+
+    private static final Logger logger = Logger.getLogger(SampleJournal.class.getName());
+
+    /** Suffix of the journal. */
+    public static final String SUFFIX = ".journal";
+
+    private static final byte[] MAGIC = "BNGSJRN1".getBytes(StandardCharsets.US_ASCII);
+    private static final byte SCHEMA = 1;
+    private static final byte SAMPLE = 2;
+    private static final int FRAME_BYTES = 8;
+    private static final int PAYLOAD_HEADER_BYTES = 3;
+    private static final int MAX_RECORD_BYTES = 1 << 28;
+
+    /**
+     * What a recovery rebuilt.
+     *
+     * @param outputs        The text outputs written.
+     * @param samples        The number of ticks replayed.
+     * @param discardedBytes The length of the torn or corrupt tail that was skipped.
+     */
+    public record Recovery(List<Path> outputs, long samples, long discardedBytes) {}
+
+    private final Path path;
+    private final long syncMillis;
+    private final FileChannel channel;
+    private final CRC32C crc = new CRC32C();
+    private ByteBuffer record = ByteBuffer.allocate(1 << 16);
+    private int streams = 0;
+    private long lastSync = System.currentTimeMillis();
+    private boolean dirty = false;
+    private int openSinks = 0;
+    private boolean outputFailed = false;
+
+    /**
+     * Creates a journal, replacing any existing file.
+     *
+     * @param path       The journal, e.g. {@code run1.journal}.
+     * @param syncMillis The longest time a written record may stay unsynced; {@code 0} syncs every record.
+     * @throws IOException If the journal cannot be created.
+     */
+    public SampleJournal(Path path, long syncMillis) throws IOException {
+        this.path = path;
+        this.syncMillis = syncMillis;
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        writeFully(ByteBuffer.wrap(MAGIC));
+        channel.force(true);
+    }
+
+    /**
+     * Returns a sink that journals its rows and passes them on.
+     *
+     * @param delegate   The sink that writes the rows.
+     * @param outputPath The text output a recovery rebuilds from these rows, e.g. {@code run1.cpu.out}.
+     * @return the journaling sink
+     */
+    public synchronized SampleSink wrap(SampleSink delegate, String outputPath) {
+        openSinks++;
+        return new JournalSink(delegate, outputPath, streams++);
+    }
+
+    /**
+     * Syncs and closes the journal. Call it after the sinks have been closed: if all of them were,
+     * and none of their outputs failed, the outputs are complete and the journal is deleted.
+     *
+     * @throws IOException If the journal cannot be closed.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        channel.force(false);
+        channel.close();
+        if (outputFailed || openSinks > 0) {
+            logger.warning(String.format("Kept %s because %s; rebuild the outputs with benchmark:recover.",
+                    path, outputFailed ? "an output failed" : "an output was not closed"));
+            return;
+        }
+        Files.deleteIfExists(path);
+    }
+
+    /**
+     * Rebuilds the text outputs of a journal.
+     *
+     * @param journal   The journal of an interrupted run.
+     * @param outputDir The directory to write the outputs to; they keep the file names recorded in the journal.
+     * @return what was rebuilt
+     * @throws IOException If the journal cannot be read or an output cannot be written.
+     */
+    public static Recovery recover(Path journal, Path outputDir) throws IOException {
+        long fileBytes = Files.size(journal);
+        Files.createDirectories(outputDir);
+        List<Path> outputs = new ArrayList<>();
+        List<TextSampleSink> sinks = new ArrayList<>();
+        List<SampleCodec> codecs = new ArrayList<>();
+        List<SampleBuffer> buffers = new ArrayList<>();
+        long samples = 0;
+        long valid = MAGIC.length;
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(journal), 1 << 16))) {
+            byte[] magic = new byte[MAGIC.length];
+            try {
+                in.readFully(magic);
+            } catch (EOFException e) {
+                throw new IOException("Not a sample journal: " + journal);
+            }
+            if (!Arrays.equals(magic, MAGIC)) throw new IOException("Not a sample journal: " + journal);
+
+            CRC32C crc = new CRC32C();
+            byte[] payload = new byte[1 << 16];
+            while (true) {
+                int length;
+                int checksum;
+                try {
+                    length = in.readInt();
+                    checksum = in.readInt();
+                } catch (EOFException e) {
+                    break;
+                }
+                if (length < PAYLOAD_HEADER_BYTES || length > MAX_RECORD_BYTES) break;
+                if (payload.length < length) payload = new byte[Math.max(length, payload.length * 2)];
+                try {
+                    in.readFully(payload, 0, length);
+                } catch (EOFException e) {
+                    break;
+                }
+                crc.reset();
+                crc.update(payload, 0, length);
+                if ((int) crc.getValue() != checksum) break;
+
+                ByteBuffer buf = ByteBuffer.wrap(payload, 0, length);
+                byte type = buf.get(0);
+                int stream = Short.toUnsignedInt(buf.getShort(1));
+                if (type == SCHEMA) {
+                    DataInputStream schemaIn = new DataInputStream(
+                            new ByteArrayInputStream(payload, PAYLOAD_HEADER_BYTES, length - PAYLOAD_HEADER_BYTES));
+                    String outputPath = schemaIn.readUTF();
+                    MetricSchema schema = readSchema(schemaIn);
+                    while (sinks.size() <= stream) {
+                        sinks.add(null);
+                        codecs.add(null);
+                        buffers.add(null);
+                    }
+                    Path output = outputDir.resolve(Path.of(outputPath).getFileName());
+                    TextSampleSink sink = new TextSampleSink(output.toString());
+                    sink.open(schema);
+                    sinks.set(stream, sink);
+                    codecs.set(stream, new SampleCodec(schema));
+                    buffers.set(stream, new SampleBuffer(schema));
+                    outputs.add(output);
+                } else if (type == SAMPLE && stream < sinks.size() && sinks.get(stream) != null) {
+                    codecs.get(stream).decode(buf, PAYLOAD_HEADER_BYTES, buffers.get(stream));
+                    sinks.get(stream).write(buffers.get(stream));
+                    samples++;
+                }
+                valid += FRAME_BYTES + length;
+            }
+        } finally {
+            for (TextSampleSink sink : sinks) {
+                if (sink != null) sink.close();
+            }
+        }
+        return new Recovery(outputs, samples, fileBytes - valid);
+    }
+
+    private synchronized void append(byte type, int stream, int payloadLength, PayloadWriter writer) throws IOException {
+        int total = FRAME_BYTES + payloadLength;
+        if (record.capacity() < total) record = ByteBuffer.allocate(Math.max(total, record.capacity() * 2));
+        record.clear();
+        record.put(FRAME_BYTES, type);
+        record.putShort(FRAME_BYTES + 1, (short) stream);
+        writer.write(record, FRAME_BYTES + PAYLOAD_HEADER_BYTES);
+
+        crc.reset();
+        crc.update(record.array(), FRAME_BYTES, payloadLength);
+        record.putInt(0, payloadLength);
+        record.putInt(4, (int) crc.getValue());
+        record.limit(total);
+        writeFully(record);
+        dirty = true;
+        syncIfDue();
+    }
+
+    private synchronized void syncIfDue() throws IOException {
+        long now = System.currentTimeMillis();
+        if (dirty && now - lastSync >= syncMillis) {
+            channel.force(false);
+            lastSync = now;
+            dirty = false;
+        }
+    }
+
+    private void writeFully(ByteBuffer buf) throws IOException {
+        while (buf.hasRemaining()) {
+            channel.write(buf);
+        }
+    }
+
+    private static byte[] encodeSchema(String outputPath, MetricSchema schema) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeUTF(outputPath);
+        out.writeUTF(schema.getSource());
+        out.writeInt(schema.getLabels().size());
+        for (String label : schema.getLabels()) {
+            out.writeUTF(label);
+        }
+        out.writeInt(schema.getMetrics().size());
+        for (MetricSchema.Metric metric : schema.getMetrics()) {
+            out.writeUTF(metric.name());
+            out.writeUTF(metric.unit());
+            out.writeBoolean(metric.integral());
+        }
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    private static MetricSchema readSchema(DataInputStream in) throws IOException {
+        String source = in.readUTF();
+        List<String> labels = new ArrayList<>();
+        for (int i = in.readInt(); i > 0; i--) {
+            labels.add(in.readUTF());
+        }
+        List<MetricSchema.Metric> metrics = new ArrayList<>();
+        for (int i = in.readInt(); i > 0; i--) {
+            metrics.add(new MetricSchema.Metric(in.readUTF(), in.readUTF(), in.readBoolean()));
+        }
+        return new MetricSchema(source, labels, metrics);
+    }
+
+    @FunctionalInterface
+    private interface PayloadWriter {
+        void write(ByteBuffer out, int offset) throws IOException;
+    }
+
+    /**
+     * Journals the rows of one source.
+     */
+    private final class JournalSink implements SampleSink {
+        private final SampleSink delegate;
+        private final String outputPath;
+        private final int stream;
+        private SampleCodec codec;
+        private boolean failed = false;
+        private boolean closed = false;
+
+        JournalSink(SampleSink delegate, String outputPath, int stream) {
+            this.delegate = delegate;
+            this.outputPath = outputPath;
+            this.stream = stream;
+        }
+
+        @Override
+        public void open(MetricSchema schema) throws IOException {
+            codec = new SampleCodec(schema);
+            byte[] encoded = encodeSchema(outputPath, schema);
+            append(SCHEMA, stream, PAYLOAD_HEADER_BYTES + encoded.length,
+                    (out, offset) -> out.put(offset, encoded));
+            try {
+                delegate.open(schema);
+            } catch (IOException e) {
+                fail(outputPath, "open", e);
+            }
+        }
+
+        @Override
+        public void write(SampleBuffer buffer) throws IOException {
+            // Write-ahead: the journal has the row before the output is given it.
+            append(SAMPLE, stream, PAYLOAD_HEADER_BYTES + codec.encodedLength(buffer),
+                    (out, offset) -> codec.encode(buffer, out, offset));
+            if (failed) return;
+            try {
+                delegate.write(buffer);
+            } catch (IOException e) {
+                fail(outputPath, "write", e);
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (!failed) {
+                try {
+                    delegate.flush();
+                } catch (IOException e) {
+                    fail(outputPath, "flush", e);
+                }
+            }
+            syncIfDue();
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) return;
+            closed = true;
+            try {
+                delegate.close();
+            } catch (IOException e) {
+                fail(outputPath, "close", e);
+            }
+            synchronized (SampleJournal.this) {
+                openSinks--;
+            }
+        }
+
+        /**
+         * Stops passing rows to a failed output; they stay in the journal, which is then kept.
+         */
+        private void fail(String name, String operation, IOException e) {
+            failed = true;
+            synchronized (SampleJournal.this) {
+                outputFailed = true;
+            }
+            logger.warning(String.format("%s could not %s its output; its samples are kept in %s only: %s",
+                    name, operation, path, e.getMessage()));
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package com.github.oogasawa.benchmark.metric;
+
+import java.io.IOException;
+
+/**
+ * A destination for the rows of a {@link MetricSource}.
+ */
+public interface SampleSink {
+
+    /**
+     * Opens the destination and writes any header.
+     *
+     * @param schema The schema of the rows that will be written.
+     * @throws IOException If the destination cannot be opened.
+     */
+    void open(MetricSchema schema) throws IOException;
+
+    /**
+     * Writes the rows of one tick.
+     *
+     * @param buffer The filled buffer.
+     * @throws IOException If writing fails.
+     */
+    void write(SampleBuffer buffer) throws IOException;
+
+    /**
+     * Pushes the rows written so far to the destination. Sinks that buffer their output
+     * only need to be flushed periodically, e.g. by an {@link AsyncSampleWriter}.
+     *
+     * @throws IOException If writing fails.
+     */
+    default void flush() throws IOException {
+    }
+
+    /**
+     * Flushes and closes the destination.
+     *
+     * @throws IOException If closing fails.
+     */
+    void close() throws IOException;
+}
@@ -0,0 +1,229 @@
+package com.github.oogasawa.benchmark.metric;
+
+import java.io.BufferedReader;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+import com.github.oogasawa.benchmark.util.OutputFiles;
+import com.github.oogasawa.benchmark.util.TimeWindow;
+import com.github.oogasawa.benchmark.util.TimestampParser;
+
+/**
+ * The index of a segmented output ({@code basename.cpu.out.index}), and windowed reading of outputs.
+ * <p>
+ * A {@link SegmentedSampleSink} writes an output as a series of segment files, each a complete
+ * CSV file with its own header, and records the tick and time range of every segment in the index:
+ * <pre>
+ * segment,first_tick,last_tick,first_epoch_millis,last_epoch_millis
+ * run1.cpu.0001.out,1,3600,1751695262000,1751698861000
+ * run1.cpu.0002.out,3601,7200,1751698862000,1751702461000
+ * </pre>
+ * {@link #openWindow(Path, TimeWindow)} uses the index to open only the segments that overlap the
+ * requested window, so the memory a reader needs depends on the window and not on the length of the run.
+ */
+public final class SegmentIndex {
+
+    /** Suffix of the index, appended to the name of the output. */
+    public static final String INDEX_SUFFIX = ".index";
+
+    static final String HEADER = "segment,first_tick,last_tick,first_epoch_millis,last_epoch_millis";
+
+    /**
+     * One segment file and the range it covers. The ranges of a segment that is still being written,
+     * or of a segment without rows, are {@code -1}.
+     */
+    public record Segment(String file, long firstTick, long lastTick, long firstEpochMillis, long lastEpochMillis) {}
+
+    private SegmentIndex() {
+    }
+
+    /**
+     * Returns the index path of an output, e.g. {@code run1.cpu.out.index} for {@code run1.cpu.out}.
+     */
+    public static Path indexPath(Path output) {
+        return output.resolveSibling(OutputFiles.stripGzipSuffix(output.getFileName().toString()) + INDEX_SUFFIX);
+    }
+
+    /**
+     * Reads the segments of an output.
+     *
+     * @param output The output, e.g. {@code run1.cpu.out}.
+     * @return the segments in order, or {@code null} if the output is not segmented
+     * @throws IOException If the index cannot be read.
+     */
+    public static List<Segment> read(Path output) throws IOException {
+        Path index = indexPath(output);
+        if (!Files.exists(index)) return null;
+
+        List<Segment> segments = new ArrayList<>();
+        try (BufferedReader in = Files.newBufferedReader(index)) {
+            String line = in.readLine();   // header
+            while ((line = in.readLine()) != null) {
+                String[] f = line.split(",");
+                if (f.length != 5) continue;
+                segments.add(new Segment(f[0], Long.parseLong(f[1]), Long.parseLong(f[2]),
+                        Long.parseLong(f[3]), Long.parseLong(f[4])));
+            }
+        } catch (NumberFormatException e) {
+            throw new IOException("Broken segment index: " + index, e);
+        }
+        return segments;
+    }
+
+    /**
+     * Replaces the index of an output.
+     */
+    static void write(Path output, List<Segment> segments) throws IOException {
+        Path index = indexPath(output);
+        Path tmp = index.resolveSibling(index.getFileName() + ".tmp");
+        StringBuilder sb = new StringBuilder(HEADER).append('\n');
+        for (Segment s : segments) {
+            sb.append(s.file()).append(',').append(s.firstTick()).append(',').append(s.lastTick()).append(',')
+              .append(s.firstEpochMillis()).append(',').append(s.lastEpochMillis()).append('\n');
+        }
+        Files.writeString(tmp, sb);
+        Files.move(tmp, index, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Opens the rows of a CSV output that fall in a time window, as one CSV stream with one header.
+     * <p>
+     * For a segmented output only the segments that overlap the window are read; for a plain
+     * output the rows are filtered while reading. Rows are selected by their {@code timestamp}
+     * column; rows whose timestamp cannot be parsed are kept. A segment whose range is not known
+     * yet (the one a running or crashed monitor was writing) may hold any time, so it is always
+     * read and its rows are filtered. A relative window is resolved against the first closed
+     * segment, or else the first row read.
+     *
+     * @param output The output, e.g. {@code run1.nvidia-smi.out}; it may be compressed.
+     * @param window The window to read.
+     * @return a reader of the header and the selected rows
+     * @throws IOException If the output cannot be read.
+     */
+    public static BufferedReader openWindow(Path output, TimeWindow window) throws IOException {
+        List<Segment> segments = read(output);
+        if (segments == null) {
+            if (window.isAll()) return OutputFiles.newBufferedReader(output);
+            return new BufferedReader(new WindowReader(List.of(output), window));
+        }
+
+        long start = segments.stream().mapToLong(Segment::firstEpochMillis).filter(t -> t >= 0).findFirst().orElse(-1);
+        TimeWindow resolved = start >= 0 ? window.resolve(start) : window;
+        List<Path> files = new ArrayList<>();
+        for (Segment s : segments) {
+            if (s.firstEpochMillis() < 0 || resolved.isRelative()
+                    || resolved.overlaps(s.firstEpochMillis(), s.lastEpochMillis())) {
+                files.add(output.resolveSibling(s.file()));
+            }
+        }
+        if (files.isEmpty() && !segments.isEmpty()) {
+            files.add(output.resolveSibling(segments.get(0).file()));   // for the header; its rows are filtered out
+        }
+        return new BufferedReader(new WindowReader(files, resolved));
+    }
+
+    /**
+     * Concatenates CSV files with the header of the first one, keeping the rows in a window.
+     */
+    private static final class WindowReader extends Reader {
+        private final List<Path> files;
+        private final TimeWindow window;
+        private TimeWindow resolved;
+        private int next = 0;
+        private BufferedReader current;
+        private boolean headerDone = false;
+        private int timestampColumn = -1;
+        private final TimestampParser parser = new TimestampParser(TextSampleSink.TIMESTAMP_PATTERN);
+        private String line = "";
+        private int pos = 0;
+
+        WindowReader(List<Path> files, TimeWindow window) {
+            this.files = files;
+            this.window = window;
+            this.resolved = window.isRelative() ? null : window;
+        }
+
+        @Override
+        public int read(char[] cbuf, int off, int len) throws IOException {
+            if (pos == line.length() && !nextLine()) return -1;
+            int n = Math.min(len, line.length() - pos);
+            line.getChars(pos, pos + n, cbuf, off);
+            pos += n;
+            return n;
+        }
+
+        private boolean nextLine() throws IOException {
+            while (true) {
+                if (current == null) {
+                    if (next >= files.size()) return false;
+                    current = OutputFiles.newBufferedReader(files.get(next++));
+                    String header = current.readLine();
+                    if (header == null) {
+                        closeCurrent();
+                        continue;
+                    }
+                    if (!headerDone) {
+                        headerDone = true;
+                        timestampColumn = column(header, "timestamp");
+                        return set(header);
+                    }
+                }
+                String row;
+                try {
+                    row = current.readLine();
+                } catch (EOFException e) {
+                    row = null;   // a compressed segment that is still being written ends mid-block
+                }
+                if (row == null) {
+                    closeCurrent();
+                    continue;
+                }
+                if (selected(row)) return set(row);
+            }
+        }
+
+        private boolean selected(String row) {
+            if (timestampColumn < 0) return true;
+            String[] fields = row.split(",", timestampColumn + 2);
+            if (fields.length <= timestampColumn) return true;
+            long millis;
+            try {
+                millis = parser.parseEpochMillis(fields[timestampColumn].trim());
+            } catch (DateTimeParseException e) {
+                return true;
+            }
+            if (resolved == null) resolved = window.resolve(millis);
+            return resolved.contains(millis);
+        }
+
+        private boolean set(String text) {
+            line = text + "\n";
+            pos = 0;
+            return true;
+        }
+
+        private void closeCurrent() throws IOException {
+            current.close();
+            current = null;
+        }
+
+        private static int column(String header, String name) {
+            String[] columns = header.split(",");
+            for (int i = 0; i < columns.length; i++) {
+                if (columns[i].trim().equals(name)) return i;
+            }
+            return -1;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (current != null) closeCurrent();
+        }
+    }
+}
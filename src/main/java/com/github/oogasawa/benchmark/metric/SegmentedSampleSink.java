@@ -0,0 +1,125 @@
+package com.github.oogasawa.benchmark.metric;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import com.github.oogasawa.benchmark.util.OutputFiles;
+
+/**
+ * Writes the rows of a source as a series of text segments instead of one ever-growing file.
+ * <p>
+ * A new segment is started at a tick boundary when the current one has reached the size limit
+ * (counted before compression) or covers the duration limit. Segments are named after the output
+ * with a sequence number before the extension ({@code run1.cpu.0001.out}, {@code run1.cpu.0002.out}, ...),
+ * each starts with the header, and their ranges are recorded in a {@link SegmentIndex}
+ * ({@code run1.cpu.out.index}), which is rewritten whenever a segment is started or closed.
+ *
+ * <p>Example usage:
+ * <pre>{@code
+ *     // One segment per hour or per 512 MiB, whichever comes first
+ *     SampleSink sink = new SegmentedSampleSink("run1.cpu.out", false, 512L << 20, 3_600_000);
+ * }</pre>
+ */
+public class SegmentedSampleSink implements SampleSink {
+
+    private final String outputPath;
+    private final boolean compress;
+    private final long maxChars;
+    private final long maxMillis;
+    private final List<SegmentIndex.Segment> closed = new ArrayList<>();
+
+    private MetricSchema schema;
+    private TextSampleSink current;
+    private String currentFile;
+    private long firstTick = -1;
+    private long lastTick = -1;
+    private long firstMillis = -1;
+    private long lastMillis = -1;
+
+    /**
+     * Constructs a segmented sink.
+     *
+     * @param outputPath The name of the output, e.g. {@code run1.cpu.out}; the segments are written next to it.
+     * @param compress   If {@code true}, the segments are written block-compressed.
+     * @param maxChars   The size limit of a segment in characters before compression, or {@code 0} for none.
+     * @param maxMillis  The duration limit of a segment in milliseconds, or {@code 0} for none.
+     */
+    public SegmentedSampleSink(String outputPath, boolean compress, long maxChars, long maxMillis) {
+        this.outputPath = outputPath;
+        this.compress = compress;
+        this.maxChars = maxChars;
+        this.maxMillis = maxMillis;
+    }
+
+    @Override
+    public void open(MetricSchema schema) throws IOException {
+        this.schema = schema;
+        startSegment();
+    }
+
+    @Override
+    public void write(SampleBuffer buffer) throws IOException {
+        if (firstTick >= 0 && isFull(buffer.getEpochMillis())) {
+            closeSegment();
+            startSegment();
+        }
+        current.write(buffer);
+        if (firstTick < 0) {
+            firstTick = buffer.getTick();
+            firstMillis = buffer.getEpochMillis();
+        }
+        lastTick = buffer.getTick();
+        lastMillis = buffer.getEpochMillis();
+    }
+
+    @Override
+    public void flush() throws IOException {
+        current.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (current != null) {
+            closeSegment();
+            SegmentIndex.write(Path.of(outputPath), closed);
+        }
+    }
+
+    /**
+     * Returns the name of segment {@code n}, e.g. {@code run1.cpu.0002.out} for {@code run1.cpu.out}.
+     */
+    static String segmentPath(String outputPath, int n) {
+        Path path = Path.of(outputPath);
+        String name = path.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        String segment = dot > 0
+            ? String.format("%s.%04d%s", name.substring(0, dot), n, name.substring(dot))
+            : String.format("%s.%04d", name, n);
+        return path.resolveSibling(segment).toString();
+    }
+
+    private boolean isFull(long epochMillis) {
+        return (maxChars > 0 && current.getCharsWritten() >= maxChars)
+            || (maxMillis > 0 && epochMillis - firstMillis >= maxMillis);
+    }
+
+    private void startSegment() throws IOException {
+        String path = segmentPath(outputPath, closed.size() + 1);
+        currentFile = Path.of(OutputFiles.outputPath(path, compress)).getFileName().toString();
+        current = new TextSampleSink(path, compress);
+        current.open(schema);
+        firstTick = lastTick = firstMillis = lastMillis = -1;
+
+        List<SegmentIndex.Segment> segments = new ArrayList<>(closed);
+        segments.add(new SegmentIndex.Segment(currentFile, -1, -1, -1, -1));
+        SegmentIndex.write(Path.of(outputPath), segments);
+    }
+
+    private void closeSegment() throws IOException {
+        current.close();
+        closed.add(new SegmentIndex.Segment(currentFile, firstTick, lastTick, firstMillis, lastMillis));
+        SegmentIndex.write(Path.of(outputPath), closed);
+        current = null;
+    }
+}
@@ -0,0 +1,82 @@
+package com.github.oogasawa.benchmark.metric;
+
+import java.io.IOException;
+import java.util.logging.Logger;
+import com.github.oogasawa.benchmark.Sampler;
+
+/**
+ * Puts a {@link MetricSource} on a {@link com.github.oogasawa.benchmark.SamplingScheduler}:
+ * on every tick the source fills a reused {@link SampleBuffer} stamped with the tick,
+ * and the buffer is handed to a {@link SampleSink}.
+ *
+ * <p>Example usage:
+ * <pre>{@code
+ *     scheduler.register(new SourceSampler(new CpuStatSampler(), new TextSampleSink("run1.cpu.out")));
+ * }</pre>
+ */
+public class SourceSampler implements Sampler {
+
+    private static final Logger logger = Logger.getLogger(SourceSampler.class.getName());
+
+    private final MetricSource source;
+    private final SampleSink sink;
+    private SampleBuffer buffer;
+
+    /**
+     * Constructs a sampler.
+     *
+     * @param source The source to sample.
+     * @param sink   The destination of the rows.
+     */
+    public SourceSampler(MetricSource source, SampleSink sink) {
+        this.source = source;
+        this.sink = sink;
+    }
+
+    @Override
+    public String getName() {
+        return source.getName();
+    }
+
+    @Override
+    public long getMinIntervalMillis() {
+        return source.getMinIntervalMillis();
+    }
+
+    @Override
+    public boolean isBlocking() {
+        return source.isBlocking();
+    }
+
+    @Override
+    public void start() throws IOException {
+        source.open();
+        buffer = new SampleBuffer(source.getSchema());
+        sink.open(source.getSchema());
+    }
+
+    @Override
+    public void onTick(long tick, long epochMillis) throws IOException {
+        buffer.reset(tick, epochMillis);
+        source.sample(buffer);
+        sink.write(buffer);
+    }
+
+    @Override
+    public void stop() {
+        try {
+            source.close();
+        } catch (IOException e) {
+            logger.fine(String.format("%s close failed: %s", source.getName(), e.getMessage()));
+        }
+        try {
+            sink.close();
+        } catch (IOException e) {
+            logger.warning(String.format("%s could not close its output: %s", source.getName(), e.getMessage()));
+        }
+    }
+
+    public MetricSource getSource() {
+        return source;
+    }
+}
@@ -0,0 +1,129 @@
+package com.github.oogasawa.benchmark.metric;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A lock-free single-producer/single-consumer ring of variable-length records in off-heap memory.
+ * <p>
+ * The producer reserves room for a record with {@link #claim(int)}, writes the record with the
+ * absolute methods of {@link #buffer()}, and publishes it with {@link #commit()}. A record never
+ * wraps around the end of the ring: when it does not fit in the remaining space, a padding marker
+ * is written and the record starts at the beginning. The consumer reads the published records
+ * with {@link #read(RecordHandler)}. Neither side ever blocks; a full ring makes {@link #claim(int)}
+ * fail, and the caller decides what to drop.
+ * <p>
+ * The write position is only written by the producer and the read position only by the consumer.
+ * Each is published with release semantics after the records it covers have been written or read.
+ */
+final class SpscByteRing {
+
+    /** Record handler of the consumer. */
+    interface RecordHandler {
+        /**
+         * Reads one record.
+         *
+         * @param buffer The ring memory.
+         * @param offset The offset of the record.
+         * @param length The length of the record in bytes.
+         */
+        void accept(ByteBuffer buffer, int offset, int length);
+    }
+
+    private static final int HEADER_BYTES = 4;
+    private static final int PADDING = -1;
+
+    private final ByteBuffer buffer;
+    private final int capacity;
+    private final int mask;
+    private final AtomicLong head = new AtomicLong();   // read position, written by the consumer
+    private final AtomicLong tail = new AtomicLong();   // write position, written by the producer
+    private long claimedTail;
+
+    /**
+     * Allocates a ring.
+     *
+     * @param capacity The size of the ring in bytes, rounded up to a power of two.
+     */
+    SpscByteRing(int capacity) {
+        this.capacity = capacity <= 64 ? 64 : Integer.highestOneBit(capacity - 1) << 1;
+        this.mask = this.capacity - 1;
+        this.buffer = ByteBuffer.allocateDirect(this.capacity);
+    }
+
+    ByteBuffer buffer() {
+        return buffer;
+    }
+
+    int capacity() {
+        return capacity;
+    }
+
+    /**
+     * Reserves room for a record (producer side).
+     *
+     * @param length The length of the record in bytes.
+     * @return the offset at which the record is written, or {@code -1} if the ring is full
+     */
+    int claim(int length) {
+        int total = align(HEADER_BYTES + length);
+        long t = tail.get();
+        int index = (int) (t & mask);
+        int toEnd = capacity - index;
+        int needed = total <= toEnd ? total : toEnd + total;
+        if (needed > capacity - (t - head.get())) {
+            return -1;
+        }
+        if (total > toEnd) {
+            buffer.putInt(index, PADDING);
+            t += toEnd;
+            index = 0;
+        }
+        buffer.putInt(index, length);
+        claimedTail = t + total;
+        return index + HEADER_BYTES;
+    }
+
+    /**
+     * Publishes the record of the last successful {@link #claim(int)} (producer side).
+     */
+    void commit() {
+        tail.lazySet(claimedTail);
+    }
+
+    /**
+     * Reads all published records (consumer side).
+     *
+     * @param handler The handler called for each record.
+     * @return the number of records read
+     */
+    int read(RecordHandler handler) {
+        long h = head.get();
+        long t = tail.get();
+        int records = 0;
+        while (h < t) {
+            int index = (int) (h & mask);
+            int length = buffer.getInt(index);
+            if (length == PADDING) {
+                h += capacity - index;
+                continue;
+            }
+            handler.accept(buffer, index + HEADER_BYTES, length);
+            h += align(HEADER_BYTES + length);
+            records++;
+        }
+        head.lazySet(h);
+        return records;
+    }
+
+    /**
+     * Returns the number of bytes in use, including records being read.
+     */
+    long used() {
+        return tail.get() - head.get();
+    }
+
+    private static int align(int length) {
+        return (length + 3) & ~3;
+    }
+}
@@ -0,0 +1,129 @@
+package com.github.oogasawa.benchmark.metric;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import com.github.oogasawa.benchmark.util.OutputFiles;
+
+/**
+ * Writes the rows of a source as a plain CSV file.
+ * <p>
+ * Every row starts with the tick id and the timestamp of the tick, followed by the labels
+ * and the metrics of the schema. Integral metrics are written without decimals, the others
+ * with two; unavailable values are left empty.
+ *
+ * <p>Example output:
+ * <pre>
+ * tick,timestamp,index,utilization.gpu [%],memory.used [MiB],power.draw [W]
+ * 42,2025/07/05 15:01:02.123,0,56,25037,281.35
+ * 42,2025/07/05 15:01:02.123,1,42,24870,265.10
+ * </pre>
+ * The {@code nvidia-smi} output in this layout is read by {@code format:gpu} and {@code vis:gpu}
+ * like a raw {@code nvidia-smi --format=csv} log.
+ */
+public class TextSampleSink implements SampleSink {
+
+    /**
+     * Timestamp layout shared by all native outputs.
+     * It is the same layout {@code nvidia-smi} uses, so one parser handles every output file.
+     */
+    public static final String TIMESTAMP_PATTERN = "yyyy/MM/dd HH:mm:ss.SSS";
+
+    /** The formatter of {@link #TIMESTAMP_PATTERN}; readers parse with a {@code TimestampParser} of the pattern. */
+    public static final DateTimeFormatter TIMESTAMP_FORMATTER = DateTimeFormatter.ofPattern(TIMESTAMP_PATTERN);
+
+    private final String outputPath;
+    private final boolean compress;
+    private CsvWriter out;
+    private boolean[] integral;
+    private int numLabels;
+
+    /**
+     * Constructs a text sink.
+     *
+     * @param outputPath Output file path.
+     */
+    public TextSampleSink(String outputPath) {
+        this(outputPath, false);
+    }
+
+    /**
+     * Constructs a text sink.
+     *
+     * @param outputPath Output file path.
+     * @param compress   If {@code true}, the file is written block-compressed to {@code outputPath.gz}.
+     */
+    public TextSampleSink(String outputPath, boolean compress) {
+        this.outputPath = outputPath;
+        this.compress = compress;
+    }
+
+    @Override
+    public void open(MetricSchema schema) throws IOException {
+        List<MetricSchema.Metric> metrics = schema.getMetrics();
+        integral = new boolean[metrics.size()];
+        for (int m = 0; m < integral.length; m++) {
+            integral[m] = metrics.get(m).integral();
+        }
+        numLabels = schema.getLabels().size();
+
+        out = new CsvWriter(OutputFiles.newWriter(outputPath, compress));
+        out.println("tick,timestamp," + schema.header());
+        out.flush();
+    }
+
+    @Override
+    public void write(SampleBuffer buffer) throws IOException {
+        String stamp = buffer.getTick() + "," + formatTimestamp(buffer.getEpochMillis());
+        for (int row = 0; row < buffer.getRows(); row++) {
+            out.begin(stamp);
+            for (int l = 0; l < numLabels; l++) {
+                out.field(buffer.getLabel(row, l));
+            }
+            for (int m = 0; m < integral.length; m++) {
+                double value = buffer.getValue(row, m);
+                if (Double.isNaN(value)) {
+                    out.empty();
+                } else if (integral[m]) {
+                    out.field((long) value);
+                } else {
+                    out.field(value);
+                }
+            }
+            out.end();
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (out != null) out.close();
+    }
+
+    /**
+     * Returns the size of the text written so far, before any compression.
+     *
+     * @return the number of characters written
+     */
+    public long getCharsWritten() {
+        return out == null ? 0 : out.written();
+    }
+
+    /**
+     * Formats an epoch time in the layout of {@link #TIMESTAMP_FORMATTER}, in the local time zone.
+     *
+     * @param epochMillis Milliseconds since the epoch.
+     * @return the formatted timestamp
+     */
+    public static String formatTimestamp(long epochMillis) {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(epochMillis), ZoneId.systemDefault())
+                .format(TIMESTAMP_FORMATTER);
+    }
+}
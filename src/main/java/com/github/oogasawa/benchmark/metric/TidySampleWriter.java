@@ -0,0 +1,138 @@
+package com.github.oogasawa.benchmark.metric;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.List;
+import com.github.oogasawa.benchmark.util.OutputFiles;
+
+/**
+ * Writes the samples of all sources of a run to one CSV file in long format:
+ * one row per tick, source, entity and metric.
+ * <p>
+ * The entity is the first label of the source (the CPU, device, interface, GPU index or pid),
+ * and is empty for sources without labels such as {@code meminfo}. Unavailable values are not written.
+ * Because every source shares the same six columns, one streaming consumer can aggregate
+ * all resources of a run without a parser per tool and without joining files.
+ *
+ * <p>Example output:
+ * <pre>
+ * tick,timestamp,source,entity,metric,value
+ * 42,2025/07/05 15:01:02.123,proc-stat,all,user,12.50
+ * 42,2025/07/05 15:01:02.123,nvidia-smi,0,utilization.gpu,56
+ * 42,2025/07/05 15:01:02.123,proc-meminfo,,mem_free,1203884
+ * </pre>
+ *
+ * <p>Example usage:
+ * <pre>{@code
+ *     try (TidySampleWriter tidy = new TidySampleWriter("run1.samples.csv")) {
+ *         scheduler.register(new SourceSampler(new CpuStatSampler(), tidy.newSink()));
+ *         ...
+ *         scheduler.stop();
+ *     }
+ * }</pre>
+ */
+public class TidySampleWriter implements Closeable {
+
+    /** Header of the file. */
+    public static final String HEADER = "tick,timestamp,source,entity,metric,value";
+
+    private final CsvWriter out;
+
+    /**
+     * Creates the file, replacing any existing file.
+     *
+     * @param outputPath Output file path.
+     * @throws IOException If the file cannot be created.
+     */
+    public TidySampleWriter(String outputPath) throws IOException {
+        this(outputPath, false);
+    }
+
+    /**
+     * Creates the file, replacing any existing file.
+     *
+     * @param outputPath Output file path.
+     * @param compress   If {@code true}, the file is written block-compressed to {@code outputPath.gz}.
+     * @throws IOException If the file cannot be created.
+     */
+    public TidySampleWriter(String outputPath, boolean compress) throws IOException {
+        out = new CsvWriter(OutputFiles.newWriter(outputPath, compress));
+        out.println(HEADER);
+    }
+
+    /**
+     * Returns a sink that writes the samples of one source to this file.
+     * Sinks may be written from different threads.
+     *
+     * @return a new sink
+     */
+    public SampleSink newSink() {
+        return new SampleSink() {
+            private String source;
+            private boolean hasEntity;
+            private String[] metrics;
+            private boolean[] integral;
+
+            @Override
+            public void open(MetricSchema schema) {
+                source = schema.getSource();
+                hasEntity = !schema.getLabels().isEmpty();
+                List<MetricSchema.Metric> list = schema.getMetrics();
+                metrics = new String[list.size()];
+                integral = new boolean[list.size()];
+                for (int m = 0; m < metrics.length; m++) {
+                    metrics[m] = list.get(m).name();
+                    integral[m] = list.get(m).integral();
+                }
+            }
+
+            @Override
+            public void write(SampleBuffer buffer) throws IOException {
+                String stamp = buffer.getTick() + "," + TextSampleSink.formatTimestamp(buffer.getEpochMillis())
+                        + "," + source;
+                synchronized (out) {
+                    for (int row = 0; row < buffer.getRows(); row++) {
+                        String entity = hasEntity ? buffer.getLabel(row, 0) : "";
+                        for (int m = 0; m < metrics.length; m++) {
+                            double value = buffer.getValue(row, m);
+                            if (Double.isNaN(value)) continue;
+                            out.begin(stamp);
+                            out.field(entity);
+                            out.field(metrics[m]);
+                            if (integral[m]) {
+                                out.field((long) value);
+                            } else {
+                                out.field(value);
+                            }
+                            out.end();
+                        }
+                    }
+                }
+            }
+
+            @Override
+            public void flush() throws IOException {
+                synchronized (out) {
+                    out.flush();
+                }
+            }
+
+            @Override
+            public void close() {
+                // The file is closed with the writer.
+            }
+        };
+    }
+
+    /**
+     * Flushes and closes the file.
+     *
+     * @throws IOException If closing fails.
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (out) {
+            out.close();
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package com.github.oogasawa.benchmark.metric;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import com.github.oogasawa.benchmark.util.OutputFiles;
+
+/**
+ * Writes one metric of a source as a wide CSV file with a row per tick and a column per entity,
+ * the layout {@code format:gpu} produces for GPUs.
+ * <p>
+ * The rows are written as they arrive to {@code outputPath.body}, and an entity that appears
+ * later in the run gets the next column. {@link #close()} writes the header, which is only known
+ * then, followed by the rows padded to the final number of columns, so memory use depends on
+ * the number of entities and not on the length of the run.
+ *
+ * <p>Example output:
+ * <pre>
+ * timestamp,all,0,1
+ * 2025/07/05 15:01:03.000,1.00,2.00,0.00
+ * 2025/07/05 15:01:04.000,1.50,3.00,0.00
+ * </pre>
+ */
+public class WideCsvSink implements SampleSink {
+
+    private final String outputPath;
+    private final String metric;
+    private final Path body;
+    private final Map<String, Integer> columns = new HashMap<>();
+    private final List<String> names = new ArrayList<>();
+    private CsvWriter out;
+    private int metricIndex;
+    private int numLabels;
+    private boolean integral;
+    private double[] values = new double[16];
+
+    /**
+     * Constructs a wide CSV sink.
+     *
+     * @param outputPath Output file path.
+     * @param metric     The name of the metric to write, e.g. {@code %usr}.
+     */
+    public WideCsvSink(String outputPath, String metric) {
+        this.outputPath = outputPath;
+        this.metric = metric;
+        this.body = Path.of(outputPath + ".body");
+    }
+
+    /**
+     * @throws IOException If the schema has no such metric, or the file cannot be created.
+     */
+    @Override
+    public void open(MetricSchema schema) throws IOException {
+        metricIndex = schema.indexOf(metric);
+        if (metricIndex < 0) {
+            List<String> available = schema.getMetrics().stream().map(MetricSchema.Metric::name).toList();
+            throw new IOException("No metric " + metric + " in " + schema.getSource() + " (available: "
+                    + String.join(", ", available) + ")");
+        }
+        numLabels = schema.getLabels().size();
+        integral = schema.getMetrics().get(metricIndex).integral();
+        out = new CsvWriter(OutputFiles.newWriter(body.toString(), false));
+    }
+
+    @Override
+    public void write(SampleBuffer buffer) throws IOException {
+        Arrays.fill(values, 0, names.size(), Double.NaN);
+        for (int row = 0; row < buffer.getRows(); row++) {
+            int column = column(buffer, row);
+            values[column] = buffer.getValue(row, metricIndex);
+        }
+        out.begin(TextSampleSink.formatTimestamp(buffer.getEpochMillis()));
+        for (int c = 0; c < names.size(); c++) {
+            double value = values[c];
+            if (Double.isNaN(value)) {
+                out.empty();
+            } else if (integral) {
+                out.field((long) value);
+            } else {
+                out.field(value);
+            }
+        }
+        out.end();
+    }
+
+    @Override
+    public void flush() throws IOException {
+        if (out != null) out.flush();
+    }
+
+    /**
+     * Writes the header and the rows to the output file and removes the temporary body.
+     */
+    @Override
+    public void close() throws IOException {
+        if (out == null) return;
+        out.close();
+        out = null;
+        try (BufferedReader in = Files.newBufferedReader(body);
+             Writer writer = OutputFiles.newWriter(outputPath, false)) {
+            writer.write("timestamp");
+            for (String name : names) {
+                writer.write(',');
+                writer.write(name);
+            }
+            writer.write('\n');
+            String line;
+            while ((line = in.readLine()) != null) {
+                writer.write(line);
+                // Rows written before an entity appeared lack its column.
+                int fields = 1;
+                for (int i = 0; i < line.length(); i++) {
+                    if (line.charAt(i) == ',') fields++;
+                }
+                for (int f = fields; f <= names.size(); f++) {
+                    writer.write(',');
+                }
+                writer.write('\n');
+            }
+        } finally {
+            Files.deleteIfExists(body);
+        }
+    }
+
+    private int column(SampleBuffer buffer, int row) {
+        String name;
+        if (numLabels == 0) {
+            name = metric;
+        } else if (numLabels == 1) {
+            name = buffer.getLabel(row, 0);
+        } else {
+            StringBuilder sb = new StringBuilder(buffer.getLabel(row, 0));
+            for (int l = 1; l < numLabels; l++) {
+                sb.append('/').append(buffer.getLabel(row, l));
+            }
+            name = sb.toString();
+        }
+        Integer column = columns.get(name);
+        if (column == null) {
+            column = names.size();
+            columns.put(name, column);
+            names.add(name);
+            if (values.length < names.size()) values = Arrays.copyOf(values, values.length * 2);
+            values[column] = Double.NaN;
+        }
+        return column;
+    }
+}
@@ -5,6 +5,8 @@ import java.util.logging.Logger;
 import com.github.oogasawa.benchmark.BenchmarkCommands;
 import com.github.oogasawa.benchmark.cuda.GpuCommands;
 import com.github.oogasawa.benchmark.ngs.parabricks.ParabricksCommands;
+import com.github.oogasawa.benchmark.store.StoreCommands;
+import com.github.oogasawa.benchmark.sysstat.SysstatCommands;
 import com.github.oogasawa.utility.cli.CommandRepository;
 import org.apache.commons.cli.CommandLine;
 import org.apache.commons.cli.ParseException;
@@ -71,6 +73,12 @@ public class App {
 
         var parabricksCommands = new ParabricksCommands();
         parabricksCommands.setupCommands(this.cmds); 
+
+        var storeCommands = new StoreCommands();
+        storeCommands.setupCommands(this.cmds);
+
+        var sysstatCommands = new SysstatCommands();
+        sysstatCommands.setupCommands(this.cmds);
     }
 
 
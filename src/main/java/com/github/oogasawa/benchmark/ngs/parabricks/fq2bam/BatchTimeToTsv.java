@@ -1,13 +1,15 @@
 package com.github.oogasawa.benchmark.ngs.parabricks.fq2bam;
 
+import java.io.BufferedReader;
 import java.io.IOException;
 import java.nio.file.*;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.time.*;
-import java.time.format.DateTimeFormatter;
-import java.util.Locale;
+import java.util.List;
 import java.util.logging.Logger;
 import java.util.regex.*;
+import com.github.oogasawa.benchmark.util.OutputFiles;
+import com.github.oogasawa.benchmark.util.TimestampParser;
 
 
 /**
@@ -27,8 +29,7 @@ public class BatchTimeToTsv {
     private static final Pattern EXITCODE_SUCCESS =
         Pattern.compile("Main process exited with code: 0");
 
-    private static final DateTimeFormatter TIMESTAMP_FORMATTER =
-        DateTimeFormatter.ofPattern("yyyy-MMM-dd HH:mm:ss", Locale.ENGLISH);
+    private static final String TIMESTAMP_LAYOUT = "yyyy-MMM-dd HH:mm:ss";
 
     /**
      * Recursively searches for files matching the given regular expression,
@@ -67,11 +68,16 @@ public class BatchTimeToTsv {
         LocalDateTime first = null;
         LocalDateTime last = null;
         boolean explicitlySuccess = false;
+        TimestampParser parser = new TimestampParser(TIMESTAMP_LAYOUT);
 
-        for (String line : Files.readAllLines(file)) {
+        List<String> lines;
+        try (BufferedReader reader = OutputFiles.newBufferedReader(file)) {
+            lines = reader.lines().toList();
+        }
+        for (String line : lines) {
             Matcher ts = TIMESTAMP_PATTERN.matcher(line);
             if (ts.find()) {
-                LocalDateTime dt = LocalDateTime.parse(ts.group(1), TIMESTAMP_FORMATTER);
+                LocalDateTime dt = TimestampParser.toLocalDateTime(parser.parseLocalMillis(line, ts.start(1), ts.end(1)));
                 if (first == null) {
                     first = dt;
                 }
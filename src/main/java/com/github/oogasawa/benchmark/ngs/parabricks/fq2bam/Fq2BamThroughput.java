@@ -3,9 +3,10 @@ package com.github.oogasawa.benchmark.ngs.parabricks.fq2bam;
 import java.io.*;
 import java.nio.file.*;
 import java.time.*;
-import java.time.format.DateTimeFormatter;
 import java.util.*;
 import java.util.regex.*;
+import com.github.oogasawa.benchmark.util.OutputFiles;
+import com.github.oogasawa.benchmark.util.TimestampParser;
 
 /**
  * A utility class that parses throughput information from a Parabricks `fq2bam` stderr output file
@@ -42,8 +43,7 @@ public class Fq2BamThroughput {
     private static final Pattern THROUGHPUT_PATTERN = Pattern.compile("\\s+([0-9.]+) bases/GPU/minute");
     private static final Pattern TOTAL_TIME_PATTERN = Pattern.compile("Total Time:");
 
-    private static final DateTimeFormatter LOG_TIME_FORMATTER =
-            DateTimeFormatter.ofPattern("yyyy-MMM-dd HH:mm:ss", Locale.ENGLISH);
+    private static final String LOG_TIME_LAYOUT = "yyyy-MMM-dd HH:mm:ss";
 
     /**
      * Parses the given Parabricks stderr log file and exports throughput information
@@ -54,8 +54,12 @@ public class Fq2BamThroughput {
      * @throws IOException if an I/O error occurs reading or writing the files
      */
     public static void parseAndExport(Path logFile, Path outputCsv) throws IOException {
-        List<String> lines = Files.readAllLines(logFile);
+        List<String> lines;
+        try (BufferedReader reader = OutputFiles.newBufferedReader(logFile)) {
+            lines = reader.lines().toList();
+        }
         List<ThroughputEntry> entries = new ArrayList<>();
+        TimestampParser timeParser = new TimestampParser(LOG_TIME_LAYOUT);
 
         LocalDateTime lastTime = null;
         boolean afterMapping = false;
@@ -67,7 +71,8 @@ public class Fq2BamThroughput {
                 continue;
             }
 
-            LocalDateTime timestamp = LocalDateTime.parse(logTimeMatcher.group(1), LOG_TIME_FORMATTER);
+            LocalDateTime timestamp = TimestampParser.toLocalDateTime(
+                    timeParser.parseLocalMillis(line, logTimeMatcher.start(1), logTimeMatcher.end(1)));
             lastTime = timestamp;
 
             if (TOTAL_TIME_PATTERN.matcher(line).find()) {
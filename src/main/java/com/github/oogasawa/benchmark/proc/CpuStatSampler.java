@@ -0,0 +1,198 @@
+package com.github.oogasawa.benchmark.proc;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import com.github.oogasawa.benchmark.metric.MetricSchema;
+import com.github.oogasawa.benchmark.metric.SampleBuffer;
+
+/**
+ * Samples per-core and aggregate CPU utilization from {@code /proc/stat}.
+ * <p>
+ * This is an in-process replacement for {@code mpstat -P ALL}. Each tick re-reads the
+ * {@code cpu} lines of {@code /proc/stat} in place, subtracts the previous counters, and stores
+ * the percentages in primitive arrays indexed by CPU slot (slot 0 is the aggregate,
+ * slot {@code n + 1} is {@code cpuN}).
+ *
+ * <p>Example output:
+ * <pre>
+ * tick,timestamp,cpu,user,sys,iowait,irq,steal,idle
+ * 42,2025/07/05 15:01:02.123,all,12.50,3.10,0.40,0.20,0.00,83.80
+ * 42,2025/07/05 15:01:02.123,0,40.00,5.00,0.00,1.00,0.00,54.00
+ * </pre>
+ */
+public class CpuStatSampler extends ProcSampler {
+
+    private static final MetricSchema SCHEMA = new MetricSchema("proc-stat", List.of("cpu"),
+            MetricSchema.metrics(false, "user", "sys", "iowait", "irq", "steal", "idle"));
+
+    private static final byte[] CPU = "cpu".getBytes(StandardCharsets.US_ASCII);
+
+    // Field positions in a "cpu" line of /proc/stat (after the label).
+    private static final int USER = 0;
+    private static final int NICE = 1;
+    private static final int SYSTEM = 2;
+    private static final int IDLE = 3;
+    private static final int IOWAIT = 4;
+    private static final int IRQ = 5;
+    private static final int SOFTIRQ = 6;
+    private static final int STEAL = 7;
+    private static final int NUM_FIELDS = 8;
+
+    private ProcFile stat;
+    private String[] labels;
+    private long[][] previous;
+    private long[][] current;
+    private boolean[] seen;
+
+    private double[] user;
+    private double[] sys;
+    private double[] iowait;
+    private double[] irq;
+    private double[] steal;
+    private double[] idle;
+
+    /**
+     * Constructs a CPU source reading the live {@code /proc/stat}.
+     */
+    public CpuStatSampler() {
+        this(ProcFs.live());
+    }
+
+    /**
+     * Constructs a CPU source.
+     *
+     * @param fs The {@code /proc} tree to read from.
+     */
+    public CpuStatSampler(ProcFs fs) {
+        super(SCHEMA, fs);
+    }
+
+    @Override
+    public void open() throws IOException {
+        stat = new ProcFile(fs, "stat", 16384);
+        int slots = 1 + countCpus();
+        labels = new String[slots];
+        labels[0] = "all";
+        for (int slot = 1; slot < slots; slot++) {
+            labels[slot] = String.valueOf(slot - 1);
+        }
+        previous = new long[slots][NUM_FIELDS];
+        current = new long[slots][NUM_FIELDS];
+        seen = new boolean[slots];
+        user = new double[slots];
+        sys = new double[slots];
+        iowait = new double[slots];
+        irq = new double[slots];
+        steal = new double[slots];
+        idle = new double[slots];
+        readCounters(previous);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (stat != null) stat.close();
+    }
+
+    @Override
+    protected void collect() throws IOException {
+        readCounters(current);
+        computeDeltas();
+
+        long[][] tmp = previous;
+        previous = current;
+        current = tmp;
+    }
+
+    @Override
+    protected void fill(SampleBuffer buffer) {
+        for (int slot = 0; slot < labels.length; slot++) {
+            if (!seen[slot]) continue; // offline CPU
+            int row = buffer.addRow();
+            buffer.setLabel(row, 0, labels[slot]);
+            buffer.setValue(row, 0, user[slot]);
+            buffer.setValue(row, 1, sys[slot]);
+            buffer.setValue(row, 2, iowait[slot]);
+            buffer.setValue(row, 3, irq[slot]);
+            buffer.setValue(row, 4, steal[slot]);
+            buffer.setValue(row, 5, idle[slot]);
+        }
+    }
+
+    /**
+     * Converts the counter deltas between {@code previous} and {@code current}
+     * into percentages of the elapsed jiffies of each CPU slot.
+     */
+    private void computeDeltas() {
+        for (int slot = 0; slot < current.length; slot++) {
+            long[] prev = previous[slot];
+            long[] cur = current[slot];
+
+            long total = 0;
+            for (int f = 0; f < NUM_FIELDS; f++) {
+                total += cur[f] - prev[f];
+            }
+            if (total <= 0) {
+                user[slot] = sys[slot] = iowait[slot] = irq[slot] = steal[slot] = 0.0;
+                idle[slot] = 100.0;
+                continue;
+            }
+
+            double scale = 100.0 / total;
+            user[slot] = (cur[USER] - prev[USER] + cur[NICE] - prev[NICE]) * scale;
+            sys[slot] = (cur[SYSTEM] - prev[SYSTEM]) * scale;
+            iowait[slot] = (cur[IOWAIT] - prev[IOWAIT]) * scale;
+            irq[slot] = (cur[IRQ] - prev[IRQ] + cur[SOFTIRQ] - prev[SOFTIRQ]) * scale;
+            steal[slot] = (cur[STEAL] - prev[STEAL]) * scale;
+            idle[slot] = (cur[IDLE] - prev[IDLE]) * scale;
+        }
+    }
+
+    /**
+     * Counts the highest CPU number listed in {@code /proc/stat}.
+     */
+    private int countCpus() throws IOException {
+        int maxCpu = -1;
+        stat.read();
+        while (stat.lookingAt(CPU)) {
+            int cpu = cpuNumber();
+            if (cpu > maxCpu) maxCpu = cpu;
+            if (!stat.nextLine()) break;
+        }
+        return maxCpu + 1;
+    }
+
+    /**
+     * Reads all {@code cpu} lines of {@code /proc/stat} into the given counter matrix.
+     */
+    private void readCounters(long[][] counters) throws IOException {
+        Arrays.fill(seen, false);
+        stat.read();
+        // The cpu lines always come first in /proc/stat.
+        while (stat.lookingAt(CPU)) {
+            int slot = cpuNumber() + 1;
+            if (slot < counters.length) { // otherwise a CPU hot-added after start
+                long[] out = counters[slot];
+                for (int f = 0; f < NUM_FIELDS; f++) {
+                    out[f] = stat.nextLong();
+                }
+                seen[slot] = true;
+            }
+            if (!stat.nextLine()) break;
+        }
+    }
+
+    /**
+     * Parses the label of a {@code cpu} line at the cursor and leaves the cursor after it.
+     *
+     * @return the CPU number of a {@code cpuN} line, or {@code -1} for the aggregate {@code cpu} line
+     */
+    private int cpuNumber() {
+        int p = stat.position() + CPU.length;
+        stat.position(p);
+        byte b = stat.byteAt(p);
+        if (b < '0' || b > '9') return -1;
+        return (int) stat.nextLong();
+    }
+}
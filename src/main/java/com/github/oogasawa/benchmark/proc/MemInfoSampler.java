@@ -0,0 +1,108 @@
+package com.github.oogasawa.benchmark.proc;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import com.github.oogasawa.benchmark.metric.MetricSchema;
+import com.github.oogasawa.benchmark.metric.SampleBuffer;
+
+/**
+ * Samples memory usage from {@code /proc/meminfo} without forking {@code free -m}.
+ * <p>
+ * The file is opened once and re-read on each tick through a {@link ProcFile}.
+ * The fields of interest are parsed in place into a {@code long[]} (values in kB)
+ * without creating per-line strings.
+ *
+ * <p>Example output:
+ * <pre>
+ * tick,timestamp,mem_total,mem_free,mem_available,buffers,cached,dirty,writeback,shmem,swap_total,swap_free,swap_used
+ * 42,2025/07/05 15:01:02.123,527958016,301254144,498211840,1048576,190840832,2048,0,65536,8388604,8388604,0
+ * </pre>
+ */
+public class MemInfoSampler extends ProcSampler {
+
+    private static final MetricSchema SCHEMA = new MetricSchema("proc-meminfo", List.of(),
+            MetricSchema.metrics(true, "mem_total", "mem_free", "mem_available", "buffers", "cached",
+                    "dirty", "writeback", "shmem", "swap_total", "swap_free", "swap_used"));
+
+    // Keys read from /proc/meminfo, in output column order.
+    private static final String[] KEYS = {
+        "MemTotal", "MemFree", "MemAvailable", "Buffers", "Cached",
+        "Dirty", "Writeback", "Shmem", "SwapTotal", "SwapFree"
+    };
+    private static final int SWAP_TOTAL = 8;
+    private static final int SWAP_FREE = 9;
+
+    private static final byte[][] KEY_BYTES = new byte[KEYS.length][];
+    static {
+        for (int i = 0; i < KEYS.length; i++) {
+            KEY_BYTES[i] = KEYS[i].getBytes(StandardCharsets.US_ASCII);
+        }
+    }
+
+    private final long[] values = new long[KEYS.length];
+    private ProcFile meminfo;
+
+    /**
+     * Constructs a memory source reading the live {@code /proc/meminfo}.
+     */
+    public MemInfoSampler() {
+        this(ProcFs.live());
+    }
+
+    /**
+     * Constructs a memory source.
+     *
+     * @param fs The {@code /proc} tree to read from.
+     */
+    public MemInfoSampler(ProcFs fs) {
+        super(SCHEMA, fs);
+    }
+
+    @Override
+    public void open() throws IOException {
+        meminfo = new ProcFile(fs, "meminfo", 8192);
+    }
+
+    @Override
+    protected void collect() throws IOException {
+        meminfo.read();
+        do {
+            int key = matchKey();
+            if (key >= 0) {
+                meminfo.position(meminfo.position() + KEY_BYTES[key].length + 1);
+                values[key] = meminfo.nextLong();
+            }
+        } while (meminfo.nextLine());
+    }
+
+    @Override
+    protected void fill(SampleBuffer buffer) {
+        int row = buffer.addRow();
+        for (int k = 0; k < values.length; k++) {
+            buffer.setValue(row, k, values[k]);
+        }
+        buffer.setValue(row, values.length, values[SWAP_TOTAL] - values[SWAP_FREE]);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (meminfo != null) meminfo.close();
+    }
+
+    /**
+     * Returns the index of the key that the line at the cursor begins with,
+     * followed by a colon, or {@code -1} if the line is not of interest.
+     */
+    private int matchKey() {
+        int start = meminfo.position();
+        for (int k = 0; k < KEY_BYTES.length; k++) {
+            byte[] key = KEY_BYTES[k];
+            int end = start + key.length;
+            if (end < meminfo.length() && meminfo.byteAt(end) == ':' && meminfo.lookingAt(key)) {
+                return k;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,191 @@
+package com.github.oogasawa.benchmark.proc;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+import com.github.oogasawa.benchmark.metric.MetricSchema;
+import com.github.oogasawa.benchmark.metric.SampleBuffer;
+
+/**
+ * Samples per-interface network traffic from {@code /proc/net/dev}.
+ * <p>
+ * This is a built-in replacement for {@code ifstat}, which is often not installed on
+ * compute nodes. For each interface the receive and transmit bytes, packets, errors and
+ * drops are reported as per-second rates computed from the counter deltas between two ticks.
+ * <p>
+ * The interface set is fixed when sampling starts. An interface is sampled if its name
+ * matches the include pattern (when given) and does not match the exclude pattern.
+ *
+ * <p>Example output:
+ * <pre>
+ * tick,timestamp,interface,rx_bytes/s,rx_packets/s,rx_errs/s,rx_drop/s,tx_bytes/s,tx_packets/s,tx_errs/s,tx_drop/s
+ * 42,2025/07/05 15:01:02.123,ib0,1073741824.00,131072.00,0.00,0.00,524288.00,4096.00,0.00,0.00
+ * </pre>
+ */
+public class NetDevSampler extends ProcSampler {
+
+    private static final Logger logger = Logger.getLogger(NetDevSampler.class.getName());
+
+    private static final MetricSchema SCHEMA = new MetricSchema("proc-net-dev", List.of("interface"),
+            MetricSchema.metrics(false, "rx_bytes/s", "rx_packets/s", "rx_errs/s", "rx_drop/s",
+                    "tx_bytes/s", "tx_packets/s", "tx_errs/s", "tx_drop/s"));
+
+    // Counter positions in a /proc/net/dev line (after "name:").
+    private static final int[] COLUMNS = {
+        0, 1, 2, 3,     // rx bytes, packets, errs, drop
+        8, 9, 10, 11    // tx bytes, packets, errs, drop
+    };
+    private static final int NUM_FIELDS = 16;
+
+    private final Pattern include;
+    private final Pattern exclude;
+
+    private ProcFile netdev;
+    private String[] names;
+    private byte[][] nameBytes;     // "name:" of each interface
+    private long[][] previous;
+    private long[][] current;
+    private double[][] rates;
+    private long previousNanos;
+
+    /**
+     * Constructs a network source reading the live {@code /proc/net/dev}.
+     *
+     * @param include         Interfaces to sample, or {@code null} for all interfaces.
+     * @param exclude         Interfaces to skip, or {@code null} to skip none.
+     */
+    public NetDevSampler(Pattern include, Pattern exclude) {
+        this(ProcFs.live(), include, exclude);
+    }
+
+    /**
+     * Constructs a network source.
+     *
+     * @param fs              The {@code /proc} tree to read from.
+     * @param include         Interfaces to sample, or {@code null} for all interfaces.
+     * @param exclude         Interfaces to skip, or {@code null} to skip none.
+     */
+    public NetDevSampler(ProcFs fs, Pattern include, Pattern exclude) {
+        super(SCHEMA, fs);
+        this.include = include;
+        this.exclude = exclude;
+    }
+
+    @Override
+    public void open() throws IOException {
+        netdev = new ProcFile(fs, "net/dev", 8192);
+        selectInterfaces();
+        previous = new long[names.length][NUM_FIELDS];
+        current = new long[names.length][NUM_FIELDS];
+        rates = new double[names.length][COLUMNS.length];
+        readCounters(previous);
+        previousNanos = fs.nanoTime();
+    }
+
+    @Override
+    protected void collect() throws IOException {
+        readCounters(current);
+        long now = fs.nanoTime();
+        double elapsedSec = (now - previousNanos) / 1_000_000_000.0;
+
+        for (int n = 0; n < names.length; n++) {
+            for (int c = 0; c < COLUMNS.length; c++) {
+                rates[n][c] = (current[n][COLUMNS[c]] - previous[n][COLUMNS[c]]) / elapsedSec;
+            }
+        }
+
+        long[][] tmp = previous;
+        previous = current;
+        current = tmp;
+        previousNanos = now;
+    }
+
+    @Override
+    protected void fill(SampleBuffer buffer) {
+        for (int n = 0; n < names.length; n++) {
+            int row = buffer.addRow();
+            buffer.setLabel(row, 0, names[n]);
+            for (int c = 0; c < rates[n].length; c++) {
+                buffer.setValue(row, c, rates[n][c]);
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (netdev != null) netdev.close();
+    }
+
+    /**
+     * Fixes the list of sampled interfaces from the include and exclude patterns.
+     */
+    private void selectInterfaces() throws IOException {
+        List<String> selected = new ArrayList<>();
+        netdev.read();
+        skipHeader();
+        while (netdev.hasRemaining()) {
+            netdev.skipSpaces();
+            int start = netdev.position();
+            if (netdev.skipPast((byte) ':')) {
+                String name = netdev.string(start, netdev.position() - 1);
+                if ((include == null || include.matcher(name).matches())
+                        && (exclude == null || !exclude.matcher(name).matches())) {
+                    selected.add(name);
+                }
+            }
+            netdev.nextLine();
+        }
+
+        names = selected.toArray(new String[0]);
+        nameBytes = new byte[names.length][];
+        for (int n = 0; n < names.length; n++) {
+            nameBytes[n] = (names[n] + ":").getBytes(StandardCharsets.US_ASCII);
+        }
+        if (names.length == 0) {
+            logger.warning("No network interface matches the include/exclude patterns.");
+        } else {
+            logger.info(String.format("Sampling network interfaces: %s", selected));
+        }
+    }
+
+    /**
+     * Reads the counters of the selected interfaces into the given matrix.
+     */
+    private void readCounters(long[][] counters) throws IOException {
+        netdev.read();
+        skipHeader();
+        while (netdev.hasRemaining()) {
+            netdev.skipSpaces();
+            int n = matchInterface();
+            if (n >= 0) {
+                netdev.position(netdev.position() + nameBytes[n].length);
+                long[] out = counters[n];
+                for (int f = 0; f < NUM_FIELDS; f++) {
+                    out[f] = netdev.nextLong();
+                }
+            }
+            netdev.nextLine();
+        }
+    }
+
+    /**
+     * Returns the index of the selected interface whose {@code name:} is at the cursor, or {@code -1}.
+     */
+    private int matchInterface() {
+        for (int n = 0; n < nameBytes.length; n++) {
+            if (netdev.lookingAt(nameBytes[n])) return n;
+        }
+        return -1;
+    }
+
+    /**
+     * Moves the cursor to the first interface line, skipping the two header lines.
+     */
+    private void skipHeader() {
+        netdev.nextLine();
+        netdev.nextLine();
+    }
+}
@@ -0,0 +1,103 @@
+package com.github.oogasawa.benchmark.proc;
+
+/**
+ * A hash map from PIDs to values with primitive {@code long} keys.
+ * <p>
+ * {@code HashMap<Long, V>} boxes the key on every lookup; the process tree sampler looks
+ * up every PID on every tick, so it uses this open-addressing table instead.
+ * Lookups, and insertions and removals that do not grow the table, allocate nothing.
+ *
+ * @param <V> the value type
+ */
+final class PidMap<V> {
+
+    private long[] keys;
+    private Object[] values;
+    private int size;
+
+    PidMap() {
+        keys = new long[64];
+        values = new Object[64];
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Returns the value for the PID, or {@code null}.
+     */
+    @SuppressWarnings("unchecked")
+    V get(long pid) {
+        int mask = keys.length - 1;
+        for (int i = slot(pid, mask); values[i] != null; i = (i + 1) & mask) {
+            if (keys[i] == pid) return (V) values[i];
+        }
+        return null;
+    }
+
+    /**
+     * Associates the value with the PID, replacing any previous value.
+     */
+    void put(long pid, V value) {
+        if ((size + 1) * 2 > keys.length) grow();
+        int mask = keys.length - 1;
+        int i = slot(pid, mask);
+        while (values[i] != null) {
+            if (keys[i] == pid) {
+                values[i] = value;
+                return;
+            }
+            i = (i + 1) & mask;
+        }
+        keys[i] = pid;
+        values[i] = value;
+        size++;
+    }
+
+    /**
+     * Removes the PID. Later entries of the probe sequence are shifted back so that no tombstones are needed.
+     */
+    void remove(long pid) {
+        int mask = keys.length - 1;
+        int i = slot(pid, mask);
+        while (values[i] != null && keys[i] != pid) {
+            i = (i + 1) & mask;
+        }
+        if (values[i] == null) return;
+
+        size--;
+        int hole = i;
+        for (int j = (hole + 1) & mask; values[j] != null; j = (j + 1) & mask) {
+            int home = slot(keys[j], mask);
+            // Move j into the hole unless its home lies cyclically in (hole, j].
+            boolean stays = hole <= j ? (hole < home && home <= j) : (hole < home || home <= j);
+            if (!stays) {
+                keys[hole] = keys[j];
+                values[hole] = values[j];
+                hole = j;
+            }
+        }
+        values[hole] = null;
+    }
+
+    private void grow() {
+        long[] oldKeys = keys;
+        Object[] oldValues = values;
+        keys = new long[oldKeys.length * 2];
+        values = new Object[oldValues.length * 2];
+        size = 0;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldValues[i] != null) {
+                @SuppressWarnings("unchecked")
+                V value = (V) oldValues[i];
+                put(oldKeys[i], value);
+            }
+        }
+    }
+
+    private static int slot(long pid, int mask) {
+        long h = pid * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+}
@@ -0,0 +1,68 @@
+package com.github.oogasawa.benchmark.proc;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A pool of direct {@link ByteBuffer}s shared by all {@link ProcFile}s.
+ * <p>
+ * Buffers are bucketed by power-of-two capacity. A buffer released when a process exits
+ * is handed to the next process that appears, so the process tree sampler does not
+ * allocate new native memory for every short-lived pipeline stage.
+ */
+final class ProcBufferPool {
+
+    /** Smallest buffer handed out; most per-process files fit in it. */
+    static final int MIN_CAPACITY = 1024;
+
+    private static final int BUCKETS = 32;
+
+    private static final ProcBufferPool SHARED = new ProcBufferPool();
+
+    private final List<ArrayDeque<ByteBuffer>> free = new ArrayList<>(BUCKETS);
+
+    private ProcBufferPool() {
+        for (int i = 0; i < BUCKETS; i++) {
+            free.add(new ArrayDeque<>());
+        }
+    }
+
+    /**
+     * Returns the pool shared by all samplers.
+     */
+    static ProcBufferPool shared() {
+        return SHARED;
+    }
+
+    /**
+     * Takes a cleared buffer of at least the given capacity from the pool, allocating one if none is free.
+     *
+     * @param minCapacity Required capacity in bytes.
+     * @return a direct buffer whose capacity is a power of two
+     */
+    synchronized ByteBuffer acquire(int minCapacity) {
+        int bucket = bucketOf(minCapacity);
+        ByteBuffer buffer = free.get(bucket).pollFirst();
+        if (buffer == null) {
+            buffer = ByteBuffer.allocateDirect(1 << bucket);
+        }
+        buffer.clear();
+        return buffer;
+    }
+
+    /**
+     * Returns a buffer to the pool.
+     *
+     * @param buffer A buffer obtained from {@link #acquire(int)}.
+     */
+    synchronized void release(ByteBuffer buffer) {
+        free.get(Integer.numberOfTrailingZeros(buffer.capacity())).addFirst(buffer);
+    }
+
+    private static int bucketOf(int capacity) {
+        int c = Math.max(MIN_CAPACITY, capacity);
+        return 32 - Integer.numberOfLeadingZeros(c - 1);
+    }
+}
@@ -0,0 +1,267 @@
+package com.github.oogasawa.benchmark.proc;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A {@code /proc} file that is kept open and re-read from offset 0 on every tick.
+ * <p>
+ * The content is read with positional reads into a direct buffer taken from the
+ * {@link ProcBufferPool}; the buffer is swapped for a larger one only when the kernel
+ * output no longer fits. The content is then parsed in place through a cursor
+ * ({@link #nextLong()}, {@link #skipField()}, {@link #nextLine()}, ...), so that once the
+ * buffer has reached its working size, reading and parsing a file allocates nothing.
+ * Only {@link #string(int, int)} creates objects, and it is meant for names read once.
+ *
+ * <p>Example usage:
+ * <pre>{@code
+ *     ProcFile stat = new ProcFile(Path.of("/proc/stat"));
+ *     stat.read();
+ *     while (stat.lookingAt(CPU)) {
+ *         stat.skipField();              // "cpu" or "cpuN"
+ *         long user = stat.nextLong();
+ *         ...
+ *         stat.nextLine();
+ *     }
+ * }</pre>
+ */
+final class ProcFile implements Closeable {
+
+    private final ProcFs fs;
+    private final String relative;
+    private FileChannel channel;
+    private int generation;
+    private ByteBuffer buffer;
+    private int limit;
+    private int pos;
+
+    /**
+     * Opens a {@code /proc} file for repeated reading.
+     *
+     * @param path The file to open.
+     * @throws IOException If the file cannot be opened.
+     */
+    ProcFile(Path path) throws IOException {
+        this(path, ProcBufferPool.MIN_CAPACITY);
+    }
+
+    /**
+     * Opens a {@code /proc} file for repeated reading.
+     *
+     * @param path            The file to open.
+     * @param initialCapacity Initial buffer size in bytes.
+     * @throws IOException If the file cannot be opened.
+     */
+    ProcFile(Path path, int initialCapacity) throws IOException {
+        this.fs = null;
+        this.relative = null;
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+        this.buffer = ProcBufferPool.shared().acquire(initialCapacity);
+    }
+
+    /**
+     * Opens a file of a {@link ProcFs} for repeated reading. On a replayed tree the file
+     * is reopened under the current snapshot whenever the tree has advanced.
+     *
+     * @param fs              The {@code /proc} tree.
+     * @param relative        The path relative to the root, e.g. {@code "net/dev"}.
+     * @param initialCapacity Initial buffer size in bytes.
+     * @throws IOException If the file cannot be opened.
+     */
+    ProcFile(ProcFs fs, String relative, int initialCapacity) throws IOException {
+        this.fs = fs;
+        this.relative = relative;
+        this.generation = fs.generation();
+        this.channel = FileChannel.open(fs.resolve(relative), StandardOpenOption.READ);
+        this.buffer = ProcBufferPool.shared().acquire(initialCapacity);
+    }
+
+    /**
+     * Re-reads the whole file into the buffer and moves the cursor to its start.
+     *
+     * @return the number of valid bytes
+     * @throws IOException If reading fails, e.g. because the process has exited.
+     */
+    int read() throws IOException {
+        if (fs != null && fs.generation() != generation) {
+            channel.close();
+            generation = fs.generation();
+            channel = FileChannel.open(fs.resolve(relative), StandardOpenOption.READ);
+        }
+        buffer.clear();
+        long position = 0;
+        int n;
+        while ((n = channel.read(buffer, position)) > 0) {
+            position += n;
+            if (!buffer.hasRemaining()) {
+                // The content outgrew the buffer; swap it for a larger one and read again from the start.
+                ProcBufferPool pool = ProcBufferPool.shared();
+                int capacity = buffer.capacity() * 2;
+                pool.release(buffer);
+                buffer = pool.acquire(capacity);
+                position = 0;
+            }
+        }
+        limit = (int) position;
+        pos = 0;
+        return limit;
+    }
+
+    /**
+     * Returns the number of valid bytes of the last {@link #read()}.
+     */
+    int length() {
+        return limit;
+    }
+
+    /**
+     * Returns the cursor offset.
+     */
+    int position() {
+        return pos;
+    }
+
+    /**
+     * Moves the cursor to the given offset.
+     */
+    void position(int position) {
+        this.pos = position;
+    }
+
+    /**
+     * Returns {@code true} if the cursor has not reached the end of the content.
+     */
+    boolean hasRemaining() {
+        return pos < limit;
+    }
+
+    /**
+     * Returns the byte at an absolute offset.
+     */
+    byte byteAt(int index) {
+        return buffer.get(index);
+    }
+
+    /**
+     * Returns the offset of the last occurrence of {@code b}, or {@code -1}.
+     */
+    int lastIndexOf(byte b) {
+        for (int i = limit - 1; i >= 0; i--) {
+            if (buffer.get(i) == b) return i;
+        }
+        return -1;
+    }
+
+    /**
+     * Advances the cursor past spaces and tabs.
+     */
+    void skipSpaces() {
+        while (pos < limit) {
+            byte b = buffer.get(pos);
+            if (b != ' ' && b != '\t') break;
+            pos++;
+        }
+    }
+
+    /**
+     * Advances the cursor past leading spaces and the following non-blank token.
+     */
+    void skipField() {
+        skipSpaces();
+        while (pos < limit) {
+            byte b = buffer.get(pos);
+            if (b == ' ' || b == '\t' || b == '\n') break;
+            pos++;
+        }
+    }
+
+    /**
+     * Advances the cursor past the next occurrence of {@code b} on the current line.
+     *
+     * @return {@code false} if the line has no such byte; the cursor is then at the line end
+     */
+    boolean skipPast(byte b) {
+        while (pos < limit) {
+            byte c = buffer.get(pos);
+            if (c == '\n') return false;
+            pos++;
+            if (c == b) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Parses the next decimal number (optionally negative) after leading spaces and advances past it.
+     * Returns {@code 0} if no digits follow.
+     */
+    long nextLong() {
+        skipSpaces();
+        boolean negative = pos < limit && buffer.get(pos) == '-';
+        if (negative) pos++;
+        long value = 0;
+        while (pos < limit) {
+            byte b = buffer.get(pos);
+            if (b < '0' || b > '9') break;
+            value = value * 10 + (b - '0');
+            pos++;
+        }
+        return negative ? -value : value;
+    }
+
+    /**
+     * Returns {@code true} if a digit follows the spaces at the cursor. The cursor is left after the spaces.
+     */
+    boolean hasNextLong() {
+        skipSpaces();
+        return pos < limit && buffer.get(pos) >= '0' && buffer.get(pos) <= '9';
+    }
+
+    /**
+     * Moves the cursor to the start of the next line.
+     *
+     * @return {@code false} if the end of the content has been reached
+     */
+    boolean nextLine() {
+        while (pos < limit && buffer.get(pos) != '\n') pos++;
+        pos++;
+        return pos < limit;
+    }
+
+    /**
+     * Returns {@code true} if the bytes at the cursor equal {@code prefix}. The cursor does not move.
+     */
+    boolean lookingAt(byte[] prefix) {
+        if (pos + prefix.length > limit) return false;
+        for (int i = 0; i < prefix.length; i++) {
+            if (buffer.get(pos + i) != prefix[i]) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Decodes the bytes {@code [start, end)} as a string. This allocates and is meant for names
+     * that are read once, not for per-tick values.
+     */
+    String string(int start, int end) {
+        byte[] bytes = new byte[end - start];
+        buffer.get(start, bytes);
+        return new String(bytes, StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Closes the file and returns the buffer to the pool.
+     */
+    @Override
+    public void close() throws IOException {
+        if (buffer != null) {
+            ProcBufferPool.shared().release(buffer);
+            buffer = null;
+        }
+        channel.close();
+    }
+}
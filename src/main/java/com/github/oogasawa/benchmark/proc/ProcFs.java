@@ -0,0 +1,160 @@
+package com.github.oogasawa.benchmark.proc;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The {@code /proc} tree the samplers read from: either the live one, or a sequence of
+ * snapshots captured by {@link ProcSnapshotCapture} and replayed one per tick.
+ * <p>
+ * A captured directory looks like this:
+ * <pre>
+ * capture/index.csv          tick,epoch_millis,elapsed_nanos
+ * capture/00000000/stat
+ * capture/00000000/meminfo
+ * capture/00000000/diskstats
+ * capture/00000000/net/dev
+ * capture/00000001/...
+ * </pre>
+ * When a replayed tree {@link #advance() advances}, its generation changes and every
+ * {@link ProcFile} opened on it reopens its file under the next snapshot on the following read.
+ * The clock ({@link #nanoTime()}) of a replayed tree is the recorded one, so rates are
+ * computed against the recorded intervals whatever the replay speed.
+ */
+public final class ProcFs {
+
+    /** The files captured per snapshot, relative to the {@code /proc} root. */
+    static final List<String> SYSTEM_FILES = List.of("stat", "meminfo", "diskstats", "net/dev");
+
+    private static final ProcFs LIVE = new ProcFs(Path.of("/proc"), null, null, null);
+
+    private final List<Path> snapshots;
+    private final long[] epochMillis;
+    private final long[] elapsedNanos;
+    private volatile Path root;
+    private volatile int index = 0;
+    private volatile int generation = 0;
+    private volatile boolean exhausted = false;
+
+    private ProcFs(Path root, List<Path> snapshots, long[] epochMillis, long[] elapsedNanos) {
+        this.root = root;
+        this.snapshots = snapshots;
+        this.epochMillis = epochMillis;
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    /**
+     * Returns the live {@code /proc} tree.
+     */
+    public static ProcFs live() {
+        return LIVE;
+    }
+
+    /**
+     * Opens a captured directory for replay, positioned at its first snapshot.
+     *
+     * @param dir A directory written by {@link ProcSnapshotCapture}.
+     * @return the replayed tree
+     * @throws IOException If the index cannot be read or has no snapshots.
+     */
+    public static ProcFs replay(Path dir) throws IOException {
+        List<Path> snapshots = new ArrayList<>();
+        List<long[]> times = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(dir.resolve(ProcSnapshotCapture.INDEX_FILE))) {
+            String line = reader.readLine(); // header
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.split(",");
+                if (fields.length < 3) continue;
+                snapshots.add(dir.resolve(ProcSnapshotCapture.snapshotName(Long.parseLong(fields[0]))));
+                times.add(new long[] {Long.parseLong(fields[1]), Long.parseLong(fields[2])});
+            }
+        }
+        if (snapshots.isEmpty()) {
+            throw new IOException("No snapshots in " + dir);
+        }
+
+        long[] epochMillis = new long[times.size()];
+        long[] elapsedNanos = new long[times.size()];
+        for (int i = 0; i < times.size(); i++) {
+            epochMillis[i] = times.get(i)[0];
+            elapsedNanos[i] = times.get(i)[1];
+        }
+        return new ProcFs(snapshots.get(0), List.copyOf(snapshots), epochMillis, elapsedNanos);
+    }
+
+    /**
+     * Resolves a path relative to the root, e.g. {@code "net/dev"}.
+     */
+    public Path resolve(String relative) {
+        return root.resolve(relative);
+    }
+
+    /**
+     * Returns {@link System#nanoTime()} for the live tree, or the recorded elapsed time of the current snapshot.
+     */
+    public long nanoTime() {
+        return snapshots == null ? System.nanoTime() : elapsedNanos[index];
+    }
+
+    /**
+     * Returns the recorded wall-clock time of the current snapshot of a replayed tree.
+     */
+    public long epochMillis() {
+        return snapshots == null ? System.currentTimeMillis() : epochMillis[index];
+    }
+
+    public boolean isReplay() {
+        return snapshots != null;
+    }
+
+    /**
+     * Moves a replayed tree to its next snapshot.
+     *
+     * @return {@code false} if the current snapshot was the last one; the tree is then exhausted
+     */
+    public boolean advance() {
+        if (snapshots == null) return false;
+        if (index + 1 >= snapshots.size()) {
+            exhausted = true;
+            return false;
+        }
+        index++;
+        root = snapshots.get(index);
+        generation++;
+        return true;
+    }
+
+    /**
+     * Returns {@code true} once a replayed tree has been advanced past its last snapshot.
+     * The sources reading the tree then produce no rows.
+     */
+    public boolean isExhausted() {
+        return exhausted;
+    }
+
+    /**
+     * Returns the number of snapshots of a replayed tree.
+     */
+    public int size() {
+        return snapshots == null ? 0 : snapshots.size();
+    }
+
+    /**
+     * Returns the average recorded interval between snapshots, or {@code 0} if there is only one.
+     */
+    public long recordedIntervalMillis() {
+        if (snapshots == null || snapshots.size() < 2) return 0;
+        return (epochMillis[epochMillis.length - 1] - epochMillis[0]) / (epochMillis.length - 1);
+    }
+
+    /**
+     * Returns a number that changes whenever {@link #advance()} moves to another snapshot.
+     */
+    int generation() {
+        return generation;
+    }
+}
@@ -0,0 +1,47 @@
+package com.github.oogasawa.benchmark.proc;
+
+import com.github.oogasawa.benchmark.Sampler;
+
+/**
+ * Advances a replayed {@link ProcFs} by one snapshot per tick.
+ * <p>
+ * It must be registered with the scheduler before the sources that read the tree, because
+ * samplers fire in registration order: the sources then see snapshot {@code n} on tick
+ * {@code n}, with snapshot 0 read as the delta base when they are opened.
+ */
+public class ProcReplayClock implements Sampler {
+
+    private final ProcFs fs;
+
+    /**
+     * @param fs A replayed tree, see {@link ProcFs#replay(java.nio.file.Path)}.
+     */
+    public ProcReplayClock(ProcFs fs) {
+        this.fs = fs;
+    }
+
+    @Override
+    public String getName() {
+        return "proc-replay";
+    }
+
+    @Override
+    public void start() {
+    }
+
+    @Override
+    public void onTick(long tick, long epochMillis) {
+        fs.advance();
+    }
+
+    @Override
+    public void stop() {
+    }
+
+    /**
+     * Returns {@code true} once every snapshot has been replayed.
+     */
+    public boolean isFinished() {
+        return fs.isExhausted();
+    }
+}
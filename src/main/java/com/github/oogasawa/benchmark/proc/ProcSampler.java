@@ -0,0 +1,87 @@
+package com.github.oogasawa.benchmark.proc;
+
+import java.io.IOException;
+import com.github.oogasawa.benchmark.SamplingInterval;
+import com.github.oogasawa.benchmark.metric.MetricSchema;
+import com.github.oogasawa.benchmark.metric.MetricSource;
+import com.github.oogasawa.benchmark.metric.SampleBuffer;
+
+/**
+ * Base class for the metric sources that read counters from {@code /proc}.
+ * <p>
+ * Subclasses read their initial counters in {@link #open()}, read and derive the values
+ * of one tick into primitive fields in {@link #collect()}, and copy them into the rows of
+ * a {@link SampleBuffer} in {@link #fill(SampleBuffer)}.
+ * <p>
+ * The files are read through {@link ProcFile}, so once the buffers have reached their
+ * working size {@link #collect()} allocates nothing. The system-wide sources read them
+ * from a {@link ProcFs}, which is either the live {@code /proc} or a replayed capture;
+ * replayed rows carry the recorded time of their snapshot.
+ *
+ * <p>Example usage:
+ * <pre>{@code
+ *     scheduler.register(new SourceSampler(new CpuStatSampler(), new TextSampleSink("run1.cpu.out")));
+ * }</pre>
+ */
+public abstract class ProcSampler implements MetricSource {
+
+    private final MetricSchema schema;
+
+    /** The {@code /proc} tree to read from. */
+    protected final ProcFs fs;
+
+    /**
+     * Constructs a source.
+     *
+     * @param schema The schema of the rows; its source name is used as the source name.
+     * @param fs     The {@code /proc} tree to read from.
+     */
+    protected ProcSampler(MetricSchema schema, ProcFs fs) {
+        this.schema = schema;
+        this.fs = fs;
+    }
+
+    /**
+     * Reads the current counters and derives the values of one tick. This runs on every tick
+     * and must not allocate in steady state.
+     *
+     * @throws IOException If the {@code /proc} file cannot be read.
+     */
+    protected abstract void collect() throws IOException;
+
+    /**
+     * Appends the rows for the values derived by the last {@link #collect()}.
+     *
+     * @param buffer The buffer of the current tick.
+     */
+    protected abstract void fill(SampleBuffer buffer);
+
+    @Override
+    public void sample(SampleBuffer buffer) throws IOException {
+        if (fs.isExhausted()) return; // the end of a replay
+        collect();
+        if (fs.isReplay()) {
+            buffer.setEpochMillis(fs.epochMillis());
+        }
+        fill(buffer);
+    }
+
+    @Override
+    public void close() throws IOException {
+    }
+
+    @Override
+    public MetricSchema getSchema() {
+        return schema;
+    }
+
+    @Override
+    public String getName() {
+        return schema.getSource();
+    }
+
+    @Override
+    public long getMinIntervalMillis() {
+        return SamplingInterval.PROC_MIN_MILLIS;
+    }
+}
@@ -0,0 +1,88 @@
+package com.github.oogasawa.benchmark.proc;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.logging.Logger;
+import com.github.oogasawa.benchmark.Sampler;
+import com.github.oogasawa.benchmark.SamplingInterval;
+
+/**
+ * Copies the system-wide {@code /proc} files read by the node-level samplers
+ * ({@code stat}, {@code meminfo}, {@code diskstats}, {@code net/dev}) into a directory on
+ * every tick, so that the run can later be replayed through {@link ProcFs#replay(Path)}.
+ * <p>
+ * A first snapshot is taken when sampling starts; it is the base the replayed samplers
+ * compute their first deltas from. Per-process files are not captured.
+ */
+public class ProcSnapshotCapture implements Sampler {
+
+    private static final Logger logger = Logger.getLogger(ProcSnapshotCapture.class.getName());
+
+    static final String INDEX_FILE = "index.csv";
+
+    private final Path dir;
+    private PrintWriter index;
+    private long startNanos;
+
+    /**
+     * Constructs a capture.
+     *
+     * @param dir The directory to write the snapshots to; created if missing.
+     */
+    public ProcSnapshotCapture(Path dir) {
+        this.dir = dir;
+    }
+
+    @Override
+    public String getName() {
+        return "proc-capture";
+    }
+
+    @Override
+    public long getMinIntervalMillis() {
+        return SamplingInterval.PROC_MIN_MILLIS;
+    }
+
+    @Override
+    public void start() throws IOException {
+        Files.createDirectories(dir);
+        index = new PrintWriter(Files.newBufferedWriter(dir.resolve(INDEX_FILE)));
+        index.println("tick,epoch_millis,elapsed_nanos");
+        startNanos = System.nanoTime();
+        capture(0, System.currentTimeMillis());
+    }
+
+    @Override
+    public void onTick(long tick, long epochMillis) throws IOException {
+        capture(tick, epochMillis);
+    }
+
+    @Override
+    public void stop() {
+        if (index != null) index.close();
+        logger.info(String.format("/proc snapshots written to %s", dir));
+    }
+
+    private void capture(long tick, long epochMillis) throws IOException {
+        long elapsed = System.nanoTime() - startNanos;
+        Path snapshot = dir.resolve(snapshotName(tick));
+        for (String file : ProcFs.SYSTEM_FILES) {
+            Path target = snapshot.resolve(file);
+            Files.createDirectories(target.getParent());
+            // /proc files report a size of 0, so they are read to EOF instead of copied.
+            Files.write(target, Files.readAllBytes(ProcFs.live().resolve(file)));
+        }
+        index.printf("%d,%d,%d%n", tick, epochMillis, elapsed);
+        index.flush();
+    }
+
+    /**
+     * Returns the directory name of the snapshot of a tick.
+     */
+    static String snapshotName(long tick) {
+        return String.format("%08d", tick);
+    }
+
+}
@@ -0,0 +1,565 @@
+package com.github.oogasawa.benchmark.proc;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import com.github.oogasawa.benchmark.SamplingInterval;
+import com.github.oogasawa.benchmark.metric.MetricSchema;
+import com.github.oogasawa.benchmark.metric.SampleBuffer;
+
+/**
+ * Samples every process in the descendant tree of a root process from {@code /proc/[pid]}.
+ * <p>
+ * This replaces {@code pidstat -e bash -c "exec ..."}: the target is launched directly
+ * (so argument quoting is preserved) and on each tick the whole tree below its PID is
+ * walked through the {@code task/[tid]/children} files, falling back to a scan of all
+ * {@code /proc/[pid]/stat} files on kernels built without {@code CONFIG_PROC_CHILDREN}.
+ * For each process the following is recorded:
+ * <ul>
+ *   <li>CPU time (user + system) from {@code stat}, and its share of the interval</li>
+ *   <li>resident set size and its peak from {@code status}</li>
+ *   <li>storage read/write bytes from {@code io}</li>
+ *   <li>thread count from {@code stat}</li>
+ * </ul>
+ * A process that disappears between two ticks is reported once with state {@code exited}
+ * and its last-seen counters are kept in the {@code total} row, so short-lived pipeline
+ * stages and helper processes are still accounted for. The {@code state} label is not part
+ * of the key of a process, so a run file keeps one series per process across its exit.
+ * <p>
+ * A process that starts and exits between two ticks is never seen. Its CPU time shows up
+ * in the reaped-children times ({@code cutime} and {@code cstime}) of the ancestor that
+ * waited for it, so the {@code total} row also adds the growth of those times on every
+ * surviving process, less the last-seen CPU time of the tracked children it reaped.
+ * The per-process rows keep their own CPU time only.
+ * <p>
+ * The {@code stat}, {@code status}, {@code io} and thread {@code children} files of each
+ * process are opened once, when the process is first seen, and re-read in place on later
+ * ticks. The thread list is listed again only when the thread count changes, so sampling a
+ * stable tree allocates nothing. The {@code /proc/[pid]/stat} scan fallback does allocate.
+ * <p>
+ * The tree is always read from the live {@code /proc}: per-process files are not part of
+ * a {@link ProcSnapshotCapture}, so this source has no replay.
+ *
+ * <p>Example output:
+ * <pre>
+ * tick,timestamp,pid,ppid,command,state,cpu%,cpu_ms,rss_kb,hwm_kb,read_bytes,write_bytes,threads
+ * 42,2025/07/05 15:01:02.123,4242,4240,bwa,alive,795.00,120340,5242880,5300000,1073741824,0,9
+ * 42,2025/07/05 15:01:02.123,4243,4240,samtools,exited,0.00,8210,204800,230000,0,734003200,1
+ * 42,2025/07/05 15:01:02.123,total,,,,800.00,128550,5242880,5300000,1073741824,734003200,10
+ * </pre>
+ */
+public class ProcessTreeSampler extends ProcSampler {
+
+    private static final Path PROC = Path.of("/proc");
+
+    private static final MetricSchema SCHEMA = new MetricSchema("proc-tree",
+            List.of("pid", "ppid", "command", "state"),
+            List.of(MetricSchema.decimal("cpu%", ""),
+                    MetricSchema.integral("cpu_ms", ""),
+                    MetricSchema.integral("rss_kb", ""),
+                    MetricSchema.integral("hwm_kb", ""),
+                    MetricSchema.integral("read_bytes", ""),
+                    MetricSchema.integral("write_bytes", ""),
+                    MetricSchema.integral("threads", "")),
+            List.of("pid", "ppid", "command"));
+
+    /** Kernel clock ticks per second ({@code USER_HZ}) that {@code stat} times are counted in. */
+    private static final long CLOCK_TICKS_PER_SEC = clockTicksPerSecond();
+
+    private static final byte[] VM_RSS = "VmRSS:".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] VM_HWM = "VmHWM:".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] READ_BYTES = "read_bytes:".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] WRITE_BYTES = "write_bytes:".getBytes(StandardCharsets.US_ASCII);
+    private static final ProcFile[] NO_FILES = new ProcFile[0];
+
+    private final long rootPid;
+    private final PidMap<ProcState> live = new PidMap<>();
+
+    // Processes in output order; those flagged as exited are dropped at the start of the next tick.
+    private ProcState[] states = new ProcState[64];
+    private int numStates;
+
+    // Breadth-first queue of PIDs to visit.
+    private long[] queue = new long[64];
+
+    // Last-seen counters of processes that have exited since sampling started.
+    private long exitedCpuMs;
+    private long exitedReadBytes;
+    private long exitedWriteBytes;
+
+    // The total row of the last tick.
+    private double totalCpuPercent;
+    private long totalCpuMs;
+    private long totalRssKb;
+    private long totalHwmKb;
+    private long totalReadBytes;
+    private long totalWriteBytes;
+    private long totalThreads;
+
+    private boolean childrenFiles = true;
+    private long walk = 0;
+    private long previousNanos;
+
+    /**
+     * Per-process counters as of the tick in which the process was last seen,
+     * and the open files they are read from.
+     */
+    private static class ProcState {
+        long pid;
+        long ppid;
+        String command;
+        String pidLabel;
+        String ppidLabel;
+        long ppidLabelOf = -1;              // the ppid that ppidLabel was formatted from
+        long cpuMs;
+        long previousCpuMs;
+        long childCpuMs;                    // CPU time of the children this process has reaped
+        long previousChildCpuMs;
+        long exitedChildCpuMs;              // last-seen CPU time of tracked children that exited this tick
+        double cpuPercent;
+        long rssKb;
+        long hwmKb;
+        long readBytes;
+        long writeBytes;
+        long threads;
+        long seenWalk;
+        boolean exited;
+
+        ProcFile stat;
+        ProcFile status;
+        ProcFile io;                        // null if not readable
+        ProcFile[] children = NO_FILES;     // task/[tid]/children of every thread
+        long childrenThreads = -1;          // thread count when the children files were listed
+
+        void close() {
+            closeQuietly(stat);
+            closeQuietly(status);
+            closeQuietly(io);
+            closeChildren();
+        }
+
+        void closeChildren() {
+            for (ProcFile f : children) {
+                closeQuietly(f);
+            }
+            children = NO_FILES;
+        }
+    }
+
+    /**
+     * Constructs a process tree source.
+     *
+     * @param rootPid         PID of the monitored command; all its descendants are sampled.
+     */
+    public ProcessTreeSampler(long rootPid) {
+        super(SCHEMA, ProcFs.live());
+        this.rootPid = rootPid;
+    }
+
+    @Override
+    public long getMinIntervalMillis() {
+        return SamplingInterval.PROC_TREE_MIN_MILLIS;
+    }
+
+    @Override
+    public void open() throws IOException {
+        childrenFiles = Files.exists(PROC.resolve(rootPid + "/task/" + rootPid + "/children"));
+        walkTree();
+        for (int i = 0; i < numStates; i++) {
+            states[i].previousCpuMs = states[i].cpuMs;
+            states[i].previousChildCpuMs = states[i].childCpuMs;
+        }
+        previousNanos = System.nanoTime();
+    }
+
+    @Override
+    protected void collect() throws IOException {
+        dropExited();
+        walkTree();
+        long now = System.nanoTime();
+        double elapsedMs = (now - previousNanos) / 1_000_000.0;
+        previousNanos = now;
+
+        totalCpuMs = exitedCpuMs;
+        totalReadBytes = exitedReadBytes;
+        totalWriteBytes = exitedWriteBytes;
+        totalRssKb = 0;
+        totalHwmKb = 0;
+        totalThreads = 0;
+        totalCpuPercent = 0.0;
+
+        for (int i = 0; i < numStates; i++) {
+            ProcState p = states[i];
+            if (!p.exited && p.seenWalk != walk) retire(p);
+        }
+
+        long unseenCpuMs = 0;
+        for (int i = 0; i < numStates; i++) {
+            ProcState p = states[i];
+            if (!p.exited) {
+                // Reaped children that were never seen, or that ran on after they were last seen.
+                long reaped = p.childCpuMs - p.previousChildCpuMs - p.exitedChildCpuMs;
+                if (reaped > 0) unseenCpuMs += reaped;
+                p.previousChildCpuMs = p.childCpuMs;
+                p.exitedChildCpuMs = 0;
+            }
+
+            p.cpuPercent = (p.cpuMs - p.previousCpuMs) * 100.0 / elapsedMs;
+            p.previousCpuMs = p.cpuMs;
+
+            totalCpuMs += p.cpuMs;
+            totalCpuPercent += p.cpuPercent;
+            totalReadBytes += p.readBytes;
+            totalWriteBytes += p.writeBytes;
+            if (p.exited) {
+                exitedCpuMs += p.cpuMs;
+                exitedReadBytes += p.readBytes;
+                exitedWriteBytes += p.writeBytes;
+            } else {
+                totalRssKb += p.rssKb;
+                totalHwmKb += p.hwmKb;
+                totalThreads += p.threads;
+            }
+        }
+        exitedCpuMs += unseenCpuMs;
+        totalCpuMs += unseenCpuMs;
+        totalCpuPercent += unseenCpuMs * 100.0 / elapsedMs;
+    }
+
+    @Override
+    protected void fill(SampleBuffer buffer) {
+        for (int i = 0; i < numStates; i++) {
+            ProcState p = states[i];
+            if (p.ppidLabelOf != p.ppid) {
+                // Formatted again only when the process is reparented.
+                p.ppidLabel = Long.toString(p.ppid);
+                p.ppidLabelOf = p.ppid;
+            }
+            int row = buffer.addRow();
+            buffer.setLabel(row, 0, p.pidLabel);
+            buffer.setLabel(row, 1, p.ppidLabel);
+            buffer.setLabel(row, 2, p.command);
+            buffer.setLabel(row, 3, p.exited ? "exited" : "alive");
+            buffer.setValue(row, 0, p.cpuPercent);
+            buffer.setValue(row, 1, p.cpuMs);
+            buffer.setValue(row, 2, p.rssKb);
+            buffer.setValue(row, 3, p.hwmKb);
+            buffer.setValue(row, 4, p.readBytes);
+            buffer.setValue(row, 5, p.writeBytes);
+            buffer.setValue(row, 6, p.threads);
+        }
+
+        int row = buffer.addRow();
+        buffer.setLabel(row, 0, "total");
+        buffer.setValue(row, 0, totalCpuPercent);
+        buffer.setValue(row, 1, totalCpuMs);
+        buffer.setValue(row, 2, totalRssKb);
+        buffer.setValue(row, 3, totalHwmKb);
+        buffer.setValue(row, 4, totalReadBytes);
+        buffer.setValue(row, 5, totalWriteBytes);
+        buffer.setValue(row, 6, totalThreads);
+    }
+
+    @Override
+    public void close() throws IOException {
+        for (int i = 0; i < numStates; i++) {
+            states[i].close();
+        }
+        numStates = 0;
+    }
+
+    /**
+     * Refreshes the counters of every process below the root and marks them with the current walk.
+     */
+    private void walkTree() throws IOException {
+        walk++;
+        Map<Long, List<Long>> childrenByParent = childrenFiles ? null : scanParents();
+
+        int head = 0;
+        int tail = 0;
+        queue[tail++] = rootPid;
+        while (head < tail) {
+            long pid = queue[head++];
+            ProcState p = readProcess(pid);
+            if (p == null) continue; // exited while walking
+
+            if (childrenFiles) {
+                tail = readChildren(p, tail);
+            } else {
+                for (long child : childrenByParent.getOrDefault(pid, List.of())) {
+                    tail = enqueue(child, tail);
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads {@code stat}, {@code status} and {@code io} of one process,
+     * opening them first if the process has not been seen before.
+     *
+     * @return the state of the process, or {@code null} if it no longer exists
+     */
+    private ProcState readProcess(long pid) throws IOException {
+        ProcState p = live.get(pid);
+        if (p != null && !readStat(p)) {
+            // The open files refer to a process that has exited; the PID may have been reused.
+            retire(p);
+            p = null;
+        }
+        if (p == null) {
+            p = openProcess(pid);
+            if (p == null) return null;
+        }
+        p.seenWalk = walk;
+
+        try {
+            ProcFile status = p.status;
+            status.read();
+            do {
+                if (status.lookingAt(VM_RSS)) {
+                    status.position(status.position() + VM_RSS.length);
+                    p.rssKb = status.nextLong();
+                } else if (status.lookingAt(VM_HWM)) {
+                    status.position(status.position() + VM_HWM.length);
+                    p.hwmKb = status.nextLong();
+                }
+            } while (status.nextLine());
+
+            ProcFile io = p.io;
+            if (io != null) {
+                io.read();
+                do {
+                    if (io.lookingAt(READ_BYTES)) {
+                        io.position(io.position() + READ_BYTES.length);
+                        p.readBytes = io.nextLong();
+                    } else if (io.lookingAt(WRITE_BYTES)) {
+                        io.position(io.position() + WRITE_BYTES.length);
+                        p.writeBytes = io.nextLong();
+                    }
+                } while (io.nextLine());
+            }
+        } catch (IOException e) {
+            // Exited after stat was read; keep the counters read so far.
+        }
+        return p;
+    }
+
+    /**
+     * Opens the files of a newly seen process and reads its {@code stat}.
+     *
+     * @return the new state, or {@code null} if the process no longer exists
+     */
+    private ProcState openProcess(long pid) {
+        Path dir = PROC.resolve(Long.toString(pid));
+        ProcState p = new ProcState();
+        p.pid = pid;
+        try {
+            p.stat = new ProcFile(dir.resolve("stat"));
+            p.status = new ProcFile(dir.resolve("status"), 2048);
+            if (!readStat(p)) {
+                p.close();
+                return null;
+            }
+        } catch (IOException e) {
+            p.close();
+            return null; // exited (ENOENT or ESRCH)
+        }
+        try {
+            p.io = new ProcFile(dir.resolve("io"));
+        } catch (IOException e) {
+            // io is not readable for processes that changed credentials (e.g. setuid helpers).
+        }
+
+        // The command name may contain spaces and parentheses; it ends at the last ')'.
+        ProcFile stat = p.stat;
+        int open = 0;
+        while (stat.byteAt(open) != '(') open++;
+        p.command = stat.string(open + 1, stat.lastIndexOf((byte) ')')).replace(',', ' ');
+        p.pidLabel = Long.toString(pid);
+
+        live.put(pid, p);
+        if (numStates == states.length) {
+            ProcState[] grown = new ProcState[states.length * 2];
+            System.arraycopy(states, 0, grown, 0, numStates);
+            states = grown;
+        }
+        states[numStates++] = p;
+        return p;
+    }
+
+    /**
+     * Re-reads and parses {@code stat}.
+     *
+     * @return {@code false} if the process has exited
+     */
+    private boolean readStat(ProcState p) {
+        ProcFile stat = p.stat;
+        try {
+            stat.read();
+        } catch (IOException e) {
+            return false; // ESRCH
+        }
+        // Fields resume after the last ')'; see proc(5) for the field numbers.
+        stat.position(stat.lastIndexOf((byte) ')') + 1);
+        stat.skipField();                           // (3) state
+        p.ppid = stat.nextLong();                   // (4) ppid
+        for (int f = 5; f <= 13; f++) {
+            stat.nextLong();                        // (5) pgrp .. (13) cmajflt
+        }
+        long utime = stat.nextLong();               // (14)
+        long stime = stat.nextLong();               // (15)
+        long cutime = stat.nextLong();              // (16)
+        long cstime = stat.nextLong();              // (17)
+        stat.nextLong();                            // (18) priority
+        stat.nextLong();                            // (19) nice
+        p.threads = stat.nextLong();                // (20) num_threads
+        p.cpuMs = (utime + stime) * 1000 / CLOCK_TICKS_PER_SEC;
+        p.childCpuMs = (cutime + cstime) * 1000 / CLOCK_TICKS_PER_SEC;
+        return true;
+    }
+
+    /**
+     * Adds the children of every thread of the process to the queue.
+     *
+     * @return the new queue tail
+     */
+    private int readChildren(ProcState p, int tail) {
+        if (p.childrenThreads != p.threads) {
+            listTasks(p);
+        }
+        for (ProcFile children : p.children) {
+            try {
+                children.read();
+            } catch (IOException e) {
+                p.childrenThreads = -1; // thread exited; list the tasks again on the next tick
+                continue;
+            }
+            while (children.hasNextLong()) {
+                tail = enqueue(children.nextLong(), tail);
+            }
+        }
+        return tail;
+    }
+
+    /**
+     * Opens the {@code children} file of every thread of the process.
+     */
+    private void listTasks(ProcState p) {
+        p.closeChildren();
+        List<ProcFile> files = new ArrayList<>();
+        try (DirectoryStream<Path> tasks = Files.newDirectoryStream(PROC.resolve(p.pid + "/task"))) {
+            for (Path task : tasks) {
+                try {
+                    files.add(new ProcFile(task.resolve("children")));
+                } catch (IOException e) {
+                    // Thread exited.
+                }
+            }
+        } catch (IOException e) {
+            // Process exited.
+        }
+        p.children = files.toArray(NO_FILES);
+        p.childrenThreads = p.threads;
+    }
+
+    private int enqueue(long pid, int tail) {
+        if (tail == queue.length) {
+            long[] grown = new long[queue.length * 2];
+            System.arraycopy(queue, 0, grown, 0, tail);
+            queue = grown;
+        }
+        queue[tail] = pid;
+        return tail + 1;
+    }
+
+    /**
+     * Flags a process as exited and forgets its PID, so that a new process reusing it is tracked afresh.
+     * Its last-seen CPU time is credited to its parent, which is expected to have reaped it.
+     */
+    private void retire(ProcState p) {
+        p.exited = true;
+        live.remove(p.pid);
+        ProcState parent = live.get(p.ppid);
+        if (parent != null) {
+            parent.exitedChildCpuMs += p.cpuMs + p.childCpuMs;
+        }
+    }
+
+    /**
+     * Drops the processes reported as exited on the previous tick and closes their files.
+     */
+    private void dropExited() {
+        int kept = 0;
+        for (int i = 0; i < numStates; i++) {
+            ProcState p = states[i];
+            if (p.exited) {
+                p.close();
+            } else {
+                states[kept++] = p;
+            }
+        }
+        for (int i = kept; i < numStates; i++) {
+            states[i] = null;
+        }
+        numStates = kept;
+    }
+
+    /**
+     * Builds a parent-to-children map from all {@code /proc/[pid]/stat} files.
+     */
+    private static Map<Long, List<Long>> scanParents() throws IOException {
+        Map<Long, List<Long>> map = new HashMap<>();
+        try (DirectoryStream<Path> dirs = Files.newDirectoryStream(PROC, "[0-9]*")) {
+            for (Path dir : dirs) {
+                try {
+                    String stat = Files.readString(dir.resolve("stat"), StandardCharsets.US_ASCII);
+                    String[] fields = stat.substring(stat.lastIndexOf(')') + 2).split(" ");
+                    long pid = Long.parseLong(dir.getFileName().toString());
+                    long ppid = Long.parseLong(fields[1]);
+                    map.computeIfAbsent(ppid, k -> new ArrayList<>()).add(pid);
+                } catch (NoSuchFileException e) {
+                    // Process exited during the scan.
+                }
+            }
+        }
+        return map;
+    }
+
+    /**
+     * Asks {@code getconf CLK_TCK} for {@code USER_HZ}, falling back to 100,
+     * its value on all mainstream Linux architectures.
+     */
+    private static long clockTicksPerSecond() {
+        try {
+            Process process = new ProcessBuilder("getconf", "CLK_TCK")
+                    .redirectErrorStream(true)
+                    .start();
+            String output = new String(process.getInputStream().readAllBytes(), StandardCharsets.US_ASCII).trim();
+            if (process.waitFor() == 0) {
+                long ticks = Long.parseLong(output);
+                if (ticks > 0) return ticks;
+            }
+        } catch (IOException | NumberFormatException e) {
+            // getconf is not installed; use the default.
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return 100;
+    }
+
+    private static void closeQuietly(ProcFile file) {
+        if (file == null) return;
+        try {
+            file.close();
+        } catch (IOException e) {
+            // Nothing to do.
+        }
+    }
+}
@@ -0,0 +1,574 @@
+package com.github.oogasawa.benchmark.store;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+import com.github.oogasawa.benchmark.metric.MetricSchema;
+import com.github.oogasawa.benchmark.metric.SampleBuffer;
+import com.github.oogasawa.benchmark.metric.SampleSink;
+import com.github.oogasawa.benchmark.util.TimeWindow;
+
+/**
+ * Reads a columnar run file written by {@link ColumnarRunWriter}.
+ * <p>
+ * Opening a run file maps it read-only and walks the record frames once, reading only the
+ * small source and series records and the first bytes of each block; the block values are
+ * not touched until a series is read. A series is then assembled by copying its blocks
+ * into one array, so loading even a long run is bounded by memory bandwidth instead of
+ * text parsing. {@link #aggregate(String, String, TimeWindow)} goes further and reads only the
+ * statistics of the blocks that lie wholly inside the requested window, and skips the blocks
+ * outside it.
+ *
+ * <p>Example usage:
+ * <pre>{@code
+ *     try (ColumnarRunReader run = ColumnarRunReader.open(Path.of("run1.run"))) {
+ *         long[] ticks = run.ticks("nvidia-smi");
+ *         for (ColumnarRunReader.SeriesInfo series : run.series("nvidia-smi", "utilization.gpu")) {
+ *             double[] values = run.values(series, ticks[0], ticks.length);
+ *             ...
+ *         }
+ *     }
+ * }</pre>
+ */
+public class ColumnarRunReader implements Closeable {
+
+    private static final Logger logger = Logger.getLogger(ColumnarRunReader.class.getName());
+
+    /** Largest region mapped at once; records never straddle a region. */
+    private static final long MAX_REGION_BYTES = 1L << 30;
+
+    /**
+     * A stored series: one metric of one entity of a source.
+     *
+     * @param id     Series number in the reader; a series defined again in the file shares the number of the first.
+     * @param source Source name.
+     * @param labels Label values identifying the entity, in the order of the source labels.
+     * @param metric Metric index in the source schema, or {@code -1} for the timestamp series.
+     */
+    public record SeriesInfo(int id, String source, List<String> labels, int metric) {}
+
+    private final FileChannel channel;
+    private final boolean blockStats;
+    private final int valuesOffset;
+    private final int blockPayloadBytes;
+    private final long intervalMillis;
+    private final long startEpochMillis;
+    private final Map<Integer, MetricSchema> sources = new LinkedHashMap<>();
+    private final Map<String, Integer> sourceIds = new LinkedHashMap<>();
+    private final List<SeriesInfo> series = new ArrayList<>();
+    private final Map<List<Object>, SeriesInfo> seriesByKey = new HashMap<>();   // (source, metric, labels)
+    private final List<Integer> seriesIndex = new ArrayList<>();   // by series id in the file: index in series
+    private final List<long[]> blocks = new ArrayList<>();   // per series: file offsets of its blocks
+    private final List<long[]> firstTicks = new ArrayList<>();
+    private final int[] blockCounts;
+
+    private MappedByteBuffer region;
+    private long regionStart;
+
+    private ColumnarRunReader(Path path) throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+        ByteBuffer header = map(0, RunFileFormat.HEADER_BYTES);
+        byte[] magic = new byte[RunFileFormat.MAGIC.length];
+        header.get(magic);
+        if (!Arrays.equals(magic, RunFileFormat.MAGIC)) {
+            channel.close();
+            throw new IOException("Not a run file: " + path);
+        }
+        int version = header.getInt();
+        if (version != RunFileFormat.VERSION && version != RunFileFormat.VERSION_NO_STATS) {
+            channel.close();
+            throw new IOException("Unsupported run file version " + version + ": " + path);
+        }
+        this.intervalMillis = header.getLong();
+        this.startEpochMillis = header.getLong();
+        this.blockStats = version != RunFileFormat.VERSION_NO_STATS;
+        this.valuesOffset = RunFileFormat.BLOCK_STATS_OFFSET + (blockStats ? RunFileFormat.BLOCK_STATS_BYTES : 0);
+        this.blockPayloadBytes = blockStats ? RunFileFormat.BLOCK_PAYLOAD_BYTES : RunFileFormat.BLOCK_PAYLOAD_BYTES_NO_STATS;
+
+        List<List<Long>> offsets = new ArrayList<>();
+        List<List<Long>> ticks = new ArrayList<>();
+        long size = channel.size();
+        long position = RunFileFormat.HEADER_BYTES;
+        while (position + RunFileFormat.FRAME_BYTES <= size) {
+            ByteBuffer buf = map(position, RunFileFormat.FRAME_BYTES);
+            byte type = buf.get();
+            int length = buf.getInt();
+            long payload = position + RunFileFormat.FRAME_BYTES;
+            if (payload + length > size) break; // truncated by a crash
+
+            if (type == RunFileFormat.SOURCE) {
+                readSource(map(payload, length));
+            } else if (type == RunFileFormat.SERIES) {
+                if (readSeries(map(payload, length))) {
+                    offsets.add(new ArrayList<>());
+                    ticks.add(new ArrayList<>());
+                }
+            } else if (type == RunFileFormat.BLOCK) {
+                ByteBuffer block = map(payload, 12);
+                int id = seriesIndex.get(block.getInt());
+                offsets.get(id).add(payload);
+                ticks.get(id).add(block.getLong());
+            }
+            position = payload + length;
+        }
+
+        blockCounts = new int[series.size()];
+        for (int s = 0; s < series.size(); s++) {
+            blocks.add(offsets.get(s).stream().mapToLong(Long::longValue).toArray());
+            firstTicks.add(ticks.get(s).stream().mapToLong(Long::longValue).toArray());
+            blockCounts[s] = offsets.get(s).size();
+        }
+    }
+
+    /**
+     * Opens a run file.
+     *
+     * @param path The run file.
+     * @return the reader
+     * @throws IOException If the file cannot be read or is not a run file.
+     */
+    public static ColumnarRunReader open(Path path) throws IOException {
+        return new ColumnarRunReader(path);
+    }
+
+    /**
+     * Returns {@code true} if the file starts with the run file magic, so that commands can
+     * accept either a text output or a run file.
+     *
+     * @param path The file to check.
+     * @return whether the file is a run file
+     */
+    public static boolean isRunFile(Path path) {
+        try (InputStream in = Files.newInputStream(path)) {
+            return Arrays.equals(in.readNBytes(RunFileFormat.MAGIC.length), RunFileFormat.MAGIC);
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    public long getIntervalMillis() {
+        return intervalMillis;
+    }
+
+    public long getStartEpochMillis() {
+        return startEpochMillis;
+    }
+
+    /**
+     * Returns the names of the sources stored in the file, in the order they were registered.
+     */
+    public List<String> sources() {
+        return List.copyOf(sourceIds.keySet());
+    }
+
+    /**
+     * Returns the schema of a source, or {@code null} if the file has no such source.
+     */
+    public MetricSchema schema(String source) {
+        Integer id = sourceIds.get(source);
+        return id == null ? null : sources.get(id);
+    }
+
+    /**
+     * Returns the entities of a source as label value lists, in order of first appearance.
+     */
+    public List<List<String>> entities(String source) {
+        List<List<String>> entities = new ArrayList<>();
+        for (SeriesInfo s : series) {
+            if (s.source().equals(source) && s.metric() == 0) entities.add(s.labels());
+        }
+        return entities;
+    }
+
+    /**
+     * Returns the series of one metric of a source, one per entity.
+     *
+     * @param source The source name.
+     * @param metric The metric name.
+     * @return the series, in order of first appearance; empty if the source or metric is unknown
+     */
+    public List<SeriesInfo> series(String source, String metric) {
+        MetricSchema schema = schema(source);
+        int m = schema == null ? -1 : schema.indexOf(metric);
+        List<SeriesInfo> found = new ArrayList<>();
+        if (m < 0) return found;
+        for (SeriesInfo s : series) {
+            if (s.source().equals(source) && s.metric() == m) found.add(s);
+        }
+        return found;
+    }
+
+    /**
+     * Returns the series of one metric of one entity, or {@code null}.
+     */
+    public SeriesInfo series(String source, List<String> labels, int metric) {
+        return seriesByKey.get(List.of(source, metric, labels));
+    }
+
+    /**
+     * Returns the ticks sampled by a source, in ascending order.
+     *
+     * @param source The source name.
+     * @return the ticks, or an empty array if the source is unknown
+     */
+    public long[] ticks(String source) {
+        SeriesInfo timestamps = timestampSeries(source);
+        if (timestamps == null) return new long[0];
+        long first = firstTick(timestamps);
+        double[] stamps = values(timestamps, first, lastTick(timestamps) - first + 1);
+        long[] ticks = new long[stamps.length];
+        int n = 0;
+        for (int i = 0; i < stamps.length; i++) {
+            if (!Double.isNaN(stamps[i])) ticks[n++] = first + i;
+        }
+        return Arrays.copyOf(ticks, n);
+    }
+
+    /**
+     * Returns the epoch milliseconds of the given ticks of a source.
+     */
+    public long[] epochMillis(String source, long[] ticks) {
+        long[] millis = new long[ticks.length];
+        SeriesInfo timestamps = timestampSeries(source);
+        if (timestamps == null || ticks.length == 0) return millis;
+        double[] stamps = values(timestamps, ticks[0], ticks[ticks.length - 1] - ticks[0] + 1);
+        for (int i = 0; i < ticks.length; i++) {
+            millis[i] = (long) stamps[(int) (ticks[i] - ticks[0])];
+        }
+        return millis;
+    }
+
+    /**
+     * Returns the values of a series for a range of ticks; ticks without a value are {@code NaN}.
+     *
+     * @param info      The series.
+     * @param firstTick The first tick of the range.
+     * @param length    The number of ticks.
+     * @return the values, indexed by {@code tick - firstTick}
+     */
+    public double[] values(SeriesInfo info, long firstTick, long length) {
+        double[] values = new double[Math.toIntExact(length)];
+        Arrays.fill(values, Double.NaN);
+        long[] offsets = blocks.get(info.id());
+        long[] starts = firstTicks.get(info.id());
+        for (int b = 0; b < offsets.length; b++) {
+            long start = starts[b];
+            if (start + RunFileFormat.BLOCK_TICKS <= firstTick || start >= firstTick + length) continue;
+            ByteBuffer block = map(offsets[b], blockPayloadBytes);
+            int count = block.getInt(12);
+            block.position(valuesOffset);
+            for (int i = 0; i < count; i++) {
+                double value = block.getDouble();
+                long index = start + i - firstTick;
+                if (index >= 0 && index < length) values[(int) index] = value;
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Returns the range of ticks of a source whose timestamps lie in a window. Relative bounds
+     * are resolved against the first timestamp of the source.
+     *
+     * @param source The source name.
+     * @param window The time window.
+     * @return the first and last tick, or {@code null} if no tick of the source lies in the window
+     */
+    public long[] tickRange(String source, TimeWindow window) {
+        SeriesInfo timestamps = timestampSeries(source);
+        if (timestamps == null || blockCounts[timestamps.id()] == 0) return null;
+        long[] offsets = blocks.get(timestamps.id());
+        long[] starts = firstTicks.get(timestamps.id());
+        TimeWindow resolved = window.resolve((long) blockStats(offsets[0]).min());
+
+        long first = -1;
+        long last = -1;
+        for (int b = 0; b < offsets.length; b++) {
+            SeriesStats stamps = blockStats(offsets[b]);
+            if (stamps.count() == 0 || !resolved.overlaps((long) stamps.min(), (long) stamps.max())) continue;
+            int count = blockCount(offsets[b]);
+            if (resolved.contains((long) stamps.min()) && resolved.contains((long) stamps.max())) {
+                if (first < 0) first = starts[b];
+                last = starts[b] + count - 1;
+                continue;
+            }
+            ByteBuffer block = map(offsets[b], blockPayloadBytes);
+            for (int i = 0; i < count; i++) {
+                double stamp = block.getDouble(valuesOffset + i * 8);
+                if (Double.isNaN(stamp) || !resolved.contains((long) stamp)) continue;
+                if (first < 0) first = starts[b] + i;
+                last = starts[b] + i;
+            }
+        }
+        return first < 0 ? null : new long[] { first, last };
+    }
+
+    /**
+     * Aggregates one metric of a source over a time window, per entity.
+     * <p>
+     * Blocks wholly inside the window contribute their stored statistics without their values
+     * being read, only the blocks at the edges of the window are scanned, and the others are skipped.
+     *
+     * @param source The source name.
+     * @param metric The metric name.
+     * @param window The time window; relative bounds are from the first timestamp of the source.
+     * @return the statistics of each entity, by label values, in order of first appearance;
+     *         empty if the source or metric is unknown
+     */
+    public Map<List<String>, SeriesStats> aggregate(String source, String metric, TimeWindow window) {
+        Map<List<String>, SeriesStats> result = new LinkedHashMap<>();
+        List<SeriesInfo> found = series(source, metric);
+        long[] range = found.isEmpty() ? null : tickRange(source, window);
+        int summarized = 0;
+        int scanned = 0;
+        for (SeriesInfo info : found) {
+            SeriesStats stats = new SeriesStats();
+            result.put(info.labels(), stats);
+            if (range == null) continue;
+            long[] offsets = blocks.get(info.id());
+            long[] starts = firstTicks.get(info.id());
+            for (int b = 0; b < offsets.length; b++) {
+                long start = starts[b];
+                int count = blockCount(offsets[b]);
+                if (start + count - 1 < range[0] || start > range[1]) continue;
+                if (start >= range[0] && start + count - 1 <= range[1]) {
+                    stats.merge(blockStats(offsets[b]));
+                    summarized++;
+                    continue;
+                }
+                ByteBuffer block = map(offsets[b], blockPayloadBytes);
+                for (int i = 0; i < count; i++) {
+                    if (start + i >= range[0] && start + i <= range[1]) {
+                        stats.add(block.getDouble(valuesOffset + i * 8));
+                    }
+                }
+                scanned++;
+            }
+        }
+        logger.fine(String.format("%s/%s: %d blocks from statistics, %d blocks scanned", source, metric,
+                summarized, scanned));
+        return result;
+    }
+
+    /**
+     * Feeds the stored samples of a source to a sink, one tick at a time, as if the source
+     * were sampled again. A row is produced for every entity that has a value on the tick.
+     * The series are read a block of ticks at a time, so the memory needed does not depend
+     * on the length of the run.
+     *
+     * @param source The source name.
+     * @param sink   The destination, e.g. a {@link com.github.oogasawa.benchmark.metric.TextSampleSink}.
+     * @throws IOException If the sink fails.
+     */
+    public void export(String source, SampleSink sink) throws IOException {
+        MetricSchema schema = schema(source);
+        if (schema == null) {
+            throw new IOException("No source " + source + " in the run file");
+        }
+        int numMetrics = schema.getMetrics().size();
+        List<List<String>> entities = entities(source);
+        SeriesInfo timestamps = timestampSeries(source);
+        Cursor stamps = new Cursor(timestamps);
+        Cursor[][] cursors = new Cursor[entities.size()][numMetrics];
+        double[][][] values = new double[entities.size()][numMetrics][RunFileFormat.BLOCK_TICKS];
+        for (int e = 0; e < entities.size(); e++) {
+            for (int m = 0; m < numMetrics; m++) {
+                cursors[e][m] = new Cursor(series(source, entities.get(e), m));
+            }
+        }
+        double[] millis = new double[RunFileFormat.BLOCK_TICKS];
+        long first = timestamps == null ? 0 : firstTick(timestamps);
+        long last = timestamps == null ? -1 : lastTick(timestamps);
+
+        SampleBuffer buffer = new SampleBuffer(schema);
+        sink.open(schema);
+        try {
+            for (long chunk = first; chunk <= last; chunk += RunFileFormat.BLOCK_TICKS) {
+                stamps.read(chunk, millis);
+                for (int e = 0; e < entities.size(); e++) {
+                    for (int m = 0; m < numMetrics; m++) {
+                        cursors[e][m].read(chunk, values[e][m]);
+                    }
+                }
+                for (int index = 0; index < millis.length; index++) {
+                    if (Double.isNaN(millis[index])) continue;
+                    buffer.reset(chunk + index, (long) millis[index]);
+                    for (int e = 0; e < entities.size(); e++) {
+                        if (!hasValue(values[e], index)) continue;
+                        int row = buffer.addRow();
+                        List<String> labels = entities.get(e);
+                        for (int l = 0; l < labels.size(); l++) {
+                            buffer.setLabel(row, l, labels.get(l));
+                        }
+                        for (int m = 0; m < numMetrics; m++) {
+                            buffer.setValue(row, m, values[e][m][index]);
+                        }
+                    }
+                    sink.write(buffer);
+                }
+            }
+        } finally {
+            sink.close();
+        }
+    }
+
+    private static boolean hasValue(double[][] metrics, int index) {
+        for (double[] metric : metrics) {
+            if (!Double.isNaN(metric[index])) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Reads the values of a series in consecutive ranges of ticks, remembering the first block
+     * that may still hold ticks of the next range.
+     */
+    private final class Cursor {
+        private final long[] offsets;
+        private final long[] starts;
+        private int next = 0;
+
+        Cursor(SeriesInfo info) {
+            this.offsets = info == null ? new long[0] : blocks.get(info.id());
+            this.starts = info == null ? new long[0] : firstTicks.get(info.id());
+        }
+
+        /**
+         * Fills {@code values} with the ticks from {@code firstTick}; ticks without a value are {@code NaN}.
+         * The ranges must be read in ascending order.
+         */
+        void read(long firstTick, double[] values) {
+            Arrays.fill(values, Double.NaN);
+            long end = firstTick + values.length;
+            while (next < offsets.length && starts[next] + RunFileFormat.BLOCK_TICKS <= firstTick) next++;
+            for (int b = next; b < offsets.length && starts[b] < end; b++) {
+                ByteBuffer block = map(offsets[b], blockPayloadBytes);
+                int count = block.getInt(12);
+                for (int i = 0; i < count; i++) {
+                    long index = starts[b] + i - firstTick;
+                    if (index >= 0 && index < values.length) {
+                        values[(int) index] = block.getDouble(valuesOffset + i * 8);
+                    }
+                }
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        region = null;
+        channel.close();
+    }
+
+    private SeriesInfo timestampSeries(String source) {
+        return series(source, List.of(), RunFileFormat.TIMESTAMPS);
+    }
+
+    private int blockCount(long offset) {
+        return map(offset, RunFileFormat.BLOCK_STATS_OFFSET).getInt(12);
+    }
+
+    /**
+     * Returns the statistics of a block, computed from its values in a file without them.
+     */
+    private SeriesStats blockStats(long offset) {
+        SeriesStats stats = new SeriesStats();
+        if (blockStats) {
+            ByteBuffer buf = map(offset + RunFileFormat.BLOCK_STATS_OFFSET, RunFileFormat.BLOCK_STATS_BYTES);
+            stats.merge(buf.getInt(), buf.getDouble(), buf.getDouble(), buf.getDouble());
+        } else {
+            ByteBuffer block = map(offset, blockPayloadBytes);
+            int count = block.getInt(12);
+            for (int i = 0; i < count; i++) {
+                stats.add(block.getDouble(valuesOffset + i * 8));
+            }
+        }
+        return stats;
+    }
+
+    private long firstTick(SeriesInfo info) {
+        long[] starts = firstTicks.get(info.id());
+        return starts.length == 0 ? 0 : starts[0];
+    }
+
+    private long lastTick(SeriesInfo info) {
+        int n = blockCounts[info.id()];
+        if (n == 0) return -1;
+        return firstTicks.get(info.id())[n - 1] + blockCount(blocks.get(info.id())[n - 1]) - 1;
+    }
+
+    private void readSource(ByteBuffer buf) {
+        int id = buf.getInt();
+        String name = RunFileFormat.getString(buf);
+        List<String> labels = new ArrayList<>();
+        for (int n = buf.getInt(); n > 0; n--) {
+            labels.add(RunFileFormat.getString(buf));
+        }
+        List<MetricSchema.Metric> metrics = new ArrayList<>();
+        for (int n = buf.getInt(); n > 0; n--) {
+            String metric = RunFileFormat.getString(buf);
+            String unit = RunFileFormat.getString(buf);
+            metrics.add(new MetricSchema.Metric(metric, unit, buf.get() != 0));
+        }
+        sources.put(id, new MetricSchema(name, labels, metrics));
+        sourceIds.put(name, id);
+    }
+
+    /**
+     * Reads a series record. A series defined again after the writer released it is joined to
+     * the first one, so that its blocks follow those of the first.
+     *
+     * @return {@code true} if the series is new
+     */
+    private boolean readSeries(ByteBuffer buf) {
+        buf.getInt();   // the id in the file, which is the number of series records before it
+        int sourceId = buf.getInt();
+        int metric = buf.getInt();
+        List<String> labels = new ArrayList<>();
+        for (int n = buf.getInt(); n > 0; n--) {
+            labels.add(RunFileFormat.getString(buf));
+        }
+        String source = sources.get(sourceId).getSource();
+        SeriesInfo known = seriesByKey.get(List.of(source, metric, labels));
+        if (known != null) {
+            seriesIndex.add(known.id());
+            return false;
+        }
+        SeriesInfo info = new SeriesInfo(series.size(), source, List.copyOf(labels), metric);
+        series.add(info);
+        seriesIndex.add(info.id());
+        seriesByKey.put(List.of(info.source(), metric, info.labels()), info);
+        return true;
+    }
+
+    /**
+     * Returns a buffer positioned at {@code offset} with {@code length} bytes readable, remapping
+     * the region when the range falls outside it.
+     */
+    private ByteBuffer map(long offset, int length) {
+        try {
+            if (region == null || offset < regionStart || offset + length > regionStart + region.capacity()) {
+                regionStart = offset;
+                region = channel.map(FileChannel.MapMode.READ_ONLY, offset,
+                        Math.max(length, Math.min(MAX_REGION_BYTES, channel.size() - offset)));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return region.slice((int) (offset - regionStart), length);
+    }
+}
@@ -0,0 +1,372 @@
+package com.github.oogasawa.benchmark.store;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+import com.github.oogasawa.benchmark.metric.MetricSchema;
+import com.github.oogasawa.benchmark.metric.SampleBuffer;
+import com.github.oogasawa.benchmark.metric.SampleSink;
+
+/**
+ * Appends the samples of all sources of a run to one columnar run file (see {@link RunFileFormat}).
+ * <p>
+ * Each source gets its own sink from {@link #newSink()}. The values of every series are
+ * gathered in memory into a block of consecutive ticks, and a full block is appended to the
+ * file through a {@link MappedByteBuffer}: the file is mapped in large regions ahead of the
+ * write position, so appending a block is a memory copy rather than a system call. Each block
+ * carries the count, minimum, maximum and sum of its values for queries. Partly
+ * filled blocks are written by {@link #close()}, which also trims the file to its content.
+ * <p>
+ * The series of an entity are keyed by the {@linkplain MetricSchema#getKeyLabels() key labels}
+ * of its source, which are the labels stored in the file. The series of an entity that has not
+ * been written for a whole block (e.g. a process that has exited) are written out and released,
+ * so the memory of the writer is bounded by the entities that are alive and not by all the
+ * entities seen in the run. An entity that comes back gets new series, which the reader joins.
+ *
+ * <p>Example usage:
+ * <pre>{@code
+ *     try (ColumnarRunWriter run = new ColumnarRunWriter(Path.of("run1.run"), 1000)) {
+ *         scheduler.register(new SourceSampler(new CpuStatSampler(), run.newSink()));
+ *         ...
+ *         scheduler.stop();
+ *     }
+ * }</pre>
+ */
+public class ColumnarRunWriter implements Closeable {
+
+    private static final Logger logger = Logger.getLogger(ColumnarRunWriter.class.getName());
+
+    /** Size of the regions mapped ahead of the write position. */
+    private static final long REGION_BYTES = 64L << 20;
+
+    /** The values of one series for the block of ticks being gathered. */
+    private static final class Series {
+        final int id;
+        final double[] values = new double[RunFileFormat.BLOCK_TICKS];
+        long firstTick = -1;
+        long lastTick = -1;
+        int count;
+
+        Series(int id) {
+            this.id = id;
+            Arrays.fill(values, Double.NaN);
+        }
+    }
+
+    /** The series of one source, by entity. */
+    private final class Source {
+        final int id;
+        final int numMetrics;
+        final int[] keyLabels;              // the label columns of the key of an entity
+        final Series timestamps;
+        final Map<List<String>, Series[]> entities = new HashMap<>();
+        long releaseTick = -1;              // the tick at which idle entities were last released
+
+        // The labels and series of the rows of the last tick, to find the series of a stable entity without a lookup.
+        String[][] lastLabels = new String[0][];
+        Series[][] lastSeries = new Series[0][];
+
+        Source(int id, MetricSchema schema) throws IOException {
+            this.id = id;
+            this.numMetrics = schema.getMetrics().size();
+            this.keyLabels = schema.getKeyLabels().stream().mapToInt(schema.getLabels()::indexOf).toArray();
+            this.timestamps = defineSeries(id, RunFileFormat.TIMESTAMPS, List.of());
+        }
+    }
+
+    private final FileChannel channel;
+    private final List<Source> sources = new ArrayList<>();
+    private int nextSeriesId = 0;
+    private MappedByteBuffer region;
+    private long regionStart;
+    private long position;
+    private int nextSourceId = 0;
+
+    /**
+     * Creates a run file, replacing any existing file.
+     *
+     * @param path           The run file.
+     * @param intervalMillis The sampling interval of the run, recorded in the header.
+     * @throws IOException If the file cannot be created.
+     */
+    public ColumnarRunWriter(Path path, long intervalMillis) throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        MappedByteBuffer buf = reserve(RunFileFormat.HEADER_BYTES);
+        buf.put(RunFileFormat.MAGIC);
+        buf.putInt(RunFileFormat.VERSION);
+        buf.putLong(intervalMillis);
+        buf.putLong(System.currentTimeMillis());
+        buf.putInt(0);
+        position += RunFileFormat.HEADER_BYTES;
+    }
+
+    /**
+     * Returns a sink that appends the samples of one source to this file.
+     * Sinks may be written from different threads.
+     *
+     * @return a new sink
+     */
+    public SampleSink newSink() {
+        return new SampleSink() {
+            private Source source;
+
+            @Override
+            public void open(MetricSchema schema) throws IOException {
+                source = defineSource(schema);
+            }
+
+            @Override
+            public void write(SampleBuffer buffer) throws IOException {
+                append(source, buffer);
+            }
+
+            @Override
+            public void close() {
+                // The blocks are written when the run file is closed.
+            }
+        };
+    }
+
+    /**
+     * Replaces the sampling interval and start time in the header, e.g. with those of recorded
+     * data that is converted into a run file.
+     *
+     * @param intervalMillis   The sampling interval of the run.
+     * @param startEpochMillis The start of the run.
+     * @throws IOException If the header cannot be written.
+     */
+    public synchronized void setHeader(long intervalMillis, long startEpochMillis) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(16);
+        buf.putLong(intervalMillis);
+        buf.putLong(startEpochMillis);
+        buf.flip();
+        channel.write(buf, RunFileFormat.MAGIC.length + 4);
+    }
+
+    /**
+     * Writes the partly filled blocks and trims the file to its content.
+     *
+     * @throws IOException If writing fails.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (!channel.isOpen()) return;
+        for (Source source : sources) {
+            if (source.timestamps.count > 0) writeBlock(source.timestamps);
+            for (Series[] entity : source.entities.values()) {
+                for (Series series : entity) {
+                    if (series.count > 0) writeBlock(series);
+                }
+            }
+        }
+        if (region != null) region.force();
+        region = null;
+        channel.truncate(position);
+        channel.close();
+        logger.info(String.format("Run file closed: %d series, %d bytes", nextSeriesId, position));
+    }
+
+    private synchronized Source defineSource(MetricSchema schema) throws IOException {
+        int id = nextSourceId++;
+        int length = 4 + RunFileFormat.stringBytes(schema.getSource()) + 4 + 4;
+        for (String label : schema.getKeyLabels()) {
+            length += RunFileFormat.stringBytes(label);
+        }
+        for (MetricSchema.Metric metric : schema.getMetrics()) {
+            length += RunFileFormat.stringBytes(metric.name()) + RunFileFormat.stringBytes(metric.unit()) + 1;
+        }
+
+        MappedByteBuffer buf = beginRecord(RunFileFormat.SOURCE, length);
+        buf.putInt(id);
+        RunFileFormat.putString(buf, schema.getSource());
+        buf.putInt(schema.getKeyLabels().size());
+        for (String label : schema.getKeyLabels()) {
+            RunFileFormat.putString(buf, label);
+        }
+        buf.putInt(schema.getMetrics().size());
+        for (MetricSchema.Metric metric : schema.getMetrics()) {
+            RunFileFormat.putString(buf, metric.name());
+            RunFileFormat.putString(buf, metric.unit());
+            buf.put((byte) (metric.integral() ? 1 : 0));
+        }
+        position += RunFileFormat.FRAME_BYTES + length;
+        Source source = new Source(id, schema);
+        sources.add(source);
+        return source;
+    }
+
+    private synchronized void append(Source source, SampleBuffer buffer) throws IOException {
+        long tick = buffer.getTick();
+        put(source.timestamps, tick, buffer.getEpochMillis());
+        if (source.releaseTick < 0) {
+            source.releaseTick = tick;
+        } else if (tick - source.releaseTick >= RunFileFormat.BLOCK_TICKS) {
+            releaseIdle(source, tick);
+        }
+
+        int[] keyLabels = source.keyLabels;
+        int rows = buffer.getRows();
+        if (source.lastLabels.length < rows) {
+            source.lastLabels = Arrays.copyOf(source.lastLabels, rows);
+            source.lastSeries = Arrays.copyOf(source.lastSeries, rows);
+        }
+        for (int row = 0; row < rows; row++) {
+            Series[] series = sameEntity(source.lastLabels[row], buffer, row, keyLabels)
+                    ? source.lastSeries[row]
+                    : entity(source, buffer, row, keyLabels);
+            for (int m = 0; m < source.numMetrics; m++) {
+                put(series[m], tick, buffer.getValue(row, m));
+            }
+        }
+    }
+
+    /**
+     * Returns {@code true} if the row has the same key label instances as the previous tick,
+     * which is the case for the rows of a stable entity since sources reuse their label strings.
+     */
+    private static boolean sameEntity(String[] last, SampleBuffer buffer, int row, int[] keyLabels) {
+        if (last == null) return false;
+        for (int k = 0; k < keyLabels.length; k++) {
+            if (last[k] != buffer.getLabel(row, keyLabels[k])) return false;
+        }
+        return true;
+    }
+
+    private Series[] entity(Source source, SampleBuffer buffer, int row, int[] keyLabels) throws IOException {
+        String[] labels = new String[keyLabels.length];
+        for (int k = 0; k < keyLabels.length; k++) {
+            labels[k] = buffer.getLabel(row, keyLabels[k]);
+        }
+        List<String> key = List.of(labels);
+        Series[] series = source.entities.get(key);
+        if (series == null) {
+            series = new Series[source.numMetrics];
+            for (int m = 0; m < series.length; m++) {
+                series[m] = defineSeries(source.id, m, key);
+            }
+            source.entities.put(key, series);
+        }
+        source.lastLabels[row] = labels;
+        source.lastSeries[row] = series;
+        return series;
+    }
+
+    /**
+     * Writes out and forgets the entities of a source that have not been written since the
+     * previous release, i.e. for at least a whole block of ticks.
+     */
+    private void releaseIdle(Source source, long tick) throws IOException {
+        int released = 0;
+        Iterator<Series[]> entities = source.entities.values().iterator();
+        while (entities.hasNext()) {
+            Series[] entity = entities.next();
+            if (entity.length > 0 && entity[0].lastTick >= source.releaseTick) continue;
+            for (Series series : entity) {
+                if (series.count > 0) writeBlock(series);
+            }
+            entities.remove();
+            released++;
+        }
+        if (released > 0) {
+            // The rows of the last tick may refer to a released entity.
+            Arrays.fill(source.lastLabels, null);
+        }
+        source.releaseTick = tick;
+    }
+
+    private Series defineSeries(int sourceId, int metric, List<String> labels) throws IOException {
+        Series series = new Series(nextSeriesId++);
+
+        int length = 4 + 4 + 4 + 4;
+        for (String label : labels) {
+            length += RunFileFormat.stringBytes(label);
+        }
+        MappedByteBuffer buf = beginRecord(RunFileFormat.SERIES, length);
+        buf.putInt(series.id);
+        buf.putInt(sourceId);
+        buf.putInt(metric);
+        buf.putInt(labels.size());
+        for (String label : labels) {
+            RunFileFormat.putString(buf, label);
+        }
+        position += RunFileFormat.FRAME_BYTES + length;
+        return series;
+    }
+
+    private void put(Series series, long tick, double value) throws IOException {
+        if (series.firstTick < 0) {
+            series.firstTick = tick;
+        } else if (tick - series.firstTick >= RunFileFormat.BLOCK_TICKS) {
+            writeBlock(series);
+            series.firstTick = tick;
+        }
+        int slot = (int) (tick - series.firstTick);
+        if (slot < 0) return; // a tick older than the block, which the scheduler never produces
+        series.values[slot] = value;
+        series.count = Math.max(series.count, slot + 1);
+        series.lastTick = tick;
+    }
+
+    private void writeBlock(Series series) throws IOException {
+        MappedByteBuffer buf = beginRecord(RunFileFormat.BLOCK, RunFileFormat.BLOCK_PAYLOAD_BYTES);
+        buf.putInt(series.id);
+        buf.putLong(series.firstTick);
+        buf.putInt(series.count);
+        int n = 0;
+        double min = Double.NaN;
+        double max = Double.NaN;
+        double sum = 0;
+        for (int i = 0; i < series.count; i++) {
+            double value = series.values[i];
+            if (Double.isNaN(value)) continue;
+            min = n == 0 ? value : Math.min(min, value);
+            max = n == 0 ? value : Math.max(max, value);
+            sum += value;
+            n++;
+        }
+        buf.putInt(n);
+        buf.putDouble(min);
+        buf.putDouble(max);
+        buf.putDouble(sum);
+        for (double value : series.values) {
+            buf.putDouble(value);
+        }
+        position += RunFileFormat.FRAME_BYTES + RunFileFormat.BLOCK_PAYLOAD_BYTES;
+
+        Arrays.fill(series.values, Double.NaN);
+        series.count = 0;
+    }
+
+    private MappedByteBuffer beginRecord(byte type, int payloadLength) throws IOException {
+        MappedByteBuffer buf = reserve(RunFileFormat.FRAME_BYTES + payloadLength);
+        buf.put(type);
+        buf.putInt(payloadLength);
+        return buf;
+    }
+
+    /**
+     * Returns the mapped region positioned at the write position, with at least {@code bytes} remaining.
+     * A new region is mapped (which extends the file) when the current one is full.
+     */
+    private MappedByteBuffer reserve(int bytes) throws IOException {
+        if (region == null || position + bytes > regionStart + region.capacity()) {
+            if (region != null) region.force();
+            regionStart = position;
+            region = channel.map(FileChannel.MapMode.READ_WRITE, regionStart, Math.max(REGION_BYTES, bytes));
+        }
+        region.position((int) (position - regionStart));
+        return region;
+    }
+}
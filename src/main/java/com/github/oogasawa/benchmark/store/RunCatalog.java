@@ -0,0 +1,231 @@
+package com.github.oogasawa.benchmark.store;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import com.github.oogasawa.benchmark.util.TimeWindow;
+
+/**
+ * An index of the run manifests under a results directory, kept in {@code DIR/.benchmark-catalog.tsv}.
+ * <p>
+ * {@link #update()} walks the tree for {@code *.manifest.yaml} files and parses only the manifests
+ * that are new or changed since the index was written, so listing thousands of runs costs a
+ * directory walk. The index is a tab-separated file with one row per run:
+ * <pre>
+ * manifest  modified_millis  start_epoch_millis  start  host  gpu_count  gpu_model  exit_code  wall_seconds  status  command
+ * </pre>
+ *
+ * <p>Example usage:
+ * <pre>{@code
+ *     // The last 8-GPU fq2bam on b200-03
+ *     List<RunCatalog.Entry> runs = RunCatalog.open(Path.of("/data/bench")).update();
+ *     RunCatalog.Query query = new RunCatalog.Query(Pattern.compile("fq2bam"), Pattern.compile("b200-03"),
+ *             null, null, 8, null, null, null);
+ *     List<RunCatalog.Entry> last = RunCatalog.select(runs, query, 1);
+ * }</pre>
+ */
+public final class RunCatalog {
+
+    private static final Logger logger = Logger.getLogger(RunCatalog.class.getName());
+
+    /** Name of the index file in the root of the tree. */
+    public static final String INDEX_FILE = ".benchmark-catalog.tsv";
+
+    private static final String HEADER = "manifest\tmodified_millis\tstart_epoch_millis\tstart\thost\tgpu_count\t"
+            + "gpu_model\texit_code\twall_seconds\tstatus\tcommand";
+
+    /**
+     * One run of the catalog.
+     *
+     * @param manifest         The manifest, relative to the root of the catalog.
+     * @param modifiedMillis   The modification time of the manifest when it was indexed.
+     * @param startEpochMillis The start of the run, or {@code -1} if unknown.
+     * @param start            The start of the run as written in the manifest.
+     * @param host             The host name.
+     * @param gpuCount         The number of GPUs of the host.
+     * @param gpuModel         The GPU model, or an empty string.
+     * @param exitCode         The exit code of the command, or {@code null} if it has not ended.
+     * @param wallSeconds      The wall time of the run, or {@code null} if it has not ended.
+     * @param status           {@code running}, {@code finished} or {@code failed}.
+     * @param command          The command line.
+     */
+    public record Entry(String manifest, long modifiedMillis, long startEpochMillis, String start, String host,
+                        int gpuCount, String gpuModel, Integer exitCode, Double wallSeconds, String status,
+                        String command) {}
+
+    /**
+     * Conditions on the runs to list; {@code null} components match any run.
+     *
+     * @param command        Found anywhere in the command line.
+     * @param host           Found anywhere in the host name.
+     * @param started        An absolute window that contains the start of the run.
+     * @param exitCode       The exit code.
+     * @param gpuCount       The number of GPUs.
+     * @param status         {@code running}, {@code finished} or {@code failed}.
+     * @param minWallSeconds The shortest wall time.
+     * @param maxWallSeconds The longest wall time.
+     */
+    public record Query(Pattern command, Pattern host, TimeWindow started, Integer exitCode, Integer gpuCount,
+                        String status, Double minWallSeconds, Double maxWallSeconds) {
+
+        boolean matches(Entry e) {
+            if (command != null && !command.matcher(e.command()).find()) return false;
+            if (host != null && !host.matcher(e.host()).find()) return false;
+            if (started != null && (e.startEpochMillis() < 0 || !started.contains(e.startEpochMillis()))) return false;
+            if (exitCode != null && !exitCode.equals(e.exitCode())) return false;
+            if (gpuCount != null && gpuCount != e.gpuCount()) return false;
+            if (status != null && !status.equals(e.status())) return false;
+            if (minWallSeconds != null && (e.wallSeconds() == null || e.wallSeconds() < minWallSeconds)) return false;
+            if (maxWallSeconds != null && (e.wallSeconds() == null || e.wallSeconds() > maxWallSeconds)) return false;
+            return true;
+        }
+    }
+
+    private final Path root;
+    private final Map<String, Entry> indexed = new HashMap<>();
+
+    private RunCatalog(Path root) {
+        this.root = root;
+    }
+
+    /**
+     * Opens the catalog of a directory tree and loads its index, if there is one.
+     *
+     * @param root The results directory.
+     * @return the catalog
+     * @throws IOException If the index cannot be read.
+     */
+    public static RunCatalog open(Path root) throws IOException {
+        RunCatalog catalog = new RunCatalog(root);
+        Path index = root.resolve(INDEX_FILE);
+        if (Files.exists(index)) {
+            try (BufferedReader in = Files.newBufferedReader(index)) {
+                String line = in.readLine();
+                if (!HEADER.equals(line)) {
+                    logger.info("Rebuilding catalog index with an unknown layout: " + index);
+                    return catalog;
+                }
+                while ((line = in.readLine()) != null) {
+                    Entry e = parse(line);
+                    if (e != null) catalog.indexed.put(e.manifest(), e);
+                }
+            }
+        }
+        return catalog;
+    }
+
+    /**
+     * Brings the index up to date with the manifests in the tree and writes it.
+     *
+     * @return all runs, oldest first
+     * @throws IOException If the tree cannot be walked or the index cannot be written.
+     */
+    public List<Entry> update() throws IOException {
+        List<Entry> entries = new ArrayList<>();
+        int parsed = 0;
+        try (Stream<Path> paths = Files.walk(root)) {
+            for (Path path : (Iterable<Path>) paths::iterator) {
+                if (!path.getFileName().toString().endsWith(RunManifest.SUFFIX) || !Files.isRegularFile(path)) continue;
+                String key = root.relativize(path).toString();
+                long modified = Files.getLastModifiedTime(path).toMillis();
+                Entry e = indexed.get(key);
+                if (e == null || e.modifiedMillis() != modified) {
+                    try {
+                        e = entry(key, modified, RunManifest.read(path));
+                        parsed++;
+                    } catch (IOException ex) {
+                        logger.warning("Skipping " + path + ": " + ex.getMessage());
+                        continue;
+                    }
+                }
+                entries.add(e);
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        entries.sort(Comparator.comparingLong(Entry::startEpochMillis).thenComparing(Entry::manifest));
+        logger.fine(String.format("Catalog of %s: %d runs, %d manifests parsed", root, entries.size(), parsed));
+
+        indexed.clear();
+        entries.forEach(e -> indexed.put(e.manifest(), e));
+        write(entries);
+        return entries;
+    }
+
+    /**
+     * Selects the runs that match a query.
+     *
+     * @param entries The runs, oldest first.
+     * @param query   The conditions.
+     * @param last    The number of most recent matches to keep, or {@code 0} for all.
+     * @return the matching runs, oldest first
+     */
+    public static List<Entry> select(List<Entry> entries, Query query, int last) {
+        List<Entry> matches = entries.stream().filter(query::matches).toList();
+        if (last > 0 && matches.size() > last) {
+            matches = matches.subList(matches.size() - last, matches.size());
+        }
+        return matches;
+    }
+
+    private static Entry entry(String key, long modified, RunManifest m) {
+        return new Entry(key, modified,
+                m.getStart() == null ? -1 : m.getStart().toInstant().toEpochMilli(),
+                m.getStart() == null ? "" : m.getStart().toString(),
+                m.getHost() == null ? "" : m.getHost(),
+                m.getGpuCount(),
+                m.getGpuModel() == null ? "" : m.getGpuModel(),
+                m.getExitCode(), m.getWallSeconds(), m.getStatus(),
+                String.join(" ", m.getCommand()));
+    }
+
+    private void write(List<Entry> entries) throws IOException {
+        StringBuilder sb = new StringBuilder(HEADER).append('\n');
+        for (Entry e : entries) {
+            sb.append(clean(e.manifest())).append('\t')
+              .append(e.modifiedMillis()).append('\t')
+              .append(e.startEpochMillis()).append('\t')
+              .append(clean(e.start())).append('\t')
+              .append(clean(e.host())).append('\t')
+              .append(e.gpuCount()).append('\t')
+              .append(clean(e.gpuModel())).append('\t')
+              .append(e.exitCode() == null ? "" : e.exitCode()).append('\t')
+              .append(e.wallSeconds() == null ? "" : e.wallSeconds()).append('\t')
+              .append(clean(e.status())).append('\t')
+              .append(clean(e.command())).append('\n');
+        }
+        Path index = root.resolve(INDEX_FILE);
+        Path tmp = index.resolveSibling(INDEX_FILE + ".tmp");
+        Files.writeString(tmp, sb);
+        Files.move(tmp, index, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static Entry parse(String line) {
+        String[] f = line.split("\t", -1);
+        if (f.length != 11) return null;
+        try {
+            return new Entry(f[0], Long.parseLong(f[1]), Long.parseLong(f[2]), f[3], f[4],
+                    Integer.parseInt(f[5]), f[6],
+                    f[7].isEmpty() ? null : Integer.valueOf(f[7]),
+                    f[8].isEmpty() ? null : Double.valueOf(f[8]),
+                    f[9], f[10]);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static String clean(String value) {
+        return value == null ? "" : value.replace('\t', ' ').replace('\n', ' ').replace('\r', ' ');
+    }
+}
@@ -0,0 +1,78 @@
+package com.github.oogasawa.benchmark.store;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Layout of a columnar run file ({@code basename.run}).
+ * <p>
+ * A run file starts with a fixed header and is followed by a sequence of records, each
+ * framed by a type byte and the length of its payload so that a reader can skip records
+ * it does not need:
+ * <pre>
+ * header  : magic "BNGS-RUN" | int version | long intervalMillis | long startEpochMillis | int reserved
+ * record  : byte type | int payloadLength | payload
+ *
+ * SOURCE  : int sourceId | str name | int nLabels | str label... | int nMetrics | (str name | str unit | byte integral)...
+ * SERIES  : int seriesId | int sourceId | int metric (-1 = timestamps) | int nLabels | str labelValue...
+ * BLOCK   : int seriesId | long firstTick | int count | int n | double min | double max | double sum
+ *           | double[BLOCK_TICKS] values
+ * </pre>
+ * A series is one metric of one entity of a source (e.g. {@code utilization.gpu} of GPU 0).
+ * Its values are stored in fixed-width blocks of {@link #BLOCK_TICKS} consecutive ticks;
+ * slot {@code i} of a block holds tick {@code firstTick + i}, and ticks without a value are
+ * {@code NaN}. The first {@code count} slots are in use, and {@code n}, {@code min}, {@code max}
+ * and {@code sum} summarize their values other than {@code NaN}, so that a query can aggregate
+ * a block without reading its values. Version 1 files have no block statistics. Each source also has a timestamp series whose values are the epoch
+ * milliseconds of its ticks. A series whose entity was idle for a whole block may be
+ * released by the writer and defined again with a new id and the same labels if the
+ * entity comes back; a reader joins the two. Strings are written as an unsigned short length followed by
+ * UTF-8 bytes. All numbers are big-endian.
+ */
+final class RunFileFormat {
+
+    static final byte[] MAGIC = "BNGS-RUN".getBytes(StandardCharsets.US_ASCII);
+    static final int VERSION = 2;
+
+    /** The first version, whose blocks have no statistics. */
+    static final int VERSION_NO_STATS = 1;
+    static final int HEADER_BYTES = 32;
+
+    static final byte SOURCE = 'S';
+    static final byte SERIES = 'E';
+    static final byte BLOCK = 'B';
+
+    /** Record framing: type byte and payload length. */
+    static final int FRAME_BYTES = 5;
+
+    static final int BLOCK_TICKS = 256;
+
+    /** Offset of the statistics in a block payload: seriesId, firstTick and count. */
+    static final int BLOCK_STATS_OFFSET = 4 + 8 + 4;
+    static final int BLOCK_STATS_BYTES = 4 + 8 + 8 + 8;
+    static final int BLOCK_PAYLOAD_BYTES = BLOCK_STATS_OFFSET + BLOCK_STATS_BYTES + BLOCK_TICKS * 8;
+    static final int BLOCK_PAYLOAD_BYTES_NO_STATS = BLOCK_STATS_OFFSET + BLOCK_TICKS * 8;
+
+    /** Metric index of the timestamp series of a source. */
+    static final int TIMESTAMPS = -1;
+
+    private RunFileFormat() {
+    }
+
+    static void putString(ByteBuffer buf, String s) {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        buf.putShort((short) bytes.length);
+        buf.put(bytes);
+    }
+
+    static String getString(ByteBuffer buf) {
+        int length = Short.toUnsignedInt(buf.getShort());
+        byte[] bytes = new byte[length];
+        buf.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    static int stringBytes(String s) {
+        return 2 + s.getBytes(StandardCharsets.UTF_8).length;
+    }
+}
@@ -0,0 +1,349 @@
+package com.github.oogasawa.benchmark.store;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.net.InetAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.yaml.snakeyaml.DumperOptions;
+import org.yaml.snakeyaml.Yaml;
+import org.yaml.snakeyaml.constructor.SafeConstructor;
+
+/**
+ * The description of one {@code benchmark:run}, written next to its outputs as {@code basename.manifest.yaml}.
+ * <p>
+ * The manifest is written when the monitored command has started, with status {@code running},
+ * and rewritten with the end time and exit code when the run ends, so an interrupted run still
+ * has one. {@link RunCatalog} indexes the manifests of a directory tree.
+ *
+ * <p>Example manifest:
+ * <pre>
+ * basename: fq2bam-8gpu
+ * command:
+ * - pbrun
+ * - fq2bam
+ * - ...
+ * working_directory: /data/bench/2025-07-05
+ * host: b200-03
+ * user: alice
+ * start: '2025-07-05T15:01:02.123+09:00'
+ * end: '2025-07-05T16:12:40.518+09:00'
+ * wall_seconds: 4298.395
+ * exit_code: 0
+ * status: finished
+ * interval_millis: 1000
+ * sampler: proc
+ * gpu_count: 8
+ * gpu_model: NVIDIA B200
+ * output_format: text
+ * collectors:
+ * - proc-stat
+ * - nvidia-smi
+ * - ...
+ * options:
+ *   compress: false
+ *   rollup: true
+ *   quantiles: true
+ * </pre>
+ */
+public final class RunManifest {
+
+    /** Suffix of a manifest, appended to the basename of the run. */
+    public static final String SUFFIX = ".manifest.yaml";
+
+    /** Status of a run whose command has not ended. */
+    public static final String RUNNING = "running";
+
+    /** Status of a run whose command has ended, whatever its exit code. */
+    public static final String FINISHED = "finished";
+
+    /** Status of a run that was aborted by an error of the monitor. */
+    public static final String FAILED = "failed";
+
+    private String basename;
+    private List<String> command = List.of();
+    private String workingDirectory;
+    private String host;
+    private String user;
+    private OffsetDateTime start;
+    private OffsetDateTime end;
+    private Integer exitCode;
+    private String status = RUNNING;
+    private long intervalMillis;
+    private String sampler;
+    private int gpuCount;
+    private String gpuModel;
+    private String outputFormat;
+    private final List<String> collectors = new ArrayList<>();
+    private final Map<String, Object> options = new LinkedHashMap<>();
+
+    /**
+     * Creates the manifest of a run that starts now on this host.
+     *
+     * @param basename The basename of the outputs.
+     * @param command  The monitored command and its arguments.
+     * @return the manifest
+     */
+    public static RunManifest start(String basename, List<String> command) {
+        RunManifest m = new RunManifest();
+        m.basename = basename;
+        m.command = List.copyOf(command);
+        m.workingDirectory = Path.of("").toAbsolutePath().toString();
+        m.host = localHostName();
+        m.user = System.getProperty("user.name");
+        m.start = OffsetDateTime.now();
+        return m;
+    }
+
+    /**
+     * Records the end of the monitored command.
+     *
+     * @param exitCode The exit code of the command.
+     */
+    public void finish(int exitCode) {
+        this.end = OffsetDateTime.now();
+        this.exitCode = exitCode;
+        this.status = FINISHED;
+    }
+
+    /**
+     * Records that the monitor stopped because of an error.
+     */
+    public void fail() {
+        this.end = OffsetDateTime.now();
+        this.status = FAILED;
+    }
+
+    /**
+     * Returns the manifest path of a run, e.g. {@code run1.manifest.yaml} for {@code run1}.
+     */
+    public static Path path(String basename) {
+        return Path.of(basename + SUFFIX);
+    }
+
+    /**
+     * Writes the manifest, replacing any previous version atomically.
+     *
+     * @param path The manifest file.
+     * @throws IOException If the file cannot be written.
+     */
+    public void write(Path path) throws IOException {
+        DumperOptions dumper = new DumperOptions();
+        dumper.setDefaultFlowStyle(DumperOptions.FlowStyle.BLOCK);
+        dumper.setWidth(Integer.MAX_VALUE);
+        String yaml = new Yaml(dumper).dump(toMap());
+
+        Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+        Files.writeString(tmp, yaml);
+        Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Reads a manifest.
+     *
+     * @param path The manifest file.
+     * @return the manifest
+     * @throws IOException If the file cannot be read or is not a manifest.
+     */
+    public static RunManifest read(Path path) throws IOException {
+        Object doc;
+        try (Reader in = Files.newBufferedReader(path)) {
+            doc = new Yaml(new SafeConstructor()).load(in);
+        } catch (RuntimeException e) {
+            throw new IOException("Invalid manifest " + path + ": " + e.getMessage(), e);
+        }
+        if (!(doc instanceof Map<?, ?> map)) throw new IOException("Invalid manifest " + path);
+
+        RunManifest m = new RunManifest();
+        m.basename = string(map.get("basename"));
+        if (map.get("command") instanceof List<?> list) {
+            m.command = list.stream().map(String::valueOf).toList();
+        }
+        m.workingDirectory = string(map.get("working_directory"));
+        m.host = string(map.get("host"));
+        m.user = string(map.get("user"));
+        m.start = time(map.get("start"));
+        m.end = time(map.get("end"));
+        m.exitCode = map.get("exit_code") instanceof Number n ? n.intValue() : null;
+        m.status = map.get("status") == null ? RUNNING : string(map.get("status"));
+        m.intervalMillis = map.get("interval_millis") instanceof Number n ? n.longValue() : 0;
+        m.sampler = string(map.get("sampler"));
+        m.gpuCount = map.get("gpu_count") instanceof Number n ? n.intValue() : 0;
+        m.gpuModel = string(map.get("gpu_model"));
+        m.outputFormat = string(map.get("output_format"));
+        if (map.get("collectors") instanceof List<?> list) {
+            list.forEach(c -> m.collectors.add(String.valueOf(c)));
+        }
+        if (map.get("options") instanceof Map<?, ?> opts) {
+            opts.forEach((k, v) -> m.options.put(String.valueOf(k), v));
+        }
+        return m;
+    }
+
+    private Map<String, Object> toMap() {
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("basename", basename);
+        map.put("command", command);
+        map.put("working_directory", workingDirectory);
+        map.put("host", host);
+        map.put("user", user);
+        map.put("start", start == null ? null : start.toString());
+        map.put("end", end == null ? null : end.toString());
+        map.put("wall_seconds", getWallSeconds());
+        map.put("exit_code", exitCode);
+        map.put("status", status);
+        map.put("interval_millis", intervalMillis);
+        map.put("sampler", sampler);
+        map.put("gpu_count", gpuCount);
+        map.put("gpu_model", gpuModel);
+        map.put("output_format", outputFormat);
+        map.put("collectors", collectors);
+        map.put("options", options);
+        return map;
+    }
+
+    private static String string(Object value) {
+        return value == null ? null : String.valueOf(value);
+    }
+
+    private static OffsetDateTime time(Object value) {
+        if (value instanceof Date date) {
+            // an unquoted timestamp in a hand-edited manifest
+            return date.toInstant().atZone(ZoneId.systemDefault()).toOffsetDateTime();
+        }
+        if (value == null) return null;
+        try {
+            return OffsetDateTime.parse(value.toString());
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+
+    private static String localHostName() {
+        try {
+            return InetAddress.getLocalHost().getHostName();
+        } catch (IOException e) {
+            String env = System.getenv("HOSTNAME");
+            return env == null ? "unknown" : env;
+        }
+    }
+
+    /**
+     * Returns the wall time of the run in seconds, or {@code null} if it has not ended.
+     */
+    public Double getWallSeconds() {
+        if (start == null || end == null) return null;
+        return Duration.between(start, end).toMillis() / 1000.0;
+    }
+
+    public String getBasename() {
+        return basename;
+    }
+
+    public List<String> getCommand() {
+        return command;
+    }
+
+    public String getWorkingDirectory() {
+        return workingDirectory;
+    }
+
+    public String getHost() {
+        return host;
+    }
+
+    public String getUser() {
+        return user;
+    }
+
+    public OffsetDateTime getStart() {
+        return start;
+    }
+
+    public OffsetDateTime getEnd() {
+        return end;
+    }
+
+    public Integer getExitCode() {
+        return exitCode;
+    }
+
+    public String getStatus() {
+        return status;
+    }
+
+    public long getIntervalMillis() {
+        return intervalMillis;
+    }
+
+    public void setIntervalMillis(long intervalMillis) {
+        this.intervalMillis = intervalMillis;
+    }
+
+    public String getSampler() {
+        return sampler;
+    }
+
+    public void setSampler(String sampler) {
+        this.sampler = sampler;
+    }
+
+    public int getGpuCount() {
+        return gpuCount;
+    }
+
+    public String getGpuModel() {
+        return gpuModel;
+    }
+
+    /**
+     * Records the GPUs of the host.
+     *
+     * @param gpuCount The number of GPUs.
+     * @param gpuModel The model of the first GPU, or {@code null}.
+     */
+    public void setGpus(int gpuCount, String gpuModel) {
+        this.gpuCount = gpuCount;
+        this.gpuModel = gpuModel;
+    }
+
+    public String getOutputFormat() {
+        return outputFormat;
+    }
+
+    public void setOutputFormat(String outputFormat) {
+        this.outputFormat = outputFormat;
+    }
+
+    public List<String> getCollectors() {
+        return collectors;
+    }
+
+    /**
+     * Records a collector that writes an output of the run, e.g. {@code mpstat} or {@code nvidia-smi}.
+     */
+    public void addCollector(String name) {
+        if (!collectors.contains(name)) collectors.add(name);
+    }
+
+    public Map<String, Object> getOptions() {
+        return options;
+    }
+
+    /**
+     * Records an option of the run, e.g. {@code compress: true}.
+     */
+    public void setOption(String name, Object value) {
+        options.put(name, value);
+    }
+}
@@ -0,0 +1,71 @@
+package com.github.oogasawa.benchmark.store;
+
+/**
+ * The count, sum, minimum and maximum of the values of a series over a range of ticks.
+ * <p>
+ * Statistics of adjacent ranges are combined with {@link #merge(SeriesStats)}, which is how
+ * {@link ColumnarRunReader#aggregate} adds up the statistics stored with each block.
+ * {@code NaN} values are not counted.
+ */
+public final class SeriesStats {
+
+    private long count;
+    private double sum;
+    private double min = Double.NaN;
+    private double max = Double.NaN;
+
+    /**
+     * Adds one value; {@code NaN} is ignored.
+     */
+    public void add(double value) {
+        if (Double.isNaN(value)) return;
+        min = count == 0 ? value : Math.min(min, value);
+        max = count == 0 ? value : Math.max(max, value);
+        sum += value;
+        count++;
+    }
+
+    /**
+     * Adds the values summarized by other statistics.
+     */
+    public void merge(SeriesStats other) {
+        merge(other.count, other.min, other.max, other.sum);
+    }
+
+    void merge(long count, double min, double max, double sum) {
+        if (count == 0) return;
+        this.min = this.count == 0 ? min : Math.min(this.min, min);
+        this.max = this.count == 0 ? max : Math.max(this.max, max);
+        this.sum += sum;
+        this.count += count;
+    }
+
+    public long count() {
+        return count;
+    }
+
+    public double sum() {
+        return sum;
+    }
+
+    /**
+     * Returns the smallest value, or {@code NaN} if there is none.
+     */
+    public double min() {
+        return min;
+    }
+
+    /**
+     * Returns the largest value, or {@code NaN} if there is none.
+     */
+    public double max() {
+        return max;
+    }
+
+    /**
+     * Returns the mean value, or {@code NaN} if there is none.
+     */
+    public double mean() {
+        return count == 0 ? Double.NaN : sum / count;
+    }
+}
@@ -0,0 +1,551 @@
+package com.github.oogasawa.benchmark.store;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Pattern;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import com.github.oogasawa.benchmark.metric.KllSketch;
+import com.github.oogasawa.benchmark.metric.MetricSchema;
+import com.github.oogasawa.benchmark.metric.QuantileRecorder;
+import com.github.oogasawa.benchmark.metric.TextSampleSink;
+import com.github.oogasawa.benchmark.util.TimeWindow;
+import com.github.oogasawa.utility.cli.CommandRepository;
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.Option;
+import org.apache.commons.cli.Options;
+
+/**
+ * Commands that read columnar run files written by {@code benchmark:run --output-format run},
+ * the quantile sketches written by {@code benchmark:run --quantiles},
+ * and the run manifests indexed by {@link RunCatalog}, which {@code benchmark:query} uses to
+ * aggregate metrics over many runs.
+ */
+public class StoreCommands {
+
+    private static final Logger logger = Logger.getLogger(StoreCommands.class.getName());
+
+    /**
+     * The command repository used to register commands.
+     */
+    CommandRepository cmdRepos = null;
+
+    /**
+     * Registers all run file commands in the given command repository.
+     *
+     * @param cmds The command repository to register commands with.
+     */
+    public void setupCommands(CommandRepository cmds) {
+        this.cmdRepos = cmds;
+
+        formatRunCommand();
+        formatQuantilesCommand();
+        catalogCommand();
+        queryCommand();
+    }
+
+
+    public void formatRunCommand() {
+        Options opts = new Options();
+
+        opts.addOption(Option.builder("i")
+                .longOpt("infile")
+                .hasArg(true)
+                .argName("FILE")
+                .desc("The path to the run file.")
+                .required(true)
+                .build());
+
+        opts.addOption(Option.builder("s")
+                .longOpt("source")
+                .hasArg(true)
+                .argName("NAME")
+                .desc("The source to export (e.g. cpu, nvidia-smi). Without this option, the sources are listed.")
+                .required(false)
+                .build());
+
+        opts.addOption(Option.builder("o")
+                .longOpt("outfile")
+                .hasArg(true)
+                .argName("FILE")
+                .desc("The path to the output file with csv format. Default: <basename>.<source>.out")
+                .required(false)
+                .build());
+
+        this.cmdRepos.addCommand("format commands", "format:run", opts,
+                "List the sources of a run file, or export one of them to the CSV format of benchmark:run.",
+                (CommandLine cl) -> {
+                    Path infile = Path.of(cl.getOptionValue("infile"));
+                    if (!ColumnarRunReader.isRunFile(infile)) {
+                        System.err.println("Error: Not a run file: " + infile);
+                        return;
+                    }
+
+                    try (ColumnarRunReader reader = ColumnarRunReader.open(infile)) {
+                        if (!cl.hasOption("source")) {
+                            for (String source : reader.sources()) {
+                                MetricSchema schema = reader.schema(source);
+                                System.out.println(String.format("%s\t%d entities\t%d ticks\t%s", source,
+                                        reader.entities(source).size(), reader.ticks(source).length, schema.header()));
+                            }
+                            return;
+                        }
+
+                        String source = cl.getOptionValue("source");
+                        if (reader.schema(source) == null) {
+                            System.err.println("Error: No source " + source + " in " + infile
+                                    + " (available: " + String.join(", ", reader.sources()) + ")");
+                            return;
+                        }
+                        String outfile = cl.getOptionValue("outfile");
+                        if (outfile == null) {
+                            String baseName = infile.toString();
+                            int dotIndex = baseName.lastIndexOf('.');
+                            outfile = (dotIndex > 0 ? baseName.substring(0, dotIndex) : baseName) + "." + source + ".out";
+                        }
+                        reader.export(source, new TextSampleSink(outfile));
+                    } catch (IOException e) {
+                        logger.log(Level.SEVERE, "Failed to read run file: " + infile, e);
+                    }
+                });
+    }
+
+
+    public void formatQuantilesCommand() {
+        Options opts = new Options();
+
+        opts.addOption(Option.builder("i")
+                .longOpt("infile")
+                .hasArg(true)
+                .argName("FILES")
+                .desc("Comma-separated basename.quantiles files. The sketches of several runs or nodes are merged.")
+                .required(true)
+                .build());
+
+        opts.addOption(Option.builder("s")
+                .longOpt("source")
+                .hasArg(true)
+                .argName("NAME")
+                .desc("Only report this source (e.g. nvidia-smi, proctree).")
+                .required(false)
+                .build());
+
+        opts.addOption(Option.builder("m")
+                .longOpt("metric")
+                .hasArg(true)
+                .argName("NAME")
+                .desc("Only report this metric (e.g. utilization.gpu, rss_kb).")
+                .required(false)
+                .build());
+
+        opts.addOption(Option.builder("p")
+                .longOpt("percentiles")
+                .hasArg(true)
+                .argName("LIST")
+                .desc("Comma-separated percentiles to report. Default: 50,95,99")
+                .required(false)
+                .build());
+
+        opts.addOption(Option.builder("a")
+                .longOpt("all-entities")
+                .hasArg(false)
+                .desc("Merge the entities of each metric (e.g. all GPUs) into one row.")
+                .required(false)
+                .build());
+
+        opts.addOption(Option.builder("o")
+                .longOpt("outfile")
+                .hasArg(true)
+                .argName("FILE")
+                .desc("The path to the output file with csv format. Default: standard output")
+                .required(false)
+                .build());
+
+        this.cmdRepos.addCommand("format commands", "format:quantiles", opts,
+                "Report percentiles of each metric from the quantile sketches of one or more runs.",
+                (CommandLine cl) -> {
+                    List<Double> percentiles = new ArrayList<>();
+                    try {
+                        for (String p : cl.getOptionValue("percentiles", "50,95,99").split(",")) {
+                            double value = Double.parseDouble(p.trim());
+                            if (value < 0 || value > 100) throw new NumberFormatException();
+                            percentiles.add(value);
+                        }
+                    } catch (NumberFormatException e) {
+                        System.err.println("Error: Invalid percentiles: " + cl.getOptionValue("percentiles"));
+                        return;
+                    }
+                    String source = cl.getOptionValue("source");
+                    String metric = cl.getOptionValue("metric");
+                    boolean allEntities = cl.hasOption("all-entities");
+
+                    Map<QuantileRecorder.Key, KllSketch> sketches = new LinkedHashMap<>();
+                    for (String file : cl.getOptionValue("infile").split(",")) {
+                        Path infile = Path.of(file.trim());
+                        try {
+                            for (Map.Entry<QuantileRecorder.Key, KllSketch> e : QuantileRecorder.read(infile).entrySet()) {
+                                QuantileRecorder.Key key = e.getKey();
+                                if (source != null && !key.source().equals(source)) continue;
+                                if (metric != null && !key.metric().equals(metric)) continue;
+                                if (allEntities) key = new QuantileRecorder.Key(key.source(), "*", key.metric());
+                                QuantileRecorder.merge(sketches, Map.of(key, e.getValue()));
+                            }
+                        } catch (IOException e) {
+                            System.err.println("Error: Cannot read " + infile + ": " + e.getMessage());
+                            return;
+                        }
+                    }
+
+                    StringBuilder sb = new StringBuilder("source,entity,metric,count,min");
+                    for (double p : percentiles) {
+                        sb.append(",p").append(BigDecimal.valueOf(p).stripTrailingZeros().toPlainString());
+                    }
+                    sb.append(",max\n");
+                    for (Map.Entry<QuantileRecorder.Key, KllSketch> e : sketches.entrySet()) {
+                        KllSketch sketch = e.getValue();
+                        sb.append(e.getKey().source()).append(',').append(e.getKey().entity()).append(',')
+                          .append(e.getKey().metric()).append(',').append(sketch.count())
+                          .append(',').append(String.format("%.2f", sketch.min()));
+                        for (double p : percentiles) {
+                            sb.append(',').append(String.format("%.2f", sketch.quantile(p / 100.0)));
+                        }
+                        sb.append(',').append(String.format("%.2f", sketch.max())).append('\n');
+                    }
+
+                    if (cl.hasOption("outfile")) {
+                        Path outfile = Path.of(cl.getOptionValue("outfile"));
+                        try {
+                            Files.writeString(outfile, sb);
+                        } catch (IOException e) {
+                            logger.log(Level.SEVERE, "Failed to write " + outfile, e);
+                        }
+                    } else {
+                        System.out.print(sb);
+                    }
+                });
+    }
+
+
+    public void catalogCommand() {
+        Options opts = new Options();
+        addRunSelectionOptions(opts);
+
+        this.cmdRepos.addCommand("benchmark commands", "benchmark:catalog", opts,
+                "Index the run manifests under a directory and list the runs that match the conditions.",
+                (CommandLine cl) -> {
+                    List<RunCatalog.Entry> runs = selectRuns(cl);
+                    if (runs == null) return;
+
+                    System.out.println("start\thost\tgpus\texit_code\twall_seconds\tstatus\tmanifest\tcommand");
+                    for (RunCatalog.Entry e : runs) {
+                        System.out.println(String.join("\t", e.start(), e.host(), String.valueOf(e.gpuCount()),
+                                e.exitCode() == null ? "" : String.valueOf(e.exitCode()),
+                                e.wallSeconds() == null ? "" : String.format("%.1f", e.wallSeconds()),
+                                e.status(), e.manifest(), e.command()));
+                    }
+                });
+    }
+
+
+    public void queryCommand() {
+        Options opts = new Options();
+        addRunSelectionOptions(opts);
+
+        opts.addOption(Option.builder("m")
+                .longOpt("metric")
+                .hasArg(true)
+                .argName("SOURCE:METRIC")
+                .desc("The metric to aggregate (e.g. nvidia-smi:utilization.gpu, proc-tree:rss_kb, proc-diskstats:rkB/s).")
+                .required(true)
+                .build());
+
+        opts.addOption(Option.builder("A")
+                .longOpt("aggregates")
+                .hasArg(true)
+                .argName("LIST")
+                .desc("Comma-separated aggregates: count, sum, mean, min, max, integral (the sum times the sampling "
+                        + "interval in seconds, e.g. kB from kB/s). Default: mean,max")
+                .required(false)
+                .build());
+
+        opts.addOption(Option.builder("a")
+                .longOpt("all-entities")
+                .hasArg(false)
+                .desc("Aggregate the entities of each run (e.g. all GPUs) into one row.")
+                .required(false)
+                .build());
+
+        opts.addOption(Option.builder("f")
+                .longOpt("from")
+                .hasArg(true)
+                .argName("TIME")
+                .desc("Start of the time window within each run (e.g. 10m, \"2025-07-05 15:00:00\"). Default: start of the run")
+                .required(false)
+                .build());
+
+        opts.addOption(Option.builder("t")
+                .longOpt("to")
+                .hasArg(true)
+                .argName("TIME")
+                .desc("End of the time window within each run (e.g. 2h). Default: end of the run")
+                .required(false)
+                .build());
+
+        opts.addOption(Option.builder("T")
+                .longOpt("tsv")
+                .hasArg(false)
+                .desc("Write tab-separated values instead of CSV.")
+                .required(false)
+                .build());
+
+        opts.addOption(Option.builder("o")
+                .longOpt("outfile")
+                .hasArg(true)
+                .argName("FILE")
+                .desc("The path to the output file. Default: standard output")
+                .required(false)
+                .build());
+
+        this.cmdRepos.addCommand("benchmark commands", "benchmark:query", opts,
+                "Aggregate a metric over a time window of the runs in the catalog that were recorded as run files.",
+                (CommandLine cl) -> {
+                    String[] sourceMetric = cl.getOptionValue("metric").split(":", 2);
+                    if (sourceMetric.length != 2 || sourceMetric[0].isEmpty() || sourceMetric[1].isEmpty()) {
+                        System.err.println("Error: Invalid metric: " + cl.getOptionValue("metric")
+                                + " (expected SOURCE:METRIC, e.g. nvidia-smi:utilization.gpu)");
+                        return;
+                    }
+                    String source = sourceMetric[0];
+                    String metric = sourceMetric[1];
+                    List<String> aggregates = new ArrayList<>();
+                    for (String aggregate : cl.getOptionValue("aggregates", "mean,max").split(",")) {
+                        aggregate = aggregate.trim().toLowerCase(Locale.ROOT);
+                        if (!List.of("count", "sum", "mean", "min", "max", "integral").contains(aggregate)) {
+                            System.err.println("Error: Unknown aggregate: " + aggregate);
+                            return;
+                        }
+                        aggregates.add(aggregate);
+                    }
+                    TimeWindow window;
+                    try {
+                        window = TimeWindow.parse(cl.getOptionValue("from"), cl.getOptionValue("to"));
+                    } catch (IllegalArgumentException e) {
+                        System.err.println("Error: " + e.getMessage());
+                        return;
+                    }
+                    List<RunCatalog.Entry> runs = selectRuns(cl);
+                    if (runs == null) return;
+
+                    String sep = cl.hasOption("tsv") ? "\t" : ",";
+                    StringBuilder sb = new StringBuilder(String.join(sep, "manifest", "host", "start", "entity"));
+                    aggregates.forEach(a -> sb.append(sep).append(a));
+                    sb.append('\n');
+
+                    Path dir = Path.of(cl.getOptionValue("dir", "."));
+                    for (RunCatalog.Entry run : runs) {
+                        Path runFile = dir.resolve(run.manifest().substring(0,
+                                run.manifest().length() - RunManifest.SUFFIX.length()) + ".run");
+                        if (!Files.exists(runFile)) {
+                            logger.info("Skipping a run without a run file: " + run.manifest());
+                            continue;
+                        }
+                        try (ColumnarRunReader reader = ColumnarRunReader.open(runFile)) {
+                            Map<List<String>, SeriesStats> stats = reader.aggregate(source, metric, window);
+                            if (cl.hasOption("all-entities") && !stats.isEmpty()) {
+                                SeriesStats all = new SeriesStats();
+                                stats.values().forEach(all::merge);
+                                stats = Map.of(List.of("*"), all);
+                            }
+                            double intervalSeconds = reader.getIntervalMillis() / 1000.0;
+                            for (Map.Entry<List<String>, SeriesStats> e : stats.entrySet()) {
+                                sb.append(String.join(sep, run.manifest(), run.host(), run.start(),
+                                        String.join("/", e.getKey())));
+                                for (String aggregate : aggregates) {
+                                    sb.append(sep).append(format(aggregate, e.getValue(), intervalSeconds));
+                                }
+                                sb.append('\n');
+                            }
+                        } catch (IOException e) {
+                            System.err.println("Error: Cannot read " + runFile + ": " + e.getMessage());
+                        }
+                    }
+
+                    if (cl.hasOption("outfile")) {
+                        Path outfile = Path.of(cl.getOptionValue("outfile"));
+                        try {
+                            Files.writeString(outfile, sb);
+                        } catch (IOException e) {
+                            logger.log(Level.SEVERE, "Failed to write " + outfile, e);
+                        }
+                    } else {
+                        System.out.print(sb);
+                    }
+                });
+    }
+
+    private static String format(String aggregate, SeriesStats stats, double intervalSeconds) {
+        if (aggregate.equals("count")) return String.valueOf(stats.count());
+        if (stats.count() == 0) return "";
+        double value = switch (aggregate) {
+            case "sum" -> stats.sum();
+            case "mean" -> stats.mean();
+            case "min" -> stats.min();
+            case "max" -> stats.max();
+            default -> stats.sum() * intervalSeconds;
+        };
+        return String.format("%.2f", value);
+    }
+
+    /**
+     * Adds the options that select runs from the catalog of a directory.
+     */
+    private static void addRunSelectionOptions(Options opts) {
+        opts.addOption(Option.builder("d")
+                .longOpt("dir")
+                .hasArg(true)
+                .argName("DIR")
+                .desc("The results directory to search for run manifests. Default: .")
+                .required(false)
+                .build());
+
+        opts.addOption(Option.builder("c")
+                .longOpt("command")
+                .hasArg(true)
+                .argName("REGEX")
+                .desc("Only select runs whose command line contains this pattern (e.g. fq2bam).")
+                .required(false)
+                .build());
+
+        opts.addOption(Option.builder("H")
+                .longOpt("host")
+                .hasArg(true)
+                .argName("REGEX")
+                .desc("Only select runs on hosts whose name contains this pattern (e.g. b200-03).")
+                .required(false)
+                .build());
+
+        opts.addOption(Option.builder("s")
+                .longOpt("since")
+                .hasArg(true)
+                .argName("TIME")
+                .desc("Only select runs started at or after this time (e.g. 2025-07-05, \"2025-07-05 15:00:00\").")
+                .required(false)
+                .build());
+
+        opts.addOption(Option.builder("u")
+                .longOpt("until")
+                .hasArg(true)
+                .argName("TIME")
+                .desc("Only select runs started at or before this time (e.g. 2025-07-06).")
+                .required(false)
+                .build());
+
+        opts.addOption(Option.builder("e")
+                .longOpt("exit-code")
+                .hasArg(true)
+                .argName("CODE")
+                .desc("Only select runs whose command exited with this code.")
+                .required(false)
+                .build());
+
+        opts.addOption(Option.builder("g")
+                .longOpt("gpus")
+                .hasArg(true)
+                .argName("N")
+                .desc("Only select runs on hosts with this number of GPUs.")
+                .required(false)
+                .build());
+
+        opts.addOption(Option.builder("w")
+                .longOpt("min-wall")
+                .hasArg(true)
+                .argName("DURATION")
+                .desc("Only select runs that took at least this long (e.g. 30m).")
+                .required(false)
+                .build());
+
+        opts.addOption(Option.builder("W")
+                .longOpt("max-wall")
+                .hasArg(true)
+                .argName("DURATION")
+                .desc("Only select runs that took at most this long (e.g. 2h).")
+                .required(false)
+                .build());
+
+        opts.addOption(Option.builder("S")
+                .longOpt("status")
+                .hasArg(true)
+                .argName("STATUS")
+                .desc("Only select runs with this status: running, finished or failed.")
+                .required(false)
+                .build());
+
+        opts.addOption(Option.builder("l")
+                .longOpt("last")
+                .hasArg(true)
+                .argName("N")
+                .desc("Only select the N most recent matching runs.")
+                .required(false)
+                .build());
+    }
+
+    /**
+     * Updates the catalog of the directory and returns the runs selected by the options of
+     * {@link #addRunSelectionOptions(Options)}, oldest first.
+     *
+     * @return the runs, or {@code null} after printing an error
+     */
+    private static List<RunCatalog.Entry> selectRuns(CommandLine cl) {
+        Path dir = Path.of(cl.getOptionValue("dir", "."));
+        if (!Files.isDirectory(dir)) {
+            System.err.println("Error: Not a directory: " + dir);
+            return null;
+        }
+
+        RunCatalog.Query query;
+        int last;
+        try {
+            TimeWindow started = TimeWindow.parse(cl.getOptionValue("since"), cl.getOptionValue("until"));
+            if (started.isRelative()) {
+                System.err.println("Error: --since and --until must be dates or times, not durations.");
+                return null;
+            }
+            query = new RunCatalog.Query(
+                    pattern(cl.getOptionValue("command")),
+                    pattern(cl.getOptionValue("host")),
+                    started.isAll() ? null : started,
+                    cl.hasOption("exit-code") ? Integer.valueOf(cl.getOptionValue("exit-code")) : null,
+                    cl.hasOption("gpus") ? Integer.valueOf(cl.getOptionValue("gpus")) : null,
+                    cl.getOptionValue("status"),
+                    seconds(cl.getOptionValue("min-wall")),
+                    seconds(cl.getOptionValue("max-wall")));
+            last = Integer.parseInt(cl.getOptionValue("last", "0"));
+        } catch (IllegalArgumentException e) {
+            // NumberFormatException and PatternSyntaxException are IllegalArgumentExceptions
+            System.err.println("Error: " + e.getMessage());
+            return null;
+        }
+
+        try {
+            return RunCatalog.select(RunCatalog.open(dir).update(), query, last);
+        } catch (IOException e) {
+            logger.log(Level.SEVERE, "Failed to index " + dir, e);
+            return null;
+        }
+    }
+
+    private static Pattern pattern(String regex) {
+        return regex == null ? null : Pattern.compile(regex);
+    }
+
+    private static Double seconds(String duration) {
+        return duration == null ? null : TimeWindow.parseDurationMillis(duration) / 1000.0;
+    }
+}
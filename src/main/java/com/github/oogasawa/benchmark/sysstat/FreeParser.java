@@ -0,0 +1,107 @@
+package com.github.oogasawa.benchmark.sysstat;
+
+import java.io.IOException;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+import com.github.oogasawa.benchmark.metric.MetricSchema;
+import com.github.oogasawa.benchmark.metric.TextSampleSink;
+import com.github.oogasawa.benchmark.util.TimestampParser;
+
+/**
+ * Parses a {@code basename.free.out}, one row per memory type ({@code Mem}, {@code Swap}) and report.
+ * <p>
+ * Older runs recorded the raw output of {@code free -m} once per interval, which is placed
+ * {@code n} intervals after the start; current runs write the CSV of
+ * {@link com.github.oogasawa.benchmark.FreeMemorySource}, whose timestamps are kept. Both give
+ * the same table.
+ *
+ * <p>Example input and output:
+ * <pre>
+ *                total        used        free      shared  buff/cache   available
+ * Mem:          515584       21033      294193          64      200357      486539
+ * Swap:           8191           0        8191
+ *
+ * tick,timestamp,type,total [MiB],used [MiB],free [MiB],shared [MiB],buff/cache [MiB],available [MiB]
+ * 1,2025/07/05 15:01:02.123,Mem,515584,21033,294193,64,200357,486539
+ * 1,2025/07/05 15:01:02.123,Swap,8191,0,8191,,,
+ * </pre>
+ */
+public class FreeParser extends SysstatParser {
+
+    private boolean csv = false;
+    private int numMetrics;
+    private long reports = 0;
+    private String current;
+    private final TimestampParser timestampParser = new TimestampParser(TextSampleSink.TIMESTAMP_PATTERN);
+
+    @Override
+    public String getTool() {
+        return "free";
+    }
+
+    @Override
+    protected void line(String line) throws IOException {
+        if (line.startsWith("tick,timestamp,")) {
+            csvHeader(line);
+            return;
+        }
+        if (csv) {
+            csvRow(line);
+            return;
+        }
+
+        String[] tokens = tokens(line);
+        if (tokens.length == 0) return;
+        if (tokens[0].equals("total")) {
+            if (!isOpen()) {
+                List<MetricSchema.Metric> metrics = new ArrayList<>();
+                for (String name : tokens) {
+                    metrics.add(MetricSchema.integral(name, "MiB"));
+                }
+                numMetrics = metrics.size();
+                open(new MetricSchema(getTool(), List.of("type"), metrics));
+            }
+            beginTick(reportMillis(reports++));
+        } else if (inTick() && tokens[0].endsWith(":")) {
+            int row = addRow(tokens[0].substring(0, tokens[0].length() - 1));
+            for (int m = 0; m < numMetrics; m++) {
+                setValue(row, m, m + 1 < tokens.length ? number(tokens[m + 1]) : Double.NaN);
+            }
+        }
+    }
+
+    private void csvHeader(String line) throws IOException {
+        csv = true;
+        if (isOpen()) return;
+        String[] columns = line.split(",");
+        List<MetricSchema.Metric> metrics = new ArrayList<>();
+        for (int c = 3; c < columns.length; c++) {
+            String name = columns[c].trim();
+            int unit = name.indexOf(" [");
+            metrics.add(unit < 0 ? MetricSchema.integral(name, "")
+                    : MetricSchema.integral(name.substring(0, unit), name.substring(unit + 2, name.length() - 1)));
+        }
+        numMetrics = metrics.size();
+        open(new MetricSchema(getTool(), List.of(columns[2].trim()), metrics));
+    }
+
+    private void csvRow(String line) throws IOException {
+        String[] fields = line.split(",", -1);
+        if (fields.length != 3 + numMetrics) return;
+        if (!inTick() || !fields[0].equals(current)) {
+            long millis;
+            try {
+                millis = timestampParser.parseEpochMillis(fields[1]);
+            } catch (DateTimeParseException e) {
+                return;
+            }
+            beginTick(millis);
+            current = fields[0];
+        }
+        int row = addRow(fields[2]);
+        for (int m = 0; m < numMetrics; m++) {
+            setValue(row, m, fields[3 + m].isEmpty() ? Double.NaN : number(fields[3 + m]));
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package com.github.oogasawa.benchmark.sysstat;
+
+import java.io.IOException;
+import java.util.List;
+import com.github.oogasawa.benchmark.metric.MetricSchema;
+
+/**
+ * Parses the output of {@code ifstat INTERVAL}, one row per interface and report.
+ *
+ * <p>Example input and output:
+ * <pre>
+ *        eth0                lo
+ *  KB/s in  KB/s out   KB/s in  KB/s out
+ *    12.50      3.25      0.00      0.00
+ *
+ * tick,timestamp,interface,in [KB/s],out [KB/s]
+ * 1,2025/07/05 15:01:03.123,eth0,12.50,3.25
+ * 1,2025/07/05 15:01:03.123,lo,0.00,0.00
+ * </pre>
+ * {@code ifstat} prints no time, so the {@code n}-th report is placed {@code n} intervals after
+ * the start. The interface names are taken from the line above each {@code KB/s} header, which
+ * {@code ifstat} repeats from time to time; unavailable values ({@code n/a}) are left empty.
+ */
+public class IfstatParser extends SysstatParser {
+
+    private static final MetricSchema SCHEMA = new MetricSchema("ifstat", List.of("interface"),
+            List.of(MetricSchema.decimal("in", "KB/s"), MetricSchema.decimal("out", "KB/s")));
+
+    private String previous;
+    private String[] interfaces;
+    private long reports = 0;
+
+    @Override
+    public String getTool() {
+        return "ifstat";
+    }
+
+    @Override
+    protected void line(String line) throws IOException {
+        String[] tokens = tokens(line);
+        if (line.contains("KB/s")) {
+            interfaces = previous == null ? null : tokens(previous);
+            if (interfaces != null) open(SCHEMA);
+        } else if (interfaces != null && tokens.length == 2 * interfaces.length && numeric(tokens)) {
+            beginTick(reportMillis(++reports));
+            for (int i = 0; i < interfaces.length; i++) {
+                int row = addRow(interfaces[i]);
+                setValue(row, 0, number(tokens[2 * i]));
+                setValue(row, 1, number(tokens[2 * i + 1]));
+            }
+            endTick();
+        }
+        previous = line;
+    }
+
+    private static boolean numeric(String[] tokens) {
+        for (String token : tokens) {
+            if (Double.isNaN(number(token)) && !token.equals("n/a")) return false;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,77 @@
+package com.github.oogasawa.benchmark.sysstat;
+
+import java.io.IOException;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+import com.github.oogasawa.benchmark.metric.MetricSchema;
+
+/**
+ * Parses the device reports of {@code iostat -xz INTERVAL}, one row per device and report.
+ *
+ * <p>Example input and output:
+ * <pre>
+ * avg-cpu:  %user   %nice %system %iowait  %steal   %idle
+ *            0.52    0.00    0.27    0.02    0.00   99.19
+ *
+ * Device            r/s     rkB/s   rrqm/s  %rrqm r_await rareq-sz     w/s     wkB/s ...  %util
+ * nvme0n1         12.00   1536.00     0.00   0.00    0.25   128.00    3.00     48.00 ...   0.80
+ *
+ * tick,timestamp,device,r/s,rkB/s,rrqm/s,%rrqm,r_await,rareq-sz,w/s,wkB/s,...,%util
+ * 1,2025/07/05 15:01:03.123,nvme0n1,12.00,1536.00,0.00,0.00,0.25,128.00,3.00,48.00,...,0.80
+ * </pre>
+ * The first report, which {@code iostat} computes over the time since boot, is skipped, and so
+ * are the {@code avg-cpu} lines, which {@code mpstat} records per CPU. Reports are timestamped by
+ * the {@code iostat -t} time lines if there are any, and otherwise by their position after the start.
+ */
+public class IostatParser extends SysstatParser {
+
+    private int numMetrics;
+    private long reports = 0;
+    private boolean inDevices = false;
+    private long stampMillis = -1;
+
+    @Override
+    public String getTool() {
+        return "iostat";
+    }
+
+    @Override
+    protected void line(String line) throws IOException {
+        String[] tokens = tokens(line);
+        if (tokens.length == 0) {
+            inDevices = false;
+            return;
+        }
+        if (tokens[0].equals("Device") || tokens[0].equals("Device:")) {
+            if (!isOpen()) {
+                List<MetricSchema.Metric> metrics = new ArrayList<>();
+                for (int i = 1; i < tokens.length; i++) {
+                    metrics.add(MetricSchema.decimal(tokens[i], ""));
+                }
+                numMetrics = metrics.size();
+                open(new MetricSchema(getTool(), List.of("device"), metrics));
+            }
+            endTick();
+            inDevices = reports++ > 0;
+            if (inDevices) beginTick(stampMillis >= 0 ? stampMillis : reportMillis(reports - 1));
+            stampMillis = -1;
+            return;
+        }
+        if (inDevices) {
+            if (tokens.length != 1 + numMetrics) return;
+            int row = addRow(tokens[0]);
+            for (int m = 0; m < numMetrics; m++) {
+                setValue(row, m, number(tokens[1 + m]));
+            }
+            return;
+        }
+        // the time line of iostat -t, e.g. "07/05/2025 03:01:03 PM"
+        LocalDate date = parseDate(tokens[0]);
+        LocalTime clock = date == null ? null : parseClock(tokens, 1);
+        if (clock != null) {
+            stampMillis = clockMillis(date, clock);
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package com.github.oogasawa.benchmark.sysstat;
+
+import java.io.IOException;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+import com.github.oogasawa.benchmark.metric.MetricSchema;
+
+/**
+ * Parses the output of {@code mpstat -P ALL INTERVAL}, one row per CPU and report.
+ *
+ * <p>Example input and output:
+ * <pre>
+ * 03:01:02 PM  CPU    %usr   %nice    %sys %iowait    %irq   %soft  %steal  %guest  %gnice   %idle
+ * 03:01:03 PM  all    1.00    0.00    0.50    0.00    0.00    0.00    0.00    0.00    0.00   98.50
+ * 03:01:03 PM    0    2.00    0.00    1.00    0.00    0.00    0.00    0.00    0.00    0.00   97.00
+ *
+ * tick,timestamp,cpu,%usr,%nice,%sys,%iowait,%irq,%soft,%steal,%guest,%gnice,%idle
+ * 1,2025/07/05 15:01:03.000,all,1.00,0.00,0.50,0.00,0.00,0.00,0.00,0.00,0.00,98.50
+ * 1,2025/07/05 15:01:03.000,0,2.00,0.00,1.00,0.00,0.00,0.00,0.00,0.00,0.00,97.00
+ * </pre>
+ * The {@code Average:} lines at the end are skipped.
+ */
+public class MpstatParser extends SysstatParser {
+
+    private int numMetrics;
+    private LocalTime current;
+
+    @Override
+    public String getTool() {
+        return "mpstat";
+    }
+
+    @Override
+    protected void line(String line) throws IOException {
+        String[] tokens = tokens(line);
+        if (tokens.length < 3 || tokens[0].startsWith("Average")) return;
+        LocalTime clock = parseClock(tokens, 0);
+        if (clock == null) return;
+        int cpu = isMeridiem(tokens[1]) ? 2 : 1;
+
+        if (tokens[cpu].equals("CPU")) {
+            if (!isOpen()) {
+                List<MetricSchema.Metric> metrics = new ArrayList<>();
+                for (int i = cpu + 1; i < tokens.length; i++) {
+                    metrics.add(MetricSchema.decimal(tokens[i], ""));
+                }
+                numMetrics = metrics.size();
+                open(new MetricSchema(getTool(), List.of("cpu"), metrics));
+            }
+            return;
+        }
+        if (!isOpen() || tokens.length != cpu + 1 + numMetrics) return;
+
+        if (!inTick() || !clock.equals(current)) {
+            beginTick(clockMillis(clock));
+            current = clock;
+        }
+        int row = addRow(tokens[cpu]);
+        for (int m = 0; m < numMetrics; m++) {
+            setValue(row, m, number(tokens[cpu + 1 + m]));
+        }
+    }
+}
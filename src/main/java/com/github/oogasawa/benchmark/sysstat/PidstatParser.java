@@ -0,0 +1,102 @@
+package com.github.oogasawa.benchmark.sysstat;
+
+import java.io.IOException;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import com.github.oogasawa.benchmark.metric.MetricSchema;
+
+/**
+ * Parses the output of {@code pidstat -urdh -t}, one row per task and report.
+ *
+ * <p>Example input and output:
+ * <pre>
+ * #      Time   UID      TGID       TID    %usr %system  %guest   %wait    %CPU   CPU  minflt/s ...  Command
+ *  1751695263     0     12345         -   98.00    2.00    0.00    0.00  100.00     3      0.00 ...  pbrun
+ *  1751695263     0         -     12346   98.00    2.00    0.00    0.00  100.00     3      0.00 ...  |__pbrun
+ *
+ * tick,timestamp,UID,TGID,TID,Command,%usr,%system,%guest,%wait,%CPU,CPU,minflt/s,...
+ * 1,2025/07/05 15:01:03.000,0,12345,-,pbrun,98.00,2.00,0.00,0.00,100.00,3.00,0.00,...
+ * 1,2025/07/05 15:01:03.000,0,-,12346,|__pbrun,98.00,2.00,0.00,0.00,100.00,3.00,0.00,...
+ * </pre>
+ * The {@code Time} column is in epoch seconds with {@code -h}, and a clock time otherwise. The
+ * output of the monitored command, which {@code benchmark:run} writes into the same file, is skipped.
+ */
+public class PidstatParser extends SysstatParser {
+
+    private static final List<String> LABELS = List.of("UID", "TGID", "TID", "Command");
+
+    /** The column of each metric in the header, after the time. */
+    private int[] metricColumns;
+    /** The column of each label in the header, after the time, or {@code -1}. */
+    private int[] labelColumns;
+    private int numColumns;
+    private String current;
+
+    @Override
+    public String getTool() {
+        return "pidstat";
+    }
+
+    @Override
+    protected void line(String line) throws IOException {
+        String[] tokens = tokens(line);
+        if (tokens.length == 0) return;
+        if (tokens[0].equals("#")) {
+            if (!isOpen()) header(tokens);
+            return;
+        }
+        if (!isOpen()) return;
+
+        // The time is one token (epoch seconds or 15:01:03) or two (03:01:03 PM).
+        int first = tokens.length > 1 && isMeridiem(tokens[1]) ? 2 : 1;
+        if (tokens.length < first + numColumns) return;
+        if (!inTick() || !tokens[0].equals(current)) {
+            LocalTime clock = parseClock(tokens, 0);
+            double seconds = number(tokens[0]);
+            if (clock == null && Double.isNaN(seconds)) return;
+            beginTick(clock != null ? clockMillis(clock) : (long) (seconds * 1000));
+            current = tokens[0];
+        }
+
+        // The command is the last column and may contain spaces.
+        String[] labelValues = new String[LABELS.size()];
+        for (int l = 0; l < labelValues.length; l++) {
+            int column = labelColumns[l];
+            if (column < 0) {
+                labelValues[l] = "";
+            } else if (column == numColumns - 1) {
+                labelValues[l] = String.join(" ", List.of(tokens).subList(first + column, tokens.length));
+            } else {
+                labelValues[l] = tokens[first + column];
+            }
+        }
+        int row = addRow(labelValues);
+        for (int m = 0; m < metricColumns.length; m++) {
+            setValue(row, m, number(tokens[first + metricColumns[m]]));
+        }
+    }
+
+    private void header(String[] tokens) throws IOException {
+        // "#", "Time", then the columns that follow the time in the rows
+        int offset = 2;
+        numColumns = tokens.length - offset;
+        labelColumns = new int[LABELS.size()];
+        List<Integer> metrics = new ArrayList<>();
+        List<MetricSchema.Metric> schemaMetrics = new ArrayList<>();
+        Arrays.fill(labelColumns, -1);
+        for (int c = 0; c < numColumns; c++) {
+            String name = tokens[offset + c];
+            int label = LABELS.indexOf(name);
+            if (label >= 0) {
+                labelColumns[label] = c;
+            } else {
+                metrics.add(c);
+                schemaMetrics.add(MetricSchema.decimal(name, ""));
+            }
+        }
+        metricColumns = metrics.stream().mapToInt(Integer::intValue).toArray();
+        open(new MetricSchema(getTool(), LABELS, schemaMetrics));
+    }
+}
@@ -0,0 +1,165 @@
+package com.github.oogasawa.benchmark.sysstat;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Logger;
+import com.github.oogasawa.benchmark.metric.SampleSink;
+import com.github.oogasawa.benchmark.metric.TextSampleSink;
+import com.github.oogasawa.benchmark.metric.WideCsvSink;
+import com.github.oogasawa.benchmark.store.ColumnarRunWriter;
+import com.github.oogasawa.benchmark.util.OutputFiles;
+import com.github.oogasawa.utility.cli.CommandRepository;
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.Option;
+import org.apache.commons.cli.Options;
+
+/**
+ * Commands that convert the outputs of the sysstat-style tools recorded by
+ * {@code benchmark:run --sampler sysstat} into tables.
+ */
+public class SysstatCommands {
+
+    private static final Logger logger = Logger.getLogger(SysstatCommands.class.getName());
+
+    /**
+     * The command repository used to register commands.
+     */
+    CommandRepository cmdRepos = null;
+
+    /**
+     * Registers all sysstat commands in the given command repository.
+     *
+     * @param cmds The command repository to register commands with.
+     */
+    public void setupCommands(CommandRepository cmds) {
+        this.cmdRepos = cmds;
+
+        formatSysstatCommand();
+    }
+
+
+    public void formatSysstatCommand() {
+        Options opts = new Options();
+
+        opts.addOption(Option.builder("i")
+                .longOpt("infile")
+                .hasArg(true)
+                .argName("FILES")
+                .desc("Comma-separated outputs of mpstat, iostat, ifstat, pidstat or free "
+                        + "(e.g. run1.mpstat.out,run1.iostat.out.gz).")
+                .required(true)
+                .build());
+
+        opts.addOption(Option.builder("T")
+                .longOpt("tool")
+                .hasArg(true)
+                .argName("TOOL")
+                .desc("The tool that wrote the inputs: " + String.join(", ", SysstatParser.TOOLS)
+                        + ". Default: taken from the file names")
+                .required(false)
+                .build());
+
+        opts.addOption(Option.builder("m")
+                .longOpt("metric")
+                .hasArg(true)
+                .argName("NAME")
+                .desc("Write one metric as a wide CSV file with a column per entity (e.g. %usr, %util, in, %CPU, used).")
+                .required(false)
+                .build());
+
+        opts.addOption(Option.builder("r")
+                .longOpt("run")
+                .hasArg(false)
+                .desc("Write all inputs into one columnar run file, which format:run and benchmark:query read.")
+                .required(false)
+                .build());
+
+        opts.addOption(Option.builder("o")
+                .longOpt("outfile")
+                .hasArg(true)
+                .argName("FILE")
+                .desc("The path to the output file. Default: <input>.csv, or <basename>.run with --run")
+                .required(false)
+                .build());
+
+        this.cmdRepos.addCommand("format commands", "format:sysstat", opts,
+                "Convert mpstat, iostat, ifstat, pidstat or free outputs into CSV files or a run file.",
+                (CommandLine cl) -> {
+                    List<Path> infiles = new ArrayList<>();
+                    List<SysstatParser> parsers = new ArrayList<>();
+                    for (String file : cl.getOptionValue("infile").split(",")) {
+                        Path infile = Path.of(file.trim());
+                        SysstatParser parser;
+                        try {
+                            parser = cl.hasOption("tool") ? SysstatParser.forTool(cl.getOptionValue("tool"))
+                                    : SysstatParser.forFile(infile);
+                        } catch (IllegalArgumentException e) {
+                            System.err.println("Error: " + e.getMessage());
+                            return;
+                        }
+                        if (parser == null) {
+                            System.err.println("Error: Cannot tell the tool of " + infile + "; use --tool.");
+                            return;
+                        }
+                        infiles.add(infile);
+                        parsers.add(parser);
+                    }
+                    if (!cl.hasOption("run") && infiles.size() > 1 && (cl.hasOption("outfile") || cl.hasOption("metric"))) {
+                        System.err.println("Error: --outfile and --metric take a single input file.");
+                        return;
+                    }
+
+                    if (cl.hasOption("run")) {
+                        Path outfile = cl.hasOption("outfile") ? Path.of(cl.getOptionValue("outfile"))
+                                : infiles.get(0).resolveSibling(basename(infiles.get(0), parsers.get(0)) + ".run");
+                        try (ColumnarRunWriter run = new ColumnarRunWriter(outfile, 1000)) {
+                            for (int i = 0; i < infiles.size(); i++) {
+                                long reports = parsers.get(i).parse(infiles.get(i), run.newSink());
+                                logger.info(String.format("%s: %d reports", infiles.get(i), reports));
+                            }
+                            SysstatParser first = parsers.get(0);
+                            if (first.getStartEpochMillis() >= 0) {
+                                run.setHeader(first.getIntervalMillis(), first.getStartEpochMillis());
+                            }
+                        } catch (IOException e) {
+                            System.err.println("Error: " + e.getMessage());
+                        }
+                        return;
+                    }
+
+                    for (int i = 0; i < infiles.size(); i++) {
+                        Path infile = infiles.get(i);
+                        String outfile = cl.hasOption("outfile") ? cl.getOptionValue("outfile")
+                                : infile.resolveSibling(csvName(infile)).toString();
+                        SampleSink sink = cl.hasOption("metric") ? new WideCsvSink(outfile, cl.getOptionValue("metric"))
+                                : new TextSampleSink(outfile);
+                        try {
+                            long reports = parsers.get(i).parse(infile, sink);
+                            logger.info(String.format("%s: %d reports written to %s", infile, reports, outfile));
+                        } catch (IOException e) {
+                            System.err.println("Error: Cannot convert " + infile + ": " + e.getMessage());
+                        }
+                    }
+                });
+    }
+
+    /**
+     * Returns the name of a CSV file next to an input, e.g. {@code run1.mpstat.csv} for {@code run1.mpstat.out.gz}.
+     */
+    private static String csvName(Path infile) {
+        String name = OutputFiles.stripGzipSuffix(infile.getFileName().toString());
+        int dotIndex = name.lastIndexOf('.');
+        return (dotIndex > 0 ? name.substring(0, dotIndex) : name) + ".csv";
+    }
+
+    /**
+     * Returns the basename of the run of an input, e.g. {@code run1} for {@code run1.mpstat.out}.
+     */
+    private static String basename(Path infile, SysstatParser parser) {
+        String name = OutputFiles.stripGzipSuffix(infile.getFileName().toString());
+        String suffix = "." + parser.getTool() + ".out";
+        return name.endsWith(suffix) ? name.substring(0, name.length() - suffix.length()) : csvName(infile).replace(".csv", "");
+    }
+}
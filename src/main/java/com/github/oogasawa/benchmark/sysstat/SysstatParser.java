@@ -0,0 +1,352 @@
+package com.github.oogasawa.benchmark.sysstat;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import com.github.oogasawa.benchmark.SamplingInterval;
+import com.github.oogasawa.benchmark.metric.MetricSchema;
+import com.github.oogasawa.benchmark.metric.SampleBuffer;
+import com.github.oogasawa.benchmark.metric.SampleSink;
+import com.github.oogasawa.benchmark.util.OutputFiles;
+
+/**
+ * Reads the output of a sysstat-style tool recorded by {@code benchmark:run --sampler sysstat}
+ * ({@code basename.mpstat.out}, {@code .iostat.out}, {@code .ifstat.out}, {@code .pidstat.out},
+ * {@code .free.out}) and feeds it to a {@link SampleSink} one report at a time, as if the report
+ * had been sampled by an in-process source.
+ * <p>
+ * The file is read line by line in one pass and only the current report is held in memory, so a
+ * file of any size can be turned into a CSV file in the layout of {@code benchmark:run}, a
+ * columnar run file, or a wide table of one metric. The columns of the schema are taken from the
+ * header of the tool, so the parsers follow the columns of the sysstat version that wrote the file.
+ * <p>
+ * Reports are timestamped with the clock time printed by the tool where there is one. Otherwise
+ * the {@code n}-th report is placed {@code n} intervals after the start recorded in the first line
+ * of the file:
+ * <pre>
+ * [iostat] Monitoring started at 2025-07-05T15:01:02.123456, interval: 1 seconds
+ * </pre>
+ * Lines that belong to no report, such as the output of the monitored command mixed into the
+ * {@code pidstat} output, are skipped.
+ *
+ * <p>Example usage:
+ * <pre>{@code
+ *     SysstatParser parser = SysstatParser.forFile(Path.of("run1.mpstat.out"));
+ *     parser.parse(Path.of("run1.mpstat.out"), new TextSampleSink("run1.mpstat.csv"));
+ * }</pre>
+ */
+public abstract class SysstatParser {
+
+    /** The tools with a parser, which are also the infixes of their output files. */
+    public static final List<String> TOOLS = List.of("mpstat", "iostat", "ifstat", "pidstat", "free");
+
+    private static final Pattern BANNER = Pattern.compile("^\\[(\\S+)\\] Monitoring started at (\\S+), interval: (.+)$");
+    private static final Pattern SYSTEM_LINE = Pattern.compile("^Linux\\s.*?\\s(\\d{2}/\\d{2}/\\d{2,4}|\\d{4}-\\d{2}-\\d{2})\\s");
+    private static final DateTimeFormatter CLOCK_12H = DateTimeFormatter.ofPattern("hh:mm:ss a", Locale.US);
+    private static final DateTimeFormatter[] DATES = {
+        DateTimeFormatter.ofPattern("MM/dd/yyyy"),
+        DateTimeFormatter.ofPattern("MM/dd/yy"),
+        DateTimeFormatter.ISO_LOCAL_DATE,
+    };
+
+    private SampleSink sink;
+    private SampleBuffer buffer;
+    private long tick = 0;
+    private boolean inTick = false;
+    private long startEpochMillis = -1;
+    private long intervalMillis = 1000;
+    private LocalDate date;
+    private LocalTime lastClock;
+    private final Map<String, String> labels = new HashMap<>();
+
+    /**
+     * Returns the parser of an output file, chosen by its name (e.g. {@code run1.iostat.out.gz}).
+     *
+     * @param file The output file.
+     * @return a new parser, or {@code null} if the name has no known tool
+     */
+    public static SysstatParser forFile(Path file) {
+        String name = OutputFiles.stripGzipSuffix(file.getFileName().toString());
+        for (String tool : TOOLS) {
+            if (name.endsWith("." + tool + ".out")) return forTool(tool);
+        }
+        return null;
+    }
+
+    /**
+     * Returns the parser of a tool.
+     *
+     * @param tool One of {@link #TOOLS}.
+     * @return a new parser
+     * @throws IllegalArgumentException If the tool has no parser.
+     */
+    public static SysstatParser forTool(String tool) {
+        return switch (tool) {
+            case "mpstat" -> new MpstatParser();
+            case "iostat" -> new IostatParser();
+            case "ifstat" -> new IfstatParser();
+            case "pidstat" -> new PidstatParser();
+            case "free" -> new FreeParser();
+            default -> throw new IllegalArgumentException("Unknown tool: " + tool + " (expected one of " + TOOLS + ")");
+        };
+    }
+
+    /**
+     * Returns the name of the tool, which is also the source name of the schema.
+     */
+    public abstract String getTool();
+
+    /**
+     * Parses an output file, which may be gzip-compressed, into a sink and closes the sink.
+     *
+     * @param file The output file.
+     * @param sink The destination of the reports.
+     * @return the number of reports
+     * @throws IOException If the file cannot be read, has no report, or the sink fails.
+     */
+    public long parse(Path file, SampleSink sink) throws IOException {
+        try (BufferedReader in = OutputFiles.newBufferedReader(file)) {
+            return parse(in, sink);
+        }
+    }
+
+    /**
+     * Parses an output into a sink and closes the sink.
+     *
+     * @param in   The output.
+     * @param sink The destination of the reports.
+     * @return the number of reports
+     * @throws IOException If the output cannot be read, has no report, or the sink fails.
+     */
+    public long parse(BufferedReader in, SampleSink sink) throws IOException {
+        this.sink = sink;
+        try {
+            String line;
+            boolean first = true;
+            while ((line = in.readLine()) != null) {
+                if (first && banner(line)) {
+                    first = false;
+                    continue;
+                }
+                first = false;
+                Matcher system = SYSTEM_LINE.matcher(line);
+                if (system.find()) {
+                    LocalDate parsed = parseDate(system.group(1));
+                    if (parsed != null) date = parsed;
+                    continue;
+                }
+                line(line);
+            }
+            endTick();
+        } finally {
+            if (buffer != null) sink.close();
+        }
+        if (buffer == null) throw new IOException("No " + getTool() + " report found");
+        return tick;
+    }
+
+    /**
+     * Returns the start of the recording given in the first line, or {@code -1} if there is none.
+     */
+    public long getStartEpochMillis() {
+        return startEpochMillis;
+    }
+
+    /**
+     * Returns the sampling interval given in the first line, or one second if there is none.
+     */
+    public long getIntervalMillis() {
+        return intervalMillis;
+    }
+
+    /**
+     * Handles one line of the output other than the first line and the {@code Linux ...} line.
+     *
+     * @param line The line.
+     * @throws IOException If the sink fails.
+     */
+    protected abstract void line(String line) throws IOException;
+
+    /**
+     * Opens the sink with the schema found in the header of the tool. Later calls are ignored.
+     */
+    protected void open(MetricSchema schema) throws IOException {
+        if (buffer != null) return;
+        buffer = new SampleBuffer(schema);
+        sink.open(schema);
+    }
+
+    /**
+     * Returns {@code true} once the schema is known.
+     */
+    protected boolean isOpen() {
+        return buffer != null;
+    }
+
+    /**
+     * Writes the report being gathered, if any, and starts the next one.
+     *
+     * @param epochMillis The time of the new report.
+     */
+    protected void beginTick(long epochMillis) throws IOException {
+        endTick();
+        buffer.reset(++tick, epochMillis);
+        inTick = true;
+    }
+
+    /**
+     * Writes the report being gathered, if any.
+     */
+    protected void endTick() throws IOException {
+        if (inTick) {
+            sink.write(buffer);
+            inTick = false;
+        }
+    }
+
+    /**
+     * Returns {@code true} while a report is being gathered.
+     */
+    protected boolean inTick() {
+        return inTick;
+    }
+
+    /**
+     * Adds a row to the report being gathered.
+     *
+     * @param labelValues The label values of the row, in the order of the schema.
+     * @return the row index, for {@link #setValue(int, int, double)}
+     */
+    protected int addRow(String... labelValues) {
+        int row = buffer.addRow();
+        for (int l = 0; l < labelValues.length; l++) {
+            // Reuse one string per entity, so that sinks recognize a stable entity by identity.
+            buffer.setLabel(row, l, labels.computeIfAbsent(labelValues[l], v -> v));
+        }
+        return row;
+    }
+
+    protected void setValue(int row, int metric, double value) {
+        buffer.setValue(row, metric, value);
+    }
+
+    /**
+     * Returns the time of the {@code n}-th report of a tool without timestamps, counted from the start.
+     */
+    protected long reportMillis(long n) {
+        long start = startEpochMillis >= 0 ? startEpochMillis : 0;
+        return start + n * intervalMillis;
+    }
+
+    /**
+     * Returns the epoch time of a clock time printed by the tool on the date of the recording.
+     * A clock time earlier than the previous one is taken to be on the next day.
+     */
+    protected long clockMillis(LocalTime clock) {
+        if (date == null) date = LocalDate.now();
+        if (lastClock != null && clock.isBefore(lastClock)) date = date.plusDays(1);
+        lastClock = clock;
+        return LocalDateTime.of(date, clock).atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    /**
+     * Returns the epoch time of a clock time printed by the tool together with its date, which
+     * becomes the date of the clock times without one that follow.
+     */
+    protected long clockMillis(LocalDate date, LocalTime clock) {
+        this.date = date;
+        lastClock = clock;
+        return LocalDateTime.of(date, clock).atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    /**
+     * Parses a clock time of one or two tokens ({@code 15:01:03}, or {@code 03:01:03 PM}).
+     *
+     * @param tokens The tokens of a line.
+     * @param i      The index of the first token of the clock time.
+     * @return the clock time, or {@code null} if the tokens are not a clock time
+     */
+    protected static LocalTime parseClock(String[] tokens, int i) {
+        if (i >= tokens.length || tokens[i].indexOf(':') < 0) return null;
+        try {
+            if (i + 1 < tokens.length && isMeridiem(tokens[i + 1])) {
+                return LocalTime.parse(tokens[i] + " " + tokens[i + 1].toUpperCase(Locale.ROOT), CLOCK_12H);
+            }
+            return LocalTime.parse(tokens[i]);
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Returns {@code true} if a token is {@code AM} or {@code PM}.
+     */
+    protected static boolean isMeridiem(String token) {
+        return token.equalsIgnoreCase("AM") || token.equalsIgnoreCase("PM");
+    }
+
+    /**
+     * Parses a number printed by a tool, which may use a decimal comma; anything else is {@code NaN}.
+     */
+    protected static double number(String token) {
+        try {
+            return Double.parseDouble(token.replace(',', '.'));
+        } catch (NumberFormatException e) {
+            return Double.NaN;
+        }
+    }
+
+    /**
+     * Parses a date of a {@code Linux ...} line or of an {@code iostat -t} timestamp.
+     *
+     * @return the date, or {@code null} if it cannot be parsed
+     */
+    protected static LocalDate parseDate(String text) {
+        for (DateTimeFormatter format : DATES) {
+            try {
+                return LocalDate.parse(text, format);
+            } catch (DateTimeParseException e) {
+                // try the next layout
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Splits a line into whitespace-separated tokens.
+     */
+    protected static String[] tokens(String line) {
+        String trimmed = line.trim();
+        return trimmed.isEmpty() ? new String[0] : trimmed.split("\\s+");
+    }
+
+    private boolean banner(String line) {
+        Matcher m = BANNER.matcher(line);
+        if (!m.matches()) return false;
+        try {
+            startEpochMillis = LocalDateTime.parse(m.group(2)).atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+            date = LocalDate.parse(m.group(2).substring(0, 10));
+        } catch (DateTimeParseException e) {
+            // keep the defaults
+        }
+        try {
+            String interval = m.group(3).trim().replace("seconds", "s").replace("second", "s").replace(" ", "");
+            intervalMillis = SamplingInterval.parseMillis(interval);
+        } catch (IllegalArgumentException e) {
+            // keep the default
+        }
+        return true;
+    }
+}
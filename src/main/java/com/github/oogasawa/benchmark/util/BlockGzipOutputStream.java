@@ -0,0 +1,166 @@
+package com.github.oogasawa.benchmark.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Compresses a stream into independent gzip members of at most {@link #BLOCK_BYTES} input bytes each,
+ * like {@code bgzip}.
+ * <p>
+ * Blocks are compressed in parallel on a small shared pool of low-priority threads and written
+ * in order, so the writing thread only copies bytes. The result is an ordinary multi-member gzip
+ * file that {@code zcat}, {@code gzip -d} and {@link java.util.zip.GZIPInputStream} read as one stream.
+ * <p>
+ * {@link #flush()} writes the blocks that are already full and flushes the underlying stream, but
+ * keeps the partly filled block, so that frequent flushes (e.g. once per second) do not degrade the
+ * compression ratio with tiny members. At most one block of output is lost if the process dies.
+ * {@link #close()} writes everything.
+ *
+ * <p>Example usage:
+ * <pre>{@code
+ *     try (Writer out = new OutputStreamWriter(new BlockGzipOutputStream(Files.newOutputStream(path)))) {
+ *         out.write("tick,timestamp,...\n");
+ *     }
+ * }</pre>
+ */
+public class BlockGzipOutputStream extends OutputStream {
+
+    /** Uncompressed size of a block; a little below 64 KiB, as in {@code bgzip}. */
+    public static final int BLOCK_BYTES = 0xff00;
+
+    private static final int THREADS = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() / 4));
+
+    /** Blocks compressed ahead of the write position before the writer waits. */
+    private static final int MAX_PENDING = 2 * THREADS;
+
+    private static final ExecutorService POOL = Executors.newFixedThreadPool(THREADS, r -> {
+        Thread t = new Thread(r, "block-gzip");
+        t.setDaemon(true);
+        t.setPriority(Thread.MIN_PRIORITY);
+        return t;
+    });
+
+    private static final ThreadLocal<Deflater> DEFLATER =
+        ThreadLocal.withInitial(() -> new Deflater(Deflater.DEFAULT_COMPRESSION, true));
+
+    private static final byte[] HEADER = {
+        0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff
+    };
+
+    private final OutputStream out;
+    private final ArrayDeque<Future<byte[]>> pending = new ArrayDeque<>();
+    private byte[] block = new byte[BLOCK_BYTES];
+    private int length;
+    private boolean closed;
+
+    /**
+     * @param out The destination of the compressed bytes.
+     */
+    public BlockGzipOutputStream(OutputStream out) {
+        this.out = out;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        if (length == block.length) submitBlock();
+        block[length++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        while (len > 0) {
+            if (length == block.length) submitBlock();
+            int n = Math.min(len, block.length - length);
+            System.arraycopy(b, off, block, length, n);
+            length += n;
+            off += n;
+            len -= n;
+        }
+    }
+
+    /**
+     * Writes the completed blocks and flushes the underlying stream.
+     * The partly filled block stays buffered until it is full or the stream is closed.
+     */
+    @Override
+    public void flush() throws IOException {
+        while (!pending.isEmpty()) {
+            writeNext();
+        }
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) return;
+        closed = true;
+        try {
+            if (length > 0) submitBlock();
+            flush();
+        } finally {
+            out.close();
+        }
+    }
+
+    private void submitBlock() throws IOException {
+        byte[] data = block;
+        int size = length;
+        pending.add(POOL.submit(() -> compress(data, size)));
+        block = new byte[BLOCK_BYTES];
+        length = 0;
+        while (pending.size() > MAX_PENDING) {
+            writeNext();
+        }
+    }
+
+    private void writeNext() throws IOException {
+        try {
+            out.write(pending.poll().get());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while compressing");
+        } catch (ExecutionException e) {
+            throw new IOException("Compression failed", e.getCause());
+        }
+    }
+
+    /**
+     * Compresses one block into a complete gzip member.
+     */
+    static byte[] compress(byte[] data, int size) {
+        Deflater deflater = DEFLATER.get();
+        deflater.reset();
+        deflater.setInput(data, 0, size);
+        deflater.finish();
+
+        ByteArrayOutputStream member = new ByteArrayOutputStream(size / 2 + 64);
+        member.write(HEADER, 0, HEADER.length);
+        byte[] chunk = new byte[8192];
+        while (!deflater.finished()) {
+            int n = deflater.deflate(chunk);
+            member.write(chunk, 0, n);
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(data, 0, size);
+        writeIntLE(member, (int) crc.getValue());
+        writeIntLE(member, size);
+        return member.toByteArray();
+    }
+
+    private static void writeIntLE(ByteArrayOutputStream out, int value) {
+        out.write(value);
+        out.write(value >>> 8);
+        out.write(value >>> 16);
+        out.write(value >>> 24);
+    }
+}
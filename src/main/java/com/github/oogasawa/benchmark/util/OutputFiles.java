@@ -0,0 +1,225 @@
+package com.github.oogasawa.benchmark.util;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Locale;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Opens monitor output files, optionally gzip-compressed.
+ * <p>
+ * Compressed outputs get a {@code .gz} suffix and are written with a {@link BlockGzipOutputStream}.
+ * The readers detect gzip by its magic bytes, and fall back to {@code path.gz} when {@code path}
+ * does not exist, so a formatter given {@code run1.nvidia-smi.out} reads the compressed file as well.
+ */
+public final class OutputFiles {
+
+    public static final String GZIP_SUFFIX = ".gz";
+
+    /** The number of bytes {@link #readLastLine(Path)} reads from the end of a file. */
+    private static final int TAIL_BYTES = 1 << 19;
+
+    private OutputFiles() {
+    }
+
+    /**
+     * Returns the path an output is written to.
+     *
+     * @param path     The path of the uncompressed output.
+     * @param compress Whether the output is compressed.
+     * @return {@code path}, or {@code path.gz} if compressed
+     */
+    public static String outputPath(String path, boolean compress) {
+        return compress ? path + GZIP_SUFFIX : path;
+    }
+
+    /**
+     * Opens an output stream.
+     *
+     * @param path     The path of the uncompressed output; {@code .gz} is appended if compressed.
+     * @param compress Whether to compress.
+     * @param append   Whether to append to an existing file. A compressed file is appended as new gzip members.
+     * @return the stream
+     * @throws IOException If the file cannot be opened.
+     */
+    public static OutputStream newOutputStream(String path, boolean compress, boolean append) throws IOException {
+        OutputStream out = Files.newOutputStream(Path.of(outputPath(path, compress)),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                append ? StandardOpenOption.APPEND : StandardOpenOption.TRUNCATE_EXISTING);
+        return compress ? new BlockGzipOutputStream(out) : out;
+    }
+
+    /**
+     * Opens a buffered UTF-8 writer that replaces any existing file.
+     *
+     * @param path     The path of the uncompressed output; {@code .gz} is appended if compressed.
+     * @param compress Whether to compress.
+     * @return the writer
+     * @throws IOException If the file cannot be opened.
+     */
+    public static Writer newWriter(String path, boolean compress) throws IOException {
+        return new BufferedWriter(new OutputStreamWriter(newOutputStream(path, compress, false), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Returns the file that holds an output: {@code path} if it exists, otherwise {@code path.gz} if that exists.
+     *
+     * @param path The path of the output.
+     * @return the existing file, or {@code path} if neither exists
+     */
+    public static Path resolve(Path path) {
+        if (Files.exists(path)) return path;
+        Path compressed = path.resolveSibling(path.getFileName() + GZIP_SUFFIX);
+        return Files.exists(compressed) ? compressed : path;
+    }
+
+    /**
+     * Opens an output for reading, decompressing it if it is gzip-compressed.
+     *
+     * @param path The path of the output (see {@link #resolve(Path)}).
+     * @return the uncompressed contents
+     * @throws IOException If the file cannot be opened.
+     */
+    public static InputStream newInputStream(Path path) throws IOException {
+        InputStream in = new BufferedInputStream(Files.newInputStream(resolve(path)), 1 << 16);
+        in.mark(2);
+        int b1 = in.read();
+        int b2 = in.read();
+        in.reset();
+        if (b1 == 0x1f && b2 == 0x8b) {
+            return new BufferedInputStream(new GZIPInputStream(in, 1 << 16), 1 << 16);
+        }
+        return in;
+    }
+
+    /**
+     * Opens an output for reading as UTF-8 text, decompressing it if it is gzip-compressed.
+     *
+     * @param path The path of the output (see {@link #resolve(Path)}).
+     * @return the reader
+     * @throws IOException If the file cannot be opened.
+     */
+    public static BufferedReader newBufferedReader(Path path) throws IOException {
+        return new BufferedReader(new InputStreamReader(newInputStream(path), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Reads the last complete line of an output without reading the rest of it.
+     * <p>
+     * Only the last 512 KiB of the file are read. A compressed output is inflated
+     * from the last gzip member that starts early enough to hold a whole line; this relies on
+     * the members of a {@link BlockGzipOutputStream} being small. A line that was cut off by a
+     * killed writer is ignored.
+     *
+     * @param path The path of the output (see {@link #resolve(Path)}).
+     * @return the last line, or {@code null} if no complete line was found in the tail
+     * @throws IOException If the file cannot be read.
+     */
+    public static String readLastLine(Path path) throws IOException {
+        byte[] tail;
+        boolean whole;
+        boolean gzip;
+        try (SeekableByteChannel channel = Files.newByteChannel(resolve(path))) {
+            long size = channel.size();
+            whole = size <= TAIL_BYTES;
+            ByteBuffer magic = ByteBuffer.allocate(2);
+            readFully(channel, magic);
+            gzip = magic.position() == 2 && magic.get(0) == 0x1f && magic.get(1) == (byte) 0x8b;
+
+            ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(size, TAIL_BYTES));
+            channel.position(size - buffer.capacity());
+            readFully(channel, buffer);
+            tail = buffer.array();
+        }
+        if (!gzip) return lastLine(tail, tail.length, whole);
+
+        // Try the member starts from the last one back, until one holds a whole line.
+        for (int start = tail.length - 3; start >= 0; start--) {
+            if (tail[start] != 0x1f || tail[start + 1] != (byte) 0x8b || tail[start + 2] != 8) continue;
+            ByteArrayOutputStream text = new ByteArrayOutputStream();
+            try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(tail, start, tail.length - start))) {
+                in.transferTo(text);
+            } catch (IOException e) {
+                // Not a member start, or a truncated last member; keep what was inflated.
+            }
+            String line = lastLine(text.toByteArray(), text.size(), whole && start == 0);
+            if (line != null) return line;
+        }
+        return null;
+    }
+
+    private static void readFully(SeekableByteChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) return;
+        }
+    }
+
+    /**
+     * Returns the last newline-terminated line of a byte range that starts at an unknown point of a file.
+     *
+     * @param atStart {@code true} if the range starts at the start of the file, so its first line is complete
+     */
+    private static String lastLine(byte[] bytes, int length, boolean atStart) {
+        int end = length - 1;
+        while (end >= 0 && bytes[end] != '\n') end--;
+        if (end < 0) return null;
+        int begin = end - 1;
+        while (begin >= 0 && bytes[begin] != '\n') begin--;
+        if (begin < 0 && !atStart) return null;
+        return new String(bytes, begin + 1, end - begin - 1, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Removes a trailing {@code .gz} from a file name, e.g. to derive the name of a formatted output.
+     *
+     * @param fileName The file name.
+     * @return the file name without the suffix
+     */
+    public static String stripGzipSuffix(String fileName) {
+        return fileName.endsWith(GZIP_SUFFIX)
+            ? fileName.substring(0, fileName.length() - GZIP_SUFFIX.length())
+            : fileName;
+    }
+
+    /**
+     * Parses a size with an optional binary unit ({@code k}, {@code M}, {@code G}), e.g. {@code "512M"}.
+     *
+     * @param text The size text.
+     * @return the size in bytes
+     * @throws IllegalArgumentException If the text is not a positive size.
+     */
+    public static long parseSize(String text) {
+        String s = text.trim().toUpperCase(Locale.ROOT);
+        if (s.endsWith("B")) s = s.substring(0, s.length() - 1);
+        int shift = 0;
+        if (s.endsWith("K")) shift = 10;
+        else if (s.endsWith("M")) shift = 20;
+        else if (s.endsWith("G")) shift = 30;
+        if (shift > 0) s = s.substring(0, s.length() - 1);
+        try {
+            long size = new BigDecimal(s.trim()).multiply(BigDecimal.valueOf(1L << shift))
+                .setScale(0, RoundingMode.HALF_UP).longValueExact();
+            if (size <= 0) throw new IllegalArgumentException("Size must be positive: " + text);
+            return size;
+        } catch (NumberFormatException | ArithmeticException e) {
+            throw new IllegalArgumentException("Invalid size: " + text, e);
+        }
+    }
+}
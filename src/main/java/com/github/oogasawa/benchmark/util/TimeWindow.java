@@ -0,0 +1,210 @@
+package com.github.oogasawa.benchmark.util;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Locale;
+
+/**
+ * A time range of a run that a reader should load, given on the command line by {@code --from} and {@code --to}.
+ * <p>
+ * <b>Accepted notation</b> for each bound:
+ * <pre>{@code
+ * "10h", "90m", "30s", "1.5d"   a duration since the start of the run
+ * "2025-07-05 15:00:00"         a local date and time ("2025/07/05 15:00:00" also works)
+ * "2025-07-05"                  the start of a local date
+ * }</pre>
+ * A missing bound is open. Relative bounds are turned into absolute ones with {@link #resolve(long)}
+ * once the reader knows when the run started.
+ *
+ * <p>Example usage:
+ * <pre>{@code
+ *     TimeWindow window = TimeWindow.parse("10h", "12h").resolve(runStartMillis);
+ *     if (window.contains(rowMillis)) { ... }
+ * }</pre>
+ */
+public final class TimeWindow {
+
+    /** The whole run. */
+    public static final TimeWindow ALL = new TimeWindow(null, false, null, false);
+
+    private static final DateTimeFormatter[] DATE_TIME_FORMATS = {
+        DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"),
+        DateTimeFormatter.ofPattern("yyyy/MM/dd HH:mm:ss"),
+        DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss"),
+    };
+
+    private static final DateTimeFormatter[] DATE_FORMATS = {
+        DateTimeFormatter.ofPattern("yyyy-MM-dd"),
+        DateTimeFormatter.ofPattern("yyyy/MM/dd"),
+    };
+
+    private final Long from;
+    private final boolean fromRelative;
+    private final Long to;
+    private final boolean toRelative;
+
+    private TimeWindow(Long from, boolean fromRelative, Long to, boolean toRelative) {
+        this.from = from;
+        this.fromRelative = fromRelative;
+        this.to = to;
+        this.toRelative = toRelative;
+    }
+
+    /**
+     * Parses the bounds of a window.
+     *
+     * @param from The start of the window, or {@code null} for the start of the run.
+     * @param to   The end of the window (inclusive), or {@code null} for the end of the run.
+     * @return the window
+     * @throws IllegalArgumentException If a bound cannot be parsed.
+     */
+    public static TimeWindow parse(String from, String to) {
+        if (from == null && to == null) return ALL;
+        return new TimeWindow(
+            from == null ? null : parseBound(from), from != null && isRelative(from),
+            to == null ? null : parseBound(to), to != null && isRelative(to));
+    }
+
+    /**
+     * Returns {@code true} if the window covers the whole run.
+     */
+    public boolean isAll() {
+        return from == null && to == null;
+    }
+
+    /**
+     * Returns {@code true} if a bound is relative to the start of the run.
+     */
+    public boolean isRelative() {
+        return fromRelative || toRelative;
+    }
+
+    /**
+     * Returns the start of a resolved window in epoch milliseconds.
+     *
+     * @return the start, or {@code null} if the window is open at the start
+     * @throws IllegalStateException If the window has relative bounds that were not resolved.
+     */
+    public Long getFromMillis() {
+        requireResolved();
+        return from;
+    }
+
+    /**
+     * Returns the end (inclusive) of a resolved window in epoch milliseconds.
+     *
+     * @return the end, or {@code null} if the window is open at the end
+     * @throws IllegalStateException If the window has relative bounds that were not resolved.
+     */
+    public Long getToMillis() {
+        requireResolved();
+        return to;
+    }
+
+    /**
+     * Returns the window with its relative bounds turned into epoch milliseconds.
+     *
+     * @param startEpochMillis The start of the run.
+     * @return an absolute window
+     */
+    public TimeWindow resolve(long startEpochMillis) {
+        if (!isRelative()) return this;
+        return new TimeWindow(
+            fromRelative ? Long.valueOf(startEpochMillis + from) : from, false,
+            toRelative ? Long.valueOf(startEpochMillis + to) : to, false);
+    }
+
+    /**
+     * Returns {@code true} if an instant lies in the window.
+     *
+     * @param epochMillis The instant.
+     * @throws IllegalStateException If the window has relative bounds that were not resolved.
+     */
+    public boolean contains(long epochMillis) {
+        return overlaps(epochMillis, epochMillis);
+    }
+
+    /**
+     * Returns {@code true} if a time range overlaps the window.
+     *
+     * @param firstEpochMillis The start of the range.
+     * @param lastEpochMillis  The end of the range (inclusive).
+     * @throws IllegalStateException If the window has relative bounds that were not resolved.
+     */
+    public boolean overlaps(long firstEpochMillis, long lastEpochMillis) {
+        requireResolved();
+        return (from == null || lastEpochMillis >= from) && (to == null || firstEpochMillis <= to);
+    }
+
+    private void requireResolved() {
+        if (isRelative()) {
+            throw new IllegalStateException("The window has to be resolved against the start of the run");
+        }
+    }
+
+    /**
+     * Parses a duration with a unit: {@code ms}, {@code s}, {@code m}, {@code h} or {@code d}
+     * (e.g. {@code "90m"}, {@code "1.5h"}). A bare number is seconds.
+     *
+     * @param text The duration text.
+     * @return the duration in milliseconds
+     * @throws IllegalArgumentException If the text is not a non-negative duration.
+     */
+    public static long parseDurationMillis(String text) {
+        String s = text.trim().toLowerCase(Locale.ROOT);
+        int unitStart = s.length();
+        while (unitStart > 0 && Character.isLetter(s.charAt(unitStart - 1))) {
+            unitStart--;
+        }
+        long unitMillis = switch (s.substring(unitStart)) {
+            case "ms" -> 1L;
+            case "", "s" -> 1000L;
+            case "m" -> 60_000L;
+            case "h" -> 3_600_000L;
+            case "d" -> 86_400_000L;
+            default -> throw new IllegalArgumentException("Invalid duration: " + text);
+        };
+        try {
+            long millis = new BigDecimal(s.substring(0, unitStart).trim())
+                .multiply(BigDecimal.valueOf(unitMillis))
+                .setScale(0, RoundingMode.HALF_UP).longValueExact();
+            if (millis < 0) throw new IllegalArgumentException("Duration must not be negative: " + text);
+            return millis;
+        } catch (NumberFormatException | ArithmeticException e) {
+            throw new IllegalArgumentException("Invalid duration: " + text, e);
+        }
+    }
+
+    private static boolean isRelative(String text) {
+        String s = text.trim();
+        return !s.contains(":") && !s.contains("-") && !s.contains("/");
+    }
+
+    private static long parseBound(String text) {
+        if (isRelative(text)) {
+            return parseDurationMillis(text);
+        }
+        for (DateTimeFormatter format : DATE_TIME_FORMATS) {
+            try {
+                return LocalDateTime.parse(text.trim(), format)
+                    .atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+            } catch (DateTimeParseException e) {
+                // try the next layout
+            }
+        }
+        for (DateTimeFormatter format : DATE_FORMATS) {
+            try {
+                return LocalDate.parse(text.trim(), format)
+                    .atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli();
+            } catch (DateTimeParseException e) {
+                // try the next layout
+            }
+        }
+        throw new IllegalArgumentException("Invalid time: " + text + " (expected e.g. '10h' or '2025-07-05 15:00:00')");
+    }
+}
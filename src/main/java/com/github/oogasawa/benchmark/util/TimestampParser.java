@@ -0,0 +1,360 @@
+package com.github.oogasawa.benchmark.util;
+
+import java.nio.charset.StandardCharsets;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.zone.ZoneRules;
+import java.util.Locale;
+
+/**
+ * Parses the fixed-layout timestamps of the logs into milliseconds, without a
+ * {@link DateTimeFormatter} per line.
+ * <p>
+ * The layouts written by the tools this project reads are handled directly on the characters
+ * (or bytes) of a line:
+ * </p>
+ * <pre>
+ * yyyy/MM/dd HH:mm:ss.SSS    nvidia-smi and the outputs of benchmark:run
+ * yyyy-MM-dd HH:mm:ss        the tables of format:gpu
+ * yyyy-MMM-dd HH:mm:ss       Parabricks ([PB Info 2025-Jul-05 15:01:02])
+ * </pre>
+ * <p>
+ * and in general any pattern of a numeric or English three-letter month date, separated by
+ * {@code /}, {@code -} or nothing, a space or {@code T}, {@code HH:mm:ss} and optionally
+ * {@code .SSS}. The date of the previous line is kept, so consecutive lines of the same day
+ * only parse the time. A text that does not fit the layout, and any other pattern, is parsed
+ * with the {@link DateTimeFormatter} of the pattern, so the results and the
+ * {@link java.time.format.DateTimeParseException} of an invalid text are the same as before.
+ * </p>
+ * <p>
+ * An instance keeps state between calls and is not thread-safe; create one per reader.
+ * </p>
+ *
+ * <pre>{@code
+ * TimestampParser parser = new TimestampParser("yyyy/MM/dd HH:mm:ss.SSS");
+ * long millis = parser.parseEpochMillis(line, start, end);
+ * }</pre>
+ */
+public final class TimestampParser {
+
+    private static final String[] MONTHS = {
+        "Jan", "Feb", "Mar", "Apr", "May", "Jun", "Jul", "Aug", "Sep", "Oct", "Nov", "Dec"
+    };
+
+    private static final long MILLIS_PER_DAY = 86_400_000L;
+    private static final long MILLIS_PER_HOUR = 3_600_000L;
+
+    private final DateTimeFormatter formatter;
+    private final ZoneId zone;
+    private final ZoneRules rules;
+
+    /** {@code true} if the pattern is one of the fixed layouts. */
+    private final boolean fixed;
+    /** The separator of the date fields, or {@code 0} for none. */
+    private final char dateSeparator;
+    /** {@code true} for a three-letter month. */
+    private final boolean monthText;
+    /** The length of the date part, and the position of the separator of date and time. */
+    private final int dateLength;
+    private final char dateTimeSeparator;
+    /** The number of fraction digits: 0 or 3. */
+    private final int fractionDigits;
+    private final int length;
+
+    /** The date part of the previous text and its start in local milliseconds. */
+    private final char[] cachedDate;
+    private boolean dateCached = false;
+    private long cachedDateMillis;
+
+    /** The local hour of the previous text and the offset of the zone in it. */
+    private long cachedHour = Long.MIN_VALUE;
+    private long cachedOffsetMillis;
+
+    /** A view of a byte range, reused so that parsing bytes does not allocate. */
+    private final AsciiView view = new AsciiView();
+
+    /**
+     * Creates a parser for a pattern that converts to epoch milliseconds in the system time zone.
+     *
+     * @param pattern a {@link DateTimeFormatter} pattern, e.g. {@code yyyy/MM/dd HH:mm:ss.SSS}
+     */
+    public TimestampParser(String pattern) {
+        this(pattern, ZoneId.systemDefault());
+    }
+
+    /**
+     * Creates a parser for a pattern.
+     *
+     * @param pattern a {@link DateTimeFormatter} pattern, e.g. {@code yyyy/MM/dd HH:mm:ss.SSS}
+     * @param zone the time zone of the timestamps, used by {@link #parseEpochMillis(CharSequence)}
+     */
+    public TimestampParser(String pattern, ZoneId zone) {
+        this.formatter = DateTimeFormatter.ofPattern(pattern, Locale.ENGLISH);
+        this.zone = zone;
+        this.rules = zone.getRules();
+
+        String datePart;
+        String rest;
+        int t = Math.max(pattern.indexOf(' '), pattern.indexOf("'T'"));
+        if (t > 0) {
+            datePart = pattern.substring(0, t);
+            dateTimeSeparator = pattern.charAt(t) == ' ' ? ' ' : 'T';
+            rest = pattern.substring(pattern.charAt(t) == ' ' ? t + 1 : t + 3);
+        } else {
+            datePart = "";
+            dateTimeSeparator = 0;
+            rest = "";
+        }
+        char separator = datePart.length() > 4 ? datePart.charAt(4) : 0;
+        if (separator != '/' && separator != '-') separator = 0;
+        String sep = separator == 0 ? "" : String.valueOf(separator);
+        boolean text = datePart.equals("yyyy" + sep + "MMM" + sep + "dd");
+        boolean numeric = datePart.equals("yyyy" + sep + "MM" + sep + "dd");
+        int fraction = rest.equals("HH:mm:ss.SSS") ? 3 : rest.equals("HH:mm:ss") ? 0 : -1;
+
+        this.fixed = (text || numeric) && fraction >= 0;
+        this.dateSeparator = separator;
+        this.monthText = text;
+        this.dateLength = datePart.length();
+        this.fractionDigits = Math.max(fraction, 0);
+        this.length = dateLength + 1 + 8 + (fractionDigits > 0 ? 1 + fractionDigits : 0);
+        this.cachedDate = new char[dateLength];
+    }
+
+    /**
+     * Parses a timestamp into epoch milliseconds.
+     *
+     * @param text the timestamp
+     * @return the epoch milliseconds in the zone of this parser
+     * @throws java.time.format.DateTimeParseException if the text is not a timestamp of the pattern
+     */
+    public long parseEpochMillis(CharSequence text) {
+        return parseEpochMillis(text, 0, text.length());
+    }
+
+    /**
+     * Parses a timestamp in a range of characters into epoch milliseconds.
+     *
+     * @param text the characters, e.g. a line
+     * @param start the start of the timestamp
+     * @param end the end of the timestamp, exclusive
+     * @return the epoch milliseconds in the zone of this parser
+     * @throws java.time.format.DateTimeParseException if the range is not a timestamp of the pattern
+     */
+    public long parseEpochMillis(CharSequence text, int start, int end) {
+        return toEpochMillis(parseLocalMillis(text, start, end));
+    }
+
+    /**
+     * Parses a timestamp in a range of ASCII bytes into epoch milliseconds.
+     *
+     * @param bytes the bytes, e.g. a buffer of a file
+     * @param start the start of the timestamp
+     * @param end the end of the timestamp, exclusive
+     * @return the epoch milliseconds in the zone of this parser
+     * @throws java.time.format.DateTimeParseException if the range is not a timestamp of the pattern
+     */
+    public long parseEpochMillis(byte[] bytes, int start, int end) {
+        return parseEpochMillis(view.of(bytes), start, end);
+    }
+
+    /**
+     * Parses a timestamp into local milliseconds, i.e. the local date and time counted as if it
+     * were UTC. Two local milliseconds compare and subtract like the local date-times.
+     *
+     * @param text the timestamp
+     * @return the local milliseconds
+     * @throws java.time.format.DateTimeParseException if the text is not a timestamp of the pattern
+     */
+    public long parseLocalMillis(CharSequence text) {
+        return parseLocalMillis(text, 0, text.length());
+    }
+
+    /**
+     * Parses a timestamp in a range of characters into local milliseconds.
+     *
+     * @param text the characters, e.g. a line
+     * @param start the start of the timestamp
+     * @param end the end of the timestamp, exclusive
+     * @return the local milliseconds
+     * @throws java.time.format.DateTimeParseException if the range is not a timestamp of the pattern
+     */
+    public long parseLocalMillis(CharSequence text, int start, int end) {
+        if (fixed && end - start == length) {
+            long date = date(text, start);
+            if (date != Long.MIN_VALUE && text.charAt(start + dateLength) == dateTimeSeparator) {
+                long time = time(text, start + dateLength + 1);
+                if (time >= 0) return date + time;
+            }
+        }
+        LocalDateTime parsed = LocalDateTime.parse(text.subSequence(start, end), formatter);
+        return parsed.toEpochSecond(ZoneOffset.UTC) * 1000 + parsed.getNano() / 1_000_000;
+    }
+
+    /**
+     * Parses a timestamp into a {@link LocalDateTime}.
+     *
+     * @param text the timestamp
+     * @return the local date and time
+     * @throws java.time.format.DateTimeParseException if the text is not a timestamp of the pattern
+     */
+    public LocalDateTime parseLocalDateTime(CharSequence text) {
+        return toLocalDateTime(parseLocalMillis(text));
+    }
+
+    /**
+     * Converts local milliseconds of {@link #parseLocalMillis(CharSequence)} to a {@link LocalDateTime}.
+     */
+    public static LocalDateTime toLocalDateTime(long localMillis) {
+        return LocalDateTime.ofEpochSecond(Math.floorDiv(localMillis, 1000), Math.floorMod(localMillis, 1000) * 1_000_000,
+                                           ZoneOffset.UTC);
+    }
+
+    /**
+     * Converts local milliseconds to epoch milliseconds in the zone of this parser, like
+     * {@link LocalDateTime#atZone(ZoneId)}: a time in an overlap takes the earlier offset, and
+     * a time in a gap is moved forward by the length of the gap.
+     */
+    private long toEpochMillis(long localMillis) {
+        long hour = Math.floorDiv(localMillis, MILLIS_PER_HOUR);
+        if (hour != cachedHour) {
+            // The offset of an hour is looked up once, unless the offset changes in it.
+            LocalDateTime first = toLocalDateTime(hour * MILLIS_PER_HOUR);
+            LocalDateTime last = toLocalDateTime((hour + 1) * MILLIS_PER_HOUR - 1);
+            ZoneOffset offset = rules.getOffset(first);
+            if (rules.getTransition(first) != null || rules.getTransition(last) != null
+                || !offset.equals(rules.getOffset(last))) {
+                return toLocalDateTime(localMillis).atZone(zone).toInstant().toEpochMilli();
+            }
+            cachedHour = hour;
+            cachedOffsetMillis = offset.getTotalSeconds() * 1000L;
+        }
+        return localMillis - cachedOffsetMillis;
+    }
+
+    /**
+     * Returns the local milliseconds of the start of the date at {@code start}, or
+     * {@code Long.MIN_VALUE} if it does not fit the layout.
+     */
+    private long date(CharSequence text, int start) {
+        if (dateCached) {
+            boolean same = true;
+            for (int i = 0; i < dateLength; i++) {
+                if (text.charAt(start + i) != cachedDate[i]) {
+                    same = false;
+                    break;
+                }
+            }
+            if (same) return cachedDateMillis;
+        }
+
+        int sep = dateSeparator == 0 ? 0 : 1;
+        int year = digits(text, start, 4);
+        int month;
+        int p = start + 4;
+        if (sep == 1 && text.charAt(p) != dateSeparator) return Long.MIN_VALUE;
+        p += sep;
+        if (monthText) {
+            month = month(text, p);
+            p += 3;
+        } else {
+            month = digits(text, p, 2);
+            p += 2;
+        }
+        if (sep == 1 && text.charAt(p) != dateSeparator) return Long.MIN_VALUE;
+        p += sep;
+        int day = digits(text, p, 2);
+        if (year < 0 || month < 1 || day < 0) return Long.MIN_VALUE;
+
+        long epochDay;
+        try {
+            epochDay = LocalDate.of(year, month, day).toEpochDay();
+        } catch (DateTimeException e) {
+            return Long.MIN_VALUE;   // the formatter decides, e.g. clamps Feb 30
+        }
+        for (int i = 0; i < dateLength; i++) {
+            cachedDate[i] = text.charAt(start + i);
+        }
+        dateCached = true;
+        cachedDateMillis = epochDay * MILLIS_PER_DAY;
+        return cachedDateMillis;
+    }
+
+    /**
+     * Returns the milliseconds of the day of {@code HH:mm:ss[.SSS]} at {@code start}, or {@code -1}.
+     */
+    private long time(CharSequence text, int start) {
+        int hour = digits(text, start, 2);
+        int minute = digits(text, start + 3, 2);
+        int second = digits(text, start + 6, 2);
+        if (text.charAt(start + 2) != ':' || text.charAt(start + 5) != ':') return -1;
+        if (hour < 0 || hour > 23 || minute < 0 || minute > 59 || second < 0 || second > 59) return -1;
+        int millis = 0;
+        if (fractionDigits > 0) {
+            if (text.charAt(start + 8) != '.') return -1;
+            millis = digits(text, start + 9, fractionDigits);
+            if (millis < 0) return -1;
+        }
+        return ((hour * 60L + minute) * 60 + second) * 1000 + millis;
+    }
+
+    /**
+     * Returns the value of {@code count} decimal digits, or {@code -1} if one is not a digit.
+     */
+    private static int digits(CharSequence text, int start, int count) {
+        int value = 0;
+        for (int i = start; i < start + count; i++) {
+            int d = text.charAt(i) - '0';
+            if (d < 0 || d > 9) return -1;
+            value = value * 10 + d;
+        }
+        return value;
+    }
+
+    private static int month(CharSequence text, int start) {
+        for (int m = 0; m < MONTHS.length; m++) {
+            String name = MONTHS[m];
+            if (text.charAt(start) == name.charAt(0) && text.charAt(start + 1) == name.charAt(1)
+                && text.charAt(start + 2) == name.charAt(2)) {
+                return m + 1;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * A {@link CharSequence} over ASCII bytes.
+     */
+    private static final class AsciiView implements CharSequence {
+        private byte[] bytes;
+
+        AsciiView of(byte[] bytes) {
+            this.bytes = bytes;
+            return this;
+        }
+
+        @Override
+        public int length() {
+            return bytes.length;
+        }
+
+        @Override
+        public char charAt(int index) {
+            return (char) (bytes[index] & 0xff);
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return new String(bytes, start, end - start, StandardCharsets.ISO_8859_1);
+        }
+
+        @Override
+        public String toString() {
+            return new String(bytes, StandardCharsets.ISO_8859_1);
+        }
+    }
+}
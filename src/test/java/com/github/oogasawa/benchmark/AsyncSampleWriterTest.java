@@ -0,0 +1,88 @@
+package com.github.oogasawa.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+import com.github.oogasawa.benchmark.metric.AsyncSampleWriter;
+import com.github.oogasawa.benchmark.metric.MetricSchema;
+import com.github.oogasawa.benchmark.metric.SampleBuffer;
+import com.github.oogasawa.benchmark.metric.SampleSink;
+
+class AsyncSampleWriterTest {
+
+    private static final MetricSchema SCHEMA = new MetricSchema("test", List.of("pid", "command"),
+            MetricSchema.metrics(false, "cpu%", "rss_kb"));
+
+    /**
+     * A sink on a stalled disk: every write waits until the test releases it.
+     * It only records what it receives; the checks run on the test thread.
+     */
+    private static final class StalledSink implements SampleSink {
+        final CountDownLatch release = new CountDownLatch(1);
+        final List<Long> ticks = new ArrayList<>();
+        final List<String> commands = new ArrayList<>();
+        final List<Double> values = new ArrayList<>();
+        volatile boolean timedOut;
+        volatile boolean closed;
+
+        @Override
+        public void open(MetricSchema schema) {
+        }
+
+        @Override
+        public void write(SampleBuffer buffer) {
+            try {
+                if (!release.await(30, TimeUnit.SECONDS)) timedOut = true;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            ticks.add(buffer.getTick());
+            commands.add(buffer.getLabel(1, 1));
+            values.add(buffer.getValue(1, 0));
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+
+    @Test
+    void testSlowSinkDoesNotBlockSampling() throws Exception {
+        AsyncSampleWriter writer = new AsyncSampleWriter(4096, 10);
+        StalledSink slow = new StalledSink();
+        SampleSink sink = writer.wrap(slow);
+        sink.open(SCHEMA);
+
+        // The sink is released only after sampling has finished, so sampling must not wait for it.
+        SampleBuffer buffer = new SampleBuffer(SCHEMA);
+        for (long tick = 1; tick <= 500; tick++) {
+            buffer.reset(tick, 1751695262000L + tick);
+            for (int p = 0; p < 2; p++) {
+                int row = buffer.addRow();
+                buffer.setLabel(row, 0, String.valueOf(100 + p));
+                buffer.setLabel(row, 1, p == 0 ? "bash" : "bwa-mem");
+                buffer.setValue(row, 0, tick * 0.5);
+                buffer.setValue(row, 1, Double.NaN);
+            }
+            sink.write(buffer);
+        }
+        long dropped = writer.getDropped();
+        slow.release.countDown();
+        sink.close();
+        writer.close();
+
+        assertFalse(slow.timedOut, "sampling waited for the sink");
+        assertTrue(dropped > 0);
+        assertEquals(500, slow.ticks.size() + dropped);
+        for (int i = 0; i < slow.ticks.size(); i++) {
+            if (i > 0) assertTrue(slow.ticks.get(i) > slow.ticks.get(i - 1));
+            assertEquals(slow.ticks.get(i) * 0.5, slow.values.get(i));
+        }
+        assertTrue(slow.commands.stream().allMatch("bwa-mem"::equals));
+        assertTrue(slow.closed);
+    }
+}
@@ -0,0 +1,81 @@
+package com.github.oogasawa.benchmark;
+
+import java.io.BufferedReader;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+import com.github.oogasawa.benchmark.util.BlockGzipOutputStream;
+import com.github.oogasawa.benchmark.util.OutputFiles;
+
+class BlockGzipOutputStreamTest {
+
+    @TempDir
+    Path tmp;
+
+    @Test
+    void testMultiBlockRoundTrip() throws Exception {
+        String path = tmp.resolve("run1.cpu.out").toString();
+        int rows = 20000;   // about 800 KB, a dozen blocks
+        try (Writer out = OutputFiles.newWriter(path, true)) {
+            out.write("tick,timestamp,cpu,user\n");
+            for (int i = 1; i <= rows; i++) {
+                out.write(i + ",2025/07/05 15:01:02.123,all," + (i % 100) + ".25\n");
+                if (i % 1000 == 0) out.flush();
+            }
+        }
+
+        Path compressed = tmp.resolve("run1.cpu.out.gz");
+        assertTrue(Files.size(compressed) < 20L * rows);
+        try (BufferedReader in = OutputFiles.newBufferedReader(tmp.resolve("run1.cpu.out"))) {
+            assertEquals("tick,timestamp,cpu,user", in.readLine());
+            for (int i = 1; i <= rows; i++) {
+                assertEquals(i + ",2025/07/05 15:01:02.123,all," + (i % 100) + ".25", in.readLine());
+            }
+            assertNull(in.readLine());
+        }
+    }
+
+    @Test
+    void testReadLastLine() throws Exception {
+        int rows = 100000;   // well over the 512 KiB tail even when compressed
+        for (boolean compress : new boolean[] { false, true }) {
+            String path = tmp.resolve("run1.cpu.out").toString();
+            try (Writer out = OutputFiles.newWriter(path, compress)) {
+                out.write("tick,value\n");
+                for (int i = 1; i <= rows; i++) {
+                    out.write(i + "," + Long.toHexString(i * 0x9E3779B97F4A7C15L) + "\n");
+                }
+            }
+            String expected = rows + "," + Long.toHexString(rows * 0x9E3779B97F4A7C15L);
+            assertEquals(expected, OutputFiles.readLastLine(Path.of(path)));
+            Files.delete(Path.of(OutputFiles.outputPath(path, compress)));
+        }
+
+        // A line cut off by a killed writer is skipped.
+        Path plain = tmp.resolve("run2.cpu.out");
+        Files.writeString(plain, "tick,value\n1,a\n2,b\n3,");
+        assertEquals("2,b", OutputFiles.readLastLine(plain));
+        Files.writeString(plain, "tick,value\n");
+        assertEquals("tick,value", OutputFiles.readLastLine(plain));
+    }
+
+    @Test
+    void testFlushKeepsPartialBlock() throws Exception {
+        Path path = tmp.resolve("small.gz");
+        try (OutputStream out = new BlockGzipOutputStream(Files.newOutputStream(path))) {
+            out.write("header\n".getBytes());
+            out.flush();
+            assertEquals(0, Files.size(path));
+            out.write(new byte[BlockGzipOutputStream.BLOCK_BYTES]);
+            out.flush();
+            assertTrue(Files.size(path) > 0);
+        }
+        try (BufferedReader in = OutputFiles.newBufferedReader(path)) {
+            assertEquals("header", in.readLine());
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package com.github.oogasawa.benchmark;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+import com.github.oogasawa.benchmark.metric.MetricSchema;
+import com.github.oogasawa.benchmark.metric.SampleBuffer;
+import com.github.oogasawa.benchmark.metric.SampleSink;
+import com.github.oogasawa.benchmark.metric.TextSampleSink;
+import com.github.oogasawa.benchmark.store.ColumnarRunReader;
+import com.github.oogasawa.benchmark.store.ColumnarRunWriter;
+import com.github.oogasawa.benchmark.store.SeriesStats;
+import com.github.oogasawa.benchmark.util.TimeWindow;
+
+class ColumnarRunTest {
+
+    private static final MetricSchema SCHEMA = new MetricSchema("gpu", List.of("index"), List.of(
+            MetricSchema.integral("utilization.gpu", "%"),
+            MetricSchema.decimal("power.draw", "W")));
+
+    @TempDir
+    Path tmp;
+
+    @Test
+    void testRoundTrip() throws Exception {
+        Path path = tmp.resolve("run1.run");
+        long start = 1751695262000L;
+        // More ticks than one block, and GPU 1 disappears after tick 100.
+        try (ColumnarRunWriter run = new ColumnarRunWriter(path, 1000)) {
+            SampleSink sink = run.newSink();
+            sink.open(SCHEMA);
+            SampleBuffer buffer = new SampleBuffer(SCHEMA);
+            String gpu0 = "0";
+            String gpu1 = "1";
+            for (long tick = 1; tick <= 300; tick++) {
+                buffer.reset(tick, start + tick * 1000);
+                int row = buffer.addRow();
+                buffer.setLabel(row, 0, gpu0);
+                buffer.setValue(row, 0, tick % 100);
+                buffer.setValue(row, 1, 250.5);
+                if (tick <= 100) {
+                    row = buffer.addRow();
+                    buffer.setLabel(row, 0, gpu1);
+                    buffer.setValue(row, 0, 42);
+                }
+                sink.write(buffer);
+            }
+            sink.close();
+        }
+
+        assertTrue(ColumnarRunReader.isRunFile(path));
+        try (ColumnarRunReader reader = ColumnarRunReader.open(path)) {
+            assertEquals(1000, reader.getIntervalMillis());
+            assertEquals(List.of("gpu"), reader.sources());
+            assertEquals(SCHEMA.header(), reader.schema("gpu").header());
+            assertEquals(List.of(List.of("0"), List.of("1")), reader.entities("gpu"));
+
+            long[] ticks = reader.ticks("gpu");
+            assertEquals(300, ticks.length);
+            assertEquals(start + 300 * 1000, reader.epochMillis("gpu", ticks)[299]);
+
+            ColumnarRunReader.SeriesInfo util0 = reader.series("gpu", List.of("0"), 0);
+            double[] values = reader.values(util0, 250, 20);
+            assertEquals(50.0, values[0]);
+            assertEquals(69.0, values[19]);
+
+            ColumnarRunReader.SeriesInfo util1 = reader.series("gpu", "utilization.gpu").get(1);
+            values = reader.values(util1, 99, 3);
+            assertEquals(42.0, values[1]);
+            assertTrue(Double.isNaN(values[2]));
+
+            // The first block comes from its statistics, the second is scanned up to tick 281.
+            TimeWindow window = TimeWindow.parse(null, "280s");
+            assertArrayEquals(new long[] { 1, 281 }, reader.tickRange("gpu", window));
+            Map<List<String>, SeriesStats> stats = reader.aggregate("gpu", "utilization.gpu", window);
+            double sum = 0;
+            for (double value : reader.values(util0, 1, 281)) sum += value;
+            assertEquals(281, stats.get(List.of("0")).count());
+            assertEquals(sum, stats.get(List.of("0")).sum());
+            assertEquals(0.0, stats.get(List.of("0")).min());
+            assertEquals(99.0, stats.get(List.of("0")).max());
+            assertEquals(100, stats.get(List.of("1")).count());
+            assertEquals(42.0, stats.get(List.of("1")).mean());
+            assertEquals(0, reader.aggregate("gpu", "power.draw", TimeWindow.parse("400s", null))
+                    .get(List.of("0")).count());
+
+            Path out = tmp.resolve("run1.gpu.out");
+            reader.export("gpu", new TextSampleSink(out.toString()));
+            List<String> lines = Files.readAllLines(out);
+            assertEquals(1 + 300 + 100, lines.size());
+            assertEquals("tick,timestamp,index,utilization.gpu [%],power.draw [W]", lines.get(0));
+            assertTrue(lines.get(2).startsWith("1,"));
+            assertTrue(lines.get(2).endsWith(",1,42,"));
+            assertTrue(lines.get(lines.size() - 1).startsWith("300,"));
+            assertTrue(lines.get(lines.size() - 1).endsWith(",0,0,250.50"));
+        }
+    }
+
+    @Test
+    void testEntitiesKeyedByKeyLabels() throws Exception {
+        MetricSchema schema = new MetricSchema("proc-tree", List.of("pid", "command", "state"),
+                MetricSchema.metrics(true, "cpu_ms"), List.of("pid", "command"));
+        Path path = tmp.resolve("run1.run");
+        long start = 1751695262000L;
+        // Process 10 exits at tick 10; process 11 runs at ticks 1-3 and, long after it was released, 700-710.
+        try (ColumnarRunWriter run = new ColumnarRunWriter(path, 1000)) {
+            SampleSink sink = run.newSink();
+            sink.open(schema);
+            SampleBuffer buffer = new SampleBuffer(schema);
+            for (long tick = 1; tick <= 800; tick++) {
+                buffer.reset(tick, start + tick * 1000);
+                if (tick <= 10) addProcess(buffer, "10", tick == 10 ? "exited" : "alive", tick);
+                if (tick <= 3 || (tick >= 700 && tick <= 710)) addProcess(buffer, "11", "alive", tick);
+                addProcess(buffer, "12", "alive", tick);
+                sink.write(buffer);
+            }
+            sink.close();
+        }
+
+        try (ColumnarRunReader reader = ColumnarRunReader.open(path)) {
+            assertEquals("pid,command,cpu_ms", reader.schema("proc-tree").header());
+            assertEquals(List.of(List.of("10", "bwa"), List.of("11", "bwa"), List.of("12", "bwa")),
+                    reader.entities("proc-tree"));
+            double[] exited = reader.values(reader.series("proc-tree", List.of("10", "bwa"), 0), 1, 11);
+            assertEquals(10.0, exited[9]);
+            assertTrue(Double.isNaN(exited[10]));
+            double[] back = reader.values(reader.series("proc-tree", List.of("11", "bwa"), 0), 1, 800);
+            assertEquals(3.0, back[2]);
+            assertTrue(Double.isNaN(back[3]));
+            assertEquals(700.0, back[699]);
+
+            Path out = tmp.resolve("run1.proc-tree.out");
+            reader.export("proc-tree", new TextSampleSink(out.toString()));
+            List<String> lines = Files.readAllLines(out);
+            assertEquals(1 + 10 + 3 + 11 + 800, lines.size());
+            assertTrue(lines.get(lines.size() - 1).startsWith("800,"));
+            assertTrue(lines.get(lines.size() - 1).endsWith(",12,bwa,800"));
+        }
+    }
+
+    private static void addProcess(SampleBuffer buffer, String pid, String state, long cpuMs) {
+        int row = buffer.addRow();
+        buffer.setLabel(row, 0, pid);
+        buffer.setLabel(row, 1, "bwa");
+        buffer.setLabel(row, 2, state);
+        buffer.setValue(row, 0, cpuMs);
+    }
+}
@@ -1,11 +1,28 @@
 package com.github.oogasawa.benchmark;
 
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.List;
+import java.util.Map;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import static org.junit.jupiter.api.Assertions.*;
 import com.github.oogasawa.benchmark.cuda.GpuUsageFormatter;
+import com.github.oogasawa.benchmark.cuda.Resampling;
+import com.github.oogasawa.benchmark.metric.MetricSchema;
+import com.github.oogasawa.benchmark.metric.SampleBuffer;
+import com.github.oogasawa.benchmark.metric.SampleSink;
+import com.github.oogasawa.benchmark.store.ColumnarRunWriter;
+import com.github.oogasawa.benchmark.util.TimeWindow;
+import tech.tablesaw.api.Table;
 
 class GpuUsageFormatterTest {
 
+    @TempDir
+    Path tmp;
+
     @Test
     void testNormalizeColumnName() {
         assertEquals("utilization.gpu", GpuUsageFormatter.normalizeColumnName("utilization.gpu [%]"));
@@ -16,4 +33,148 @@ class GpuUsageFormatterTest {
         assertEquals("timestamp", GpuUsageFormatter.normalizeColumnName("timestamp"));
         assertEquals("abc.def", GpuUsageFormatter.normalizeColumnName("abc..def"));  // ドット連続圧縮
     }
+
+    @Test
+    void testPivotKeepsFirstSampleOfEachSecond() throws Exception {
+        // The expected output is what the Tablesaw pivot gives for this log.
+        Path log = tmp.resolve("run1.nvidia-smi.out");
+        Files.write(log, List.of(
+                "tick,timestamp,index,utilization.gpu [%],memory.used [MiB]",
+                "1,2025/07/04 22:57:22.144,10,,1",
+                "1,2025/07/04 22:57:22.144,2,3,1",
+                "2,2025/07/04 22:57:22.644,10,5,1",
+                "2,2025/07/04 22:57:22.644,2,4,1",
+                "3,2025/07/04 22:57:23.144,1,9.5,1",
+                "3,2025/07/04 22:57:23.144,2,,1",
+                "4,2025/07/04 22:57:24.144,2,,1"));
+        Path out = tmp.resolve("run1.nvidia-smi.csv");
+        Table table = GpuUsageFormatter.gpuUsage(log, out, TimeWindow.ALL);
+        assertEquals(List.of("timestamp_clean", "GPU1", "GPU10", "GPU2"), table.columnNames());
+        assertEquals(List.of(
+                "timestamp_clean,GPU1,GPU10,GPU2",
+                "2025-07-04 22:57:22,,,3.0",
+                "2025-07-04 22:57:23,9.5,,",
+                "2025-07-04 22:57:24,,,"), Files.readAllLines(out));
+    }
+
+    @Test
+    void testPivotSortsRowsOutOfOrder() throws Exception {
+        Path log = tmp.resolve("run1.nvidia-smi.out");
+        Files.write(log, List.of(
+                "timestamp, index, utilization.gpu [%]",
+                "2025/07/04 22:57:25.144, 0, 5",
+                "2025/07/04 22:57:22.144, 0, 3",
+                "2025/07/04 22:57:23.144, 0, 4",
+                "2025/07/04 22:57:22.544, 0, 9"));
+        Table table = GpuUsageFormatter.pivotGpuMetric(log, "utilization.gpu");
+        assertEquals(List.of("2025-07-04 22:57:22", "2025-07-04 22:57:23", "2025-07-04 22:57:25"),
+                table.stringColumn("timestamp_clean").asList());
+        assertEquals(List.of(3.0, 4.0, 5.0), table.doubleColumn("GPU0").asList());
+    }
+
+    @Test
+    void testAllMetricsInOnePass() throws Exception {
+        Path log = tmp.resolve("run1.nvidia-smi.out");
+        Files.write(log, List.of(
+                "timestamp, index, utilization.gpu [%], memory.used [MiB], power.draw [W]",
+                "2025/07/04 22:57:22.144, 0, 10, 100, 281.35",
+                "2025/07/04 22:57:22.146, 1, 20, 200, 265.10",
+                "2025/07/04 22:57:23.144, 1, 30, 300, 270.00"));
+
+        Map<String, Path> outfiles = GpuUsageFormatter.gpuAll(log, List.of(), TimeWindow.ALL, Resampling.DEFAULT, tmp);
+        assertEquals(List.of("utilization.gpu", "memory.used", "power.draw"), List.copyOf(outfiles.keySet()));
+        for (Map.Entry<String, Path> entry : outfiles.entrySet()) {
+            Path single = tmp.resolve(entry.getKey() + ".csv");
+            GpuUsageFormatter.pivotGpuMetric(log, entry.getKey()).write().csv(single.toFile());
+            assertEquals(Files.readAllLines(single), Files.readAllLines(entry.getValue()));
+        }
+        assertEquals(tmp.resolve("run1.nvidia-smi.power.draw.csv"), outfiles.get("power.draw"));
+        assertEquals("2025-07-04 22:57:22,281.35,265.1", Files.readAllLines(outfiles.get("power.draw")).get(1));
+
+        // A pivoted table is read back as it is.
+        assertTrue(GpuUsageFormatter.isPivoted(outfiles.get("memory.used")));
+        Table table = GpuUsageFormatter.pivotGpuMetric(outfiles.get("memory.used"), "memory.used");
+        assertEquals(100.0, table.doubleColumn("GPU0").getDouble(0));
+        assertTrue(table.doubleColumn("GPU0").isMissing(1));
+
+        Path combined = tmp.resolve("run1.nvidia-smi.all.csv");
+        GpuUsageFormatter.gpuAllCombined(log, List.of("utilization.gpu", "memory.used"), TimeWindow.ALL,
+                Resampling.DEFAULT, combined);
+        assertEquals(List.of(
+                "timestamp_clean,gpu,utilization.gpu,memory.used",
+                "2025-07-04 22:57:22,GPU0,10.0,100.0",
+                "2025-07-04 22:57:22,GPU1,20.0,200.0",
+                "2025-07-04 22:57:23,GPU1,30.0,300.0"), Files.readAllLines(combined));
+    }
+
+    @Test
+    void testResampling() throws Exception {
+        // Two samples a second, then a gap of four seconds.
+        Path log = tmp.resolve("run1.nvidia-smi.out");
+        Files.write(log, List.of(
+                "timestamp, index, utilization.gpu [%]",
+                "2025/07/04 22:57:20.100, 0, 10",
+                "2025/07/04 22:57:20.600, 0, 30",
+                "2025/07/04 22:57:21.100, 0, 20",
+                "2025/07/04 22:57:21.600, 0, 100",
+                "2025/07/04 22:57:26.100, 0, 40",
+                "2025/07/04 22:57:26.600, 0, 50"));
+
+        Table mean = GpuUsageFormatter.pivotGpuMetric(log, "utilization.gpu", TimeWindow.ALL,
+                Resampling.parse("2s", "mean", null));
+        assertEquals(List.of("2025-07-04 22:57:20", "2025-07-04 22:57:26"), mean.stringColumn("timestamp_clean").asList());
+        assertEquals(List.of(40.0, 45.0), mean.doubleColumn("GPU0").asList());
+
+        Table p95 = GpuUsageFormatter.pivotGpuMetric(log, "utilization.gpu", TimeWindow.ALL,
+                Resampling.parse("2s", "p95", "previous"));
+        assertEquals(List.of("2025-07-04 22:57:20", "2025-07-04 22:57:22", "2025-07-04 22:57:24", "2025-07-04 22:57:26"),
+                p95.stringColumn("timestamp_clean").asList());
+        assertEquals(List.of(100.0, 100.0, 100.0, 50.0), p95.doubleColumn("GPU0").asList());
+
+        Table empty = GpuUsageFormatter.pivotGpuMetric(log, "utilization.gpu", TimeWindow.ALL,
+                Resampling.parse("2s", "min", "empty"));
+        assertEquals(4, empty.rowCount());
+        assertEquals(10.0, empty.doubleColumn("GPU0").getDouble(0));
+        assertTrue(empty.doubleColumn("GPU0").isMissing(1));
+
+        assertThrows(IllegalArgumentException.class, () -> Resampling.parse("1500ms", null, null));
+    }
+
+    @Test
+    void testRunFileTicksWithoutSnapshot() throws Exception {
+        // Ticks every 500 ms; nvidia-smi printed nothing new on ticks 2 and 3, and only GPU 0 on tick 4.
+        MetricSchema schema = new NvidiaSmiGpuSource(500).getSchema();
+        Path run = tmp.resolve("run1.run");
+        long start = LocalDateTime.of(2025, 7, 4, 22, 57, 22).atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        try (ColumnarRunWriter writer = new ColumnarRunWriter(run, 500)) {
+            SampleSink sink = writer.newSink();
+            sink.open(schema);
+            SampleBuffer buffer = new SampleBuffer(schema);
+            double[][] utilization = { { 10, 20 }, null, null, { 30, Double.NaN }, { 40, 50 } };
+            for (int t = 0; t < utilization.length; t++) {
+                buffer.reset(t + 1, start + t * 500L);
+                for (int gpu = 0; utilization[t] != null && gpu < 2; gpu++) {
+                    if (Double.isNaN(utilization[t][gpu])) continue;
+                    int row = buffer.addRow();
+                    buffer.setLabel(row, 0, String.valueOf(gpu));
+                    for (int m = 0; m < schema.getMetrics().size(); m++) {
+                        buffer.setValue(row, m, m == 0 ? utilization[t][gpu] : Double.NaN);
+                    }
+                    buffer.setValue(row, 3, 46068);   // memory.total
+                }
+                sink.write(buffer);
+            }
+        }
+
+        Table table = GpuUsageFormatter.pivotGpuMetric(run, "utilization.gpu", TimeWindow.ALL);
+        assertEquals(List.of("2025-07-04 22:57:22", "2025-07-04 22:57:23", "2025-07-04 22:57:24"),
+                table.stringColumn("timestamp_clean").asList());
+        assertEquals(List.of(10.0, 30.0, 40.0), table.doubleColumn("GPU0").asList());
+        assertEquals(20.0, table.doubleColumn("GPU1").getDouble(0));
+        assertTrue(table.doubleColumn("GPU1").isMissing(1));
+
+        Table max = GpuUsageFormatter.pivotGpuMetric(run, "utilization.gpu", TimeWindow.ALL,
+                Resampling.parse("2s", "max", null));
+        assertEquals(List.of(30.0, 40.0), max.doubleColumn("GPU0").asList());
+    }
 }
@@ -0,0 +1,53 @@
+package com.github.oogasawa.benchmark;
+
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+import com.github.oogasawa.benchmark.metric.KllSketch;
+import com.github.oogasawa.benchmark.metric.QuantileRecorder;
+
+class KllSketchTest {
+
+    @TempDir
+    Path tmp;
+
+    @Test
+    void testAccuracyMergeAndFile() throws Exception {
+        // Two "nodes" see the shuffled values 0..99999 between them.
+        int n = 100_000;
+        int[] values = new int[n];
+        for (int i = 0; i < n; i++) values[i] = i;
+        Random random = new Random(42);
+        for (int i = n - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int t = values[i];
+            values[i] = values[j];
+            values[j] = t;
+        }
+        KllSketch a = new KllSketch();
+        KllSketch b = new KllSketch();
+        for (int i = 0; i < n; i++) {
+            (i % 3 == 0 ? a : b).update(values[i]);
+        }
+        b.update(Double.NaN);
+
+        Map<QuantileRecorder.Key, KllSketch> sketches = new LinkedHashMap<>();
+        QuantileRecorder.Key key = new QuantileRecorder.Key("nvidia-smi", "0", "utilization.gpu");
+        QuantileRecorder.merge(sketches, Map.of(key, a));
+        QuantileRecorder.merge(sketches, Map.of(key, b));
+        Path file = tmp.resolve("run1.quantiles");
+        QuantileRecorder.write(file, sketches);
+
+        KllSketch merged = QuantileRecorder.read(file).get(key);
+        assertEquals(n, merged.count());
+        assertEquals(0.0, merged.min());
+        assertEquals(n - 1.0, merged.max());
+        for (double q : new double[] { 0.5, 0.95, 0.99 }) {
+            assertEquals(q * n, merged.quantile(q), 0.02 * n, "q=" + q);
+        }
+    }
+}
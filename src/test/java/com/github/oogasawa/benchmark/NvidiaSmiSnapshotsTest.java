@@ -0,0 +1,64 @@
+package com.github.oogasawa.benchmark;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+import com.github.oogasawa.benchmark.metric.SampleBuffer;
+import com.github.oogasawa.benchmark.metric.TextSampleSink;
+
+class NvidiaSmiSnapshotsTest {
+
+    @TempDir
+    Path tmp;
+
+    @Test
+    void testEachSnapshotIsTakenOnce() throws Exception {
+        NvidiaSmiSnapshots snapshots = new NvidiaSmiSnapshots(3, NvidiaSmiSnapshots.onRepeat(1), 60_000);
+        snapshots.accept("2025/07/05 15:01:02.123, 0, 56");
+        snapshots.accept("2025/07/05 15:01:02.125, 1, 42");
+        Thread.sleep(100);   // quiet: the snapshot is complete
+
+        List<String[]> first = snapshots.takeLatest();
+        assertEquals(2, first.size());
+        assertEquals("42", first.get(1)[2]);
+        // Ticks until the next snapshot is complete get nothing; latest() still has it.
+        assertEquals(0, snapshots.takeLatest().size());
+        assertEquals(2, snapshots.latest().size());
+
+        snapshots.accept("2025/07/05 15:01:03.123, 0, 60");
+        snapshots.accept("2025/07/05 15:01:03.125, 1, 48");
+        Thread.sleep(100);
+        assertEquals("60", snapshots.takeLatest().get(0)[2]);
+    }
+
+    @Test
+    void testLastFieldKeepsCommas() throws Exception {
+        NvidiaSmiSnapshots snapshots = new NvidiaSmiSnapshots(4, NvidiaSmiSnapshots.onChange(0), 60_000);
+        snapshots.accept("2025/07/05 15:01:02.123, 4242, 25037, python3 train.py --gpus 0,1");
+        snapshots.accept("No running processes found");
+        Thread.sleep(100);
+
+        List<String[]> rows = snapshots.latest();
+        assertEquals(1, rows.size());
+        assertEquals("25037", rows.get(0)[2]);
+        assertEquals("python3 train.py --gpus 0,1", rows.get(0)[3]);
+
+        // The written row keeps one column per header field.
+        Path output = tmp.resolve("run1.gpu-process.out");
+        GpuProcessMonitor monitor = new GpuProcessMonitor(1000);
+        TextSampleSink sink = new TextSampleSink(output.toString());
+        sink.open(monitor.getSchema());
+        SampleBuffer buffer = new SampleBuffer(monitor.getSchema());
+        buffer.reset(1, 1751695262123L);
+        GpuProcessMonitor.addRows(rows, buffer);
+        sink.write(buffer);
+        sink.close();
+        assertEquals(List.of(
+                "tick,timestamp,pid,process_name,used_memory [MiB]",
+                "1," + TextSampleSink.formatTimestamp(1751695262123L) + ",4242,python3 train.py --gpus 0 1,25037"),
+                Files.readAllLines(output));
+    }
+}
@@ -0,0 +1,134 @@
+package com.github.oogasawa.benchmark;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.regex.Pattern;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+import com.github.oogasawa.benchmark.metric.MetricSource;
+import com.github.oogasawa.benchmark.metric.ReplayNvidiaSmiSource;
+import com.github.oogasawa.benchmark.metric.SampleBuffer;
+import com.github.oogasawa.benchmark.proc.CpuStatSampler;
+import com.github.oogasawa.benchmark.proc.DiskStatsSampler;
+import com.github.oogasawa.benchmark.proc.NetDevSampler;
+import com.github.oogasawa.benchmark.proc.ProcFs;
+import com.github.oogasawa.benchmark.proc.ProcReplayClock;
+
+class ReplayTest {
+
+    private static final String NET_DEV_HEADER =
+            "Inter-|   Receive                                                |  Transmit\n"
+            + " face |bytes    packets errs drop fifo frame compressed multicast|bytes    packets errs drop fifo colls carrier compressed\n";
+
+    @TempDir
+    Path tmp;
+
+    @Test
+    void testProcReplay() throws Exception {
+        writeSnapshot(0,
+                "cpu  100 0 100 800 0 0 0 0 0 0\ncpu0 50 0 50 400 0 0 0 0 0 0\ncpu1 50 0 50 400 0 0 0 0 0 0\nintr 0\n",
+                "   8       0 sda 100 0 2000 50 200 0 4000 100 0 150 150\n",
+                "    lo:  1000 10 0 0 0 0 0 0  1000 10 0 0 0 0 0 0\n  eth0: 10000 100 0 0 0 0 0 0 20000 200 0 0 0 0 0 0\n");
+        writeSnapshot(1,
+                "cpu  200 0 150 850 0 0 0 0 0 0\ncpu0 150 0 50 400 0 0 0 0 0 0\ncpu1 50 0 100 450 0 0 0 0 0 0\nintr 0\n",
+                "   8       0 sda 200 0 4000 100 300 0 6000 200 0 650 400\n",
+                "    lo:  1000 10 0 0 0 0 0 0  1000 10 0 0 0 0 0 0\n  eth0: 30000 300 0 0 0 0 0 0 60000 600 0 0 0 0 0 0\n");
+        Files.writeString(tmp.resolve("index.csv"),
+                "tick,epoch_millis,elapsed_nanos\n0,1751695262000,0\n1,1751695263000,1000000000\n");
+
+        ProcFs fs = ProcFs.replay(tmp);
+        assertEquals(1000, fs.recordedIntervalMillis());
+        ProcReplayClock clock = new ProcReplayClock(fs);
+        MetricSource cpu = new CpuStatSampler(fs);
+        MetricSource disk = new DiskStatsSampler(fs, List.of());
+        MetricSource net = new NetDevSampler(fs, null, Pattern.compile("lo"));
+        for (MetricSource source : List.of(cpu, disk, net)) {
+            source.open();
+        }
+
+        clock.onTick(1, System.currentTimeMillis());
+        assertFalse(clock.isFinished());
+
+        SampleBuffer buffer = sample(cpu, 1);
+        assertEquals(3, buffer.getRows());
+        assertEquals("all", buffer.getLabel(0, 0));
+        assertEquals(1751695263000L, buffer.getEpochMillis());   // the recorded time
+        assertEquals(50.0, buffer.getValue(0, 0), 1e-9);            // user
+        assertEquals(25.0, buffer.getValue(0, 1), 1e-9);            // sys
+        assertEquals(25.0, buffer.getValue(0, 5), 1e-9);            // idle
+        assertEquals(100.0, buffer.getValue(1, 0), 1e-9);           // cpu0 user
+
+        buffer = sample(disk, 1);
+        assertEquals(1, buffer.getRows());
+        assertEquals("sda", buffer.getLabel(0, 0));
+        double[] expected = {100, 100, 1000, 1000, 0.75, 0.25, 50};   // r/s .. %util over the recorded second
+        for (int m = 0; m < expected.length; m++) {
+            assertEquals(expected[m], buffer.getValue(0, m), 1e-9);
+        }
+
+        buffer = sample(net, 1);
+        assertEquals(1, buffer.getRows());
+        assertEquals("eth0", buffer.getLabel(0, 0));
+        assertEquals(20000.0, buffer.getValue(0, 0), 1e-9);         // rx_bytes/s
+        assertEquals(40000.0, buffer.getValue(0, 4), 1e-9);         // tx_bytes/s
+
+        clock.onTick(2, System.currentTimeMillis());
+        assertTrue(clock.isFinished());
+        assertEquals(0, sample(cpu, 2).getRows());
+
+        for (MetricSource source : List.of(cpu, disk, net)) {
+            source.close();
+        }
+    }
+
+    @Test
+    void testNvidiaSmiReplay() throws Exception {
+        Path log = tmp.resolve("run1.nvidia-smi.out");
+        Files.writeString(log, """
+                [nvidia-smi] Monitoring started at 2025-07-05T15:01:02, interval: 1s
+                timestamp, index, utilization.gpu [%], memory.used [MiB], power.draw [W], fan.speed [%]
+                2025/07/05 15:01:02.123, 0, 56 %, 25037 MiB, 281.35 W, [N/A]
+                2025/07/05 15:01:02.125, 1, 42 %, 24870 MiB, 265.10 W, [N/A]
+                2025/07/05 15:01:03.123, 0, 60 %, 25100 MiB, 290.00 W, [N/A]
+                2025/07/05 15:01:03.126, 1, 48 %, 24900 MiB, 270.00 W, [N/A]
+                """);
+
+        ReplayNvidiaSmiSource source = new ReplayNvidiaSmiSource(log);
+        source.open();
+        assertEquals("index,utilization.gpu [%],memory.used [MiB],power.draw [W],fan.speed [%]",
+                source.getSchema().header());
+        assertTrue(source.getSchema().getMetrics().get(0).integral());
+        assertFalse(source.getSchema().getMetrics().get(2).integral());
+        assertEquals(1000, source.recordedIntervalMillis());
+
+        SampleBuffer buffer = sample(source, 1);
+        assertEquals(2, buffer.getRows());
+        assertEquals("1", buffer.getLabel(1, 0));
+        assertEquals(42.0, buffer.getValue(1, 0));
+        assertEquals(265.10, buffer.getValue(1, 2), 1e-9);
+        assertTrue(Double.isNaN(buffer.getValue(1, 3)));
+
+        buffer = sample(source, 2);
+        assertEquals(60.0, buffer.getValue(0, 0));
+        assertTrue(source.isFinished());
+        assertEquals(0, sample(source, 3).getRows());
+    }
+
+    private static SampleBuffer sample(MetricSource source, long tick) throws Exception {
+        SampleBuffer buffer = new SampleBuffer(source.getSchema());
+        buffer.reset(tick, System.currentTimeMillis());
+        source.sample(buffer);
+        return buffer;
+    }
+
+    private void writeSnapshot(int tick, String stat, String diskstats, String netdev) throws Exception {
+        Path dir = tmp.resolve(String.format("%08d", tick));
+        Files.createDirectories(dir.resolve("net"));
+        Files.writeString(dir.resolve("stat"), stat);
+        Files.writeString(dir.resolve("diskstats"), diskstats);
+        Files.writeString(dir.resolve("net/dev"), NET_DEV_HEADER + netdev);
+        Files.writeString(dir.resolve("meminfo"), "MemTotal:       16000 kB\n");
+    }
+}
@@ -0,0 +1,96 @@
+package com.github.oogasawa.benchmark;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+import com.github.oogasawa.benchmark.metric.MetricSchema;
+import com.github.oogasawa.benchmark.metric.RollupReader;
+import com.github.oogasawa.benchmark.metric.RollupSink;
+import com.github.oogasawa.benchmark.metric.SampleBuffer;
+import com.github.oogasawa.benchmark.metric.TextSampleSink;
+import com.github.oogasawa.benchmark.util.TimeWindow;
+
+class RollupSinkTest {
+
+    private static final MetricSchema SCHEMA = new MetricSchema("nvidia-smi", List.of("index"),
+            MetricSchema.metrics(true, "utilization.gpu"));
+
+    @TempDir
+    Path tmp;
+
+    @Test
+    void testTiersAndSelection() throws Exception {
+        Path output = tmp.resolve("run1.nvidia-smi.out");
+        // Two GPUs sampled every second for an hour; GPU0 counts 0..9 in every 10 s bucket.
+        RollupSink sink = new RollupSink(new TextSampleSink(output.toString()), output.toString(), false);
+        sink.open(SCHEMA);
+        SampleBuffer buffer = new SampleBuffer(SCHEMA);
+        for (long tick = 1; tick <= 3600; tick++) {
+            buffer.reset(tick, 1751695262000L + (tick - 1) * 1000);
+            for (int gpu = 0; gpu < 2; gpu++) {
+                int row = buffer.addRow();
+                buffer.setLabel(row, 0, String.valueOf(gpu));
+                buffer.setValue(row, 0, gpu == 0 ? (tick - 1) % 10 : Double.NaN);
+            }
+            sink.write(buffer);
+        }
+        sink.close();
+
+        List<RollupReader.Bucket> buckets = new ArrayList<>();
+        RollupReader.read(Path.of(RollupSink.tierPath(output.toString(), 10_000)), TimeWindow.ALL,
+                "utilization.gpu", buckets::add);
+        assertEquals(360, buckets.size());   // GPU1 has no values
+        RollupReader.Bucket first = buckets.get(0);
+        assertEquals(List.of("0"), first.labels());
+        assertEquals(10, first.count());
+        assertEquals(0.0, first.min());
+        assertEquals(4.5, first.mean(), 0.01);
+        assertEquals(9.0, first.max());
+        assertEquals(9.0, first.p95());
+        assertEquals(10_000, buckets.get(1).epochMillis() - first.epochMillis());
+
+        // An hour has 360 buckets of 10 s, 60 of 1 min and 6 of 10 min.
+        assertEquals("run1.nvidia-smi.rollup-10m.out", RollupReader.select(output, TimeWindow.ALL, 6).getFileName().toString());
+        assertEquals("run1.nvidia-smi.rollup-1m.out", RollupReader.select(output, TimeWindow.ALL, 50).getFileName().toString());
+        assertEquals("run1.nvidia-smi.rollup-10s.out", RollupReader.select(output, TimeWindow.ALL, 300).getFileName().toString());
+        assertNull(RollupReader.select(output, TimeWindow.ALL, 800));
+        assertEquals("run1.nvidia-smi.rollup-10s.out",
+                RollupReader.select(output, TimeWindow.parse("0s", "20m"), 100).getFileName().toString());
+    }
+
+    @Test
+    void testCompressedTiersWithCommaInLabel() throws Exception {
+        MetricSchema schema = new MetricSchema("nvidia-smi-compute-apps", List.of("pid", "process_name"),
+                List.of(MetricSchema.integral("used_memory", "MiB")));
+        Path output = tmp.resolve("run1.nvidia-smi-compute-apps.out");
+        RollupSink sink = new RollupSink(new TextSampleSink(output.toString()), output.toString(), true);
+        sink.open(schema);
+        SampleBuffer buffer = new SampleBuffer(schema);
+        for (long tick = 1; tick <= 600; tick++) {
+            buffer.reset(tick, 1751695262000L + (tick - 1) * 1000);
+            int row = buffer.addRow();
+            buffer.setLabel(row, 0, "4242");
+            buffer.setLabel(row, 1, "python3 train.py --gpus 0,1");
+            buffer.setValue(row, 0, 1024);
+            sink.write(buffer);
+        }
+        sink.close();
+
+        // Ten minutes have 60 buckets of 10 s and 10 of 1 min.
+        Path tier = RollupReader.select(output, TimeWindow.ALL, 20);
+        assertEquals("run1.nvidia-smi-compute-apps.rollup-10s.out", tier.getFileName().toString());
+        assertEquals("run1.nvidia-smi-compute-apps.rollup-1m.out",
+                RollupReader.select(output, TimeWindow.ALL, 10).getFileName().toString());
+        assertEquals("run1.nvidia-smi-compute-apps.rollup-10s.out",
+                RollupReader.select(output, TimeWindow.parse("5m", null), 30).getFileName().toString());
+
+        List<RollupReader.Bucket> buckets = new ArrayList<>();
+        RollupReader.read(tier, TimeWindow.ALL, "used_memory", buckets::add);
+        assertEquals(60, buckets.size());
+        assertEquals(List.of("4242", "python3 train.py --gpus 0,1"), buckets.get(0).labels());
+        assertEquals(1024.0, buckets.get(59).max());
+    }
+}
@@ -0,0 +1,72 @@
+package com.github.oogasawa.benchmark;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.regex.Pattern;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+import com.github.oogasawa.benchmark.store.RunCatalog;
+import com.github.oogasawa.benchmark.store.RunManifest;
+import com.github.oogasawa.benchmark.util.TimeWindow;
+
+class RunCatalogTest {
+
+    @TempDir
+    Path tmp;
+
+    @Test
+    void testQueryAndIncrementalUpdate() throws Exception {
+        Path a = manifest("2025-07-04/fq2bam-8gpu", "b200-03", "2025-07-04T10:00:00+09:00", 8, 0);
+        manifest("2025-07-05/fq2bam-8gpu", "b200-03", "2025-07-05T10:00:00+09:00", 8, 0);
+        manifest("2025-07-05/fq2bam-4gpu", "b200-03", "2025-07-05T12:00:00+09:00", 4, 0);
+        manifest("2025-07-06/fq2bam-8gpu", "b200-04", "2025-07-06T10:00:00+09:00", 8, 1);
+
+        List<RunCatalog.Entry> runs = RunCatalog.open(tmp).update();
+        assertEquals(4, runs.size());
+        assertTrue(Files.exists(tmp.resolve(RunCatalog.INDEX_FILE)));
+
+        RunCatalog.Query query = new RunCatalog.Query(Pattern.compile("fq2bam"), Pattern.compile("b200-03"),
+                null, null, 8, null, null, null);
+        List<RunCatalog.Entry> last = RunCatalog.select(runs, query, 1);
+        assertEquals(1, last.size());
+        assertEquals(Path.of("2025-07-05", "fq2bam-8gpu" + RunManifest.SUFFIX).toString(), last.get(0).manifest());
+        assertEquals(3600.0, last.get(0).wallSeconds());
+
+        String since = OffsetDateTime.parse("2025-07-06T09:00:00+09:00").atZoneSameInstant(ZoneId.systemDefault())
+                .format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"));
+        RunCatalog.Query failed = new RunCatalog.Query(null, null, TimeWindow.parse(since, null), 1, null,
+                RunManifest.FINISHED, 3000.0, null);
+        assertEquals(List.of("b200-04"), RunCatalog.select(runs, failed, 0).stream().map(RunCatalog.Entry::host).toList());
+
+        // An unchanged manifest is taken from the index and not parsed again.
+        FileTime modified = Files.getLastModifiedTime(a);
+        Files.writeString(a, "not: [a manifest");
+        Files.setLastModifiedTime(a, modified);
+        List<RunCatalog.Entry> reused = RunCatalog.open(tmp).update();
+        assertEquals(runs, reused);
+    }
+
+    private Path manifest(String basename, String host, String start, int gpus, int exitCode) throws Exception {
+        Path path = tmp.resolve(basename + RunManifest.SUFFIX);
+        Files.createDirectories(path.getParent());
+        String end = start.replace("T10:", "T11:").replace("T12:", "T13:");
+        Files.writeString(path, String.join("\n",
+                "basename: " + basename,
+                "command: [pbrun, fq2bam, --num-gpus, '" + gpus + "']",
+                "host: " + host,
+                "start: '" + start + "'",
+                "end: '" + end + "'",
+                "exit_code: " + exitCode,
+                "status: finished",
+                "gpu_count: " + gpus,
+                "gpu_model: NVIDIA B200",
+                ""));
+        return path;
+    }
+}
@@ -0,0 +1,107 @@
+package com.github.oogasawa.benchmark;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+import com.github.oogasawa.benchmark.metric.AsyncSampleWriter;
+import com.github.oogasawa.benchmark.metric.MetricSchema;
+import com.github.oogasawa.benchmark.metric.SampleBuffer;
+import com.github.oogasawa.benchmark.metric.SampleJournal;
+import com.github.oogasawa.benchmark.metric.SampleSink;
+import com.github.oogasawa.benchmark.metric.TextSampleSink;
+
+class SampleJournalTest {
+
+    private static final MetricSchema SCHEMA = new MetricSchema("nvidia-smi", List.of("index"),
+            List.of(MetricSchema.integral("utilization.gpu", "%"), MetricSchema.decimal("power.draw", "W")));
+
+    @TempDir
+    Path tmp;
+
+    @Test
+    void testRecoverInterruptedRun() throws Exception {
+        Path journalPath = tmp.resolve("run1.journal");
+        String output = tmp.resolve("run1.nvidia-smi.out").toString();
+        SampleJournal journal = new SampleJournal(journalPath, 60_000);
+        SampleSink sink = journal.wrap(new TextSampleSink(output), output);
+        sink.open(SCHEMA);
+        SampleBuffer buffer = new SampleBuffer(SCHEMA);
+        for (long tick = 1; tick <= 100; tick++) {
+            buffer.reset(tick, 1751695262000L + tick * 1000);
+            for (int gpu = 0; gpu < 2; gpu++) {
+                int row = buffer.addRow();
+                buffer.setLabel(row, 0, String.valueOf(gpu));
+                buffer.setValue(row, 0, tick % 100);
+                buffer.setValue(row, 1, gpu == 0 ? 281.35 : Double.NaN);
+            }
+            sink.write(buffer);
+        }
+
+        // The monitor dies here: the text output is still buffered, and the last record is torn.
+        Path crashed = tmp.resolve("crashed.journal");
+        Files.copy(journalPath, crashed);
+        Files.write(crashed, new byte[] { 0, 0, 1, 0, 1, 2, 3 }, StandardOpenOption.APPEND);
+        sink.close();
+        journal.close();
+        assertFalse(Files.exists(journalPath));
+
+        SampleJournal.Recovery recovery = SampleJournal.recover(crashed, tmp.resolve("recovered"));
+        assertEquals(100, recovery.samples());
+        assertEquals(7, recovery.discardedBytes());
+        assertEquals(List.of(tmp.resolve("recovered/run1.nvidia-smi.out")), recovery.outputs());
+        assertEquals(Files.readAllLines(Path.of(output)), Files.readAllLines(recovery.outputs().get(0)));
+    }
+
+    @Test
+    void testJournalIsKeptWhenTheOutputFails() throws Exception {
+        Path journalPath = tmp.resolve("run1.journal");
+        String output = tmp.resolve("run1.nvidia-smi.out").toString();
+        SampleJournal journal = new SampleJournal(journalPath, 60_000);
+        AsyncSampleWriter writer = new AsyncSampleWriter();
+        // An output whose disk fills up on the third tick, written as in a run.
+        SampleSink sink = writer.wrap(journal.wrap(new TextSampleSink(output) {
+            @Override
+            public void write(SampleBuffer buffer) throws IOException {
+                if (buffer.getTick() == 3) throw new IOException("No space left on device");
+                super.write(buffer);
+            }
+        }, output));
+        sink.open(SCHEMA);
+        SampleBuffer buffer = new SampleBuffer(SCHEMA);
+        for (long tick = 1; tick <= 5; tick++) {
+            buffer.reset(tick, 1751695262000L + tick * 1000);
+            int row = buffer.addRow();
+            buffer.setLabel(row, 0, "0");
+            buffer.setValue(row, 0, tick);
+            buffer.setValue(row, 1, 281.35);
+            sink.write(buffer);
+        }
+        sink.close();
+        writer.close();
+        journal.close();
+
+        // The output stopped at the failure; the journal has every tick and survives the close.
+        assertEquals(3, Files.readAllLines(Path.of(output)).size());
+        assertTrue(Files.exists(journalPath));
+        SampleJournal.Recovery recovery = SampleJournal.recover(journalPath, tmp.resolve("recovered"));
+        assertEquals(5, recovery.samples());
+        assertEquals(6, Files.readAllLines(recovery.outputs().get(0)).size());
+    }
+
+    @Test
+    void testJournalIsKeptWhenAnOutputIsNotClosed() throws Exception {
+        Path journalPath = tmp.resolve("run1.journal");
+        String output = tmp.resolve("run1.nvidia-smi.out").toString();
+        SampleJournal journal = new SampleJournal(journalPath, 60_000);
+        SampleSink sink = journal.wrap(new TextSampleSink(output), output);
+        sink.open(SCHEMA);
+        journal.close();   // the run failed before its outputs were closed
+        assertTrue(Files.exists(journalPath));
+        sink.close();
+    }
+}
@@ -0,0 +1,29 @@
+package com.github.oogasawa.benchmark;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+class SamplingIntervalTest {
+
+    @Test
+    void testParseMillis() {
+        assertEquals(10000, SamplingInterval.parseMillis("10"));    // bare number is seconds
+        assertEquals(500, SamplingInterval.parseMillis("0.5"));
+        assertEquals(1500, SamplingInterval.parseMillis("1.5s"));
+        assertEquals(250, SamplingInterval.parseMillis("250ms"));
+        assertEquals(250, SamplingInterval.parseMillis(" 250MS "));
+        assertThrows(IllegalArgumentException.class, () -> SamplingInterval.parseMillis("abc"));
+        assertThrows(IllegalArgumentException.class, () -> SamplingInterval.parseMillis("0"));
+    }
+
+    @Test
+    void testClampAndWholeSeconds() {
+        assertEquals(100, SamplingInterval.clamp(20, 100, "test"));
+        assertEquals(250, SamplingInterval.clamp(250, 100, "test"));
+        assertEquals(1, SamplingInterval.toWholeSeconds(250, "test"));
+        assertEquals(2, SamplingInterval.toWholeSeconds(1500, "test"));
+        assertEquals(5, SamplingInterval.toWholeSeconds(5000, "test"));
+        assertEquals("5 seconds", SamplingInterval.format(5000));
+        assertEquals("250 ms", SamplingInterval.format(250));
+    }
+}
@@ -0,0 +1,58 @@
+package com.github.oogasawa.benchmark;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+class SamplingSchedulerTest {
+
+    /** Records the ticks it was fired on. */
+    static class RecordingSampler implements Sampler {
+        final long minIntervalMillis;
+        final List<long[]> ticks = Collections.synchronizedList(new ArrayList<>());
+        boolean stopped = false;
+
+        RecordingSampler(long minIntervalMillis) {
+            this.minIntervalMillis = minIntervalMillis;
+        }
+
+        @Override public String getName() { return "recording"; }
+        @Override public long getMinIntervalMillis() { return minIntervalMillis; }
+        @Override public void start() { }
+        @Override public void onTick(long tick, long epochMillis) { ticks.add(new long[] {tick, epochMillis}); }
+        @Override public void stop() { stopped = true; }
+    }
+
+    @Test
+    void testSharedTicks() throws Exception {
+        SamplingScheduler scheduler = new SamplingScheduler(10);
+        RecordingSampler fast = new RecordingSampler(1);
+        RecordingSampler slow = new RecordingSampler(30);   // every 3rd tick
+        scheduler.register(fast);
+        scheduler.register(slow);
+
+        scheduler.start();
+        Thread.sleep(200);
+        scheduler.stop();
+
+        assertTrue(fast.stopped && slow.stopped);
+        assertFalse(fast.ticks.isEmpty());
+        assertFalse(slow.ticks.isEmpty());
+        for (long[] s : slow.ticks) {
+            assertEquals(0, s[0] % 3);
+            // The same tick id carries the same wall-clock stamp in every sampler.
+            long[] f = fast.ticks.stream().filter(t -> t[0] == s[0]).findFirst().orElseThrow();
+            assertEquals(f[1], s[1]);
+        }
+        for (int i = 1; i < fast.ticks.size(); i++) {
+            long[] prev = fast.ticks.get(i - 1);
+            long[] cur = fast.ticks.get(i);
+            assertTrue(cur[0] > prev[0]);
+            // Stamps lie on the fixed-rate grid.
+            assertEquals((cur[0] - prev[0]) * 10, cur[1] - prev[1], 1);
+        }
+        assertEquals(fast.ticks.get(fast.ticks.size() - 1)[0] - fast.ticks.size(), scheduler.getMissedTicks());
+    }
+}
@@ -0,0 +1,96 @@
+package com.github.oogasawa.benchmark;
+
+import java.io.BufferedReader;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+import com.github.oogasawa.benchmark.metric.MetricSchema;
+import com.github.oogasawa.benchmark.metric.SampleBuffer;
+import com.github.oogasawa.benchmark.metric.SegmentIndex;
+import com.github.oogasawa.benchmark.metric.SegmentedSampleSink;
+import com.github.oogasawa.benchmark.util.TimeWindow;
+
+class SegmentedSampleSinkTest {
+
+    private static final MetricSchema SCHEMA = new MetricSchema("cpu", List.of("cpu"),
+            MetricSchema.metrics(false, "user", "system"));
+
+    private static final long START = 1751695262000L;
+
+    @TempDir
+    Path tmp;
+
+    @Test
+    void testRotationAndWindow() throws Exception {
+        Path output = tmp.resolve("run1.cpu.out");
+        // One sample per second, one segment per minute, for ten minutes.
+        SegmentedSampleSink sink = new SegmentedSampleSink(output.toString(), false, 0, 60_000);
+        sink.open(SCHEMA);
+        SampleBuffer buffer = new SampleBuffer(SCHEMA);
+        for (long tick = 1; tick <= 600; tick++) {
+            buffer.reset(tick, START + (tick - 1) * 1000);
+            int row = buffer.addRow();
+            buffer.setLabel(row, 0, "all");
+            buffer.setValue(row, 0, tick);
+            buffer.setValue(row, 1, 1.0);
+            sink.write(buffer);
+        }
+        sink.close();
+
+        List<SegmentIndex.Segment> segments = SegmentIndex.read(output);
+        assertEquals(10, segments.size());
+        assertEquals("run1.cpu.0001.out", segments.get(0).file());
+        assertEquals(1, segments.get(0).firstTick());
+        assertEquals(60, segments.get(0).lastTick());
+        assertEquals(600, segments.get(9).lastTick());
+
+        // Minutes 3 to 4 lie in the fourth and fifth segments.
+        List<String> rows = new ArrayList<>();
+        try (BufferedReader in = SegmentIndex.openWindow(output, TimeWindow.parse("3m", "4m"))) {
+            assertEquals("tick,timestamp," + SCHEMA.header(), in.readLine());
+            String line;
+            while ((line = in.readLine()) != null) rows.add(line);
+        }
+        assertEquals(61, rows.size());
+        assertTrue(rows.get(0).startsWith("181,"));
+        assertTrue(rows.get(60).startsWith("241,"));
+    }
+
+    @Test
+    void testReadsSegmentBeingWritten() throws Exception {
+        Path output = tmp.resolve("run1.cpu.out");
+        SegmentedSampleSink sink = new SegmentedSampleSink(output.toString(), false, 0, 60_000);
+        sink.open(SCHEMA);
+        SampleBuffer buffer = new SampleBuffer(SCHEMA);
+        for (long tick = 1; tick <= 90; tick++) {
+            buffer.reset(tick, START + (tick - 1) * 1000);
+            int row = buffer.addRow();
+            buffer.setLabel(row, 0, "all");
+            buffer.setValue(row, 0, tick);
+            buffer.setValue(row, 1, 1.0);
+            sink.write(buffer);
+        }
+        sink.flush();
+
+        // The second segment is open and not indexed yet, but its rows are read.
+        assertEquals(-1, SegmentIndex.read(output).get(1).firstEpochMillis());
+        assertEquals(90, readRows(output, TimeWindow.ALL).size());
+        List<String> rows = readRows(output, TimeWindow.parse("70s", null));
+        assertEquals(20, rows.size());
+        assertTrue(rows.get(0).startsWith("71,"));
+        sink.close();
+    }
+
+    private static List<String> readRows(Path output, TimeWindow window) throws Exception {
+        List<String> rows = new ArrayList<>();
+        try (BufferedReader in = SegmentIndex.openWindow(output, window)) {
+            in.readLine();
+            String line;
+            while ((line = in.readLine()) != null) rows.add(line);
+        }
+        return rows;
+    }
+}
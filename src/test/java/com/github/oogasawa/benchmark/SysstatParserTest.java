@@ -0,0 +1,130 @@
+package com.github.oogasawa.benchmark;
+
+import java.io.BufferedReader;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+import com.github.oogasawa.benchmark.metric.TextSampleSink;
+import com.github.oogasawa.benchmark.metric.WideCsvSink;
+import com.github.oogasawa.benchmark.sysstat.SysstatParser;
+
+class SysstatParserTest {
+
+    @TempDir
+    Path tmp;
+
+    @Test
+    void testMpstatAcrossMidnight() throws Exception {
+        String mpstat = String.join("\n",
+                "[mpstat] Monitoring started at 2025-07-05T23:59:58.123456, interval: 1 seconds",
+                "Linux 5.15.0-91-generic (b200-03) \t07/05/2025 \t_x86_64_\t(2 CPU)",
+                "",
+                "11:59:58 PM  CPU    %usr   %nice    %sys   %idle",
+                "11:59:59 PM  all    1.00    0.00    0.50   98.50",
+                "11:59:59 PM    0    2.00    0.00    1.00   97.00",
+                "",
+                "11:59:59 PM  CPU    %usr   %nice    %sys   %idle",
+                "12:00:00 AM  all    3,00    0,00    0,50   96,50",
+                "12:00:00 AM    0    4.00    0.00    1.00   95.00",
+                "12:00:00 AM    1    2.00    0.00    0.00   98.00",
+                "",
+                "Average:     CPU    %usr   %nice    %sys   %idle",
+                "Average:     all    2.00    0.00    0.50   97.50",
+                "");
+        Path wide = tmp.resolve("run1.mpstat.usr.csv");
+        SysstatParser parser = SysstatParser.forFile(Path.of("run1.mpstat.out.gz"));
+        assertEquals(2, parser.parse(new BufferedReader(new StringReader(mpstat)), new WideCsvSink(wide.toString(), "%usr")));
+        assertEquals(1000, parser.getIntervalMillis());
+
+        // CPU 1 first appears in the second report; the first row is padded.
+        assertEquals(List.of(
+                "timestamp,all,0,1",
+                "2025/07/05 23:59:59.000,1.00,2.00,",
+                "2025/07/06 00:00:00.000,3.00,4.00,2.00"), Files.readAllLines(wide));
+        assertFalse(Files.exists(tmp.resolve("run1.mpstat.usr.csv.body")));
+    }
+
+    @Test
+    void testIostatTimeLinesKeepTheirDate() throws Exception {
+        // The recording started on July 5th, but the reports were printed on the 6th and 7th.
+        String iostat = String.join("\n",
+                "[iostat] Monitoring started at 2025-07-05T23:59:58.123456, interval: 1 seconds",
+                "Linux 5.15.0-91-generic (b200-03) \t07/05/2025 \t_x86_64_\t(2 CPU)",
+                "",
+                "07/05/2025 11:59:58 PM",
+                "Device            r/s     w/s   %util",
+                "nvme0n1         99.00   99.00    9.00",
+                "",
+                "07/06/2025 11:59:59 PM",
+                "Device            r/s     w/s   %util",
+                "nvme0n1         12.00    3.00    0.80",
+                "",
+                "07/07/2025 12:00:00 AM",
+                "Device            r/s     w/s   %util",
+                "nvme0n1         10.00    2.00    0.70",
+                "");
+        Path out = tmp.resolve("run1.iostat.csv");
+        assertEquals(2, SysstatParser.forTool("iostat").parse(new BufferedReader(new StringReader(iostat)),
+                new TextSampleSink(out.toString())));
+        List<String> lines = Files.readAllLines(out);
+        assertEquals(List.of(
+                "tick,timestamp,device,r/s,w/s,%util",
+                "1,2025/07/06 23:59:59.000,nvme0n1,12.00,3.00,0.80",
+                "2,2025/07/07 00:00:00.000,nvme0n1,10.00,2.00,0.70"), lines);
+    }
+
+    @Test
+    void testPidstatSkipsProgramOutput() throws Exception {
+        String pidstat = String.join("\n",
+                "Linux 5.15.0-91-generic (b200-03) \t07/05/2025 \t_x86_64_\t(2 CPU)",
+                "hello from the monitored program",
+                "",
+                "#      Time   UID      TGID       TID    %usr   %CPU     RSS  Command",
+                " 1751695263     0     12345         -   98.00  100.00   2048  pbrun",
+                " 1751695263     0         -     12346   98.00  100.00   2048  |__pbrun",
+                "42 lines processed",
+                "#      Time   UID      TGID       TID    %usr   %CPU     RSS  Command",
+                " 1751695264     0     12350         -    1.00    1.00    100  python3 my script",
+                "");
+        Path out = tmp.resolve("run1.pidstat.csv");
+        assertEquals(2, SysstatParser.forTool("pidstat").parse(new BufferedReader(new StringReader(pidstat)),
+                new TextSampleSink(out.toString())));
+        List<String> lines = Files.readAllLines(out);
+        assertEquals("tick,timestamp,UID,TGID,TID,Command,%usr,%CPU,RSS", lines.get(0));
+        assertEquals(4, lines.size());
+        assertTrue(lines.get(2).endsWith(",0,-,12346,|__pbrun,98.00,100.00,2048.00"));
+        assertTrue(lines.get(3).startsWith("2," + TextSampleSink.formatTimestamp(1751695264000L) + ","));
+        assertTrue(lines.get(3).endsWith(",0,12350,-,python3 my script,1.00,1.00,100.00"));
+    }
+
+    @Test
+    void testFreeRawAndCsvAgree() throws Exception {
+        String raw = String.join("\n",
+                "[free] Monitoring started at 2025-07-05T15:01:02.123, interval: 2 seconds",
+                "               total        used        free      shared  buff/cache   available",
+                "Mem:          515584       21033      294193          64      200357      486539",
+                "Swap:           8191           0        8191",
+                "",
+                "               total        used        free      shared  buff/cache   available",
+                "Mem:          515584       22033      293193          64      200357      485539",
+                "Swap:           8191           0        8191",
+                "");
+        Path fromRaw = tmp.resolve("raw.csv");
+        SysstatParser.forTool("free").parse(new BufferedReader(new StringReader(raw)), new TextSampleSink(fromRaw.toString()));
+        assertEquals(List.of(
+                "tick,timestamp,type,total [MiB],used [MiB],free [MiB],shared [MiB],buff/cache [MiB],available [MiB]",
+                "1,2025/07/05 15:01:02.123,Mem,515584,21033,294193,64,200357,486539",
+                "1,2025/07/05 15:01:02.123,Swap,8191,0,8191,,,",
+                "2,2025/07/05 15:01:04.123,Mem,515584,22033,293193,64,200357,485539",
+                "2,2025/07/05 15:01:04.123,Swap,8191,0,8191,,,"), Files.readAllLines(fromRaw));
+
+        // The CSV of the current free sampler reads back to the same table.
+        Path fromCsv = tmp.resolve("csv.csv");
+        SysstatParser.forTool("free").parse(fromRaw, new TextSampleSink(fromCsv.toString()));
+        assertEquals(Files.readAllLines(fromRaw), Files.readAllLines(fromCsv));
+    }
+}
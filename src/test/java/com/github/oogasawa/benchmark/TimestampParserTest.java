@@ -0,0 +1,54 @@
+package com.github.oogasawa.benchmark;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Locale;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+import com.github.oogasawa.benchmark.util.TimestampParser;
+
+class TimestampParserTest {
+
+    @Test
+    void testAgreesWithDateTimeFormatter() {
+        ZoneId zone = ZoneId.of("America/New_York");
+        Random random = new Random(42);
+        for (String pattern : new String[] {"yyyy/MM/dd HH:mm:ss.SSS", "yyyy-MM-dd HH:mm:ss", "yyyy-MMM-dd HH:mm:ss"}) {
+            DateTimeFormatter formatter = DateTimeFormatter.ofPattern(pattern, Locale.ENGLISH);
+            TimestampParser parser = new TimestampParser(pattern, zone);
+            // Steps of up to 10 minutes across a year, including both DST changes.
+            LocalDateTime t = LocalDateTime.of(2025, 1, 1, 0, 0);
+            while (t.getYear() == 2025) {
+                String text = formatter.format(t);
+                LocalDateTime expected = LocalDateTime.parse(text, formatter);
+                assertEquals(expected.atZone(zone).toInstant().toEpochMilli(), parser.parseEpochMillis(text), text);
+                assertEquals(expected, parser.parseLocalDateTime(text), text);
+                t = t.plusSeconds(random.nextInt(600)).plusNanos(random.nextInt(1000) * 1_000_000L);
+            }
+        }
+    }
+
+    @Test
+    void testRangesAndFallback() {
+        TimestampParser parser = new TimestampParser("yyyy/MM/dd HH:mm:ss.SSS", ZoneOffset.UTC);
+        String line = "42,2025/07/05 15:01:02.123,0,56";
+        long expected = LocalDateTime.of(2025, 7, 5, 15, 1, 2, 123_000_000).toInstant(ZoneOffset.UTC).toEpochMilli();
+        assertEquals(expected, parser.parseEpochMillis(line, 3, 26));
+        assertEquals(expected, parser.parseEpochMillis(line.getBytes(StandardCharsets.US_ASCII), 3, 26));
+
+        // The formatter decides what the fixed layout does not cover.
+        assertEquals(LocalDateTime.of(2025, 2, 28, 0, 0), new TimestampParser("yyyy/MM/dd HH:mm:ss.SSS")
+                .parseLocalDateTime("2025/02/30 00:00:00.000"));
+        assertThrows(DateTimeParseException.class, () -> parser.parseEpochMillis("2025/07/05 25:01:02.123"));
+        assertThrows(DateTimeParseException.class, () -> parser.parseEpochMillis("2025/07/05 15:01:02"));
+        assertThrows(DateTimeParseException.class, () -> new TimestampParser("yyyy-MMM-dd HH:mm:ss")
+                .parseLocalMillis("2025-jul-05 15:01:02"));
+        assertEquals(LocalDateTime.of(2025, 7, 5, 15, 1, 2), new TimestampParser("dd.MM.yyyy HH:mm:ss")
+                .parseLocalDateTime("05.07.2025 15:01:02"));
+    }
+}
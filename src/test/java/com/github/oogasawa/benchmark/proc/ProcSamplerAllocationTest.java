@@ -0,0 +1,57 @@
+package com.github.oogasawa.benchmark.proc;
+
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.regex.Pattern;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Checks that the steady-state sampling loop of the {@code /proc} samplers does not allocate,
+ * using the per-thread allocation counter of HotSpot.
+ */
+class ProcSamplerAllocationTest {
+
+    private static final int WARMUP = 2000;
+    private static final int SAMPLES = 1000;
+
+    @Test
+    void testCollectDoesNotAllocate() throws Exception {
+        assumeTrue(Files.isReadable(Path.of("/proc/self/stat")), "Linux /proc is required");
+        var threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        assumeTrue(threads.isThreadAllocatedMemoryEnabled());
+
+        Process child = new ProcessBuilder("sleep", "60").start();
+        try {
+            List<ProcSampler> samplers = List.of(
+                    new CpuStatSampler(),
+                    new MemInfoSampler(),
+                    new DiskStatsSampler(List.of()),
+                    new NetDevSampler(null, Pattern.compile("lo")),
+                    new ProcessTreeSampler(child.pid()));
+
+            for (ProcSampler sampler : samplers) {
+                sampler.open();
+                for (int i = 0; i < WARMUP; i++) {
+                    sampler.collect();
+                }
+
+                long tid = Thread.currentThread().threadId();
+                long before = threads.getThreadAllocatedBytes(tid);
+                for (int i = 0; i < SAMPLES; i++) {
+                    sampler.collect();
+                }
+                long allocated = threads.getThreadAllocatedBytes(tid) - before;
+                sampler.close();
+
+                // Less than one byte per sample: nothing is allocated per tick.
+                assertTrue(allocated < SAMPLES, sampler.getName() + " allocated " + allocated + " bytes");
+            }
+        } finally {
+            child.destroy();
+        }
+    }
+}
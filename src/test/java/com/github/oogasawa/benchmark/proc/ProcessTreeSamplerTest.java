@@ -0,0 +1,52 @@
+package com.github.oogasawa.benchmark.proc;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import com.github.oogasawa.benchmark.metric.SampleBuffer;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+class ProcessTreeSamplerTest {
+
+    @Test
+    void testTotalIncludesChildrenExitedBetweenTicks() throws Exception {
+        assumeTrue(Files.isReadable(Path.of("/proc/self/stat")), "Linux /proc is required");
+
+        // The subshell starts after the first walk and exits before the next one, so it is never seen.
+        Process root = new ProcessBuilder("sh", "-c",
+                "read x; (i=0; while [ $i -lt 300000 ]; do i=$((i+1)); done); echo done; read y").start();
+        ProcessTreeSampler sampler = new ProcessTreeSampler(root.pid());
+        try (OutputStream in = root.getOutputStream();
+             BufferedReader out = new BufferedReader(
+                     new InputStreamReader(root.getInputStream(), StandardCharsets.US_ASCII))) {
+            sampler.open();
+            in.write('\n');
+            in.flush();
+            assertEquals("done", out.readLine());
+
+            SampleBuffer buffer = new SampleBuffer(sampler.getSchema());
+            buffer.reset(1, System.currentTimeMillis());
+            sampler.sample(buffer);
+
+            double rootCpuMs = Double.NaN;
+            double totalCpuMs = Double.NaN;
+            for (int row = 0; row < buffer.getRows(); row++) {
+                if (Long.toString(root.pid()).equals(buffer.getLabel(row, 0))) {
+                    rootCpuMs = buffer.getValue(row, 1);
+                } else if ("total".equals(buffer.getLabel(row, 0))) {
+                    totalCpuMs = buffer.getValue(row, 1);
+                }
+            }
+            assertTrue(rootCpuMs < 100, "root cpu_ms " + rootCpuMs);
+            assertTrue(totalCpuMs - rootCpuMs >= 200, "total cpu_ms " + totalCpuMs);
+        } finally {
+            sampler.close();
+            root.destroy();
+        }
+    }
+}